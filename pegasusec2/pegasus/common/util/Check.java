@@ -0,0 +1,45 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.common.util;
+
+/**
+ * The assertion shared by the test programs, that are run through their main
+ * method and fail with an exception on the first condition that does not hold.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class Check {
+
+    /**
+     * Throws an exception if a condition does not hold.
+     *
+     * @param condition  the condition.
+     * @param message    the message of the exception.
+     */
+    public static void check( boolean condition, String message ){
+        if( !condition ){
+            throw new RuntimeException( message );
+        }
+    }
+
+    /**
+     * The private constructor, as the class only has static methods.
+     */
+    private Check(){
+    }
+}
@@ -20,7 +20,10 @@ import edu.isi.pegasus.planner.catalog.transformation.classes.TransformationStor
 import edu.isi.pegasus.planner.dax.Invoke;
 
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
 import java.util.Vector;
@@ -108,13 +111,18 @@ public class ADag extends Data {
      * All the notifications associated with the job
      */
     protected Notifications mNotifications;
+
+    /**
+     * The jobs indexed by their job name, created when first asked for.
+     */
+    private JobIndex mJobIndex;
     
     /**
      * Initialises the class member variables.
      */
     public ADag() {
         dagInfo          = new DagInfo();
-        vJobSubInfos     = new Vector();
+        vJobSubInfos     = new TrackedVector<Job>();
         mSubmitDirectory = ".";
         mWorkflowUUID    = generateWorkflowUUID();
         mRootWorkflowUUID = null;
@@ -131,7 +139,7 @@ public class ADag extends Data {
      */
     public ADag (DagInfo dg, Vector vSubs){
         this.dagInfo      = (DagInfo)dg.clone();
-        this.vJobSubInfos = (Vector)vSubs.clone();
+        this.vJobSubInfos = new TrackedVector<Object>( (Collection<?>)vSubs );
         mSubmitDirectory  = ".";
         mWorkflowUUID    = generateWorkflowUUID();
         mRootWorkflowUUID = null;
@@ -508,7 +516,7 @@ public class ADag extends Data {
      * Returns all the leaf nodes of the dag. The way the structure of Dag is
      * specified, in terms of the parent child relationship pairs, the
      * determination of the leaf nodes can be computationally intensive. The
-     * complexity is of order n^2
+     * relations are indexed, so the complexity is of order n
      *
      * @return Vector of <code>String</code> corresponding to the job names of
      *         the leaf nodes.
@@ -585,7 +593,8 @@ public class ADag extends Data {
      * It determines the root Nodes for the ADag looking at the relation pairs
      * of the adag. The way the structure of Dag is specified in terms
      * of the parent child relationship pairs, the determination of the leaf
-     * nodes can be computationally intensive. The complexity if of order n^2.
+     * nodes can be computationally intensive. The relations are
+     * indexed, so the complexity is of order n.
      *
      *
      * @return the root jobs of the Adag
@@ -609,7 +618,9 @@ public class ADag extends Data {
 
     /**
      * This returns a Job object corresponding to the job by looking through
-     * all the subInfos.
+     * all the subInfos. The jobs are indexed by name, and the index is checked
+     * against the name of the job found, so a job renamed after it was added
+     * still falls back to looking through all the subInfos.
      *
      *
      *@param job   jobName of the job for which we need the subInfo object.
@@ -620,6 +631,13 @@ public class ADag extends Data {
 
         Job sub = null;
 
+        if( indexJobs() ){
+            sub = mJobIndex.mJobs.get( job.toLowerCase() );
+            if( sub != null && job.equalsIgnoreCase( sub.jobName ) ){
+                return sub;
+            }
+        }
+
         //System.out.println("Job being considered is " + job);
         for ( Enumeration e = this.vJobSubInfos.elements(); e.hasMoreElements(); ){
             sub = (Job)e.nextElement();
@@ -633,6 +651,23 @@ public class ADag extends Data {
 
     }
 
+    /**
+     * Brings the job index up to date with the jobs Vector.
+     *
+     * @return false if the jobs Vector was replaced by one whose changes
+     *         cannot be tracked, and the index cannot be used.
+     */
+    private boolean indexJobs(){
+        if( !( vJobSubInfos instanceof TrackedVector ) ){
+            return false;
+        }
+        if( mJobIndex == null ){
+            mJobIndex = new JobIndex();
+        }
+        ( (TrackedVector<?>)vJobSubInfos ).sync( mJobIndex );
+        return true;
+    }
+
     /**
      * Returns the metrics about the workflow.
      *
@@ -742,6 +777,89 @@ public class ADag extends Data {
 
     }
 
-    
+    /**
+     * The jobs indexed by their lower cased job name, kept up to date with the
+     * jobs Vector. A name that appears more than once maps to its first job.
+     * Jobs appended or removed are indexed one at a time, while a job inserted
+     * among the others, or the removal of a job whose name appears more than
+     * once, rebuilds the index. A job renamed in place is not seen, and is
+     * found by the scan in getSubInfo.
+     */
+    private static class JobIndex implements TrackedVector.Tracker {
+
+        /**
+         * The jobs indexed by their lower cased job name.
+         */
+        private Map<String,Job> mJobs;
 
+        /**
+         * The lower cased names that more than one job has.
+         */
+        private Set<String> mDuplicates;
+
+        /**
+         * Whether the index no longer holds the first job of each name.
+         */
+        private boolean mStale;
+
+        /**
+         * Adds a job to the index.
+         *
+         * @param element   the job.
+         * @param appended  whether the job comes after the indexed ones.
+         */
+        public void indexed( Object element, boolean appended ){
+            if( !appended ){
+                mStale = true;
+            }
+            Job job = (Job)element;
+            if( mStale || job == null || job.jobName == null ){
+                return;
+            }
+            String key = job.jobName.toLowerCase();
+            if( mJobs.containsKey( key ) ){
+                mDuplicates.add( key );
+            }
+            else{
+                mJobs.put( key, job );
+            }
+        }
+
+        /**
+         * Removes a job from the index.
+         *
+         * @param element  the job.
+         */
+        public void unindexed( Object element ){
+            Job job = (Job)element;
+            if( mStale || job == null || job.jobName == null ){
+                return;
+            }
+            String key = job.jobName.toLowerCase();
+            if( mDuplicates.contains( key ) ){
+                mStale = true;
+            }
+            else if( mJobs.get( key ) == job ){
+                mJobs.remove( key );
+            }
+        }
+
+        /**
+         * Empties the index.
+         */
+        public void cleared(){
+            mJobs       = new HashMap<String,Job>();
+            mDuplicates = new HashSet<String>();
+            mStale      = false;
+        }
+
+        /**
+         * Returns whether the index still holds the first job of each name.
+         *
+         * @return boolean
+         */
+        public boolean isCurrent(){
+            return !mStale;
+        }
+    }
 }
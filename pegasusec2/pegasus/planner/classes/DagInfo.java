@@ -23,8 +23,12 @@ import edu.isi.pegasus.common.util.Version;
 
 import java.io.File;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.HashSet;
@@ -134,6 +138,11 @@ public class DagInfo extends Data {
      */
     private String mDAXVersion;
 
+    /**
+     * The parents and children of the nodes, created when first asked for.
+     */
+    private RelationIndex mRelationIndex;
+
 
     //for scripts later
 
@@ -141,8 +150,8 @@ public class DagInfo extends Data {
      * The default constructor.
      */
     public DagInfo() {
-        dagJobs        = new Vector();
-        relations      = new Vector();
+        dagJobs        = new TrackedVector<String>();
+        relations      = new TrackedVector<PCRelation>();
         nameOfADag     = "";
         count          = "";
         index          = "";
@@ -356,14 +365,19 @@ public class DagInfo extends Data {
      * @return    Vector corresponding to the parents of the node.
      */
     public Vector getParents(String node) {
+        if( indexRelations() ){
+            List<String> parents = mRelationIndex.mParents.get( key( node ) );
+            return ( parents == null ) ? new Vector() : new Vector( parents );
+        }
+
         //getting the parents of that node
         Enumeration ePcRel = this.relations.elements();
         Vector vParents = new Vector();
         PCRelation currentRelPair;
         while (ePcRel.hasMoreElements()) {
             currentRelPair = (PCRelation) ePcRel.nextElement();
-            if (currentRelPair.child.trim().equalsIgnoreCase(node)) {
-                vParents.addElement( currentRelPair.parent );
+            if (currentRelPair.getChild().trim().equalsIgnoreCase(node)) {
+                vParents.addElement( currentRelPair.getParent() );
             }
         }
 
@@ -378,14 +392,19 @@ public class DagInfo extends Data {
      * @return  Vector containing the children of the node.
      */
     public Vector getChildren(String node) {
+        if( indexRelations() ){
+            List<String> children = mRelationIndex.mChildren.get( key( node ) );
+            return ( children == null ) ? new Vector() : new Vector( children );
+        }
+
         Enumeration ePcRel = this.relations.elements();
         Vector vChildren = new Vector();
         PCRelation currentRelPair;
 
         while (ePcRel.hasMoreElements()) {
             currentRelPair = (PCRelation) ePcRel.nextElement();
-            if (currentRelPair.parent.trim().equalsIgnoreCase(node)) {
-                vChildren.addElement(new String(currentRelPair.child));
+            if (currentRelPair.getParent().trim().equalsIgnoreCase(node)) {
+                vChildren.addElement(new String(currentRelPair.getChild()));
             }
         }
 
@@ -396,7 +415,9 @@ public class DagInfo extends Data {
      * This returns all the leaf nodes of the dag. The way the structure of Dag
      * is specified in terms of the parent child relationship pairs, the
      * determination of the leaf nodes can be computationally intensive. The
-     * complexity if of order n^2.
+     * relations are indexed by parent, so the complexity is of order n, unless
+     * the relations Vector was replaced by one that cannot be indexed, in which
+     * case it is of order n^2.
      *
      * @return Vector of <code>String</code> corresponding to the job names of
      *         the leaf nodes.
@@ -412,6 +433,7 @@ public class DagInfo extends Data {
         String job;
         PCRelation pcRel;
         boolean isLeaf = false;
+        boolean indexed = indexRelations();
 
         //search for all the jobs which are Roots i.e are not child in relation
         Enumeration e = vJobs.elements();
@@ -419,15 +441,20 @@ public class DagInfo extends Data {
         while (e.hasMoreElements()) {
             //traverse through all the relations
             job = (String) e.nextElement();
-            eRel = vRelations.elements();
+            if( indexed ){
+                isLeaf = !mRelationIndex.mChildren.containsKey( key( job ) );
+            }
+            else{
+                eRel = vRelations.elements();
 
-            isLeaf = true;
-            while (eRel.hasMoreElements()) {
-                pcRel = (PCRelation) eRel.nextElement();
+                isLeaf = true;
+                while (eRel.hasMoreElements()) {
+                    pcRel = (PCRelation) eRel.nextElement();
 
-                if (pcRel.parent.equalsIgnoreCase(job)) { //means not a Child job
-                    isLeaf = false;
-                    break;
+                    if (pcRel.getParent().equalsIgnoreCase(job)) { //means not a Child job
+                        isLeaf = false;
+                        break;
+                    }
                 }
             }
 
@@ -445,7 +472,9 @@ public class DagInfo extends Data {
      * It determines the root Nodes for the ADag looking at the relation pairs
      * of the adag. The way the structure of Dag is specified in terms
      * of the parent child relationship pairs, the determination of the leaf
-     * nodes can be computationally intensive. The complexity if of
+     * nodes can be computationally intensive. The relations are indexed by
+     * child, so the complexity is of order n, unless the relations Vector was
+     * replaced by one that cannot be indexed, in which case it is of
      * order n^2.
      *
      *
@@ -463,6 +492,7 @@ public class DagInfo extends Data {
         String job;
         PCRelation pcRel;
         boolean isRoot = false;
+        boolean indexed = indexRelations();
 
         //search for all the jobs which are Roots
         //i.e are not child in relation
@@ -471,15 +501,20 @@ public class DagInfo extends Data {
         while (e.hasMoreElements()) {
             //traverse through all the relations
             job = (String) e.nextElement();
-            eRel = vRelations.elements();
+            if( indexed ){
+                isRoot = !mRelationIndex.mParents.containsKey( key( job ) );
+            }
+            else{
+                eRel = vRelations.elements();
 
-            isRoot = true;
-            while (eRel.hasMoreElements()) {
-                pcRel = (PCRelation) eRel.nextElement();
+                isRoot = true;
+                while (eRel.hasMoreElements()) {
+                    pcRel = (PCRelation) eRel.nextElement();
 
-                if (pcRel.child.equalsIgnoreCase(job)) { //means not a Root job
-                    isRoot = false;
-                    break;
+                    if (pcRel.getChild().equalsIgnoreCase(job)) { //means not a Root job
+                        isRoot = false;
+                        break;
+                    }
                 }
             }
             //adding if Root to vector
@@ -493,6 +528,57 @@ public class DagInfo extends Data {
     }
 
 
+    /**
+     * Replaces the relations making up the DAG.
+     *
+     * @param edges  the <code>PCRelation</code> objects.
+     */
+    public void setRelations( Collection<? extends PCRelation> edges ){
+        this.relations = new TrackedVector<PCRelation>( edges );
+    }
+
+    /**
+     * Drops the parent and child indices, so that they are built again when
+     * next asked for. It has to be called after the parent or child fields of
+     * a relation are changed directly, rather than through the setters.
+     */
+    public void invalidate(){
+        if( mRelationIndex != null ){
+            mRelationIndex.mStale = true;
+        }
+    }
+
+    /**
+     * Brings the parent and child indices up to date with the relations
+     * Vector.
+     *
+     * @return false if the relations Vector was replaced by one whose changes
+     *         cannot be tracked, and the indices cannot be used.
+     */
+    private boolean indexRelations(){
+        if( !( relations instanceof TrackedVector ) ){
+            return false;
+        }
+        if( mRelationIndex == null ){
+            mRelationIndex = new RelationIndex();
+        }
+        ( (TrackedVector<?>)relations ).sync( mRelationIndex );
+        return true;
+    }
+
+    /**
+     * Returns the key of a node in the indices. The nodes in the relations are
+     * matched ignoring case and surrounding whitespace, as the scans over the
+     * relations do.
+     *
+     * @param node  the name of the node.
+     *
+     * @return the key
+     */
+    private static String key( String node ){
+        return node.trim().toLowerCase();
+    }
+
     /**
      * Returns the workflow metrics so far.
      *
@@ -666,4 +752,196 @@ public class DagInfo extends Data {
     }
 
     
+
+    /**
+     * The parents and children of the nodes, kept up to date with the
+     * relations Vector. Relations appended or removed are indexed one at a
+     * time, while a relation inserted among the others or replaced, the
+     * removal of a relation that is repeated for its parent or child, or a
+     * change to the parent or child of one of the relations, rebuilds the
+     * index.
+     */
+    private static class RelationIndex implements TrackedVector.Tracker {
+
+        /**
+         * The parents of each node, in the order of the relations, indexed by
+         * the key of the node.
+         *
+         * @see DagInfo#key( String )
+         */
+        private Map<String,List<String>> mParents;
+
+        /**
+         * The children of each node, in the order of the relations, indexed
+         * by the key of the node.
+         *
+         * @see DagInfo#key( String )
+         */
+        private Map<String,List<String>> mChildren;
+
+        /**
+         * The stamp the relations indexed since the index was last cleared
+         * are marked with.
+         */
+        private Stamp mStamp;
+
+        /**
+         * Whether the index no longer follows the order of the relations.
+         */
+        private boolean mStale;
+
+        /**
+         * Adds a relation to the index.
+         *
+         * @param element   the relation.
+         * @param appended  whether the relation comes after the indexed ones.
+         */
+        public void indexed( Object element, boolean appended ){
+            if( !appended ){
+                mStale = true;
+            }
+            if( mStale || element == null ){
+                return;
+            }
+            PCRelation relation = (PCRelation)element;
+            add( mParents, key( relation.getChild() ), relation.getParent() );
+            add( mChildren, key( relation.getParent() ), relation.getChild() );
+            relation.addStamp( mStamp );
+        }
+
+        /**
+         * Removes a relation from the index.
+         *
+         * @param element  the relation.
+         */
+        public void unindexed( Object element ){
+            if( mStale || element == null ){
+                return;
+            }
+            PCRelation relation = (PCRelation)element;
+            String parent = key( relation.getParent() );
+            String child  = key( relation.getChild() );
+            //which of the repeated values goes is not known
+            if( !isUnique( mParents, child, relation.getParent() ) ||
+                !isUnique( mChildren, parent, relation.getChild() ) ){
+                mStale = true;
+                return;
+            }
+            remove( mParents, child, relation.getParent() );
+            remove( mChildren, parent, relation.getChild() );
+            relation.removeStamp( mStamp );
+        }
+
+        /**
+         * Empties the index.
+         */
+        public void cleared(){
+            if( mStamp != null ){
+                mStamp.mIndex = null;
+            }
+            mParents  = new HashMap<String,List<String>>();
+            mChildren = new HashMap<String,List<String>>();
+            mStamp    = new Stamp( this );
+            mStale    = false;
+        }
+
+        /**
+         * Returns whether the index still matches the relations.
+         *
+         * @return boolean
+         */
+        public boolean isCurrent(){
+            return !mStale;
+        }
+
+        /**
+         * Adds a value to the list of values of a key in an index.
+         *
+         * @param index  the index.
+         * @param key    the key.
+         * @param value  the value.
+         */
+        private static void add( Map<String,List<String>> index, String key, String value ){
+            List<String> values = index.get( key );
+            if( values == null ){
+                values = new ArrayList<String>( 2 );
+                index.put( key, values );
+            }
+            values.add( value );
+        }
+
+        /**
+         * Returns whether a value appears exactly once in the list of values
+         * of a key in an index.
+         *
+         * @param index  the index.
+         * @param key    the key.
+         * @param value  the value.
+         *
+         * @return boolean
+         */
+        private static boolean isUnique( Map<String,List<String>> index, String key, String value ){
+            List<String> values = index.get( key );
+            if( values == null ){
+                return false;
+            }
+            int first = values.indexOf( value );
+            return first >= 0 && first == values.lastIndexOf( value );
+        }
+
+        /**
+         * Removes a value from the list of values of a key in an index, and
+         * the key once it has no values left.
+         *
+         * @param index  the index.
+         * @param key    the key.
+         * @param value  the value.
+         */
+        private static void remove( Map<String,List<String>> index, String key, String value ){
+            List<String> values = index.get( key );
+            if( values != null && values.remove( value ) && values.isEmpty() ){
+                index.remove( key );
+            }
+        }
+    }
+
+    /**
+     * Marks the relations a relation index holds, so that a change to the
+     * parent or child of one of them makes the index rebuild. The stamp is
+     * dropped once the index is cleared.
+     */
+    static final class Stamp {
+
+        /**
+         * The index, or null once it was cleared.
+         */
+        private RelationIndex mIndex;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param index  the index.
+         */
+        private Stamp( RelationIndex index ){
+            mIndex = index;
+        }
+
+        /**
+         * Tells the index that a relation it holds changed.
+         */
+        void changed(){
+            if( mIndex != null ){
+                mIndex.mStale = true;
+            }
+        }
+
+        /**
+         * Returns whether the index was not cleared since.
+         *
+         * @return boolean
+         */
+        boolean isLive(){
+            return mIndex != null;
+        }
+    }
 }
@@ -22,9 +22,17 @@ import java.io.Writer;
 import java.io.StringWriter;
 import java.io.IOException;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Captures the parent child relationship between the  jobs in the ADAG.
  *
+ * A change to the parent or child through the setters is seen by the indices
+ * of the <code>DagInfo</code> objects holding the relation. A change made to
+ * the fields directly is not, and has to be followed by a call to
+ * DagInfo.invalidate().
+ *
  * @author Karan Vahi
  * @version $Revision$
  */
@@ -64,6 +72,12 @@ public class PCRelation extends Data /*implements Comparable*/{
      * The abstract id for the child node. required for stampede events.
      */
     private String mAbstractChildID;
+
+    /**
+     * The stamps of the relation indices the relation is in, that are told
+     * when the parent or child is set. null if it is in none.
+     */
+    private transient List<DagInfo.Stamp> mStamps;
     
     /**
      * the default constructor
@@ -260,6 +274,7 @@ public class PCRelation extends Data /*implements Comparable*/{
      */
     public void setChild(String childNode) {
         this.child = childNode;
+        changed();
     }
 
     /**
@@ -269,6 +284,52 @@ public class PCRelation extends Data /*implements Comparable*/{
      */
     public void setParent(String parentNode) {
         this.parent = parentNode;
+        changed();
+    }
+
+    /**
+     * Marks the relation as indexed by a relation index. A relation held
+     * more than once by a DAG is marked once for each time.
+     *
+     * @param stamp  the stamp of the index.
+     */
+    void addStamp( DagInfo.Stamp stamp ){
+        if( mStamps == null ){
+            mStamps = new ArrayList<DagInfo.Stamp>( 1 );
+        }
+        else{
+            //drop the stamps of indices cleared since
+            for( int i = mStamps.size() - 1; i >= 0; i-- ){
+                if( !mStamps.get( i ).isLive() ){
+                    mStamps.remove( i );
+                }
+            }
+        }
+        mStamps.add( stamp );
+    }
+
+    /**
+     * Removes a mark made by a relation index.
+     *
+     * @param stamp  the stamp of the index.
+     */
+    void removeStamp( DagInfo.Stamp stamp ){
+        if( mStamps != null ){
+            mStamps.remove( stamp );
+        }
+    }
+
+    /**
+     * Tells the relation indices the relation is in that it changed. They
+     * are rebuilt, and mark the relation again.
+     */
+    private void changed(){
+        if( mStamps != null ){
+            for( DagInfo.Stamp stamp : mStamps ){
+                stamp.changed();
+            }
+            mStamps = null;
+        }
     }
 
 
@@ -0,0 +1,532 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.classes;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.LogManagerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Random;
+import java.util.Vector;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the indices kept over tracked Vectors. Random edits are made to the
+ * Vectors through every mutator, and the index of a counting tracker, the
+ * parents, children, roots and leaves of a <code>DagInfo</code> and the jobs
+ * found by an <code>ADag</code> are compared with scans of the Vectors.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestTrackedVector {
+
+    /**
+     * The names of the nodes, that are used in upper and lower case.
+     */
+    private static final String[] NAMES = { "a", "b", "c", "d", "e", "f", "g", "h" };
+
+    /**
+     * A tracker that holds the elements it is passed, and counts how often it
+     * is cleared.
+     */
+    private static class ListTracker implements TrackedVector.Tracker {
+
+        /**
+         * The elements indexed.
+         */
+        private List<Object> mElements = new ArrayList<Object>();
+
+        /**
+         * The number of times the tracker was cleared.
+         */
+        private int mCleared;
+
+        /**
+         * Adds an element.
+         *
+         * @param element   the element.
+         * @param appended  whether the element comes after the others.
+         */
+        public void indexed( Object element, boolean appended ){
+            mElements.add( element );
+        }
+
+        /**
+         * Removes an element.
+         *
+         * @param element  the element.
+         */
+        public void unindexed( Object element ){
+            check( mElements.remove( element ), "Element " + element + " unindexed but not indexed" );
+        }
+
+        /**
+         * Removes all the elements.
+         */
+        public void cleared(){
+            mElements.clear();
+            mCleared++;
+        }
+
+        /**
+         * Returns true, the elements are never edited.
+         *
+         * @return true
+         */
+        public boolean isCurrent(){
+            return true;
+        }
+    }
+
+    /**
+     * Returns a random node name.
+     *
+     * @param r  the random number generator.
+     *
+     * @return the name
+     */
+    private static String name( Random r ){
+        String name = NAMES[ r.nextInt( NAMES.length ) ];
+        return r.nextBoolean() ? name : name.toUpperCase();
+    }
+
+    /**
+     * Returns a sorted copy of a collection of strings.
+     *
+     * @param c  the collection.
+     *
+     * @return the sorted list
+     */
+    private static List<String> sorted( List<Object> c ){
+        List<String> result = new ArrayList<String>();
+        for( Object o : c ){
+            result.add( String.valueOf( o ) );
+        }
+        Collections.sort( result );
+        return result;
+    }
+
+    /**
+     * Makes a random edit to a Vector.
+     *
+     * @param v  the Vector.
+     * @param r  the random number generator.
+     * @param create  creates the new elements.
+     *
+     * @return false if the edit was one that should rebuild the index.
+     */
+    @SuppressWarnings( "unchecked" )
+    private static boolean edit( Vector v, Random r, Creator create ){
+        int size = v.size();
+        int op   = r.nextInt( 20 );
+        if( size == 0 && op >= 4 ){
+            op = 0;
+        }
+        switch( op ){
+            case 0:
+                v.add( create.create( r ) );
+                return true;
+
+            case 1:
+                v.addElement( create.create( r ) );
+                return true;
+
+            case 2:
+                v.addAll( Arrays.asList( create.create( r ), create.create( r ) ) );
+                return true;
+
+            case 3:
+                int at = r.nextInt( size + 1 );
+                if( r.nextBoolean() ){
+                    v.add( at, create.create( r ) );
+                }
+                else{
+                    v.addAll( at, Arrays.asList( create.create( r ), create.create( r ) ) );
+                }
+                return at == size;
+
+            case 4:
+                v.insertElementAt( create.create( r ), r.nextInt( size + 1 ) );
+                return false;
+
+            case 5:
+                v.set( r.nextInt( size ), create.create( r ) );
+                return false;
+
+            case 6:
+                v.setElementAt( create.create( r ), r.nextInt( size ) );
+                return false;
+
+            case 7:
+                v.remove( r.nextInt( size ) );
+                return true;
+
+            case 8:
+                v.removeElementAt( r.nextInt( size ) );
+                return true;
+
+            case 9:
+                v.remove( v.get( r.nextInt( size ) ) );
+                return true;
+
+            case 10:
+                v.removeElement( v.get( r.nextInt( size ) ) );
+                return true;
+
+            case 11:
+                Iterator it = v.iterator();
+                for( int i = r.nextInt( size ); i >= 0; i-- ){
+                    it.next();
+                }
+                it.remove();
+                return false;
+
+            case 12:
+                ListIterator li = v.listIterator( r.nextInt( size ) );
+                li.next();
+                if( r.nextBoolean() ){
+                    li.set( create.create( r ) );
+                }
+                else{
+                    li.add( create.create( r ) );
+                }
+                return false;
+
+            case 13:
+                Collections.sort( v, new Comparator(){
+                    public int compare( Object a, Object b ){
+                        return Integer.compare( System.identityHashCode( a ), System.identityHashCode( b ) );
+                    }
+                } );
+                return false;
+
+            case 14:
+                Collections.shuffle( v, r );
+                return false;
+
+            case 15:
+                int from = r.nextInt( size );
+                v.subList( from, from + r.nextInt( size - from + 1 ) ).clear();
+                return false;
+
+            case 16:
+                v.removeAll( Collections.singleton( v.get( r.nextInt( size ) ) ) );
+                return false;
+
+            case 17:
+                v.setSize( r.nextInt( size + 1 ) );
+                return false;
+
+            case 18:
+                if( r.nextInt( 4 ) == 0 ){
+                    v.clear();
+                }
+                else{
+                    v.add( create.create( r ) );
+                }
+                return false;
+
+            default:
+                v.retainAll( v.subList( 0, r.nextInt( size + 1 ) ) );
+                return false;
+        }
+    }
+
+    /**
+     * Removes the nulls a Vector was padded with by setSize.
+     *
+     * @param v  the Vector.
+     */
+    private static void removeNulls( Vector v ){
+        while( v.removeElement( null ) ){
+        }
+    }
+
+    /**
+     * Creates the elements added to a Vector.
+     */
+    private interface Creator {
+
+        /**
+         * Creates an element.
+         *
+         * @param r  the random number generator.
+         *
+         * @return the element
+         */
+        Object create( Random r );
+    }
+
+    /**
+     * Returns the parents of a node, from a scan of the relations.
+     *
+     * @param relations  the relations.
+     * @param node       the node.
+     *
+     * @return the parents in the order of the relations
+     */
+    private static List<Object> parents( Vector relations, String node ){
+        List<Object> result = new ArrayList<Object>();
+        for( Object o : relations ){
+            PCRelation rel = (PCRelation)o;
+            if( rel.getChild().equalsIgnoreCase( node ) ){
+                result.add( rel.getParent() );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the children of a node, from a scan of the relations.
+     *
+     * @param relations  the relations.
+     * @param node       the node.
+     *
+     * @return the children in the order of the relations
+     */
+    private static List<Object> children( Vector relations, String node ){
+        List<Object> result = new ArrayList<Object>();
+        for( Object o : relations ){
+            PCRelation rel = (PCRelation)o;
+            if( rel.getParent().equalsIgnoreCase( node ) ){
+                result.add( rel.getChild() );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Checks the parents, children, roots and leaves of a DAG against scans of
+     * its relations.
+     *
+     * @param dag    the DAG.
+     * @param label  the label of the check.
+     */
+    private static void checkDag( DagInfo dag, String label ){
+        List<Object> roots  = new ArrayList<Object>();
+        List<Object> leaves = new ArrayList<Object>();
+        for( Object job : dag.dagJobs ){
+            String node = (String)job;
+            List<Object> parents  = parents( dag.relations, node );
+            List<Object> children = children( dag.relations, node );
+            check( new ArrayList<Object>( dag.getParents( node ) ).equals( parents ),
+                   label + ": parents of " + node + " " + dag.getParents( node ) + " expected " + parents );
+            check( new ArrayList<Object>( dag.getChildren( node ) ).equals( children ),
+                   label + ": children of " + node + " " + dag.getChildren( node ) + " expected " + children );
+            if( parents.isEmpty() ){
+                roots.add( node );
+            }
+            if( children.isEmpty() ){
+                leaves.add( node );
+            }
+        }
+        check( new ArrayList<Object>( dag.getRootNodes() ).equals( roots ), label + ": roots " + dag.getRootNodes() + " expected " + roots );
+        check( new ArrayList<Object>( dag.getLeafNodes() ).equals( leaves ), label + ": leaves " + dag.getLeafNodes() + " expected " + leaves );
+    }
+
+    /**
+     * Checks the jobs found by name in a workflow against a scan of its jobs.
+     *
+     * @param adag   the workflow.
+     * @param label  the label of the check.
+     */
+    private static void checkJobs( ADag adag, String label ){
+        List<String> nodes = new ArrayList<String>();
+        for( String name : NAMES ){
+            nodes.add( name );
+            nodes.add( name.toUpperCase() );
+        }
+        for( Object o : adag.vJobSubInfos ){
+            nodes.add( ( (Job)o ).jobName );
+        }
+        for( String node : nodes ){
+            {
+                Job expected = null;
+                for( Object o : adag.vJobSubInfos ){
+                    Job job = (Job)o;
+                    if( node.equalsIgnoreCase( job.jobName ) ){
+                        expected = job;
+                        break;
+                    }
+                }
+                Job actual = null;
+                try{
+                    actual = adag.getSubInfo( node );
+                }
+                catch( RuntimeException e ){
+                    //not found
+                }
+                check( actual == expected, label + ": job " + node );
+            }
+        }
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments, ignored.
+     */
+    public static void main( String[] args ){
+        LogManager logger = LogManagerFactory.loadSingletonInstance();
+        logger.logEventStart( "event.pegasus.classes.test", "test", "TestTrackedVector" );
+        Random r = new Random( 42 );
+
+        //the elements passed to a tracker are those of the Vector, and
+        //appends and removals do not rebuild the index
+        final int[] next = { 0 };
+        Creator numbers = new Creator(){
+            public Object create( Random r ){
+                return "n" + ( next[ 0 ]++ % 50 );
+            }
+        };
+        for( int run = 0; run < 200; run++ ){
+            TrackedVector<Object> v = new TrackedVector<Object>();
+            ListTracker tracker = new ListTracker();
+            boolean incremental = false;
+            for( int step = 0; step < 60; step++ ){
+                int cleared = tracker.mCleared;
+                incremental = edit( v, r, numbers ) && incremental;
+                if( r.nextInt( 3 ) > 0 ){
+                    v.sync( tracker );
+                    check( sorted( tracker.mElements ).equals( sorted( new ArrayList<Object>( v ) ) ),
+                           "Run " + run + " step " + step + ": tracker holds " + tracker.mElements + " expected " + v );
+                    check( !incremental || tracker.mCleared == cleared,
+                           "Run " + run + " step " + step + ": index rebuilt" );
+                    incremental = true;
+                }
+            }
+
+            //a clone is not indexed by the tracker of the original
+            v.sync( tracker );
+            @SuppressWarnings( "unchecked" )
+            Vector<Object> copy = (Vector<Object>)v.clone();
+            copy.add( "copy" );
+            copy.remove( 0 );
+            v.sync( tracker );
+            check( sorted( tracker.mElements ).equals( sorted( new ArrayList<Object>( v ) ) ), "Run " + run + ": clone changed the index" );
+        }
+
+        //the relations of a DAG
+        Creator relations = new Creator(){
+            public Object create( Random r ){
+                return new PCRelation( name( r ), name( r ) );
+            }
+        };
+        for( int run = 0; run < 300; run++ ){
+            DagInfo dag = new DagInfo();
+            for( String name : NAMES ){
+                dag.dagJobs.add( r.nextBoolean() ? name : name.toUpperCase() );
+            }
+            String label = "Run " + run;
+            for( int step = 0; step < 60; step++ ){
+                String at = label + " step " + step;
+                int op = r.nextInt( 10 );
+                if( op == 0 && !dag.relations.isEmpty() ){
+                    //an edit in place, through the setters or to the fields
+                    //followed by an invalidation
+                    PCRelation rel = (PCRelation)dag.relations.get( r.nextInt( dag.relations.size() ) );
+                    int edit = r.nextInt( 3 );
+                    if( edit == 0 ){
+                        rel.setParent( name( r ) );
+                    }
+                    else if( edit == 1 ){
+                        rel.setChild( name( r ) );
+                    }
+                    else{
+                        rel.child = name( r );
+                        dag.invalidate();
+                    }
+                }
+                else if( op == 1 ){
+                    dag.addNewRelation( name( r ), name( r ) );
+                }
+                else if( op == 2 && r.nextInt( 5 ) == 0 ){
+                    List<PCRelation> edges = new ArrayList<PCRelation>();
+                    for( Object o : dag.relations ){
+                        edges.add( (PCRelation)o );
+                    }
+                    edges.add( new PCRelation( name( r ), name( r ) ) );
+                    dag.setRelations( edges );
+                }
+                else if( op == 3 && r.nextInt( 5 ) == 0 ){
+                    //the clone is independent of the original
+                    DagInfo copy = (DagInfo)dag.clone();
+                    checkDag( copy, at + " clone" );
+                    edit( copy.relations, r, relations );
+                    checkDag( copy, at + " edited clone" );
+
+                    //a relation both hold is seen to change by both
+                    if( !dag.relations.isEmpty() ){
+                        checkDag( dag, at + " original" );
+                        PCRelation rel = (PCRelation)dag.relations.get( r.nextInt( dag.relations.size() ) );
+                        rel.setParent( name( r ) );
+                        checkDag( copy, at + " clone after a shared edit" );
+                    }
+                }
+                else{
+                    edit( dag.relations, r, relations );
+                    removeNulls( dag.relations );
+                }
+                if( r.nextInt( 3 ) > 0 ){
+                    checkDag( dag, at );
+                }
+            }
+
+            //a Vector that cannot be tracked is scanned
+            dag.relations = new Vector( dag.relations );
+            dag.relations.add( new PCRelation( name( r ), name( r ) ) );
+            checkDag( dag, label + " untracked" );
+        }
+
+        //the jobs of a workflow, with names repeated, and changed in place to
+        //names no other job has
+        Creator jobs = new Creator(){
+            public Object create( Random r ){
+                Job job = new Job();
+                job.jobName = name( r );
+                return job;
+            }
+        };
+        for( int run = 0; run < 300; run++ ){
+            ADag adag = new ADag();
+            String label = "Run " + run;
+            for( int step = 0; step < 60; step++ ){
+                if( r.nextInt( 10 ) == 0 && !adag.vJobSubInfos.isEmpty() ){
+                    //a rename is seen by the scan of getSubInfo
+                    ( (Job)adag.vJobSubInfos.get( r.nextInt( adag.vJobSubInfos.size() ) ) ).jobName = "job" + step;
+                }
+                else{
+                    edit( adag.vJobSubInfos, r, jobs );
+                    removeNulls( adag.vJobSubInfos );
+                }
+                if( r.nextInt( 3 ) > 0 ){
+                    checkJobs( adag, label + " step " + step );
+                }
+            }
+        }
+        logger.logEventCompletion();
+        System.out.println( "TestTrackedVector passed" );
+    }
+}
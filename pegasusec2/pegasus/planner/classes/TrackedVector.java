@@ -0,0 +1,337 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.classes;
+
+import java.util.Collection;
+import java.util.Vector;
+
+/**
+ * A Vector that keeps an index over its contents up to date. The index is
+ * told of the elements through a <code>Tracker</code>, and covers the
+ * elements up to a position.
+ *
+ * Elements inserted before that position, removed or replaced are passed to
+ * the tracker as the Vector changes. Appended elements are passed on the next
+ * call to sync(). Any other change, such as a sort or a bulk removal, is seen
+ * from the modification count of the Vector, that then grows by more than the
+ * size does, and the index is rebuilt on the next call to sync().
+ *
+ * @author agent
+ * @version $Revision$
+ */
+class TrackedVector<E> extends Vector<E> {
+
+    /**
+     * The serial version UID.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The tracker of the index over the Vector, or null.
+     */
+    private transient Tracker mTracker;
+
+    /**
+     * The number of elements covered by the index, -1 if it has to be
+     * rebuilt.
+     */
+    private transient int mIndexedSize;
+
+    /**
+     * The modification count of the Vector less the number of elements
+     * appended since the index was brought up to date.
+     */
+    private transient int mIndexedModCount;
+
+    /**
+     * The default constructor.
+     */
+    public TrackedVector(){
+        super();
+        mIndexedSize = -1;
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param c  the collection whose elements are to be placed in the vector.
+     */
+    public TrackedVector( Collection<? extends E> c ){
+        super( c );
+        mIndexedSize = -1;
+    }
+
+    /**
+     * Brings an index over the Vector up to date. If the tracker is not the one
+     * the index was last brought up to date with, or the index has to be
+     * rebuilt, the tracker is cleared and passed all the elements.
+     *
+     * @param tracker  the tracker of the index.
+     */
+    public synchronized void sync( Tracker tracker ){
+        int size = size();
+        if( tracker != mTracker || !isSynced() ){
+            mTracker = tracker;
+            mIndexedSize = 0;
+            tracker.cleared();
+        }
+        for( int i = mIndexedSize; i < size; i++ ){
+            tracker.indexed( get( i ), true );
+        }
+        mIndexedSize     = size;
+        mIndexedModCount = modCount;
+    }
+
+    /**
+     * Inserts an element at a position.
+     *
+     * @param index    the position.
+     * @param element  the element.
+     */
+    public void add( int index, E element ){
+        insertElementAt( element, index );
+    }
+
+    /**
+     * Inserts an element at a position.
+     *
+     * @param obj    the element.
+     * @param index  the position.
+     */
+    public synchronized void insertElementAt( E obj, int index ){
+        boolean synced = isSynced();
+        super.insertElementAt( obj, index );
+        if( !synced ){
+            mIndexedSize = -1;
+        }
+        else{
+            //an element inserted in the part yet to be indexed is indexed
+            //with the appended ones
+            if( index < mIndexedSize ){
+                mTracker.indexed( obj, false );
+                mIndexedSize++;
+            }
+            mIndexedModCount = modCount - ( size() - mIndexedSize );
+        }
+    }
+
+    /**
+     * Appends the elements of a collection, one at a time.
+     *
+     * @param c  the elements.
+     *
+     * @return true if the Vector changed.
+     */
+    public synchronized boolean addAll( Collection<? extends E> c ){
+        Object[] elements = c.toArray();
+        for( Object o : elements ){
+            add( cast( o ) );
+        }
+        return elements.length > 0;
+    }
+
+    /**
+     * Inserts the elements of a collection at a position, one at a time.
+     *
+     * @param index  the position.
+     * @param c      the elements.
+     *
+     * @return true if the Vector changed.
+     */
+    public synchronized boolean addAll( int index, Collection<? extends E> c ){
+        if( index < 0 || index > size() ){
+            throw new ArrayIndexOutOfBoundsException( index );
+        }
+        Object[] elements = c.toArray();
+        for( Object o : elements ){
+            insertElementAt( cast( o ), index++ );
+        }
+        return elements.length > 0;
+    }
+
+    /**
+     * Replaces the element at a position.
+     *
+     * @param index    the position.
+     * @param element  the new element.
+     *
+     * @return the element replaced
+     */
+    public synchronized E set( int index, E element ){
+        E old = super.set( index, element );
+        if( !isSynced() ){
+            mIndexedSize = -1;
+        }
+        else if( index < mIndexedSize ){
+            mTracker.unindexed( old );
+            mTracker.indexed( element, false );
+        }
+        return old;
+    }
+
+    /**
+     * Replaces the element at a position.
+     *
+     * @param obj    the new element.
+     * @param index  the position.
+     */
+    public void setElementAt( E obj, int index ){
+        set( index, obj );
+    }
+
+    /**
+     * Removes the element at a position.
+     *
+     * @param index  the position.
+     *
+     * @return the element removed
+     */
+    public synchronized E remove( int index ){
+        E element = get( index );
+        removeElementAt( index );
+        return element;
+    }
+
+    /**
+     * Removes the element at a position.
+     *
+     * @param index  the position.
+     */
+    public synchronized void removeElementAt( int index ){
+        boolean synced = isSynced();
+        E element = elementAt( index );
+        super.removeElementAt( index );
+        if( !synced ){
+            mIndexedSize = -1;
+        }
+        else{
+            if( index < mIndexedSize ){
+                mTracker.unindexed( element );
+                mIndexedSize--;
+            }
+            mIndexedModCount = modCount - ( size() - mIndexedSize );
+        }
+    }
+
+    /**
+     * Removes the first occurrence of an element.
+     *
+     * @param o  the element.
+     *
+     * @return true if the element was in the Vector.
+     */
+    public boolean remove( Object o ){
+        return removeElement( o );
+    }
+
+    /**
+     * Removes the first occurrence of an element.
+     *
+     * @param obj  the element.
+     *
+     * @return true if the element was in the Vector.
+     */
+    public synchronized boolean removeElement( Object obj ){
+        int index = indexOf( obj );
+        if( index < 0 ){
+            return false;
+        }
+        removeElementAt( index );
+        return true;
+    }
+
+    /**
+     * Sets the size of the Vector, padding it with nulls.
+     *
+     * @param newSize  the new size.
+     */
+    public synchronized void setSize( int newSize ){
+        super.setSize( newSize );
+        mIndexedSize = -1;
+    }
+
+    /**
+     * Returns a copy of the Vector, that is not indexed.
+     *
+     * @return the copy
+     */
+    public synchronized Object clone(){
+        TrackedVector<?> copy = (TrackedVector<?>)super.clone();
+        copy.mTracker     = null;
+        copy.mIndexedSize = -1;
+        return copy;
+    }
+
+    /**
+     * Returns whether the index covers the elements up to mIndexedSize, and
+     * only elements were appended since.
+     *
+     * @return boolean
+     */
+    private boolean isSynced(){
+        return mTracker != null && mIndexedSize >= 0 && mIndexedSize <= size() &&
+               modCount - mIndexedModCount == size() - mIndexedSize && mTracker.isCurrent();
+    }
+
+    /**
+     * Casts an element of a collection passed to the Vector.
+     *
+     * @param o  the element.
+     *
+     * @return the element
+     */
+    @SuppressWarnings( "unchecked" )
+    private E cast( Object o ){
+        return (E)o;
+    }
+
+    /**
+     * Keeps an index over the elements of the Vector.
+     */
+    interface Tracker {
+
+        /**
+         * Adds an element to the index.
+         *
+         * @param element   the element, that may be null.
+         * @param appended  whether the element comes after all the indexed
+         *                  elements, rather than being inserted among them.
+         */
+        void indexed( Object element, boolean appended );
+
+        /**
+         * Removes an element from the index.
+         *
+         * @param element  the element, that may be null.
+         */
+        void unindexed( Object element );
+
+        /**
+         * Empties the index.
+         */
+        void cleared();
+
+        /**
+         * Returns whether the index still matches the elements it holds. An
+         * index that does not is rebuilt.
+         *
+         * @return boolean
+         */
+        boolean isCurrent();
+    }
+}
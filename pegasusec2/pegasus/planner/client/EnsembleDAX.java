@@ -0,0 +1,470 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.client;
+
+import edu.isi.pegasus.planner.catalog.site.SiteFactory;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+
+import edu.isi.pegasus.planner.catalog.TransformationCatalog;
+import edu.isi.pegasus.planner.catalog.transformation.Mapper;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationFactory;
+
+import edu.isi.pegasus.planner.classes.ADag;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+import edu.isi.pegasus.planner.classes.PlannerOptions;
+
+import edu.isi.pegasus.common.logging.LogManager;
+
+import edu.isi.pegasus.common.util.FactoryException;
+
+import edu.isi.pegasus.planner.parser.DAXParserFactory;
+import edu.isi.pegasus.planner.parser.Parser;
+import edu.isi.pegasus.planner.parser.dax.Callback;
+
+import edu.isi.pegasus.planner.partitioner.graph.Adapter;
+
+import edu.isi.pegasus.planner.selector.site.deco.Algorithm;
+import edu.isi.pegasus.planner.selector.site.deco.EnsembleMember;
+import edu.isi.pegasus.planner.selector.site.deco.EnsemblePlanner;
+
+import gnu.getopt.LongOpt;
+import gnu.getopt.Getopt;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.StringTokenizer;
+
+/**
+ * A client that plans an ensemble of prioritized DAX'es under a budget with
+ * the Deco planner. The workflows that are admitted are written out to a
+ * file in the same format as the rankings file of rank-dax, so that they
+ * can be submitted with pegasus-plan.
+ *
+ * The ensemble file lists one DAX per line, optionally followed by its
+ * priority. The default priority is 1. Lines starting with # are ignored.
+ * <pre>
+ *   montage-1.dax 10
+ *   montage-2.dax 5
+ * </pre>
+ * The deadline and the instance type prices are picked from the Deco
+ * properties. The deadline is required. The DAX'es that are not admitted are
+ * written out as comments, followed by the reason.
+ *
+ * @author agent
+ * @version $Revision$
+ *
+ * @see edu.isi.pegasus.planner.selector.site.deco.Algorithm#DEADLINE_PROPERTY
+ */
+public class EnsembleDAX extends Executable {
+
+    /**
+     * The default priority of a DAX in the ensemble file.
+     */
+    public static final float DEFAULT_PRIORITY = 1;
+
+    /**
+     * The ensemble file.
+     */
+    private String mEnsembleFile;
+
+    /**
+     * The budget in dollars.
+     */
+    private float mBudget;
+
+    /**
+     * The list of grid sites where the daxes can run.
+     */
+    private List mSites;
+
+    /**
+     * The output file that lists the admitted daxes.
+     */
+    private String mOutputFile;
+
+    /**
+     * The bag of objects that Pegasus requires.
+     */
+    private PegasusBag mBag;
+
+    /**
+     * The options to be passed ahead to pegasus plan.
+     */
+    private PlannerOptions mPlannerOptions;
+
+    /**
+     * The default constructor.
+     */
+    public EnsembleDAX() {
+        super();
+    }
+
+    /**
+     * Initializes the client.
+     *
+     * @param opts  the command line options.
+     */
+    public void initialize( String[] opts ){
+        super.initialize( opts );
+        mBag = new PegasusBag();
+        mBag.add( PegasusBag.PEGASUS_LOGMANAGER, mLogger );
+        mBag.add( PegasusBag.PEGASUS_PROPERTIES, mProps );
+        mBudget = -1;
+    }
+
+    /**
+     * The main program for the ensemble planner.
+     *
+     * @param args the main arguments passed to the planner.
+     */
+    public static void main( String[] args ) {
+
+        EnsembleDAX me = new EnsembleDAX();
+        int result = 0;
+        double starttime = new Date().getTime();
+        double execTime  = -1;
+
+        try{
+            me.initialize( args );
+            me.executeCommand();
+        }
+        catch ( FactoryException fe){
+            me.log( fe.convertException() , LogManager.FATAL_MESSAGE_LEVEL);
+            result = 2;
+        }
+        catch ( RuntimeException rte ) {
+            //catch all runtime exceptions including our own that
+            //are thrown that may have chained causes
+            me.log( convertException(rte, me.mLogger.getLevel()),
+                         LogManager.FATAL_MESSAGE_LEVEL );
+            rte.printStackTrace();
+            result = 1;
+        }
+        catch ( Exception e ) {
+            //unaccounted for exceptions
+            me.log(e.getMessage(),
+                         LogManager.FATAL_MESSAGE_LEVEL );
+            result = 3;
+        } finally {
+            double endtime = new Date().getTime();
+            execTime = (endtime - starttime)/1000;
+        }
+
+        // warn about non zero exit code
+        if ( result != 0 ) {
+            me.log("Non-zero exit-code " + result,
+                         LogManager.WARNING_MESSAGE_LEVEL );
+        }
+        else{
+            //log the time taken to execute
+            me.log("Time taken to execute is " + execTime + " seconds",
+                         LogManager.INFO_MESSAGE_LEVEL);
+        }
+
+        System.exit( result );
+    }
+
+    /**
+     * Parses the command line arguments using GetOpt and sets the class
+     * member variables.
+     *
+     * @param args  the arguments passed by the user at command line.
+     */
+    public void parseCommandLineArguments( String[] args ){
+        LongOpt[] longOptions = generateValidOptions();
+
+        Getopt g = new Getopt( "ensemble-dax", args, "vhe:b:s:o:f:c:", longOptions, false );
+        g.setOpterr( false );
+
+        int option = 0;
+        int level = 0;
+        while ( (option = g.getopt()) != -1) {
+            switch (option) {
+
+                case 'e': //the ensemble file
+                    mEnsembleFile = g.getOptarg();
+                    break;
+
+                case 'b': //the budget
+                    mBudget = Float.parseFloat( g.getOptarg() );
+                    break;
+
+                case 's': //comma separated list of sites
+                    mSites = this.generateList( g.getOptarg() );
+                    break;
+
+                case 'o': //the output file where the admitted daxes are listed
+                    mOutputFile = g.getOptarg();
+                    break;
+
+                case 'v': //sets the verbosity level
+                    level++;
+                    break;
+
+                case 'f'://the options to be passed to pegasus-plan
+                    mPlannerOptions = new CPlanner().parseCommandLineArguments( g.getOptarg().split( "\\s" ) );
+                    mBag.add( PegasusBag.PLANNER_OPTIONS , mPlannerOptions );
+                    break;
+
+                case 'c': // conf
+                    //do nothing
+                    break;
+
+                case 'h':
+                    printShortHelp();
+                    System.exit( 0 );
+                    break;
+
+                default: //same as help
+                    printShortHelp();
+                    throw new RuntimeException( "Incorrect option or option usage " +
+                                                (char)g.getOptopt() );
+            }
+        }
+        if( level > 0 ){
+            mLogger.setLevel( level );
+        }else{
+            mLogger.setLevel( LogManager.WARNING_MESSAGE_LEVEL );
+        }
+    }
+
+    /**
+     * Executes the command on the basis of the options specified.
+     */
+    public void executeCommand() {
+        parseCommandLineArguments( getCommandLineOptions() );
+
+        if( mEnsembleFile == null || mBudget < 0 ){
+            mLogger.log( "\nNeed to specify the ensemble file and the budget.",
+                         LogManager.INFO_MESSAGE_LEVEL );
+            this.printShortVersion();
+            return;
+        }
+        if( mProps.getProperty( Algorithm.DEADLINE_PROPERTY ) == null ){
+            throw new RuntimeException( "Need to specify the deadline of the DAX'es with the property " +
+                                        Algorithm.DEADLINE_PROPERTY );
+        }
+        if( mPlannerOptions == null ){
+            mPlannerOptions = new PlannerOptions();
+        }
+        if( mSites == null ){
+            mSites = new LinkedList();
+        }
+
+        //override the sites if any are set in the forward options
+        mPlannerOptions.setExecutionSites( mSites );
+
+        //load the catalogs as pegasus-plan does
+        SiteStore s = SiteFactory.loadSiteStore( mSites, mBag );
+        mBag.add( PegasusBag.SITE_STORE, s );
+        TransformationCatalog tCatalog = TransformationFactory.loadInstance( mBag );
+        mBag.add( PegasusBag.TRANSFORMATION_CATALOG, tCatalog );
+        mBag.add( PegasusBag.TRANSFORMATION_MAPPER,  Mapper.loadTCMapper( mProps.getTCMapperMode(), mBag ) );
+
+        List<EnsembleMember> members;
+        try{
+            members = parseEnsemble( new File( mEnsembleFile ) );
+        }
+        catch( IOException ioe ){
+            throw new RuntimeException( "Unable to read the ensemble file " + mEnsembleFile, ioe );
+        }
+        mLogger.log( "Number of DAX'es in the ensemble " + members.size(),
+                     LogManager.CONSOLE_MESSAGE_LEVEL );
+
+        String threads = mProps.getProperty( Algorithm.SEARCH_THREADS_PROPERTY );
+        int parallelism = ( threads == null ) ?
+                          Runtime.getRuntime().availableProcessors() :
+                          Integer.parseInt( threads );
+        EnsemblePlanner planner = new EnsemblePlanner( new Algorithm( mBag ), parallelism, mLogger );
+        float priority = planner.plan( members, mSites, mBudget );
+        mLogger.log( "Sum of the priorities of the admitted DAX'es is " + priority,
+                     LogManager.CONSOLE_MESSAGE_LEVEL );
+
+        File f = ( mOutputFile == null ) ?
+                 new File( new File( mEnsembleFile ).getAbsoluteFile().getParentFile(), "admitted_daxes.txt" ) :
+                 new File( mOutputFile );
+        log( "Writing out the admitted daxes to " + f, LogManager.CONSOLE_MESSAGE_LEVEL );
+        try{
+            writeOutAdmitted( f, members );
+        }catch( IOException ioe ){
+            throw new RuntimeException( "Unable to write to file " + f , ioe );
+        }
+    }
+
+    /**
+     * Parses the ensemble file, and the DAX'es listed in it.
+     *
+     * @param file  the ensemble file.
+     *
+     * @return the members of the ensemble in the order of the file.
+     *
+     * @throws IOException in case of error while reading the file.
+     */
+    protected List<EnsembleMember> parseEnsemble( File file ) throws IOException{
+        List<EnsembleMember> result = new ArrayList<EnsembleMember>();
+        BufferedReader reader = new BufferedReader( new FileReader( file ) );
+        try{
+            String line;
+            while( ( line = reader.readLine() ) != null ){
+                line = line.trim();
+                if( line.length() == 0 || line.startsWith( "#" ) ){
+                    continue;
+                }
+                String[] fields = line.split( "\\s+" );
+                float priority = ( fields.length > 1 ) ? Float.parseFloat( fields[ 1 ] ) : DEFAULT_PRIORITY;
+                String dax = fields[ 0 ];
+                result.add( new EnsembleMember( dax, priority, Adapter.convert( parseDAX( dax ) ) ) );
+            }
+        }
+        finally{
+            reader.close();
+        }
+        return result;
+    }
+
+    /**
+     * Parses a DAX into an ADag.
+     *
+     * @param dax  the path to the DAX.
+     *
+     * @return the ADag
+     */
+    protected ADag parseDAX( String dax ){
+        Callback cb = DAXParserFactory.loadDAXParserCallback( mProps, dax, "DAX2CDAG" );
+        mLogger.log( "Parsing dax " + dax, LogManager.DEBUG_MESSAGE_LEVEL );
+        Parser p = (Parser)DAXParserFactory.loadDAXParser( mBag, cb, dax );
+        p.startParser( dax );
+        return (ADag)cb.getConstructedObject();
+    }
+
+    /**
+     * Writes out the members of the ensemble. The admitted members are
+     * listed first, and the others are written out as comments followed by
+     * the reason they are not admitted.
+     *
+     * @param file     the file to write to.
+     * @param members  the planned members of the ensemble.
+     *
+     * @throws IOException in case of error while writing.
+     */
+    protected void writeOutAdmitted( File file, List<EnsembleMember> members ) throws IOException{
+        File dir = file.getAbsoluteFile().getParentFile();
+        RankDAX.sanityCheck( dir );
+
+        PrintWriter pw = new PrintWriter( new FileWriter( file ) );
+        pw.println( "#\t DAX\tPRIORITY\tCOST\tADMITTED " );
+        for( EnsembleMember member : members ){
+            if( member.isAdmitted() ){
+                pw.println( member );
+            }
+        }
+        for( EnsembleMember member : members ){
+            if( !member.isAdmitted() ){
+                pw.println( "#" + member + "\t" + member.getRejection() );
+            }
+        }
+        pw.close();
+    }
+
+    /**
+     * Loads all the properties that would be needed by the Toolkit classes.
+     * Empty implementation.
+     */
+    public void loadProperties(){
+
+    }
+
+    /**
+     * This method is used to print the long version of the command.
+     */
+    public void printLongVersion(){
+        printShortHelp();
+    }
+
+    /**
+     * This is used to print the short version of the command.
+     */
+    public void printShortVersion(){
+        printShortHelp();
+    }
+
+    /**
+     * This is used to print the short help of the command.
+     */
+    public void printShortHelp(){
+        StringBuffer text = new StringBuffer();
+        text.append( "\n" ).append( " $Id$ ").
+             append( "\n" ).append( getGVDSVersion() ).
+             append( "\n" ).append( "Usage : ensemble-dax [-Dprop  [..]]  -e <ensemble file> -b <budget in dollars> " ).
+             append( "\n" ).append( " [-f <options to pegasus-plan>] [-s site[,site[..]]] [-o <output file>] [-c <path to property file>] [-v] [-h]" );
+
+       System.out.println( text.toString() );
+    }
+
+    /**
+     * It generates the LongOpt which contain the valid options that the command
+     * will accept.
+     *
+     * @return array of <code>LongOpt</code> objects , corresponding to the valid
+     * options
+     */
+    public LongOpt[] generateValidOptions(){
+        LongOpt[] longopts = new LongOpt[8];
+
+        longopts[0]   = new LongOpt( "ensemble", LongOpt.REQUIRED_ARGUMENT, null, 'e' );
+        longopts[1]   = new LongOpt( "budget", LongOpt.REQUIRED_ARGUMENT, null, 'b' );
+        longopts[2]   = new LongOpt( "sites", LongOpt.REQUIRED_ARGUMENT, null, 's' );
+        longopts[3]   = new LongOpt( "output", LongOpt.REQUIRED_ARGUMENT, null, 'o' );
+        longopts[4]   = new LongOpt( "verbose", LongOpt.NO_ARGUMENT, null, 'v' );
+        longopts[5]   = new LongOpt( "help", LongOpt.NO_ARGUMENT, null, 'h' );
+        longopts[6]   = new LongOpt( "forward", LongOpt.REQUIRED_ARGUMENT, null, 'f' );
+        longopts[7]   = new LongOpt( "conf", LongOpt.REQUIRED_ARGUMENT, null, 'c' );
+
+        return longopts;
+    }
+
+    /**
+     * Generates a List by parsing a comma separated string.
+     *
+     * @param str   the comma separted String.
+     *
+     * @return List containing the parsed values, in case of a null string
+     *             an empty List is returned.
+     */
+    private List generateList( String str ){
+        List l = new LinkedList();
+
+        //check for null
+        if( str == null ) { return l; }
+
+        for ( StringTokenizer st = new StringTokenizer(str,","); st.hasMoreElements(); ){
+            l.add( st.nextToken().trim() );
+        }
+
+        return l;
+    }
+}
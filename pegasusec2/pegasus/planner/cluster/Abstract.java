@@ -341,8 +341,7 @@ public abstract class Abstract implements Clusterer {
      */
     public ADag getClusteredDAG() throws ClustererException{
         //replace the relations of the original DAG and return
-        mScheduledDAG.dagInfo.relations = null;
-        mScheduledDAG.dagInfo.relations = (Vector)mClusteredRelations;
+        mScheduledDAG.dagInfo.setRelations( mClusteredRelations );
 
         return mScheduledDAG;
     }
@@ -1005,11 +1005,11 @@ public class Horizontal implements Clusterer,
 
             value = (String)mReplacementTable.get(parent);
             if(value != null){
-                rel.parent = value;
+                rel.setParent( value );
             }
             value = (String)mReplacementTable.get(child);
             if(value != null){
-                rel.child = value;
+                rel.setChild( value );
             }
             msg += (" with " + rel);
 
@@ -1025,8 +1025,7 @@ public class Horizontal implements Clusterer,
        }
 
        //the final edges need to be updated
-       mScheduledDAG.dagInfo.relations = null;
-       mScheduledDAG.dagInfo.relations = new java.util.Vector(mergedEdges);
+       mScheduledDAG.dagInfo.setRelations( mergedEdges );
    }
 
    /**
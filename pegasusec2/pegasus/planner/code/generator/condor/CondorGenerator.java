@@ -61,6 +61,7 @@ import edu.isi.pegasus.planner.namespace.ENV;
 
 import edu.isi.pegasus.planner.partitioner.graph.Adapter;
 import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphAnalytics;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
 import org.griphyn.vdl.euryale.VTorInUseException;
 
@@ -387,7 +388,10 @@ public class CondorGenerator extends Abstract {
         //write out any category based dagman knobs to the dagman file
         printDagString( this.getCategoryDAGManKnobs( mProps ) );
 
-                    
+
+        //the levels of the jobs the priorities are derived from
+        GraphAnalytics analytics = GraphAnalytics.getInstance( workflow );
+
         for( Iterator it = workflow.iterator(); it.hasNext(); ){
             GraphNode node = ( GraphNode )it.next();
             Job job = (Job)node.getContent();
@@ -396,7 +400,7 @@ public class CondorGenerator extends Abstract {
             //beforehand and assign priorities by default is true
             if( !job.condorVariables.containsKey( Condor.PRIORITY_KEY ) &&
                  this.mAssignDefaultJobPriorities ){
-                int priority = getJobPriority( job, node.getDepth() );
+                int priority = getJobPriority( job, analytics.getLevel( node ) );
                 
                 //apply a priority to the job overwriting any preexisting priority
                 job.condorVariables.construct( Condor.PRIORITY_KEY,
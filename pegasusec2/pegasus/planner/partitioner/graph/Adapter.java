@@ -45,7 +45,22 @@ public class Adapter {
      * @return  it's representation as a <code>Graph</code> instance.
      */
     public static Graph convert( ADag dag ){
-        Graph graph = new MapGraph();
+        return convert( dag, false );
+    }
+
+    /**
+     * Converts the <code>ADag</code> to <code>Graph</code> instance.
+     *
+     * @param dag      the <code>ADag</code> object.
+     * @param compact  whether to return a <code>CSRGraph</code>, that holds
+     *                 the edges in int arrays, instead of a <code>MapGraph</code>.
+     *
+     * @return  it's representation as a <code>Graph</code> instance.
+     */
+    public static Graph convert( ADag dag, boolean compact ){
+        Graph graph = compact ?
+                      new CSRGraph( dag.vJobSubInfos.size(), dag.dagInfo.relations.size() ) :
+                      new MapGraph();
 
         //iterate through the list of jobs and populate the nodes in the graph
         for( Iterator it = dag.vJobSubInfos.iterator(); it.hasNext(); ){
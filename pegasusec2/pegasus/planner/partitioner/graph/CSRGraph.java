@@ -0,0 +1,1047 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.RandomAccess;
+
+/**
+ * An implementation of the Graph that is backed by compressed sparse row
+ * arrays, instead of a map of nodes with linked lists of parents and children.
+ *
+ * Each node has a dense index, in the order the nodes were added, and the
+ * graph keeps a dictionary from the node IDs to the indices. The children of
+ * the node with index i are the indices in
+ * <pre>
+ *    children[ childOffsets[ i ] ... childOffsets[ i + 1 ] - 1 ]
+ * </pre>
+ * and likewise for the parents. The parents and children of a node are
+ * listed in the order the edges were added, as in <code>MapGraph</code>.
+ *
+ * The lists returned by getParents() and getChildren() of a node in the graph
+ * are views over the arrays. Edges added after the arrays were built are
+ * held in a pending list, and merged into the arrays in a single pass the
+ * next time the structure is read. The arrays are published as one immutable
+ * snapshot, so several threads can traverse the graph at the same time, as
+ * long as none of them changes its structure.
+ *
+ * The graph behaves as a <code>MapGraph</code>, with these differences
+ * <pre>
+ *    - an edge is held once for both its ends, so adding a parent to a node
+ *      also makes the node a child of the parent. Adding an edge that is
+ *      already there through the lists of a node does nothing, so the usual
+ *      pair of calls to addParent() and addChild() adds a single edge, and
+ *      removing it through either list removes it from both.
+ *    - adding a node with the ID of an existing node drops the edges of the
+ *      existing node. The existing node keeps a copy of its parents and
+ *      children, but the other nodes link to the new node, that starts
+ *      without parents or children.
+ *    - a removed node leaves a hole in the indices, and is returned with no
+ *      parents or children.
+ * </pre>
+ * Each change through the lists of a node rebuilds the arrays, so edges are
+ * best added through the graph.
+ *
+ * The arrays can also be read directly by callers that want to traverse the
+ * graph without going through the <code>GraphNode</code> objects.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class CSRGraph implements Graph {
+
+    /**
+     * The initial capacity of the node and edge arrays.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The nodes indexed by their index. null for a removed node.
+     */
+    private GraphNode[] mNodes;
+
+    /**
+     * The number of indices handed out, including the removed nodes.
+     */
+    private int mCapacity;
+
+    /**
+     * The number of nodes in the graph.
+     */
+    private int mSize;
+
+    /**
+     * The index of a node indexed by its ID.
+     */
+    private Map<String,Integer> mIndex;
+
+    /**
+     * The arrays of the merged edges.
+     */
+    private volatile Structure mStructure;
+
+    /**
+     * Whether the structure of the graph was changed since the arrays were
+     * built.
+     */
+    private volatile boolean mStale;
+
+    /**
+     * The parents of the edges not yet merged into the arrays.
+     */
+    private int[] mPendingParents;
+
+    /**
+     * The children of the edges not yet merged into the arrays.
+     */
+    private int[] mPendingChildren;
+
+    /**
+     * The number of edges not yet merged into the arrays.
+     */
+    private int mPending;
+
+    /**
+     * The nodes whose parents have been replaced since the arrays were built.
+     * null if there are none.
+     */
+    private boolean[] mReplaced;
+
+    /**
+     * The nodes whose parents and children have been dropped since the
+     * arrays were built. null if there are none.
+     */
+    private boolean[] mCleared;
+
+    /**
+     * The number of changes made to the structure of the graph.
+     */
+    private int mModifications;
+
+    /**
+     * The analytics of the graph, created when first asked for.
+     */
+    private GraphAnalytics mAnalytics;
+
+    /**
+     * The default constructor.
+     */
+    public CSRGraph(){
+        this( DEFAULT_CAPACITY, DEFAULT_CAPACITY );
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param nodes  the expected number of nodes.
+     * @param edges  the expected number of edges.
+     */
+    public CSRGraph( int nodes, int edges ){
+        nodes = Math.max( nodes, 1 );
+        edges = Math.max( edges, 1 );
+        mNodes    = new GraphNode[ nodes ];
+        mIndex    = new HashMap<String,Integer>( nodes * 4 / 3 + 1 );
+        mStructure = new Structure( new int[ 1 ], new int[ 0 ], new int[ 1 ], new int[ 0 ] );
+        mPendingParents  = new int[ edges ];
+        mPendingChildren = new int[ edges ];
+    }
+
+    /**
+     * Adds a node to the Graph. It overwrites an already existing node with the
+     * same ID, dropping the edges of the existing node.
+     *
+     * @param node  the node to be added to the Graph.
+     */
+    public void addNode( GraphNode node ){
+        Integer existing = mIndex.get( node.getID() );
+        int index;
+        if( existing != null ){
+            index = existing;
+            GraphNode old = mNodes[ index ];
+            if( old == node ){
+                mModifications++;
+                return;
+            }
+            //the existing node keeps a copy of its edges
+            old.setParents( new LinkedList<GraphNode>( old.getParents() ) );
+            old.setChildren( new LinkedList<GraphNode>( old.getChildren() ) );
+            dropPendingEdges( index, true );
+            mCleared = mark( mCleared, index );
+        }
+        else{
+            if( mCapacity == mNodes.length ){
+                mNodes = Arrays.copyOf( mNodes, 2 * mCapacity );
+            }
+            index = mCapacity++;
+            mIndex.put( node.getID(), index );
+            mSize++;
+        }
+        mNodes[ index ] = node;
+        mModifications++;
+        mStale = true;
+        node.setParents( new AdjacencyList( index, true ) );
+        node.setChildren( new AdjacencyList( index, false ) );
+    }
+
+    /**
+     * Adds an edge between two already existing nodes in the graph.
+     *
+     * @param parent   the parent node ID.
+     * @param child    the child node ID.
+     */
+    public void addEdge( String parent, String child ){
+        //sanity check
+        if( parent.equals( child ) ){
+            throw new IllegalArgumentException( "Invalid Edge Specification. An Edge specified from a node to itself  for " + parent );
+        }
+        addEdge( getIndex( parent ), getIndex( child ) );
+    }
+
+    /**
+     * A convenience method that allows for bulk addition of edges between
+     * already existing nodes in the graph. The parents replace any existing
+     * parents of the child.
+     *
+     * @param child   the child node ID
+     * @param parents list of parent identifiers as <code>String</code>.
+     */
+    public void addEdges( String child, List parents ){
+        //sanity check
+        if( parents.contains( child ) ){
+            throw new IllegalArgumentException( "Invalid Edge Specification. Parents " + parents + " include the child " + child );
+        }
+        int c = getIndex( child );
+        int[] indices = new int[ parents.size() ];
+        int k = 0;
+        for( Iterator it = parents.iterator(); it.hasNext(); ){
+            indices[ k++ ] = getIndex( (String)it.next() );
+        }
+
+        //drop the pending edges into the child, and the merged ones
+        //when the arrays are next built
+        dropPendingEdges( c, false );
+        mReplaced = mark( mReplaced, c );
+        mModifications++;
+        mStale = true;
+
+        for( int p : indices ){
+            addEdge( p, c );
+        }
+    }
+
+    /**
+     * Returns the node matching the id passed.
+     *
+     * @param identifier  the id of the node.
+     *
+     * @return the node matching the ID else null.
+     */
+    public GraphNode getNode( String identifier ){
+        Integer index = mIndex.get( identifier );
+        return ( index == null ) ? null : mNodes[ index ];
+    }
+
+    /**
+     * Adds a single root node to the Graph. All the exisitng roots of the
+     * Graph become children of the root.
+     *
+     * @param root  the <code>GraphNode</code> to be added as a root.
+     *
+     * @throws RuntimeException if a node with the same id already exists.
+     */
+    public void addRoot( GraphNode root ){
+        //sanity check
+        if( mIndex.containsKey( root.getID() ) ){
+            throw new RuntimeException( "Node with ID already exists:"  + root.getID() );
+        }
+
+        List<GraphNode> existingRoots = getRoots();
+        addNode( root );
+        int r = mIndex.get( root.getID() );
+        for( GraphNode existing : existingRoots ){
+            addEdge( r, mIndex.get( existing.getID() ) );
+        }
+    }
+
+    /**
+     * Removes a node from the Graph. The parents of the node become the
+     * parents of its children.
+     *
+     * @param identifier   the id of the node to be removed.
+     *
+     * @return boolean indicating whether the node was removed or not.
+     */
+    public boolean remove( String identifier ){
+        Integer index = mIndex.get( identifier );
+        if( index == null ){
+            //node does not exist only.
+            return false;
+        }
+        Structure s = getStructure();
+        int i = index;
+        for( int p = s.mParentOffsets[ i ]; p < s.mParentOffsets[ i + 1 ]; p++ ){
+            for( int c = s.mChildOffsets[ i ]; c < s.mChildOffsets[ i + 1 ]; c++ ){
+                addEdge( s.mParents[ p ], s.mChildren[ c ] );
+            }
+        }
+        mIndex.remove( identifier );
+        mNodes[ i ] = null;
+        mSize--;
+        mModifications++;
+        mStale = true;
+        return true;
+    }
+
+    /**
+     * Returns an iterator for the nodes in the Graph, in the order they were
+     * added.
+     *
+     * @return Iterator
+     */
+    public Iterator<GraphNode> nodeIterator(){
+        return new NodeIterator();
+    }
+
+    /**
+     * Returns an iterator that traverses through the graph in breadth first
+     * order. A node is returned only after all its parents have been
+     * returned, and its depth is set to its level in the traversal.
+     *
+     * @return Iterator through the nodes of the graph.
+     */
+    public Iterator<GraphNode> iterator(){
+        return new LevelOrderIterator( this, true );
+    }
+
+    /**
+     * Returns an iterator for the graph that traverses in topological sort
+     * order.
+     *
+     * @return Iterator through the nodes of the graph.
+     */
+    public Iterator<GraphNode> topologicalSortIterator(){
+        return new TopologicalSortIterator( this );
+    }
+
+    /**
+     * Returns the number of nodes in the graph.
+     *
+     * @return the number of nodes
+     */
+    public int size(){
+        return mSize;
+    }
+
+    /**
+     * Returns the root nodes of the Graph.
+     *
+     * @return  a list containing <code>GraphNode</code> corressponding to the
+     *          root nodes.
+     */
+    public List<GraphNode> getRoots(){
+        int[] offsets = getStructure().mParentOffsets;
+        List<GraphNode> roots = new LinkedList<GraphNode>();
+        for( int i = 0; i < offsets.length - 1; i++ ){
+            if( mNodes[ i ] != null && offsets[ i + 1 ] == offsets[ i ] ){
+                roots.add( mNodes[ i ] );
+            }
+        }
+        return roots;
+    }
+
+    /**
+     * Returns the leaf nodes of the Graph.
+     *
+     * @return  a list containing <code>GraphNode</code> corressponding to the
+     *          leaf nodes.
+     */
+    public List<GraphNode> getLeaves(){
+        int[] offsets = getStructure().mChildOffsets;
+        List<GraphNode> leaves = new LinkedList<GraphNode>();
+        for( int i = 0; i < offsets.length - 1; i++ ){
+            if( mNodes[ i ] != null && offsets[ i + 1 ] == offsets[ i ] ){
+                leaves.add( mNodes[ i ] );
+            }
+        }
+        return leaves;
+    }
+
+    /**
+     * Returns a boolean if there are no nodes in the graph.
+     *
+     * @return boolean
+     */
+    public boolean isEmpty(){
+        return mSize == 0;
+    }
+
+    /**
+     * Returns the number of changes made to the structure of the graph
+     * through its methods. It is used to tell whether analytics computed
+     * over the graph are still valid.
+     *
+     * @return the modification count
+     */
+    public int getModificationCount(){
+        return mModifications;
+    }
+
+    /**
+     * Returns the analytics of the graph, that are shared by everyone
+     * traversing it.
+     *
+     * @return the analytics
+     */
+    public synchronized GraphAnalytics getAnalytics(){
+        if( mAnalytics == null ){
+            mAnalytics = new GraphAnalytics( this );
+        }
+        return mAnalytics;
+    }
+
+    /**
+     * Returns the number of indices handed out to nodes, including the
+     * removed nodes. The indices of the nodes are less than this.
+     *
+     * @return the number of indices
+     */
+    public int getCapacity(){
+        return mCapacity;
+    }
+
+    /**
+     * Returns the index of a node.
+     *
+     * @param identifier  the id of the node.
+     *
+     * @return the index, or -1 if the node is not in the graph.
+     */
+    public int indexOf( String identifier ){
+        Integer index = mIndex.get( identifier );
+        return ( index == null ) ? -1 : index;
+    }
+
+    /**
+     * Returns the node with an index.
+     *
+     * @param index  the index of the node.
+     *
+     * @return the node, or null if the node was removed.
+     */
+    public GraphNode getNode( int index ){
+        return mNodes[ index ];
+    }
+
+    /**
+     * Returns the offsets of the children of the nodes, with the number of
+     * edges as the element at getCapacity(). The array should not be modified.
+     *
+     * @return the offsets
+     */
+    public int[] getChildOffsets(){
+        return getStructure().mChildOffsets;
+    }
+
+    /**
+     * Returns the children of the nodes, indexed by the child offsets. The
+     * array should not be modified.
+     *
+     * @return the indices of the children
+     */
+    public int[] getChildIndices(){
+        return getStructure().mChildren;
+    }
+
+    /**
+     * Returns the offsets of the parents of the nodes, with the number of
+     * edges as the element at getCapacity(). The array should not be modified.
+     *
+     * @return the offsets
+     */
+    public int[] getParentOffsets(){
+        return getStructure().mParentOffsets;
+    }
+
+    /**
+     * Returns the parents of the nodes, indexed by the parent offsets. The
+     * array should not be modified.
+     *
+     * @return the indices of the parents
+     */
+    public int[] getParentIndices(){
+        return getStructure().mParents;
+    }
+
+    /**
+     * Removes a set of edges from the graph in a single pass. An edge that
+     * appears more than once is kept once, unless it is removed.
+     *
+     * @param remove  whether each edge is removed, indexed by the position of
+     *                the edge in the array returned by getChildIndices().
+     *
+     * @return the number of edges removed.
+     */
+    public synchronized int removeEdges( boolean[] remove ){
+        Structure s = getStructure();
+        if( remove.length != s.mChildren.length ){
+            throw new IllegalArgumentException( "Expected " + s.mChildren.length + " edges, got " + remove.length );
+        }
+        int[][] parents = new GraphIndex( this ).getRetainedParents( remove );
+
+        int n = s.mChildOffsets.length - 1;
+        int[] childOffsets = new int[ n + 1 ];
+        int[] children = new int[ parents[ 1 ].length ];
+        int[] mark = new int[ n ];
+        int k = 0;
+        for( int p = 0; p < n; p++ ){
+            for( int e = s.mChildOffsets[ p ]; e < s.mChildOffsets[ p + 1 ]; e++ ){
+                int c = s.mChildren[ e ];
+                if( !remove[ e ] && mark[ c ] != p + 1 ){
+                    children[ k++ ] = c;
+                    mark[ c ] = p + 1;
+                }
+            }
+            childOffsets[ p + 1 ] = k;
+        }
+
+        int removed = s.mChildren.length - k;
+        mModifications++;
+        mStructure = new Structure( childOffsets, children, parents[ 0 ], parents[ 1 ] );
+        return removed;
+    }
+
+    /**
+     * The textual representation of the graph.
+     *
+     * @return textual description.
+     */
+    public String toString() {
+        String newLine = System.getProperty( "line.separator", "\r\n" );
+        String indent = "\t";
+        StringBuffer sb = new StringBuffer( 32 );
+
+        for( Iterator<GraphNode> it = nodeIterator(); it.hasNext(); ){
+            GraphNode node = it.next();
+            sb.append( newLine ).append( indent ).append( "Job ->" ).append( node.getID() );
+
+            //write out the node children
+            sb.append(" Children's {");
+            for( GraphNode child : node.getChildren() ){
+                sb.append( child.getID() ).append(',');
+            }
+            sb.append("}");
+
+            //write out the node's parents
+            sb.append(" Parents {");
+            for( GraphNode parent : node.getParents() ){
+                sb.append( parent.getID() ).append(',');
+            }
+            sb.append("}");
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns a copy of the object.
+     *
+     * @return clone of the object.
+     */
+    public Object clone(){
+        return new java.lang.CloneNotSupportedException(
+            "Clone() not implemented in CSRGraph");
+    }
+
+    /**
+     * Returns the index of a node that has to exist.
+     *
+     * @param identifier  the id of the node.
+     *
+     * @return the index
+     *
+     * @throws RuntimeException if the node does not exist.
+     */
+    private int getIndex( String identifier ){
+        Integer index = mIndex.get( identifier );
+        if( index == null ){
+            /* should be replaced by Graph Exception */
+            throw new RuntimeException( "The node with identifier doesnt exist " + identifier );
+        }
+        return index;
+    }
+
+    /**
+     * Adds an edge to the pending edges.
+     *
+     * @param parent  the index of the parent.
+     * @param child   the index of the child.
+     */
+    private void addEdge( int parent, int child ){
+        if( mPending == mPendingParents.length ){
+            int capacity = Math.max( 2 * mPending, DEFAULT_CAPACITY );
+            mPendingParents  = Arrays.copyOf( mPendingParents, capacity );
+            mPendingChildren = Arrays.copyOf( mPendingChildren, capacity );
+        }
+        mPendingParents[ mPending ]  = parent;
+        mPendingChildren[ mPending ] = child;
+        mPending++;
+        mModifications++;
+        mStale = true;
+    }
+
+    /**
+     * Removes the first of the edges between two nodes.
+     *
+     * @param parent  the index of the parent.
+     * @param child   the index of the child.
+     *
+     * @return boolean indicating whether the edge was removed or not.
+     */
+    private synchronized boolean removeEdge( int parent, int child ){
+        Structure s = getStructure();
+        int c = find( s.mChildOffsets, s.mChildren, parent, child );
+        if( c == -1 ){
+            return false;
+        }
+        int p = find( s.mParentOffsets, s.mParents, child, parent );
+        mModifications++;
+        mStructure = new Structure( shrink( s.mChildOffsets, parent ), removeAt( s.mChildren, c ),
+                                    shrink( s.mParentOffsets, child ), removeAt( s.mParents, p ) );
+        return true;
+    }
+
+    /**
+     * Returns the position of the first occurrence of a node in the parents or
+     * children of another.
+     *
+     * @param offsets  the offsets of the parents or children.
+     * @param targets  the parents or children.
+     * @param node     the index of the node whose list is searched.
+     * @param target   the index of the node searched for.
+     *
+     * @return the position, or -1 if it is not in the list.
+     */
+    private static int find( int[] offsets, int[] targets, int node, int target ){
+        for( int e = offsets[ node ]; e < offsets[ node + 1 ]; e++ ){
+            if( targets[ e ] == target ){
+                return e;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a copy of an array without an element.
+     *
+     * @param array     the array.
+     * @param position  the position of the element.
+     *
+     * @return the copy
+     */
+    private static int[] removeAt( int[] array, int position ){
+        int[] result = Arrays.copyOf( array, array.length - 1 );
+        System.arraycopy( array, position + 1, result, position, array.length - position - 1 );
+        return result;
+    }
+
+    /**
+     * Returns a copy of offsets with an edge of a node dropped.
+     *
+     * @param offsets  the offsets.
+     * @param node     the index of the node.
+     *
+     * @return the copy
+     */
+    private static int[] shrink( int[] offsets, int node ){
+        int[] result = offsets.clone();
+        for( int i = node + 1; i < result.length; i++ ){
+            result[ i ]--;
+        }
+        return result;
+    }
+
+    /**
+     * Drops the pending edges into a node, or into and out of it.
+     *
+     * @param node  the index of the node.
+     * @param both  whether the edges out of the node are dropped too.
+     */
+    private void dropPendingEdges( int node, boolean both ){
+        int j = 0;
+        for( int e = 0; e < mPending; e++ ){
+            if( mPendingChildren[ e ] != node && !( both && mPendingParents[ e ] == node ) ){
+                mPendingParents[ j ]  = mPendingParents[ e ];
+                mPendingChildren[ j ] = mPendingChildren[ e ];
+                j++;
+            }
+        }
+        mPending = j;
+    }
+
+    /**
+     * Sets the flag of a node, growing the flags to the capacity of the node
+     * array if needed.
+     *
+     * @param flags  the flags, or null.
+     * @param index  the index of the node.
+     *
+     * @return the flags
+     */
+    private boolean[] mark( boolean[] flags, int index ){
+        if( flags == null ){
+            flags = new boolean[ mNodes.length ];
+        }
+        else if( flags.length <= index ){
+            flags = Arrays.copyOf( flags, mNodes.length );
+        }
+        flags[ index ] = true;
+        return flags;
+    }
+
+    /**
+     * Returns the arrays of the edges, merging the pending edges into them
+     * first if the structure of the graph was changed.
+     *
+     * @return the arrays
+     */
+    private Structure getStructure(){
+        return mStale ? compact() : mStructure;
+    }
+
+    /**
+     * Merges the pending edges into the arrays, and drops the edges of the
+     * removed nodes, the replaced parents and the dropped nodes. The merged
+     * edges of a node come before its pending edges, so the edges stay in the
+     * order they were added. The new arrays are published in one step, so
+     * traversals running at the same time never see a mix of old and new
+     * arrays.
+     *
+     * @return the arrays
+     */
+    private synchronized Structure compact(){
+        Structure old = mStructure;
+        if( !mStale ){
+            return old;
+        }
+        int n = mCapacity;
+        int oldNodes = old.mChildOffsets.length - 1;
+
+        //count the surviving edges of each node
+        int[] childOffsets  = new int[ n + 1 ];
+        int[] parentOffsets = new int[ n + 1 ];
+        for( int p = 0; p < oldNodes; p++ ){
+            for( int e = old.mChildOffsets[ p ]; e < old.mChildOffsets[ p + 1 ]; e++ ){
+                int c = old.mChildren[ e ];
+                if( keep( p, c ) ){
+                    childOffsets[ p + 1 ]++;
+                    parentOffsets[ c + 1 ]++;
+                }
+            }
+        }
+        for( int e = 0; e < mPending; e++ ){
+            int p = mPendingParents[ e ], c = mPendingChildren[ e ];
+            if( mNodes[ p ] != null && mNodes[ c ] != null ){
+                childOffsets[ p + 1 ]++;
+                parentOffsets[ c + 1 ]++;
+            }
+        }
+        for( int i = 0; i < n; i++ ){
+            childOffsets[ i + 1 ]  += childOffsets[ i ];
+            parentOffsets[ i + 1 ] += parentOffsets[ i ];
+        }
+
+        //fill in the merged edges first, then the pending ones
+        int edges = childOffsets[ n ];
+        int[] children = new int[ edges ];
+        int[] parents  = new int[ edges ];
+        int[] nextChild  = Arrays.copyOf( childOffsets, n );
+        int[] nextParent = Arrays.copyOf( parentOffsets, n );
+        for( int p = 0; p < oldNodes; p++ ){
+            for( int e = old.mChildOffsets[ p ]; e < old.mChildOffsets[ p + 1 ]; e++ ){
+                int c = old.mChildren[ e ];
+                if( keep( p, c ) ){
+                    children[ nextChild[ p ]++ ] = c;
+                }
+            }
+        }
+        for( int c = 0; c < oldNodes; c++ ){
+            for( int e = old.mParentOffsets[ c ]; e < old.mParentOffsets[ c + 1 ]; e++ ){
+                int p = old.mParents[ e ];
+                if( keep( p, c ) ){
+                    parents[ nextParent[ c ]++ ] = p;
+                }
+            }
+        }
+        for( int e = 0; e < mPending; e++ ){
+            int p = mPendingParents[ e ], c = mPendingChildren[ e ];
+            if( mNodes[ p ] != null && mNodes[ c ] != null ){
+                children[ nextChild[ p ]++ ] = c;
+                parents[ nextParent[ c ]++ ]  = p;
+            }
+        }
+
+        Structure structure = new Structure( childOffsets, children, parentOffsets, parents );
+        mPending  = 0;
+        mReplaced = null;
+        mCleared  = null;
+        mStructure = structure;
+        mStale = false;
+        return structure;
+    }
+
+    /**
+     * Returns whether a merged edge survives the next build of the arrays.
+     *
+     * @param parent    the index of the parent.
+     * @param child     the index of the child.
+     *
+     * @return boolean
+     */
+    private boolean keep( int parent, int child ){
+        return mNodes[ parent ] != null && mNodes[ child ] != null &&
+               !isMarked( mReplaced, child ) && !isMarked( mCleared, parent ) && !isMarked( mCleared, child );
+    }
+
+    /**
+     * Returns whether the flag of a node is set.
+     *
+     * @param flags  the flags, or null.
+     * @param index  the index of the node.
+     *
+     * @return boolean
+     */
+    private static boolean isMarked( boolean[] flags, int index ){
+        return flags != null && index < flags.length && flags[ index ];
+    }
+
+    /**
+     * The arrays of the edges. They are never modified once built, and are
+     * replaced as a whole when the structure of the graph changes.
+     */
+    private static final class Structure {
+
+        /**
+         * The offsets of the children of each node, with the number of edges
+         * as the last element.
+         */
+        private final int[] mChildOffsets;
+
+        /**
+         * The children of the nodes.
+         */
+        private final int[] mChildren;
+
+        /**
+         * The offsets of the parents of each node, with the number of edges
+         * as the last element.
+         */
+        private final int[] mParentOffsets;
+
+        /**
+         * The parents of the nodes.
+         */
+        private final int[] mParents;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param childOffsets   the offsets of the children.
+         * @param children       the children.
+         * @param parentOffsets  the offsets of the parents.
+         * @param parents        the parents.
+         */
+        public Structure( int[] childOffsets, int[] children, int[] parentOffsets, int[] parents ){
+            mChildOffsets  = childOffsets;
+            mChildren      = children;
+            mParentOffsets = parentOffsets;
+            mParents       = parents;
+        }
+    }
+
+    /**
+     * A view of the parents or children of a node. Adding or removing a node
+     * adds or removes the edge between the two nodes in the graph.
+     */
+    private class AdjacencyList extends AbstractList<GraphNode> implements RandomAccess {
+
+        /**
+         * The index of the node.
+         */
+        private final int mNode;
+
+        /**
+         * Whether the view is of the parents or the children.
+         */
+        private final boolean mOfParents;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param node       the index of the node.
+         * @param ofParents  whether the view is of the parents.
+         */
+        public AdjacencyList( int node, boolean ofParents ){
+            mNode      = node;
+            mOfParents = ofParents;
+        }
+
+        /**
+         * Returns a parent or child of the node.
+         *
+         * @param k  the position in the list.
+         *
+         * @return the node
+         */
+        public GraphNode get( int k ){
+            Structure s = getStructure();
+            int[] offsets = mOfParents ? s.mParentOffsets : s.mChildOffsets;
+            int[] targets = mOfParents ? s.mParents : s.mChildren;
+            int start = offsets[ mNode ];
+            int size  = offsets[ mNode + 1 ] - start;
+            if( k < 0 || k >= size ){
+                throw new IndexOutOfBoundsException( "Index " + k + " size " + size );
+            }
+            return mNodes[ targets[ start + k ] ];
+        }
+
+        /**
+         * Returns the number of parents or children of the node.
+         *
+         * @return the size
+         */
+        public int size(){
+            Structure s = getStructure();
+            int[] offsets = mOfParents ? s.mParentOffsets : s.mChildOffsets;
+            return offsets[ mNode + 1 ] - offsets[ mNode ];
+        }
+
+        /**
+         * Adds an edge between the node and the node of the graph with the ID
+         * of a node, unless there already is one.
+         *
+         * @param node  the parent or child to be added.
+         *
+         * @return boolean indicating whether the edge was added or not.
+         */
+        public boolean add( GraphNode node ){
+            int other = getIndex( node.getID() );
+            if( other == mNode ){
+                throw new IllegalArgumentException( "Invalid Edge Specification. An Edge specified from a node to itself  for " + node.getID() );
+            }
+            Structure s = getStructure();
+            if( mOfParents ? find( s.mParentOffsets, s.mParents, mNode, other ) != -1 :
+                             find( s.mChildOffsets, s.mChildren, mNode, other ) != -1 ){
+                return false;
+            }
+            if( mOfParents ){
+                addEdge( other, mNode );
+            }
+            else{
+                addEdge( mNode, other );
+            }
+            return true;
+        }
+
+        /**
+         * Removes the edge between the node and the node of the graph with the
+         * ID of a node.
+         *
+         * @param o  the parent or child to be removed.
+         *
+         * @return boolean indicating whether the edge was removed or not.
+         */
+        public boolean remove( Object o ){
+            if( !( o instanceof GraphNode ) ){
+                return false;
+            }
+            Integer other = mIndex.get( ( (GraphNode)o ).getID() );
+            if( other == null || mNodes[ mNode ] == null ){
+                return false;
+            }
+            return mOfParents ? removeEdge( other, mNode ) : removeEdge( mNode, other );
+        }
+    }
+
+    /**
+     * Iterates over the nodes in the order of their indices.
+     */
+    private class NodeIterator implements Iterator<GraphNode> {
+
+        /**
+         * The index of the next node.
+         */
+        private int mNext;
+
+        /**
+         * The default constructor.
+         */
+        public NodeIterator(){
+            mNext = advance( 0 );
+        }
+
+        /**
+         * Returns the first index from a position that holds a node.
+         *
+         * @param from  the position.
+         *
+         * @return the index
+         */
+        private int advance( int from ){
+            while( from < mCapacity && mNodes[ from ] == null ){
+                from++;
+            }
+            return from;
+        }
+
+        /**
+         * Returns whether there are more nodes.
+         *
+         * @return boolean
+         */
+        public boolean hasNext(){
+            return mNext < mCapacity;
+        }
+
+        /**
+         * Returns the next node.
+         *
+         * @return the node
+         */
+        public GraphNode next(){
+            if( mNext >= mCapacity ){
+                throw new NoSuchElementException();
+            }
+            GraphNode node = mNodes[ mNext ];
+            mNext = advance( mNext + 1 );
+            return node;
+        }
+
+        /**
+         * Method is not supported.
+         */
+        public void remove(){
+            throw new java.lang.UnsupportedOperationException( "Method remove() not supported" );
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Traverses a graph depth first from its roots, returning each node once in
+ * preorder. The children of a node are visited in the order they were added.
+ *
+ * The visited nodes are held in a bitset and the path in an int stack of
+ * node indices and edge positions, both local to the iterator, so the color
+ * of the nodes is not used and several traversals can walk the same graph at
+ * the same time.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class DepthFirstIterator implements Iterator<GraphNode> {
+
+    /**
+     * The index of the graph being traversed.
+     */
+    private final GraphIndex mIndex;
+
+    /**
+     * The nodes that have been visited.
+     */
+    private final BitSet mVisited;
+
+    /**
+     * The nodes on the current path.
+     */
+    private final int[] mStack;
+
+    /**
+     * The position of the next child to be visited for each node on the path.
+     */
+    private final int[] mEdge;
+
+    /**
+     * The number of nodes on the current path.
+     */
+    private int mDepth;
+
+    /**
+     * The next index to be looked at for a root.
+     */
+    private int mNextRoot;
+
+    /**
+     * The index of the next node to be returned, -1 if there are no more.
+     */
+    private int mNext;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param graph  the graph to be traversed.
+     */
+    public DepthFirstIterator( Graph graph ){
+        this( new GraphIndex( graph ) );
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param index  the index of the graph to be traversed.
+     */
+    public DepthFirstIterator( GraphIndex index ){
+        int n = index.getCapacity();
+        mIndex   = index;
+        mVisited = new BitSet( n );
+        mStack   = new int[ n ];
+        mEdge    = new int[ n ];
+        mNext    = advance();
+    }
+
+    /**
+     * Returns whether there are more nodes to be traversed.
+     *
+     * @return boolean
+     */
+    public boolean hasNext(){
+        return mNext >= 0;
+    }
+
+    /**
+     * Returns the next node in the traversal order.
+     *
+     * @return the node
+     */
+    public GraphNode next(){
+        if( mNext < 0 ){
+            throw new NoSuchElementException();
+        }
+        GraphNode node = mIndex.getNode( mNext );
+        mNext = advance();
+        return node;
+    }
+
+    /**
+     * Returns the index of the next node to be returned, in the index of the
+     * graph. It pushes the node on the path and marks it visited.
+     *
+     * @return the index, or -1 if there are no more nodes.
+     */
+    private int advance(){
+        int[] offsets  = mIndex.getChildOffsets();
+        int[] children = mIndex.getChildIndices();
+
+        //go down the first unvisited child on the path
+        while( mDepth > 0 ){
+            int top = mStack[ mDepth - 1 ];
+            if( mEdge[ mDepth - 1 ] < offsets[ top + 1 ] ){
+                int child = children[ mEdge[ mDepth - 1 ]++ ];
+                if( !mVisited.get( child ) ){
+                    return push( child );
+                }
+            }
+            else{
+                mDepth--;
+            }
+        }
+
+        //start from the next root
+        int n = mIndex.getCapacity();
+        while( mNextRoot < n ){
+            int i = mNextRoot++;
+            if( mIndex.isRoot( i ) ){
+                return push( i );
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Pushes a node on the path and marks it visited.
+     *
+     * @param index  the index of the node.
+     *
+     * @return the index
+     */
+    private int push( int index ){
+        mVisited.set( index );
+        mStack[ mDepth ] = index;
+        mEdge[ mDepth ]  = mIndex.getChildOffsets()[ index ];
+        mDepth++;
+        return index;
+    }
+
+    /**
+     * Method is not supported.
+     */
+    public void remove(){
+        throw new java.lang.UnsupportedOperationException( "Method remove() not supported" );
+    }
+}
@@ -0,0 +1,474 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Computes the analytics of a graph that the schedulers, clusterers and code
+ * generators rank and order jobs by. Given the weights of the nodes and the
+ * edges, the downward rank of a node is the length of the longest path from a
+ * root till the node starts
+ * <pre>
+ *    rank ( i ) = max {  rank ( j ) + w  + c   }
+ *        d      j E pred( i )  d      j    ji
+ * </pre>
+ * and the upward rank is the length of the longest path from the node start
+ * till a leaf finishes
+ * <pre>
+ *    rank ( i ) = w  + max {  c   + rank ( j )  }
+ *        u         i  j E succ( i ) ij      u
+ * </pre>
+ * The critical path is the longest path through the graph, and the slack of a
+ * node is by how much the longest path through the node is shorter than the
+ * critical path. The level of a node is the number of edges on the longest
+ * path from a root till the node, that is the depth the level order traversal
+ * assigns to it.
+ *
+ * All of them are computed in a forward and a backward pass over the graph
+ * in topological order, into float and int arrays indexed by a
+ * <code>GraphIndex</code>. The results are memoized, and computed again once
+ * the modification count of the graph changes. Changes made to the parents
+ * and children of the nodes directly, and not through the graph, are not
+ * counted, and have to be followed by a call to invalidate().
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class GraphAnalytics {
+
+    /**
+     * The weights of the nodes and edges of a graph.
+     */
+    public interface Weights {
+
+        /**
+         * Returns the weight of a node.
+         *
+         * @param node  the node.
+         *
+         * @return the weight
+         */
+        public float getNodeWeight( GraphNode node );
+
+        /**
+         * Returns the weight of an edge into a node.
+         *
+         * @param node  the node the edge goes into.
+         * @param k     the position of the parent in the parents of the node.
+         *
+         * @return the weight
+         */
+        public float getEdgeWeight( GraphNode node, int k );
+    }
+
+    /**
+     * The weights that give each node a weight of 1 and each edge a weight of
+     * 0, so that the ranks count the nodes on the paths.
+     */
+    public static final Weights UNIT_WEIGHTS = new Weights(){
+        public float getNodeWeight( GraphNode node ){
+            return 1;
+        }
+
+        public float getEdgeWeight( GraphNode node, int k ){
+            return 0;
+        }
+    };
+
+    /**
+     * The graph being analyzed.
+     */
+    private final Graph mGraph;
+
+    /**
+     * The modification count of the graph when the results were computed.
+     */
+    private int mModificationCount;
+
+    /**
+     * The index of the graph, or null if it has to be built.
+     */
+    private GraphIndex mIndex;
+
+    /**
+     * The level of each node, or null if it has to be computed.
+     */
+    private int[] mLevels;
+
+    /**
+     * The weights the last ranks were computed with.
+     */
+    private Weights mWeights;
+
+    /**
+     * The last ranks computed, or null if they have to be computed.
+     */
+    private Ranks mRanks;
+
+    /**
+     * Returns the shared analytics of a graph. A <code>MapGraph</code> or
+     * <code>CSRGraph</code> holds on to its analytics, while for any other
+     * graph new analytics are returned.
+     *
+     * @param graph  the graph.
+     *
+     * @return the analytics
+     */
+    public static GraphAnalytics getInstance( Graph graph ){
+        if( graph instanceof CSRGraph ){
+            return ( (CSRGraph)graph ).getAnalytics();
+        }
+        if( graph instanceof MapGraph ){
+            return ( (MapGraph)graph ).getAnalytics();
+        }
+        return new GraphAnalytics( graph );
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param graph  the graph to be analyzed.
+     */
+    public GraphAnalytics( Graph graph ){
+        mGraph = graph;
+    }
+
+    /**
+     * Drops the memoized results, so that they are computed again when next
+     * asked for.
+     */
+    public synchronized void invalidate(){
+        mIndex  = null;
+        mLevels = null;
+        mRanks  = null;
+        mWeights = null;
+    }
+
+    /**
+     * Returns the index of the graph the results are indexed by.
+     *
+     * @return the index
+     */
+    public synchronized GraphIndex getIndex(){
+        int count = getModificationCount();
+        if( mIndex == null || count != mModificationCount ){
+            invalidate();
+            mIndex = new GraphIndex( mGraph );
+            mModificationCount = count;
+        }
+        return mIndex;
+    }
+
+    /**
+     * Returns the level of each node, indexed by the index of the graph. The
+     * roots are at level 0. The array should not be modified.
+     *
+     * @return the levels
+     */
+    public synchronized int[] getLevels(){
+        GraphIndex index = getIndex();
+        if( mLevels == null ){
+            int[] offsets  = index.getParentOffsets();
+            int[] parents  = index.getParentIndices();
+            int[] levels = new int[ index.getCapacity() ];
+            for( int i : index.getTopologicalOrder() ){
+                int level = 0;
+                for( int j = offsets[ i ]; j < offsets[ i + 1 ]; j++ ){
+                    level = Math.max( level, levels[ parents[ j ] ] + 1 );
+                }
+                levels[ i ] = level;
+            }
+            mLevels = levels;
+        }
+        return mLevels;
+    }
+
+    /**
+     * Returns the level of a node.
+     *
+     * @param node  the node.
+     *
+     * @return the level, or -1 if the node is not in the graph.
+     */
+    public int getLevel( GraphNode node ){
+        int[] levels = getLevels();
+        int i = getIndex().indexOf( node.getID() );
+        return ( i < 0 ) ? -1 : levels[ i ];
+    }
+
+    /**
+     * Returns the ranks of the nodes for a set of weights. The ranks for the
+     * last weights asked for are memoized, and reused while the graph is
+     * unchanged and the same weights object is passed. A caller should hold
+     * on to its weights, rather than create them on every call, and the
+     * weights should not change while the graph does not.
+     *
+     * @param weights  the weights of the nodes and edges.
+     *
+     * @return the ranks
+     */
+    public synchronized Ranks getRanks( Weights weights ){
+        GraphIndex index = getIndex();
+        if( mRanks == null || mWeights != weights ){
+            mRanks   = new Ranks( index, weights );
+            mWeights = weights;
+        }
+        return mRanks;
+    }
+
+    /**
+     * Returns the modification count of the graph.
+     *
+     * @return the count, or -1 if the graph does not keep one, in which case
+     *         the results are not memoized.
+     */
+    private int getModificationCount(){
+        if( mGraph instanceof CSRGraph ){
+            return ( (CSRGraph)mGraph ).getModificationCount();
+        }
+        if( mGraph instanceof MapGraph ){
+            return ( (MapGraph)mGraph ).getModificationCount();
+        }
+        //force a recomputation every time
+        return mModificationCount - 1;
+    }
+
+    /**
+     * The ranks of the nodes of a graph for a set of weights.
+     */
+    public static class Ranks {
+
+        /**
+         * The index of the graph.
+         */
+        private final GraphIndex mIndex;
+
+        /**
+         * The weight of each node.
+         */
+        private final float[] mNodeWeights;
+
+        /**
+         * The downward rank of each node.
+         */
+        private final float[] mDownward;
+
+        /**
+         * The upward rank of each node.
+         */
+        private final float[] mUpward;
+
+        /**
+         * The child each node continues its longest path through, -1 for the
+         * leaves.
+         */
+        private final int[] mNext;
+
+        /**
+         * The length of the critical path.
+         */
+        private final float mLength;
+
+        /**
+         * The overloaded constructor. It computes the ranks.
+         *
+         * @param index    the index of the graph.
+         * @param weights  the weights of the nodes and edges.
+         */
+        Ranks( GraphIndex index, Weights weights ){
+            int n = index.getCapacity();
+            int[] order   = index.getTopologicalOrder();
+            int[] offsets = index.getParentOffsets();
+            int[] parents = index.getParentIndices();
+
+            mIndex       = index;
+            mNodeWeights = new float[ n ];
+            mDownward    = new float[ n ];
+            mUpward      = new float[ n ];
+            mNext        = new int[ n ];
+
+            //the weights of the edges, by position in the parent arrays
+            float[] edges = new float[ parents.length ];
+            for( int i : order ){
+                GraphNode node = index.getNode( i );
+                mNodeWeights[ i ] = weights.getNodeWeight( node );
+                for( int j = offsets[ i ]; j < offsets[ i + 1 ]; j++ ){
+                    edges[ j ] = weights.getEdgeWeight( node, j - offsets[ i ] );
+                }
+            }
+
+            //forward pass for the downward ranks
+            for( int i : order ){
+                float rank = 0;
+                for( int j = offsets[ i ]; j < offsets[ i + 1 ]; j++ ){
+                    int p = parents[ j ];
+                    float value = mDownward[ p ] + mNodeWeights[ p ] + edges[ j ];
+                    if( value > rank ){
+                        rank = value;
+                    }
+                }
+                mDownward[ i ] = rank;
+            }
+
+            //backward pass for the upward ranks. a node is final once
+            //all its children are, and then updates its parents
+            float[] best = new float[ n ];
+            Arrays.fill( mNext, -1 );
+            float length = 0;
+            for( int k = order.length - 1; k >= 0; k-- ){
+                int i = order[ k ];
+                mUpward[ i ] = mNodeWeights[ i ] + best[ i ];
+                for( int j = offsets[ i ]; j < offsets[ i + 1 ]; j++ ){
+                    int p = parents[ j ];
+                    float value = edges[ j ] + mUpward[ i ];
+                    if( mNext[ p ] == -1 || value > best[ p ] ){
+                        best[ p ]  = value;
+                        mNext[ p ] = i;
+                    }
+                }
+                //the critical path starts at a root
+                if( offsets[ i + 1 ] == offsets[ i ] ){
+                    length = Math.max( length, mUpward[ i ] );
+                }
+            }
+            mLength = length;
+        }
+
+        /**
+         * Returns the index of the graph the ranks are indexed by.
+         *
+         * @return the index
+         */
+        public GraphIndex getIndex(){
+            return mIndex;
+        }
+
+        /**
+         * Returns the downward rank of each node, indexed by the index of the
+         * graph. The array should not be modified.
+         *
+         * @return the downward ranks
+         */
+        public float[] getDownwardRanks(){
+            return mDownward;
+        }
+
+        /**
+         * Returns the upward rank of each node, indexed by the index of the
+         * graph. The array should not be modified.
+         *
+         * @return the upward ranks
+         */
+        public float[] getUpwardRanks(){
+            return mUpward;
+        }
+
+        /**
+         * Returns the downward rank of a node.
+         *
+         * @param node  the node.
+         *
+         * @return the rank
+         */
+        public float getDownwardRank( GraphNode node ){
+            return mDownward[ indexOf( node ) ];
+        }
+
+        /**
+         * Returns the upward rank of a node.
+         *
+         * @param node  the node.
+         *
+         * @return the rank
+         */
+        public float getUpwardRank( GraphNode node ){
+            return mUpward[ indexOf( node ) ];
+        }
+
+        /**
+         * Returns the slack of a node, that is by how much the longest path
+         * through the node is shorter than the critical path.
+         *
+         * @param node  the node.
+         *
+         * @return the slack, 0 for the nodes on the critical path.
+         */
+        public float getSlack( GraphNode node ){
+            return getSlack( indexOf( node ) );
+        }
+
+        /**
+         * Returns the slack of a node.
+         *
+         * @param index  the index of the node.
+         *
+         * @return the slack
+         */
+        public float getSlack( int index ){
+            return Math.max( 0, mLength - mDownward[ index ] - mUpward[ index ] );
+        }
+
+        /**
+         * Returns the length of the critical path.
+         *
+         * @return the length
+         */
+        public float getCriticalPathLength(){
+            return mLength;
+        }
+
+        /**
+         * Returns the nodes on a critical path, from a root to a leaf.
+         *
+         * @return the nodes
+         */
+        public List<GraphNode> getCriticalPath(){
+            List<GraphNode> path = new LinkedList<GraphNode>();
+            int start = -1;
+            for( int i = 0; i < mIndex.getCapacity(); i++ ){
+                if( mIndex.isRoot( i ) && ( start == -1 || mUpward[ i ] > mUpward[ start ] ) ){
+                    start = i;
+                }
+            }
+            for( int i = start; i != -1; i = mNext[ i ] ){
+                path.add( mIndex.getNode( i ) );
+            }
+            return path;
+        }
+
+        /**
+         * Returns the index of a node.
+         *
+         * @param node  the node.
+         *
+         * @return the index
+         *
+         * @throws RuntimeException if the node is not in the graph.
+         */
+        private int indexOf( GraphNode node ){
+            int i = mIndex.indexOf( node.getID() );
+            if( i < 0 ){
+                throw new RuntimeException( "The node with identifier doesnt exist " + node.getID() );
+            }
+            return i;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A dense int index over the nodes of a <code>Graph</code>, with the parents
+ * and children of each node held in compressed sparse row arrays. The
+ * traversals keep their state in arrays indexed by it, instead of setting the
+ * color and depth of the shared <code>GraphNode</code> objects, so several
+ * traversals can walk the same graph at the same time.
+ *
+ * The index is a snapshot of the graph when it was built, and has to be
+ * rebuilt if the structure of the graph changes. For a <code>CSRGraph</code>
+ * the arrays of the graph are used as is, and the indices of the removed
+ * nodes are holes that getNode( int ) returns null for.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class GraphIndex {
+
+    /**
+     * The nodes indexed by their index. null for a hole.
+     */
+    private final GraphNode[] mNodes;
+
+    /**
+     * The number of nodes in the index.
+     */
+    private final int mSize;
+
+    /**
+     * The index of a node indexed by its ID. null if the index is over a
+     * <code>CSRGraph</code>.
+     */
+    private final Map<String,Integer> mIndex;
+
+    /**
+     * The graph if it is a <code>CSRGraph</code>, else null.
+     */
+    private final CSRGraph mCSRGraph;
+
+    /**
+     * The offsets of the children of each node, with the number of edges as
+     * the last element.
+     */
+    private final int[] mChildOffsets;
+
+    /**
+     * The children of the nodes.
+     */
+    private final int[] mChildren;
+
+    /**
+     * The offsets of the parents of each node, with the number of edges as
+     * the last element.
+     */
+    private final int[] mParentOffsets;
+
+    /**
+     * The parents of the nodes.
+     */
+    private final int[] mParents;
+
+    /**
+     * The nodes in topological order, computed when first asked for.
+     */
+    private int[] mOrder;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param graph  the graph to be indexed.
+     */
+    public GraphIndex( Graph graph ){
+        if( graph instanceof CSRGraph ){
+            CSRGraph csr = (CSRGraph)graph;
+            mCSRGraph = csr;
+            mIndex    = null;
+            mChildOffsets  = csr.getChildOffsets();
+            mChildren      = csr.getChildIndices();
+            mParentOffsets = csr.getParentOffsets();
+            mParents       = csr.getParentIndices();
+            int capacity = mChildOffsets.length - 1;
+            mNodes = new GraphNode[ capacity ];
+            for( int i = 0; i < capacity; i++ ){
+                mNodes[ i ] = csr.getNode( i );
+            }
+            mSize = csr.size();
+            return;
+        }
+
+        mCSRGraph = null;
+        mSize  = graph.size();
+        mNodes = new GraphNode[ mSize ];
+        mIndex = new HashMap<String,Integer>( mSize * 4 / 3 + 1 );
+        int n = 0;
+        for( Iterator<GraphNode> it = graph.nodeIterator(); it.hasNext(); ){
+            GraphNode node = it.next();
+            mNodes[ n ] = node;
+            mIndex.put( node.getID(), n++ );
+        }
+
+        mChildOffsets  = new int[ n + 1 ];
+        mParentOffsets = new int[ n + 1 ];
+        for( int i = 0; i < n; i++ ){
+            mChildOffsets[ i + 1 ]  = mChildOffsets[ i ] + mNodes[ i ].getChildren().size();
+            mParentOffsets[ i + 1 ] = mParentOffsets[ i ] + mNodes[ i ].getParents().size();
+        }
+        mChildren = new int[ mChildOffsets[ n ] ];
+        mParents  = new int[ mParentOffsets[ n ] ];
+        for( int i = 0; i < n; i++ ){
+            fill( mNodes[ i ].getChildren(), mChildren, mChildOffsets[ i ] );
+            fill( mNodes[ i ].getParents(), mParents, mParentOffsets[ i ] );
+        }
+    }
+
+    /**
+     * Returns the number of indices, including the holes. The indices of the
+     * nodes are less than this.
+     *
+     * @return the number of indices
+     */
+    public int getCapacity(){
+        return mNodes.length;
+    }
+
+    /**
+     * Returns the number of nodes.
+     *
+     * @return the number of nodes
+     */
+    public int size(){
+        return mSize;
+    }
+
+    /**
+     * Returns the index of a node.
+     *
+     * @param identifier  the id of the node.
+     *
+     * @return the index, or -1 if the node is not in the index.
+     */
+    public int indexOf( String identifier ){
+        if( mCSRGraph != null ){
+            int index = mCSRGraph.indexOf( identifier );
+            return ( index < mNodes.length ) ? index : -1;
+        }
+        Integer index = mIndex.get( identifier );
+        return ( index == null ) ? -1 : index;
+    }
+
+    /**
+     * Returns the node with an index.
+     *
+     * @param index  the index of the node.
+     *
+     * @return the node, or null for a hole.
+     */
+    public GraphNode getNode( int index ){
+        return mNodes[ index ];
+    }
+
+    /**
+     * Returns the offsets of the children of the nodes, with the number of
+     * edges as the element at getCapacity(). The array should not be modified.
+     *
+     * @return the offsets
+     */
+    public int[] getChildOffsets(){
+        return mChildOffsets;
+    }
+
+    /**
+     * Returns the children of the nodes, indexed by the child offsets. The
+     * array should not be modified.
+     *
+     * @return the indices of the children
+     */
+    public int[] getChildIndices(){
+        return mChildren;
+    }
+
+    /**
+     * Returns the offsets of the parents of the nodes, with the number of
+     * edges as the element at getCapacity(). The array should not be modified.
+     *
+     * @return the offsets
+     */
+    public int[] getParentOffsets(){
+        return mParentOffsets;
+    }
+
+    /**
+     * Returns the parents of the nodes, indexed by the parent offsets. The
+     * array should not be modified.
+     *
+     * @return the indices of the parents
+     */
+    public int[] getParentIndices(){
+        return mParents;
+    }
+
+    /**
+     * Returns the number of parents of a node.
+     *
+     * @param index  the index of the node.
+     *
+     * @return the in degree
+     */
+    public int getInDegree( int index ){
+        return mParentOffsets[ index + 1 ] - mParentOffsets[ index ];
+    }
+
+    /**
+     * Returns the number of children of a node.
+     *
+     * @param index  the index of the node.
+     *
+     * @return the out degree
+     */
+    public int getOutDegree( int index ){
+        return mChildOffsets[ index + 1 ] - mChildOffsets[ index ];
+    }
+
+    /**
+     * Returns whether a node is a root, that is a node in the index with no
+     * parents.
+     *
+     * @param index  the index of the node.
+     *
+     * @return boolean
+     */
+    public boolean isRoot( int index ){
+        return mNodes[ index ] != null && getInDegree( index ) == 0;
+    }
+
+    /**
+     * Returns the nodes in topological order. Of the nodes that are ready at
+     * the same time, the ones that became ready first come first. The array
+     * should not be modified.
+     *
+     * @return the indices of the nodes.
+     *
+     * @throws RuntimeException if the graph has a cycle.
+     */
+    public synchronized int[] getTopologicalOrder(){
+        if( mOrder != null ){
+            return mOrder;
+        }
+        int n = getCapacity();
+        int[] remaining = new int[ n ];
+        int[] order = new int[ mSize ];
+        int tail = 0;
+        for( int i = 0; i < n; i++ ){
+            if( mNodes[ i ] == null ){
+                continue;
+            }
+            remaining[ i ] = getInDegree( i );
+            if( remaining[ i ] == 0 ){
+                order[ tail++ ] = i;
+            }
+        }
+        for( int head = 0; head < tail; head++ ){
+            int i = order[ head ];
+            for( int e = mChildOffsets[ i ]; e < mChildOffsets[ i + 1 ]; e++ ){
+                if( --remaining[ mChildren[ e ] ] == 0 ){
+                    order[ tail++ ] = mChildren[ e ];
+                }
+            }
+        }
+        if( tail != order.length ){
+            throw new RuntimeException( "The graph has a cycle through " + ( order.length - tail ) + " nodes" );
+        }
+        mOrder = order;
+        return mOrder;
+    }
+
+    /**
+     * Returns the parents each node is left with once some edges are removed.
+     * The parents of a node stay in the order of the parent arrays, and an
+     * edge that appears more than once is kept once.
+     *
+     * @param remove  whether each edge in the child arrays is removed.
+     *
+     * @return the offsets of the parents of each node, with the number of
+     *         edges as the last element, and the parents, as
+     *         { offsets, parents }.
+     */
+    public int[][] getRetainedParents( boolean[] remove ){
+        int n = getCapacity();
+
+        //bucket the sources of the retained edges by target
+        int[] counts = new int[ n + 1 ];
+        for( int p = 0; p < n; p++ ){
+            for( int e = mChildOffsets[ p ]; e < mChildOffsets[ p + 1 ]; e++ ){
+                if( !remove[ e ] ){
+                    counts[ mChildren[ e ] + 1 ]++;
+                }
+            }
+        }
+        for( int i = 0; i < n; i++ ){
+            counts[ i + 1 ] += counts[ i ];
+        }
+        int[] sources = new int[ counts[ n ] ];
+        int[] next = new int[ n ];
+        System.arraycopy( counts, 0, next, 0, n );
+        for( int p = 0; p < n; p++ ){
+            for( int e = mChildOffsets[ p ]; e < mChildOffsets[ p + 1 ]; e++ ){
+                if( !remove[ e ] ){
+                    sources[ next[ mChildren[ e ] ]++ ] = p;
+                }
+            }
+        }
+
+        //walk the parents of each node in order, keeping the marked ones
+        int[] offsets = new int[ n + 1 ];
+        int[] parents = new int[ counts[ n ] ];
+        int[] mark = new int[ n ];
+        int k = 0;
+        for( int c = 0; c < n; c++ ){
+            for( int j = counts[ c ]; j < counts[ c + 1 ]; j++ ){
+                mark[ sources[ j ] ] = c + 1;
+            }
+            for( int j = mParentOffsets[ c ]; j < mParentOffsets[ c + 1 ]; j++ ){
+                int p = mParents[ j ];
+                if( mark[ p ] == c + 1 ){
+                    parents[ k++ ] = p;
+                    mark[ p ] = 0;
+                }
+            }
+            offsets[ c + 1 ] = k;
+        }
+        return new int[][]{ offsets, Arrays.copyOf( parents, k ) };
+    }
+
+    /**
+     * Fills in the indices of a list of nodes.
+     *
+     * @param nodes   the nodes.
+     * @param target  the array to fill in.
+     * @param offset  the position of the first index in the array.
+     *
+     * @throws RuntimeException if a node is not in the index.
+     */
+    private void fill( List<GraphNode> nodes, int[] target, int offset ){
+        for( GraphNode node : nodes ){
+            Integer index = mIndex.get( node.getID() );
+            if( index == null ){
+                /* should be replaced by Graph Exception */
+                throw new RuntimeException( "The node with identifier doesnt exist " + node.getID() );
+            }
+            target[ offset++ ] = index;
+        }
+    }
+}
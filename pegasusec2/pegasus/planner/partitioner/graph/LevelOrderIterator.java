@@ -0,0 +1,185 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Traverses a graph level by level, in a modified BFS. A node is added to the
+ * queue only when all its parents have been traversed, and its level is one
+ * more than the level of its deepest parent. The roots are at level 0.
+ *
+ * The state of the traversal is held in int arrays indexed by a
+ * <code>GraphIndex</code>, so the color of the nodes is not used, a node with
+ * many parents costs one counter decrement per edge, and several traversals
+ * can walk the same graph at the same time. The depth of the nodes is only
+ * set if asked for, and then to the level of the node as it is returned.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class LevelOrderIterator implements Iterator<GraphNode> {
+
+    /**
+     * The index of the graph being traversed.
+     */
+    private final GraphIndex mIndex;
+
+    /**
+     * The number of parents of each node not yet traversed.
+     */
+    private final int[] mRemaining;
+
+    /**
+     * The level of each node.
+     */
+    private final int[] mLevel;
+
+    /**
+     * The first in first out queue of node indices.
+     */
+    private final int[] mQueue;
+
+    /**
+     * The position of the next node in the queue.
+     */
+    private int mHead;
+
+    /**
+     * The position after the last node in the queue.
+     */
+    private int mTail;
+
+    /**
+     * The index of the node last returned, -1 if none.
+     */
+    private int mCurrent;
+
+    /**
+     * Whether the depth of the nodes is set as they are returned.
+     */
+    private final boolean mSetDepth;
+
+    /**
+     * The overloaded constructor. The depth of the nodes is not set.
+     *
+     * @param graph  the graph to be traversed.
+     */
+    public LevelOrderIterator( Graph graph ){
+        this( new GraphIndex( graph ), false );
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param graph     the graph to be traversed.
+     * @param setDepth  whether the depth of the nodes is set to their level
+     *                  as they are returned.
+     */
+    public LevelOrderIterator( Graph graph, boolean setDepth ){
+        this( new GraphIndex( graph ), setDepth );
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param index     the index of the graph to be traversed.
+     * @param setDepth  whether the depth of the nodes is set to their level
+     *                  as they are returned.
+     */
+    public LevelOrderIterator( GraphIndex index, boolean setDepth ){
+        int n = index.getCapacity();
+        mIndex     = index;
+        mSetDepth  = setDepth;
+        mRemaining = new int[ n ];
+        mLevel     = new int[ n ];
+        mQueue     = new int[ index.size() ];
+        mCurrent   = -1;
+        for( int i = 0; i < n; i++ ){
+            if( index.getNode( i ) == null ){
+                continue;
+            }
+            mRemaining[ i ] = index.getInDegree( i );
+            if( mRemaining[ i ] == 0 ){
+                mQueue[ mTail++ ] = i;
+            }
+        }
+    }
+
+    /**
+     * Returns whether there are more nodes to be traversed.
+     *
+     * @return true if there are still nodes in the queue.
+     */
+    public boolean hasNext(){
+        return mHead < mTail;
+    }
+
+    /**
+     * Returns the next node in the traversal order.
+     *
+     * @return the node
+     */
+    public GraphNode next(){
+        if( mHead >= mTail ){
+            throw new NoSuchElementException();
+        }
+        int i = mQueue[ mHead++ ];
+        int[] offsets  = mIndex.getChildOffsets();
+        int[] children = mIndex.getChildIndices();
+        for( int e = offsets[ i ]; e < offsets[ i + 1 ]; e++ ){
+            int c = children[ e ];
+            if( --mRemaining[ c ] == 0 ){
+                mLevel[ c ] = mLevel[ i ] + 1;
+                mQueue[ mTail++ ] = c;
+            }
+        }
+        mCurrent = i;
+        GraphNode node = mIndex.getNode( i );
+        if( mSetDepth ){
+            node.setDepth( mLevel[ i ] );
+        }
+        return node;
+    }
+
+    /**
+     * Returns the level of the node last returned.
+     *
+     * @return the level, or -1 if no node has been returned.
+     */
+    public int getLevel(){
+        return ( mCurrent < 0 ) ? -1 : mLevel[ mCurrent ];
+    }
+
+    /**
+     * Returns the index of the node last returned, in the index of the graph.
+     *
+     * @return the index, or -1 if no node has been returned.
+     */
+    public int getIndex(){
+        return mCurrent;
+    }
+
+    /**
+     * Method is not supported.
+     */
+    public void remove(){
+        throw new java.lang.UnsupportedOperationException( "Method remove() not supported" );
+    }
+}
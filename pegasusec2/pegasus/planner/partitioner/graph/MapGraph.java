@@ -51,6 +51,16 @@ public class MapGraph implements Graph{
      */
     private LogManager mLogger;
 
+    /**
+     * The number of changes made to the structure of the graph.
+     */
+    private int mModifications;
+
+    /**
+     * The analytics of the graph, created when first asked for.
+     */
+    private GraphAnalytics mAnalytics;
+
     /**
      * The default constructor.
      */
@@ -80,6 +90,7 @@ public class MapGraph implements Graph{
      */
     public void addNode( GraphNode node ){
         mStore.put( node.getID(), node );
+        mModifications++;
     }
 
 
@@ -165,6 +176,7 @@ public class MapGraph implements Graph{
         //we have the correct linkages now
         //remove the node from the store.
         mStore.remove( identifier );
+        mModifications++;
         return true;
 
     }
@@ -243,6 +255,7 @@ public class MapGraph implements Graph{
 
         childNode.addParent( parentNode );
         parentNode.addChild( childNode);
+        mModifications++;
 
 
     }
@@ -286,9 +299,34 @@ public class MapGraph implements Graph{
             parentNode.addChild( childNode );
         }
         childNode.setParents( parentList );
+        mModifications++;
 
     }
 
+    /**
+     * Returns the number of changes made to the structure of the graph
+     * through its methods. It is used to tell whether analytics computed
+     * over the graph are still valid.
+     *
+     * @return the modification count
+     */
+    public int getModificationCount(){
+        return mModifications;
+    }
+
+    /**
+     * Returns the analytics of the graph, that are shared by everyone
+     * traversing it.
+     *
+     * @return the analytics
+     */
+    public synchronized GraphAnalytics getAnalytics(){
+        if( mAnalytics == null ){
+            mAnalytics = new GraphAnalytics( this );
+        }
+        return mAnalytics;
+    }
+
     /**
      * Returns the number of nodes in the graph.
      *
@@ -309,8 +347,8 @@ public class MapGraph implements Graph{
 
     /**
      * Returns an iterator that traverses through the graph using a graph
-     * traversal algorithm. At any one time, only one iterator can
-     * iterate through the graph.
+     * traversal algorithm. The traversal state is local to the iterator, so
+     * several iterators can iterate through the graph at the same time.
      *
      * @return Iterator through the nodes of the graph.
      */
@@ -397,111 +435,17 @@ public class MapGraph implements Graph{
      * An inner iterator class that traverses through the Graph.
      * The traversal of the graph is a modified BFS. A node is added to
      * the queue only when all it's parents have been added to the queue.
+     * The depth of each node is set to its level as it is returned.
+     *
+     * @see LevelOrderIterator
      */
-    protected class MapGraphIterator implements Iterator{
-
-        /**
-         * The first in first out queue, that manages the set of gray vertices in a
-         * breadth first search.
-         */
-        private LinkedList mQueue;
-
-        /**
-         * The current depth of the nodes that are being traversed in the BFS.
-         */
-        private int mCurrentDepth;
-
-        /**
-         * A temporary list that stores all the nodes on a particular level.
-         */
-        private List mLevelList;
+    protected class MapGraphIterator extends LevelOrderIterator{
 
         /**
          * The default constructor.
          */
         public MapGraphIterator(){
-            mQueue = new LinkedList();
-            mLevelList = new LinkedList();
-            mCurrentDepth = -1;
-
-            //sanity intialization of all nodes depth
-            for( Iterator it = nodeIterator(); it.hasNext(); ){
-                GraphNode node = ( GraphNode )it.next();
-                node.setDepth( mCurrentDepth );
-            }
-
-            //intialize all the root nodes depth to 0
-            //and put them in the queue
-            mCurrentDepth = 0;
-            for( Iterator it = getRoots().iterator(); it.hasNext(); ){
-                GraphNode node = ( GraphNode )it.next();
-                node.setDepth( mCurrentDepth );
-                mQueue.add( node );
-            }
-        }
-
-        /**
-         * Always returns false, as an empty iterator.
-         *
-         * @return true if there are still nodes in the queue.
-         */
-        public boolean	hasNext(){
-            return !mQueue.isEmpty();
-        }
-
-        /**
-         * Returns the next object in the traversal order.
-         *
-         * @return null
-         */
-        public Object next(){
-            GraphNode node  = (GraphNode)mQueue.getFirst();
-
-            int depth  = node.getDepth();
-            if( mCurrentDepth < depth ){
-
-                if( mCurrentDepth > 0 ){
-                    //we are done with one level!
-                    //that is when the callback should happen
-                }
-
-
-                //a new level starts
-                mCurrentDepth++;
-                mLevelList.clear();
-            }
-            //mLogger.log( "Adding to level " + mCurrentDepth + " " + node.getID(),
-            //             LogManager.DEBUG_MESSAGE_LEVEL);
-            mLevelList.add( node );
-
-            node.setColor( GraphNode.BLACK_COLOR );
-
-            //add the children to the list only if all the parents
-            //of the child nodes have been traversed.
-            for( Iterator it = node.getChildren().iterator(); it.hasNext(); ){
-                GraphNode child = (GraphNode)it.next();
-                if(!child.isColor( GraphNode.GRAY_COLOR ) &&
-                   child.parentsColored( GraphNode.BLACK_COLOR )){
-                    //mLogger.log( "Adding to queue " + child.getID(),
-                    //             LogManager.DEBUG_MESSAGE_LEVEL );
-                    child.setDepth( depth + 1 );
-                    child.setColor( GraphNode.GRAY_COLOR );
-                    mQueue.addLast( child );
-                }
-
-            }
-            node = (GraphNode)mQueue.removeFirst();
-            //mLogger.log( "Removed " + node.getID(),
-            //             LogManager.DEBUG_MESSAGE_LEVEL);
-            return node;
-
-        }
-
-        /**
-         * Method is not supported.
-         */
-        public void remove(){
-            throw new java.lang.UnsupportedOperationException( "Method remove() not supported" );
+            super( MapGraph.this, true );
         }
 
     }//end of internal iterator class
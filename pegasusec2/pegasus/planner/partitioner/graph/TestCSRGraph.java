@@ -0,0 +1,309 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests a <code>CSRGraph</code> against a <code>MapGraph</code> that preserves
+ * the insertion order, by applying the same random changes to both and
+ * comparing their edges and traversals after each change.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestCSRGraph {
+
+    /**
+     * Returns the IDs of a list of nodes.
+     *
+     * @param nodes  the nodes.
+     *
+     * @return the IDs
+     */
+    private static List<String> ids( List<GraphNode> nodes ){
+        return ids( nodes.iterator() );
+    }
+
+    /**
+     * Returns the IDs of the nodes of an iterator.
+     *
+     * @param it  the iterator.
+     *
+     * @return the IDs
+     */
+    private static List<String> ids( Iterator<GraphNode> it ){
+        List<String> result = new ArrayList<String>();
+        while( it.hasNext() ){
+            result.add( it.next().getID() );
+        }
+        return result;
+    }
+
+    /**
+     * Checks that two graphs have the same nodes, edges and traversals.
+     *
+     * @param expected  the graph to compare against.
+     * @param actual    the graph being tested.
+     * @param label     the label for the error messages.
+     */
+    private static void compare( Graph expected, Graph actual, String label ){
+        check( expected.size() == actual.size(), label + ": size " + actual.size() + " expected " + expected.size() );
+        check( expected.isEmpty() == actual.isEmpty(), label + ": isEmpty" );
+        List<String> nodes = ids( expected.nodeIterator() );
+        check( nodes.equals( ids( actual.nodeIterator() ) ), label + ": nodes " + ids( actual.nodeIterator() ) + " expected " + nodes );
+        for( String id : nodes ){
+            GraphNode e = expected.getNode( id );
+            GraphNode a = actual.getNode( id );
+            check( ids( e.getParents() ).equals( ids( a.getParents() ) ),
+                   label + ": parents of " + id + " " + ids( a.getParents() ) + " expected " + ids( e.getParents() ) );
+            check( ids( e.getChildren() ).equals( ids( a.getChildren() ) ),
+                   label + ": children of " + id + " " + ids( a.getChildren() ) + " expected " + ids( e.getChildren() ) );
+        }
+        check( ids( expected.getRoots() ).equals( ids( actual.getRoots() ) ), label + ": roots" );
+        check( ids( expected.getLeaves() ).equals( ids( actual.getLeaves() ) ), label + ": leaves" );
+        check( ids( expected.iterator() ).equals( ids( actual.iterator() ) ), label + ": level order" );
+        check( ids( expected.topologicalSortIterator() ).equals( ids( actual.topologicalSortIterator() ) ),
+               label + ": topological order" );
+    }
+
+    /**
+     * Returns whether there is an edge between two nodes of a graph.
+     *
+     * @param graph   the graph.
+     * @param parent  the ID of the parent.
+     * @param child   the ID of the child.
+     *
+     * @return boolean
+     */
+    private static boolean hasEdge( Graph graph, String parent, String child ){
+        return ids( graph.getNode( parent ).getChildren() ).contains( child );
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments, ignored.
+     *
+     * @throws InterruptedException if interrupted while waiting for the
+     *                              traversing threads.
+     */
+    public static void main( String[] args ) throws InterruptedException{
+        Random r = new Random( 42 );
+        for( int run = 0; run < 200; run++ ){
+            MapGraph expected = new MapGraph( true );
+            CSRGraph actual = new CSRGraph( 1 + r.nextInt( 4 ), 1 + r.nextInt( 4 ) );
+            //the nodes in the order they were created, the edges going
+            //from earlier to later nodes so that the graph stays acyclic
+            List<String> created = new ArrayList<String>();
+            int next = 0;
+            for( int step = 0; step < 60; step++ ){
+                List<String> live = ids( expected.nodeIterator() );
+                int op = r.nextInt( 10 );
+                String label = "Run " + run + " step " + step + " op " + op;
+                if( op <= 2 || live.size() < 2 ){
+                    String id = "ID" + next++;
+                    created.add( id );
+                    expected.addNode( new GraphNode( id, id ) );
+                    actual.addNode( new GraphNode( id, id ) );
+                }
+                else if( op == 3 ){
+                    //through the graph
+                    String p = live.get( r.nextInt( live.size() ) );
+                    String c = live.get( r.nextInt( live.size() ) );
+                    if( created.indexOf( p ) > created.indexOf( c ) ){
+                        String swap = p; p = c; c = swap;
+                    }
+                    if( !p.equals( c ) && !hasEdge( expected, p, c ) ){
+                        expected.addEdge( p, c );
+                        actual.addEdge( p, c );
+                    }
+                }
+                else if( op == 4 ){
+                    //through the lists of the nodes, in the usual pair of calls
+                    String p = live.get( r.nextInt( live.size() ) );
+                    String c = live.get( r.nextInt( live.size() ) );
+                    if( created.indexOf( p ) > created.indexOf( c ) ){
+                        String swap = p; p = c; c = swap;
+                    }
+                    if( !p.equals( c ) && !hasEdge( expected, p, c ) ){
+                        for( Graph g : new Graph[]{ expected, actual } ){
+                            g.getNode( c ).addParent( g.getNode( p ) );
+                            g.getNode( p ).addChild( g.getNode( c ) );
+                        }
+                    }
+                }
+                else if( op == 5 ){
+                    //the parents of a node without parents, as MapGraph keeps
+                    //the replaced parents as stale children
+                    String c = live.get( r.nextInt( live.size() ) );
+                    if( !expected.getNode( c ).getParents().isEmpty() ){
+                        continue;
+                    }
+                    List<String> parents = new ArrayList<String>();
+                    for( String p : live ){
+                        if( created.indexOf( p ) < created.indexOf( c ) && r.nextInt( 3 ) == 0 ){
+                            parents.add( p );
+                        }
+                    }
+                    expected.addEdges( c, parents );
+                    actual.addEdges( c, parents );
+                }
+                else if( op == 6 ){
+                    //a node whose parents and children are not linked yet, as
+                    //MapGraph removes a single copy of a duplicated edge
+                    String id = live.get( r.nextInt( live.size() ) );
+                    boolean duplicate = false;
+                    for( GraphNode p : expected.getNode( id ).getParents() ){
+                        for( GraphNode c : expected.getNode( id ).getChildren() ){
+                            duplicate = duplicate || hasEdge( expected, p.getID(), c.getID() );
+                        }
+                    }
+                    if( duplicate ){
+                        continue;
+                    }
+                    check( expected.remove( id ) && actual.remove( id ), label + ": node not removed" );
+                    check( !actual.remove( id ), label + ": node removed twice" );
+                }
+                else if( op == 7 ){
+                    //through the lists of the nodes, in the usual pair of calls
+                    GraphNode c = expected.getNode( live.get( r.nextInt( live.size() ) ) );
+                    if( c.getParents().isEmpty() ){
+                        continue;
+                    }
+                    String p = c.getParents().get( r.nextInt( c.getParents().size() ) ).getID();
+                    for( Graph g : new Graph[]{ expected, actual } ){
+                        g.getNode( c.getID() ).removeParent( g.getNode( p ) );
+                        g.getNode( p ).removeChild( g.getNode( c.getID() ) );
+                    }
+                }
+                else if( op == 8 ){
+                    String id = "ID" + next++;
+                    //a root comes before all the existing nodes
+                    created.add( 0, id );
+                    expected.addRoot( new GraphNode( id, id ) );
+                    actual.addRoot( new GraphNode( id, id ) );
+                }
+                else{
+                    //the same node added again changes nothing
+                    String id = live.get( r.nextInt( live.size() ) );
+                    expected.addNode( expected.getNode( id ) );
+                    actual.addNode( actual.getNode( id ) );
+                }
+                if( r.nextInt( 3 ) == 0 ){
+                    compare( expected, actual, label );
+                }
+            }
+            compare( expected, actual, "Run " + run );
+
+            //the arrays agree with the lists of the nodes
+            int[] offsets  = actual.getChildOffsets();
+            int[] children = actual.getChildIndices();
+            for( Iterator<GraphNode> it = actual.nodeIterator(); it.hasNext(); ){
+                GraphNode node = it.next();
+                int i = actual.indexOf( node.getID() );
+                check( actual.getNode( i ) == node, "Run " + run + ": node at index " + i );
+                List<String> listed = new ArrayList<String>();
+                for( int e = offsets[ i ]; e < offsets[ i + 1 ]; e++ ){
+                    listed.add( actual.getNode( children[ e ] ).getID() );
+                }
+                check( listed.equals( ids( node.getChildren() ) ), "Run " + run + ": child indices of " + node.getID() );
+            }
+        }
+
+        //a node added with the ID of an existing node drops its edges
+        CSRGraph graph = new CSRGraph();
+        for( String id : new String[]{ "a", "b", "c", "d" } ){
+            graph.addNode( new GraphNode( id, id ) );
+        }
+        graph.addEdge( "a", "b" );
+        graph.addEdge( "b", "c" );
+        graph.addEdge( "a", "c" );
+        check( ids( graph.getNode( "c" ).getParents() ).equals( Arrays.asList( "b", "a" ) ), "Parents before the replacement" );
+        graph.addEdge( "b", "d" );
+        GraphNode old = graph.getNode( "b" );
+        GraphNode replacement = new GraphNode( "b", "b" );
+        graph.addNode( replacement );
+        check( graph.getNode( "b" ) == replacement && graph.size() == 4, "Node not replaced" );
+        check( replacement.getParents().isEmpty() && replacement.getChildren().isEmpty(), "Replacement has edges" );
+        check( ids( old.getParents() ).equals( Arrays.asList( "a" ) ) &&
+               ids( old.getChildren() ).equals( Arrays.asList( "c", "d" ) ), "Replaced node lost its copy of the edges" );
+        check( ids( graph.getNode( "a" ).getChildren() ).equals( Arrays.asList( "c" ) ), "Edge to the replaced node kept" );
+        check( ids( graph.getNode( "c" ).getParents() ).equals( Arrays.asList( "a" ) ), "Edge from the replaced node kept" );
+        check( graph.getNode( "d" ).getParents().isEmpty(), "Pending edge from the replaced node kept" );
+        check( ids( graph.getNode( "b" ).getParents() ).equals( Arrays.asList() ), "Parents of the replacement" );
+        graph.addEdge( "b", "d" );
+        check( ids( replacement.getChildren() ).equals( Arrays.asList( "d" ) ), "Edge added to the replacement" );
+
+        //edges through the lists of the nodes
+        check( !graph.getNode( "d" ).getParents().add( replacement ), "Edge added twice" );
+        check( graph.getNode( "a" ).getChildren().add( graph.getNode( "d" ) ), "Edge not added" );
+        check( ids( graph.getNode( "d" ).getParents() ).equals( Arrays.asList( "b", "a" ) ), "Edge added through the children" );
+        check( graph.getNode( "a" ).getChildren().remove( graph.getNode( "c" ) ), "Edge not removed" );
+        check( !graph.getNode( "c" ).getParents().remove( graph.getNode( "a" ) ), "Edge removed twice" );
+        check( graph.getNode( "c" ).getParents().isEmpty(), "Edge removed from one end only" );
+        try{
+            graph.getNode( "a" ).addChild( graph.getNode( "a" ) );
+            check( false, "Edge from a node to itself added" );
+        }
+        catch( IllegalArgumentException e ){
+            //expected
+        }
+
+        //threads traversing a graph with pending edges all see every edge
+        final CSRGraph shared = new CSRGraph();
+        final int n = 2000;
+        for( int i = 0; i < n; i++ ){
+            shared.addNode( new GraphNode( "ID" + i, "ID" + i ) );
+        }
+        for( int i = 1; i < n; i++ ){
+            shared.addEdge( "ID" + r.nextInt( i ), "ID" + i );
+            shared.addEdge( "ID" + ( i - 1 ), "ID" + i );
+        }
+        final int[] failures = new int[ 1 ];
+        Thread[] threads = new Thread[ 8 ];
+        for( int t = 0; t < threads.length; t++ ){
+            threads[ t ] = new Thread(){
+                public void run(){
+                    int edges = 0;
+                    for( int i = 0; i < n; i++ ){
+                        edges += shared.getNode( "ID" + i ).getParents().size();
+                    }
+                    if( edges != 2 * ( n - 1 ) ){
+                        synchronized( failures ){
+                            failures[ 0 ]++;
+                        }
+                    }
+                }
+            };
+        }
+        for( Thread t : threads ){
+            t.start();
+        }
+        for( Thread t : threads ){
+            t.join();
+        }
+        check( failures[ 0 ] == 0, failures[ 0 ] + " threads saw a partial graph" );
+        System.out.println( "TestCSRGraph passed" );
+    }
+}
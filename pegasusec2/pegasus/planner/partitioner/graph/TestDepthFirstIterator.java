@@ -0,0 +1,126 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Set;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the depth first traversal of random graphs against a recursive
+ * preorder traversal of the node lists, and of a long chain that a recursive
+ * traversal could not walk.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestDepthFirstIterator {
+
+    /**
+     * Adds the IDs of the unvisited nodes reachable from a node, in preorder.
+     *
+     * @param node     the node.
+     * @param visited  the IDs of the nodes visited so far.
+     * @param order    the IDs in preorder.
+     */
+    private static void visit( GraphNode node, Set<String> visited, List<String> order ){
+        if( !visited.add( node.getID() ) ){
+            return;
+        }
+        order.add( node.getID() );
+        for( GraphNode child : node.getChildren() ){
+            visit( child, visited, order );
+        }
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments, ignored.
+     */
+    public static void main( String[] args ){
+        Random r = new Random( 42 );
+        for( int run = 0; run < 300; run++ ){
+            int n = 1 + r.nextInt( 40 );
+            boolean compact = r.nextBoolean();
+            Graph graph = TestGraphIndex.createGraph( n, r, compact );
+            String label = "Run " + run + ( compact ? " compact" : "" );
+
+            //the roots in the order of the nodes, the children in list order
+            List<String> expected = new ArrayList<String>();
+            Set<String> visited = new HashSet<String>();
+            for( Iterator<GraphNode> it = graph.nodeIterator(); it.hasNext(); ){
+                GraphNode node = it.next();
+                if( node.getParents().isEmpty() ){
+                    visit( node, visited, expected );
+                }
+            }
+            check( expected.size() == graph.size(), label + ": reference missed nodes" );
+
+            //two traversals of the same index interleaved
+            GraphIndex index = new GraphIndex( graph );
+            DepthFirstIterator first  = new DepthFirstIterator( index );
+            DepthFirstIterator second = new DepthFirstIterator( index );
+            List<String> order = new ArrayList<String>();
+            while( first.hasNext() ){
+                GraphNode node = first.next();
+                check( second.hasNext() && second.next() == node, label + ": interleaved traversals differ at " + node.getID() );
+                order.add( node.getID() );
+            }
+            check( !second.hasNext(), label + ": second traversal goes on" );
+            check( order.equals( expected ), label + ": order " + order + " expected " + expected );
+            try{
+                first.next();
+                check( false, label + ": node after the end" );
+            }
+            catch( NoSuchElementException e ){
+                //expected
+            }
+
+            order.clear();
+            for( Iterator<GraphNode> it = new DepthFirstIterator( graph ); it.hasNext(); ){
+                order.add( it.next().getID() );
+            }
+            check( order.equals( expected ), label + ": order over the graph" );
+        }
+
+        //a chain deeper than a recursive traversal could go, with a shortcut
+        //from the root to the end that is taken after the chain
+        int n = 200000;
+        CSRGraph chain = new CSRGraph( n, n );
+        for( int i = 0; i < n; i++ ){
+            chain.addNode( new GraphNode( "ID" + i, "ID" + i ) );
+            if( i > 0 ){
+                chain.addEdge( "ID" + ( i - 1 ), "ID" + i );
+            }
+        }
+        chain.addEdge( "ID0", "ID" + ( n - 1 ) );
+        int k = 0;
+        for( Iterator<GraphNode> it = new DepthFirstIterator( chain ); it.hasNext(); k++ ){
+            GraphNode node = it.next();
+            check( node.getID().equals( "ID" + k ), "Chain: node " + k + " is " + node.getID() );
+        }
+        check( k == n, "Chain: " + k + " nodes" );
+        System.out.println( "TestDepthFirstIterator passed" );
+    }
+}
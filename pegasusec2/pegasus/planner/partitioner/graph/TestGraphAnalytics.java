@@ -0,0 +1,312 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the analytics of random graphs. The levels, ranks, slacks and
+ * critical paths are compared with recursive computations over the node
+ * lists, and the memoized results with those computed again after the graph
+ * changes.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestGraphAnalytics {
+
+    /**
+     * The tolerance the ranks are compared with.
+     */
+    private static final float EPSILON = 1e-3f;
+
+    /**
+     * Weights computed from the IDs of the nodes, that count the calls made.
+     */
+    private static class HashWeights implements GraphAnalytics.Weights {
+
+        /**
+         * The number of node weights asked for.
+         */
+        private int mCalls;
+
+        /**
+         * Returns the weight of a node.
+         *
+         * @param node  the node.
+         *
+         * @return the weight
+         */
+        public float getNodeWeight( GraphNode node ){
+            mCalls++;
+            return nodeWeight( node );
+        }
+
+        /**
+         * Returns the weight of an edge into a node.
+         *
+         * @param node  the node the edge goes into.
+         * @param k     the position of the parent in the parents of the node.
+         *
+         * @return the weight
+         */
+        public float getEdgeWeight( GraphNode node, int k ){
+            return edgeWeight( node, k );
+        }
+    }
+
+    /**
+     * Returns whether two ranks are equal within the tolerance.
+     *
+     * @param a  the first rank.
+     * @param b  the second rank.
+     *
+     * @return boolean
+     */
+    private static boolean equal( float a, float b ){
+        return Math.abs( a - b ) <= EPSILON * Math.max( 1, Math.abs( b ) );
+    }
+
+    /**
+     * Returns the weight of a node, from its ID.
+     *
+     * @param node  the node.
+     *
+     * @return the weight
+     */
+    private static float nodeWeight( GraphNode node ){
+        return 1 + ( node.getID().hashCode() & 15 ) / 4f;
+    }
+
+    /**
+     * Returns the weight of an edge into a node, from the ID of the node and
+     * the position of the parent.
+     *
+     * @param node  the node the edge goes into.
+     * @param k     the position of the parent in the parents of the node.
+     *
+     * @return the weight
+     */
+    private static float edgeWeight( GraphNode node, int k ){
+        return ( ( node.getID().hashCode() * 31 + k * 7 ) & 7 ) / 2f;
+    }
+
+    /**
+     * Returns the weight of the heaviest edge from a parent to a child.
+     *
+     * @param parent  the parent.
+     * @param child   the child.
+     *
+     * @return the weight
+     */
+    private static float edgeWeight( GraphNode parent, GraphNode child ){
+        float weight = -1;
+        List<GraphNode> parents = child.getParents();
+        for( int k = 0; k < parents.size(); k++ ){
+            if( parents.get( k ) == parent ){
+                weight = Math.max( weight, edgeWeight( child, k ) );
+            }
+        }
+        check( weight >= 0, "No edge from " + parent.getID() + " to " + child.getID() );
+        return weight;
+    }
+
+    /**
+     * Returns the downward rank of a node.
+     *
+     * @param node   the node.
+     * @param ranks  the ranks computed so far, indexed by node ID.
+     *
+     * @return the rank
+     */
+    private static float downward( GraphNode node, Map<String,Float> ranks ){
+        Float rank = ranks.get( node.getID() );
+        if( rank == null ){
+            rank = 0f;
+            List<GraphNode> parents = node.getParents();
+            for( int k = 0; k < parents.size(); k++ ){
+                GraphNode p = parents.get( k );
+                rank = Math.max( rank, downward( p, ranks ) + nodeWeight( p ) + edgeWeight( node, k ) );
+            }
+            ranks.put( node.getID(), rank );
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the upward rank of a node.
+     *
+     * @param node   the node.
+     * @param ranks  the ranks computed so far, indexed by node ID.
+     *
+     * @return the rank
+     */
+    private static float upward( GraphNode node, Map<String,Float> ranks ){
+        Float rank = ranks.get( node.getID() );
+        if( rank == null ){
+            float best = 0;
+            for( GraphNode child : node.getChildren() ){
+                best = Math.max( best, edgeWeight( node, child ) + upward( child, ranks ) );
+            }
+            rank = nodeWeight( node ) + best;
+            ranks.put( node.getID(), rank );
+        }
+        return rank;
+    }
+
+    /**
+     * Returns the number of edges on the longest path from a root to a node.
+     *
+     * @param node    the node.
+     * @param levels  the levels computed so far, indexed by node ID.
+     *
+     * @return the level
+     */
+    private static int level( GraphNode node, Map<String,Integer> levels ){
+        Integer level = levels.get( node.getID() );
+        if( level == null ){
+            level = 0;
+            for( GraphNode parent : node.getParents() ){
+                level = Math.max( level, level( parent, levels ) + 1 );
+            }
+            levels.put( node.getID(), level );
+        }
+        return level;
+    }
+
+    /**
+     * Checks the levels and ranks of a graph against recursive computations.
+     *
+     * @param graph      the graph.
+     * @param analytics  the analytics of the graph.
+     * @param ranks      the ranks of the graph.
+     * @param label      the label of the check.
+     */
+    private static void checkRanks( Graph graph, GraphAnalytics analytics, GraphAnalytics.Ranks ranks, String label ){
+        Map<String,Float> down   = new HashMap<String,Float>();
+        Map<String,Float> up     = new HashMap<String,Float>();
+        Map<String,Integer> levels = new HashMap<String,Integer>();
+        float length = 0;
+        for( Iterator<GraphNode> it = graph.nodeIterator(); it.hasNext(); ){
+            GraphNode node = it.next();
+            if( node.getParents().isEmpty() ){
+                length = Math.max( length, upward( node, up ) );
+            }
+        }
+        check( equal( ranks.getCriticalPathLength(), length ),
+               label + ": critical path length " + ranks.getCriticalPathLength() + " expected " + length );
+
+        for( Iterator<GraphNode> it = graph.nodeIterator(); it.hasNext(); ){
+            GraphNode node = it.next();
+            String id = node.getID();
+            float d = downward( node, down );
+            float u = upward( node, up );
+            int i = ranks.getIndex().indexOf( id );
+            check( equal( ranks.getDownwardRank( node ), d ) && equal( ranks.getDownwardRanks()[ i ], d ),
+                   label + ": downward rank of " + id + " " + ranks.getDownwardRank( node ) + " expected " + d );
+            check( equal( ranks.getUpwardRank( node ), u ) && equal( ranks.getUpwardRanks()[ i ], u ),
+                   label + ": upward rank of " + id + " " + ranks.getUpwardRank( node ) + " expected " + u );
+            float slack = Math.max( 0, length - d - u );
+            check( Math.abs( ranks.getSlack( node ) - slack ) <= EPSILON * Math.max( 1, length ),
+                   label + ": slack of " + id + " " + ranks.getSlack( node ) + " expected " + slack );
+            check( analytics.getLevel( node ) == level( node, levels ), label + ": level of " + id );
+        }
+
+        //the critical path runs from a root to a leaf along edges, and is as
+        //long as the critical path length
+        List<GraphNode> path = ranks.getCriticalPath();
+        check( path.isEmpty() == ( graph.size() == 0 ), label + ": critical path " + path );
+        if( !path.isEmpty() ){
+            check( path.get( 0 ).getParents().isEmpty(), label + ": critical path starts at " + path.get( 0 ).getID() );
+            check( path.get( path.size() - 1 ).getChildren().isEmpty(), label + ": critical path ends at " + path.get( path.size() - 1 ).getID() );
+            float sum = nodeWeight( path.get( 0 ) );
+            for( int k = 1; k < path.size(); k++ ){
+                sum += edgeWeight( path.get( k - 1 ), path.get( k ) ) + nodeWeight( path.get( k ) );
+                check( ranks.getSlack( path.get( k ) ) <= EPSILON * Math.max( 1, length ), label + ": slack on the critical path" );
+            }
+            check( equal( sum, length ), label + ": critical path is " + sum + " long, expected " + length );
+        }
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments, ignored.
+     */
+    public static void main( String[] args ){
+        Random r = new Random( 42 );
+        for( int run = 0; run < 300; run++ ){
+            int n = 1 + r.nextInt( 40 );
+            boolean compact = r.nextBoolean();
+            Graph graph = TestGraphIndex.createGraph( n, r, compact );
+            String label = "Run " + run + ( compact ? " compact" : "" );
+            GraphAnalytics analytics = GraphAnalytics.getInstance( graph );
+            check( GraphAnalytics.getInstance( graph ) == analytics, label + ": analytics not shared" );
+
+            //the same weights reuse the ranks, other weights do not
+            HashWeights weights = new HashWeights();
+            GraphAnalytics.Ranks ranks = analytics.getRanks( weights );
+            checkRanks( graph, analytics, ranks, label );
+            int calls = weights.mCalls;
+            check( calls == graph.size(), label + ": " + calls + " node weights asked for" );
+            check( analytics.getRanks( weights ) == ranks && weights.mCalls == calls, label + ": ranks not memoized" );
+            check( analytics.getLevels() == analytics.getLevels(), label + ": levels not memoized" );
+            HashWeights other = new HashWeights();
+            GraphAnalytics.Ranks otherRanks = analytics.getRanks( other );
+            check( otherRanks != ranks && other.mCalls == calls, label + ": ranks of other weights" );
+            checkRanks( graph, analytics, otherRanks, label + " other weights" );
+            check( analytics.getRanks( other ) == otherRanks, label + ": ranks of other weights not memoized" );
+
+            //a change to the graph computes them again
+            ranks = analytics.getRanks( weights );
+            String id = "ID" + n;
+            graph.addNode( new GraphNode( id, id ) );
+            Iterator<GraphNode> it = graph.nodeIterator();
+            GraphNode parent = it.next();
+            graph.addEdge( parent.getID(), id );
+            GraphAnalytics.Ranks changed = analytics.getRanks( weights );
+            check( changed != ranks && weights.mCalls == 2 * calls + graph.size(), label + ": ranks not computed again after a change" );
+            checkRanks( graph, analytics, changed, label + " changed" );
+            check( analytics.getLevel( new GraphNode( "missing", "missing" ) ) == -1, label + ": level of a missing node" );
+
+            //as does an invalidation after an edit to the nodes directly
+            check( analytics.getRanks( weights ) == changed, label + ": changed ranks not memoized" );
+            GraphNode child = graph.getNode( id );
+            GraphNode root  = new GraphNode( "root", "root" );
+            graph.addNode( root );
+            analytics.getRanks( weights );
+            root.addChild( child );
+            child.addParent( root );
+            analytics.invalidate();
+            GraphAnalytics.Ranks invalidated = analytics.getRanks( weights );
+            check( invalidated != changed, label + ": ranks not computed again after an invalidation" );
+            checkRanks( graph, analytics, invalidated, label + " invalidated" );
+        }
+
+        //an empty graph has no critical path
+        Graph empty = new MapGraph( true );
+        GraphAnalytics.Ranks ranks = GraphAnalytics.getInstance( empty ).getRanks( GraphAnalytics.UNIT_WEIGHTS );
+        check( ranks.getCriticalPathLength() == 0 && ranks.getCriticalPath().isEmpty(), "Empty graph" );
+        System.out.println( "TestGraphAnalytics passed" );
+    }
+}
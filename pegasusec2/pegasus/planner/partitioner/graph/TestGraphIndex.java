@@ -0,0 +1,242 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the index of random graphs against the parents and children of their
+ * nodes, and the topological order and retained parents it computes against
+ * simple computations over the node lists.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestGraphIndex {
+
+    /**
+     * Creates a random acyclic graph, with the nodes "ID0" to "ID" + ( n - 1 ),
+     * edges from lower to higher numbers added in a random order, and a few
+     * duplicated edges. A compact graph also has a few nodes removed.
+     *
+     * @param n        the number of nodes.
+     * @param r        the random number generator.
+     * @param compact  whether to create a <code>CSRGraph</code>, instead of a
+     *                 <code>MapGraph</code>.
+     *
+     * @return the graph
+     */
+    static Graph createGraph( int n, Random r, boolean compact ){
+        Graph graph = compact ? new CSRGraph() : new MapGraph( true );
+        for( int i = 0; i < n; i++ ){
+            graph.addNode( new GraphNode( "ID" + i, "ID" + i ) );
+        }
+        List<int[]> edges = new ArrayList<int[]>();
+        for( int c = 1; c < n; c++ ){
+            for( int p = 0; p < c; p++ ){
+                if( r.nextInt( 4 ) == 0 ){
+                    edges.add( new int[]{ p, c } );
+                    if( r.nextInt( 20 ) == 0 ){
+                        edges.add( new int[]{ p, c } );
+                    }
+                }
+            }
+        }
+        Collections.shuffle( edges, r );
+        for( int[] e : edges ){
+            graph.addEdge( "ID" + e[ 0 ], "ID" + e[ 1 ] );
+        }
+        if( compact ){
+            for( int i = 0; i < n; i++ ){
+                if( r.nextInt( 6 ) == 0 ){
+                    graph.remove( "ID" + i );
+                }
+            }
+        }
+        return graph;
+    }
+
+    /**
+     * Returns the indices of a list of nodes.
+     *
+     * @param index  the index.
+     * @param nodes  the nodes.
+     *
+     * @return the indices
+     */
+    private static List<Integer> indices( GraphIndex index, List<GraphNode> nodes ){
+        List<Integer> result = new ArrayList<Integer>();
+        for( GraphNode node : nodes ){
+            result.add( index.indexOf( node.getID() ) );
+        }
+        return result;
+    }
+
+    /**
+     * Returns a range of an int array.
+     *
+     * @param array  the array.
+     * @param from   the first position.
+     * @param to     the position after the last.
+     *
+     * @return the elements in the range
+     */
+    private static List<Integer> range( int[] array, int from, int to ){
+        List<Integer> result = new ArrayList<Integer>();
+        for( int i = from; i < to; i++ ){
+            result.add( array[ i ] );
+        }
+        return result;
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments, ignored.
+     */
+    public static void main( String[] args ){
+        Random r = new Random( 42 );
+        for( int run = 0; run < 300; run++ ){
+            int n = 1 + r.nextInt( 40 );
+            boolean compact = r.nextBoolean();
+            Graph graph = createGraph( n, r, compact );
+            GraphIndex index = new GraphIndex( graph );
+            String label = "Run " + run + ( compact ? " compact" : "" );
+            check( index.size() == graph.size(), label + ": size" );
+            check( compact ? index.getCapacity() == n : index.getCapacity() == graph.size(), label + ": capacity" );
+            check( index.indexOf( "missing" ) == -1, label + ": index of a missing node" );
+
+            //every node has an index, holes are not nodes
+            int nodes = 0;
+            for( int i = 0; i < index.getCapacity(); i++ ){
+                GraphNode node = index.getNode( i );
+                if( node == null ){
+                    check( compact, label + ": hole in the index of a map graph" );
+                    check( index.getInDegree( i ) == 0 && index.getOutDegree( i ) == 0 && !index.isRoot( i ),
+                           label + ": edges of hole " + i );
+                    continue;
+                }
+                nodes++;
+                check( graph.getNode( node.getID() ) == node && index.indexOf( node.getID() ) == i, label + ": index of " + node.getID() );
+
+                //the arrays hold the parents and children in list order
+                int[] co = index.getChildOffsets(), po = index.getParentOffsets();
+                check( range( index.getChildIndices(), co[ i ], co[ i + 1 ] ).equals( indices( index, node.getChildren() ) ),
+                       label + ": children of " + node.getID() );
+                check( range( index.getParentIndices(), po[ i ], po[ i + 1 ] ).equals( indices( index, node.getParents() ) ),
+                       label + ": parents of " + node.getID() );
+                check( index.getInDegree( i ) == node.getParents().size() && index.getOutDegree( i ) == node.getChildren().size(),
+                       label + ": degrees of " + node.getID() );
+                check( index.isRoot( i ) == node.getParents().isEmpty(), label + ": root " + node.getID() );
+            }
+            check( nodes == graph.size(), label + ": " + nodes + " nodes indexed" );
+            for( Iterator<GraphNode> it = graph.nodeIterator(); it.hasNext(); ){
+                check( index.indexOf( it.next().getID() ) >= 0, label + ": node not indexed" );
+            }
+
+            //every node comes after its parents in the topological order, and
+            //the order is that of a first in first out queue of ready nodes
+            int[] order = index.getTopologicalOrder();
+            check( order.length == graph.size(), label + ": order has " + order.length + " nodes" );
+            check( index.getTopologicalOrder() == order, label + ": order not kept" );
+            Map<String,Integer> position = new HashMap<String,Integer>();
+            for( int k = 0; k < order.length; k++ ){
+                position.put( index.getNode( order[ k ] ).getID(), k );
+            }
+            check( position.size() == order.length, label + ": node twice in the order" );
+            List<Integer> queue = new ArrayList<Integer>();
+            Map<String,Integer> remaining = new HashMap<String,Integer>();
+            for( int i = 0; i < index.getCapacity(); i++ ){
+                GraphNode node = index.getNode( i );
+                if( node != null ){
+                    remaining.put( node.getID(), node.getParents().size() );
+                    if( node.getParents().isEmpty() ){
+                        queue.add( i );
+                    }
+                }
+            }
+            for( int head = 0; head < queue.size(); head++ ){
+                GraphNode node = index.getNode( queue.get( head ) );
+                for( GraphNode parent : node.getParents() ){
+                    check( position.get( parent.getID() ) < position.get( node.getID() ),
+                           label + ": " + node.getID() + " before its parent " + parent.getID() );
+                }
+                for( GraphNode child : node.getChildren() ){
+                    int left = remaining.get( child.getID() ) - 1;
+                    remaining.put( child.getID(), left );
+                    if( left == 0 ){
+                        queue.add( index.indexOf( child.getID() ) );
+                    }
+                }
+            }
+            check( range( order, 0, order.length ).equals( queue ), label + ": topological order " + queue );
+
+            //the retained parents are the parents in list order with a
+            //retained edge from them, each kept once
+            int[] offsets  = index.getChildOffsets();
+            int[] children = index.getChildIndices();
+            boolean[] remove = new boolean[ children.length ];
+            for( int e = 0; e < remove.length; e++ ){
+                remove[ e ] = r.nextInt( 3 ) == 0;
+            }
+            int[][] retained = index.getRetainedParents( remove );
+            check( retained[ 0 ].length == index.getCapacity() + 1, label + ": retained offsets" );
+            for( int c = 0; c < index.getCapacity(); c++ ){
+                List<Integer> expected = new ArrayList<Integer>();
+                if( index.getNode( c ) != null ){
+                    for( int p : indices( index, index.getNode( c ).getParents() ) ){
+                        boolean kept = false;
+                        for( int e = offsets[ p ]; e < offsets[ p + 1 ]; e++ ){
+                            kept = kept || ( children[ e ] == c && !remove[ e ] );
+                        }
+                        if( kept && !expected.contains( p ) ){
+                            expected.add( p );
+                        }
+                    }
+                }
+                List<Integer> actual = range( retained[ 1 ], retained[ 0 ][ c ], retained[ 0 ][ c + 1 ] );
+                check( actual.equals( expected ), label + ": retained parents of " + c + " " + actual + " expected " + expected );
+            }
+            check( retained[ 1 ].length == retained[ 0 ][ index.getCapacity() ], label + ": retained parents length" );
+        }
+
+        //a cycle has no topological order
+        Graph cycle = new MapGraph( true );
+        for( String id : new String[]{ "a", "b", "c" } ){
+            cycle.addNode( new GraphNode( id, id ) );
+        }
+        cycle.addEdge( "a", "b" );
+        cycle.addEdge( "b", "c" );
+        cycle.addEdge( "c", "b" );
+        try{
+            new GraphIndex( cycle ).getTopologicalOrder();
+            check( false, "Order of a cycle" );
+        }
+        catch( RuntimeException e ){
+            check( e.getMessage().indexOf( "cycle" ) >= 0, "Unexpected exception " + e.getMessage() );
+        }
+        System.out.println( "TestGraphIndex passed" );
+    }
+}
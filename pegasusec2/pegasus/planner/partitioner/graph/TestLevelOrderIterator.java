@@ -0,0 +1,156 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.partitioner.graph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the level order traversal of random graphs against a breadth first
+ * search over the node lists, and the levels against the longest paths from
+ * the roots.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestLevelOrderIterator {
+
+    /**
+     * Returns the length of the longest path from a root to a node.
+     *
+     * @param node    the node.
+     * @param levels  the lengths computed so far, indexed by node ID.
+     *
+     * @return the length
+     */
+    private static int longestPath( GraphNode node, Map<String,Integer> levels ){
+        Integer level = levels.get( node.getID() );
+        if( level == null ){
+            level = 0;
+            for( GraphNode parent : node.getParents() ){
+                level = Math.max( level, longestPath( parent, levels ) + 1 );
+            }
+            levels.put( node.getID(), level );
+        }
+        return level;
+    }
+
+    /**
+     * Returns the IDs of the nodes in the order of a breadth first search
+     * that queues a node once all its parents are traversed.
+     *
+     * @param graph  the graph.
+     *
+     * @return the IDs
+     */
+    private static List<String> traverse( Graph graph ){
+        Map<String,Integer> remaining = new HashMap<String,Integer>();
+        LinkedList<GraphNode> queue = new LinkedList<GraphNode>();
+        for( Iterator<GraphNode> it = graph.nodeIterator(); it.hasNext(); ){
+            GraphNode node = it.next();
+            remaining.put( node.getID(), node.getParents().size() );
+            if( node.getParents().isEmpty() ){
+                queue.add( node );
+            }
+        }
+        List<String> order = new ArrayList<String>();
+        while( !queue.isEmpty() ){
+            GraphNode node = queue.removeFirst();
+            order.add( node.getID() );
+            for( GraphNode child : node.getChildren() ){
+                int left = remaining.get( child.getID() ) - 1;
+                remaining.put( child.getID(), left );
+                if( left == 0 ){
+                    queue.add( child );
+                }
+            }
+        }
+        return order;
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments, ignored.
+     */
+    public static void main( String[] args ){
+        Random r = new Random( 42 );
+        for( int run = 0; run < 300; run++ ){
+            int n = 1 + r.nextInt( 40 );
+            boolean compact = r.nextBoolean();
+            Graph graph = TestGraphIndex.createGraph( n, r, compact );
+            String label = "Run " + run + ( compact ? " compact" : "" );
+            List<String> expected = traverse( graph );
+            check( expected.size() == graph.size(), label + ": reference missed nodes" );
+            Map<String,Integer> levels = new HashMap<String,Integer>();
+
+            //the depth is only set if asked for
+            List<String> order = new ArrayList<String>();
+            for( Iterator<GraphNode> it = new LevelOrderIterator( graph ); it.hasNext(); ){
+                GraphNode node = it.next();
+                check( node.getDepth() == -1, label + ": depth of " + node.getID() + " set" );
+                order.add( node.getID() );
+            }
+            check( order.equals( expected ), label + ": order " + order + " expected " + expected );
+
+            //two traversals of the same graph interleaved, one setting the
+            //depth of the nodes as they are returned
+            GraphIndex index = new GraphIndex( graph );
+            LevelOrderIterator first  = new LevelOrderIterator( index, true );
+            LevelOrderIterator second = new LevelOrderIterator( graph, false );
+            check( first.getLevel() == -1 && first.getIndex() == -1, label + ": level before the first node" );
+            int previous = 0;
+            for( int k = 0; k < expected.size(); k++ ){
+                check( first.hasNext() && second.hasNext(), label + ": traversal ended after " + k + " nodes" );
+                GraphNode a = first.next();
+                GraphNode b = second.next();
+                check( a.getID().equals( expected.get( k ) ) && b == a, label + ": node " + k + " of the interleaved traversals" );
+                int level = longestPath( a, levels );
+                check( first.getLevel() == level && second.getLevel() == level,
+                       label + ": level of " + a.getID() + " " + first.getLevel() + " expected " + level );
+                check( a.getDepth() == level, label + ": depth of " + a.getID() );
+                check( index.getNode( first.getIndex() ) == a, label + ": index of " + a.getID() );
+                check( level >= previous, label + ": level decreases at " + a.getID() );
+                previous = level;
+            }
+            check( !first.hasNext() && !second.hasNext(), label + ": traversal goes on" );
+            try{
+                first.next();
+                check( false, label + ": node after the end" );
+            }
+            catch( NoSuchElementException e ){
+                //expected
+            }
+
+            //the graphs iterate in level order
+            order.clear();
+            for( Iterator<GraphNode> it = graph.iterator(); it.hasNext(); ){
+                order.add( it.next().getID() );
+            }
+            check( order.equals( expected ), label + ": iterator() order" );
+        }
+        System.out.println( "TestLevelOrderIterator passed" );
+    }
+}
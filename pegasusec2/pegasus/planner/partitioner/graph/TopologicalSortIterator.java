@@ -18,20 +18,21 @@
 package edu.isi.pegasus.planner.partitioner.graph;
 
 
-import java.util.List;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
 /**
  * Does a topological sort on the Partition.
  *
+ * The in degree of the nodes and the queue are held in int arrays indexed by
+ * a <code>GraphIndex</code> of the graph, so a traversal is O(V+E) and several
+ * traversals can walk the same graph at the same time.
+ *
  * @author Karan Vahi
  * @version $Revision$
  */
 
-public class TopologicalSortIterator implements Iterator
+public class TopologicalSortIterator implements Iterator<GraphNode>
 {
 
     /**
@@ -46,18 +47,28 @@ public class TopologicalSortIterator implements Iterator
     private int[] mInDegree;
 
     /**
-     * A Map that returns the index into mInDegree map for a particular node
-     * in graph. Maps a ID of the node to an int value, which is the index to
-     * to the array containing the in degree for each node.
+     * The dense index of the nodes in the graph, that is used as the index
+     * into the array containing the in degree for each node.
      *
      * @see #mInDegree
      */
-    private Map mIndexMap;
+    private GraphIndex mIndex;
+
+    /**
+     * The internal queue of node indices that contains the nodes to be
+     * traversed.
+     */
+    private int[] mQueue ;
 
     /**
-     * The internal list of nodes that contains the nodes to be traversed.
+     * The position of the next node in the queue.
      */
-    private List<GraphNode> mQueue ;
+    private int mHead;
+
+    /**
+     * The position after the last node in the queue.
+     */
+    private int mTail;
 
     /**
      * The number of nodes in the graph.
@@ -72,51 +83,34 @@ public class TopologicalSortIterator implements Iterator
     public TopologicalSortIterator( Graph graph ){
         mGraph = graph;
         initialize();
-
-        mOrder = mGraph.size();
-        mQueue = new LinkedList();
-        //add all the root nodes to queue first
-        for( Iterator it = this.mGraph.getRoots().iterator(); it.hasNext(); ){
-            mQueue.add( (GraphNode)it.next() );
-        }
     }
 
     /**
-     * Initializes the inDegree for each node of the partition.
+     * Initializes the inDegree for each node of the partition, and adds the
+     * root nodes to the queue.
      *
      */
     public void initialize(){
-        //build up a inDegree map for each node.
-        int order = mGraph.size();
-        mInDegree = new int[ order ];
-        mIndexMap = new HashMap( order );
-
-        int index = 0;
-        //each of the root nodes have in degree of 0
-        for ( Iterator it = mGraph.getRoots().iterator(); it.hasNext(); ){
-            GraphNode root = (GraphNode)it.next();
-            mIndexMap.put( root.getID(), new Integer( index ) );
-            mInDegree[ index++ ] = 0;
-        }
+        //build up a inDegree array for each node.
+        mIndex = new GraphIndex( mGraph );
+        mOrder = mIndex.size();
+        int capacity = mIndex.getCapacity();
+        mInDegree = new int[ capacity ];
+        mQueue = new int[ mOrder ];
+        mHead = 0;
+        mTail = 0;
 
-        //determine inDegree for other nodes
         //in degree for a node is the number of incoming edges/parents of a node
-        for( Iterator<GraphNode> it = mGraph.nodeIterator(); it.hasNext(); ){
-            GraphNode node = it.next();
-            if( node.getParents().isEmpty() ){
-                //node is a root. indegree already assigned
+        //each of the root nodes have in degree of 0 and go in the queue first
+        for( int index = 0; index < capacity; index++ ){
+            if( mIndex.getNode( index ) == null ){
                 continue;
             }
-
-            mIndexMap.put( node.getID(), new Integer( index) );
-            mInDegree[ index++ ] = node.getParents().size();
-        }
-
-        //sanity check
-        if( index != order){
-            throw new RuntimeException( "Index does not match order of partition " );
+            mInDegree[ index ] = mIndex.getInDegree( index );
+            if( mInDegree[ index ] == 0 ){
+                mQueue[ mTail++ ] = index;
+            }
         }
-
     }
 
     /**
@@ -125,34 +119,35 @@ public class TopologicalSortIterator implements Iterator
      * @return boolean
      */
     public boolean hasNext() {
-        return !mQueue.isEmpty();
+        return mHead < mTail;
     }
 
     /**
      * Returns the next node to be traversed
      *
-     * @return
+     * @return the node
      */
-    public Object next() {
-        GraphNode node = mQueue.remove( 0 );
-        String nodeID = node.getID();
+    public GraphNode next() {
+        if( mHead >= mTail ){
+            throw new NoSuchElementException();
+        }
+        int index = mQueue[ mHead++ ];
 
         //traverse all the children of the node
-        // GraphNode n = null;
-        for( Iterator<GraphNode> it = node.getChildren().iterator(); it.hasNext() ;){
-            GraphNode child = it.next();
-            String childID = child.getID();
+        int[] offsets  = mIndex.getChildOffsets();
+        int[] children = mIndex.getChildIndices();
+        for( int e = offsets[ index ]; e < offsets[ index + 1 ]; e++ ){
+            int child = children[ e ];
 
             //remove the edge from node to child by decrementing inDegree
-            int index = index(childID);
-             mInDegree[ index ] -= 1;
+            mInDegree[ child ] -= 1;
 
-            if( mInDegree[ index ] == 0 ){
+            if( mInDegree[ child ] == 0 ){
                 //add the node to the queue
-                mQueue.add( child );
+                mQueue[ mTail++ ] = child;
             }
         }
-        return node;
+        return mIndex.getNode( index );
     }
 
     /**
@@ -162,22 +157,5 @@ public class TopologicalSortIterator implements Iterator
         throw new UnsupportedOperationException("Not supported yet.");
     }
 
-
-
-    
-
-
-    /**
-     * Returns the index of a particular node. The index is used as an index into
-     * arrays.
-     *
-     * @param id  the id of the node.
-     *
-     * @return the index
-     */
-    private int index( String id ){
-        return ((Integer)mIndexMap.get( id )).intValue();
-    }
-
     
 }
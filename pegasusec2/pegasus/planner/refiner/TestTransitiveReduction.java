@@ -0,0 +1,264 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.refiner;
+
+import edu.isi.pegasus.planner.partitioner.graph.CSRGraph;
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the transitive reduction of random graphs against a reduction that
+ * checks every edge by searching the graph, for map and compact graphs and
+ * for chunk widths and thread counts that split the graphs into several
+ * chunks reduced in parallel. The levels that ReduceEdges assigns from a node
+ * are tested against the longest paths from the node.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestTransitiveReduction {
+
+    /**
+     * Creates a random acyclic graph. The nodes are added in a random order,
+     * so that the topological order differs from the order of the nodes, and
+     * the edges go from lower to higher numbers in a random order, with a few
+     * of them repeated.
+     *
+     * @param n        the number of nodes.
+     * @param density  the number of edges of a node, on average.
+     * @param r        the random number generator.
+     * @param compact  whether to create a <code>CSRGraph</code>, instead of a
+     *                 <code>MapGraph</code>.
+     *
+     * @return the graph
+     */
+    private static Graph createGraph( int n, int density, Random r, boolean compact ){
+        Graph graph = compact ? new CSRGraph() : new MapGraph( true );
+        List<Integer> ids = new ArrayList<Integer>();
+        for( int i = 0; i < n; i++ ){
+            ids.add( i );
+        }
+        Collections.shuffle( ids, r );
+        for( int i : ids ){
+            graph.addNode( new GraphNode( "ID" + i, "ID" + i ) );
+        }
+        List<int[]> edges = new ArrayList<int[]>();
+        for( int c = 1; c < n; c++ ){
+            for( int k = r.nextInt( 2 * density + 1 ); k > 0; k-- ){
+                //mostly near the child, sometimes from anywhere above
+                int p = r.nextInt( 4 ) == 0 ? r.nextInt( c ) : Math.max( 0, c - 1 - r.nextInt( 5 ) );
+                edges.add( new int[]{ p, c } );
+                if( r.nextInt( 20 ) == 0 ){
+                    edges.add( new int[]{ p, c } );
+                }
+            }
+        }
+        Collections.shuffle( edges, r );
+        for( int[] e : edges ){
+            graph.addEdge( "ID" + e[ 0 ], "ID" + e[ 1 ] );
+        }
+        return graph;
+    }
+
+    /**
+     * Returns the IDs of a list of nodes.
+     *
+     * @param nodes  the nodes.
+     *
+     * @return the IDs in list order
+     */
+    private static List<String> ids( List<GraphNode> nodes ){
+        List<String> result = new ArrayList<String>();
+        for( GraphNode node : nodes ){
+            result.add( node.getID() );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the IDs of a list of nodes in list order, each kept once, that
+     * have an edge in a set of edges with another node.
+     *
+     * @param nodes  the IDs of the nodes.
+     * @param other  the ID of the other node.
+     * @param edges  the edges, as parent ID and child ID joined by a space.
+     * @param child  whether the nodes are children of the other node, rather
+     *               than parents.
+     *
+     * @return the IDs
+     */
+    private static List<String> retained( List<String> nodes, String other, Set<String> edges, boolean child ){
+        List<String> result = new ArrayList<String>();
+        for( String id : nodes ){
+            String edge = child ? other + " " + id : id + " " + other;
+            if( edges.contains( edge ) && !result.contains( id ) ){
+                result.add( id );
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Adds the IDs of the nodes reachable from a node, including it.
+     *
+     * @param id         the ID of the node.
+     * @param children   the IDs of the children of each node.
+     * @param reachable  the IDs reached so far.
+     */
+    private static void reach( String id, Map<String,List<String>> children, Set<String> reachable ){
+        if( reachable.add( id ) ){
+            for( String child : children.get( id ) ){
+                reach( child, children, reachable );
+            }
+        }
+    }
+
+    /**
+     * Returns the number of edges on the longest path from a node to another.
+     *
+     * @param from      the ID of the first node.
+     * @param to        the ID of the other node.
+     * @param children  the IDs of the children of each node.
+     * @param lengths   the lengths computed so far, indexed by the ID of the
+     *                  first node.
+     *
+     * @return the length, or -1 if there is no path.
+     */
+    private static int longestPath( String from, String to, Map<String,List<String>> children, Map<String,Integer> lengths ){
+        Integer length = lengths.get( from );
+        if( length == null ){
+            length = from.equals( to ) ? 0 : -1;
+            for( String child : children.get( from ) ){
+                int rest = longestPath( child, to, children, lengths );
+                if( rest >= 0 ){
+                    length = Math.max( length, rest + 1 );
+                }
+            }
+            lengths.put( from, length );
+        }
+        return length;
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments, ignored.
+     */
+    @SuppressWarnings( "deprecation" )
+    public static void main( String[] args ){
+        Random r = new Random( 42 );
+        int[][] settings = { { 1, 64 }, { 4, 64 }, { 3, 100 }, { 2, TransitiveReduction.DEFAULT_CHUNK_WIDTH } };
+        for( int run = 0; run < 200; run++ ){
+            int n = 1 + r.nextInt( run % 4 == 0 ? 400 : 60 );
+            boolean compact = r.nextBoolean();
+            int[] setting = settings[ r.nextInt( settings.length ) ];
+            Graph graph = createGraph( n, 1 + r.nextInt( 3 ), r, compact );
+            String label = "Run " + run + ( compact ? " compact" : "" ) + " threads " + setting[ 0 ] + " width " + setting[ 1 ];
+
+            //the edges of the reduction, an edge being kept if its child is
+            //not reachable from another child of its parent
+            Map<String,List<String>> children = new HashMap<String,List<String>>();
+            Map<String,List<String>> parents  = new HashMap<String,List<String>>();
+            int before = 0;
+            for( Iterator<GraphNode> it = graph.nodeIterator(); it.hasNext(); ){
+                GraphNode node = it.next();
+                children.put( node.getID(), ids( node.getChildren() ) );
+                parents.put( node.getID(), ids( node.getParents() ) );
+                before += node.getChildren().size();
+            }
+            Set<String> expected = new HashSet<String>();
+            for( Map.Entry<String,List<String>> entry : children.entrySet() ){
+                for( String child : entry.getValue() ){
+                    Set<String> reachable = new HashSet<String>();
+                    for( String other : entry.getValue() ){
+                        if( !other.equals( child ) ){
+                            reach( other, children, reachable );
+                        }
+                    }
+                    if( !reachable.contains( child ) ){
+                        expected.add( entry.getKey() + " " + child );
+                    }
+                }
+            }
+
+            //the levels assigned from a node are the longest paths from it
+            GraphNode root = graph.getNode( "ID" + r.nextInt( n ) );
+            new ReduceEdges().assignLevels( graph, root );
+            for( Iterator<GraphNode> it = graph.nodeIterator(); it.hasNext(); ){
+                GraphNode node = it.next();
+                int depth = longestPath( root.getID(), node.getID(), children, new HashMap<String,Integer>() );
+                check( node.getDepth() == depth, label + ": depth of " + node.getID() + " from " + root.getID() + " " + node.getDepth() + " expected " + depth );
+            }
+
+            int removed = new TransitiveReduction( setting[ 0 ], setting[ 1 ] ).reduce( graph );
+            check( removed == before - expected.size(), label + ": " + removed + " edges removed, expected " + ( before - expected.size() ) );
+            check( graph.size() == n, label + ": " + graph.size() + " nodes" );
+            for( Iterator<GraphNode> it = graph.nodeIterator(); it.hasNext(); ){
+                GraphNode node = it.next();
+                String id = node.getID();
+                List<String> c = retained( children.get( id ), id, expected, true );
+                List<String> p = retained( parents.get( id ), id, expected, false );
+                check( ids( node.getChildren() ).equals( c ), label + ": children of " + id + " " + ids( node.getChildren() ) + " expected " + c );
+                check( ids( node.getParents() ).equals( p ), label + ": parents of " + id + " " + ids( node.getParents() ) + " expected " + p );
+            }
+
+            //a reduced graph has nothing left to remove
+            check( new TransitiveReduction( setting[ 0 ], setting[ 1 ] ).reduce( graph ) == 0, label + ": second reduction removed edges" );
+        }
+
+        //a graph with a cycle cannot be reduced
+        Graph cycle = new MapGraph( true );
+        for( String id : new String[]{ "a", "b", "c" } ){
+            cycle.addNode( new GraphNode( id, id ) );
+        }
+        cycle.addEdge( "a", "b" );
+        cycle.addEdge( "b", "c" );
+        cycle.addEdge( "c", "b" );
+        try{
+            new TransitiveReduction().reduce( cycle );
+            check( false, "Reduction of a cycle" );
+        }
+        catch( RuntimeException e ){
+            check( e.getMessage().indexOf( "cycle" ) >= 0, "Unexpected exception " + e.getMessage() );
+        }
+
+        //the chunk width is bounded
+        for( int width : new int[]{ 63, TransitiveReduction.DEFAULT_CHUNK_WIDTH + 1 } ){
+            try{
+                new TransitiveReduction( 1, width );
+                check( false, "Chunk width " + width + " accepted" );
+            }
+            catch( IllegalArgumentException e ){
+                //expected
+            }
+        }
+        System.out.println( "TestTransitiveReduction passed" );
+    }
+}
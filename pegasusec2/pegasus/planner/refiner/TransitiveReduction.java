@@ -0,0 +1,482 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.refiner;
+
+import edu.isi.pegasus.planner.partitioner.graph.CSRGraph;
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphAnalytics;
+import edu.isi.pegasus.planner.partitioner.graph.GraphIndex;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Computes the transitive reduction of a workflow. An edge u -> v is
+ * redundant if v is reachable from another child of u, and is removed along
+ * with any repeated edges.
+ *
+ * The nodes are numbered in topological order, and the set of descendants of
+ * each node is built in reverse topological order as the union of the
+ * descendants of its children, before the children themselves are added. An
+ * edge u -> v is redundant if v is already in that union.
+ *
+ * The descendant sets are compressed in the manner of roaring bitmaps. The
+ * positions are split into chunks of at most 65536, and within a chunk a set
+ * is held as a sorted array of 16 bit offsets while it is sparse, and as a
+ * bitmap once it is dense. The chunks are independent of each other, and are
+ * reduced in parallel, each with its own sets. Only the chunks being reduced
+ * are held in memory, and the set of a node is dropped as soon as all its
+ * parents have been visited. A node with a single child shares the set of
+ * the child instead of copying it.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TransitiveReduction {
+
+    /**
+     * The default number of positions in a chunk.
+     */
+    public static final int DEFAULT_CHUNK_WIDTH = 65536;
+
+    /**
+     * The number of threads the chunks are reduced by.
+     */
+    private final int mThreads;
+
+    /**
+     * The number of positions in a chunk.
+     */
+    private final int mChunkWidth;
+
+    /**
+     * The default constructor. The chunks are reduced by as many threads as
+     * there are processors.
+     */
+    public TransitiveReduction(){
+        this( Runtime.getRuntime().availableProcessors(), DEFAULT_CHUNK_WIDTH );
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param threads     the number of threads the chunks are reduced by. It
+     *                    bounds the number of chunks held in memory.
+     * @param chunkWidth  the number of positions in a chunk, at most 65536.
+     */
+    public TransitiveReduction( int threads, int chunkWidth ){
+        if( chunkWidth < 64 || chunkWidth > DEFAULT_CHUNK_WIDTH ){
+            throw new IllegalArgumentException( "Chunk width has to be between 64 and " + DEFAULT_CHUNK_WIDTH + ": " + chunkWidth );
+        }
+        mThreads    = Math.max( threads, 1 );
+        mChunkWidth = chunkWidth;
+    }
+
+    /**
+     * Removes the redundant edges from a graph.
+     *
+     * @param graph  the graph.
+     *
+     * @return the number of edges removed.
+     */
+    public int reduce( Graph graph ){
+        GraphIndex index = new GraphIndex( graph );
+        boolean[] redundant = findRedundantEdges( index );
+
+        int count = 0;
+        for( boolean r : redundant ){
+            if( r ){
+                count++;
+            }
+        }
+        if( count == 0 ){
+            return 0;
+        }
+
+        if( graph instanceof CSRGraph ){
+            return ( (CSRGraph)graph ).removeEdges( redundant );
+        }
+
+        //rewrite the parents and children of the nodes
+        int[] offsets  = index.getChildOffsets();
+        int[] children = index.getChildIndices();
+        int[][] parents = index.getRetainedParents( redundant );
+        for( int i = 0; i < index.getCapacity(); i++ ){
+            GraphNode node = index.getNode( i );
+            if( node == null ){
+                continue;
+            }
+            List<GraphNode> retainedChildren = new LinkedList<GraphNode>();
+            for( int e = offsets[ i ]; e < offsets[ i + 1 ]; e++ ){
+                if( !redundant[ e ] ){
+                    retainedChildren.add( index.getNode( children[ e ] ) );
+                }
+            }
+            List<GraphNode> retainedParents = new LinkedList<GraphNode>();
+            for( int j = parents[ 0 ][ i ]; j < parents[ 0 ][ i + 1 ]; j++ ){
+                retainedParents.add( index.getNode( parents[ 1 ][ j ] ) );
+            }
+            node.setChildren( retainedChildren );
+            node.setParents( retainedParents );
+        }
+        GraphAnalytics.getInstance( graph ).invalidate();
+        return count;
+    }
+
+    /**
+     * Finds the redundant edges of a graph.
+     *
+     * @param index  the index of the graph.
+     *
+     * @return whether each edge is redundant, indexed by the position of the
+     *         edge in the child arrays of the index.
+     *
+     * @throws RuntimeException if the graph has a cycle.
+     */
+    public boolean[] findRedundantEdges( final GraphIndex index ){
+        final int[] order = index.getTopologicalOrder();
+        final int[] position = new int[ index.getCapacity() ];
+        for( int p = 0; p < order.length; p++ ){
+            position[ order[ p ] ] = p;
+        }
+        final boolean[] redundant = new boolean[ index.getChildIndices().length ];
+
+        int chunks = ( order.length + mChunkWidth - 1 ) / mChunkWidth;
+        int threads = Math.min( mThreads, chunks );
+        if( threads <= 1 ){
+            for( int lo = 0; lo < order.length; lo += mChunkWidth ){
+                reduceChunk( index, order, position, lo, Math.min( lo + mChunkWidth, order.length ), redundant );
+            }
+            return redundant;
+        }
+
+        //each chunk only marks the edges into it, so the chunks
+        //write to disjoint parts of the redundant array
+        ExecutorService executor = Executors.newFixedThreadPool( threads );
+        try{
+            List<Future<Object>> results = new ArrayList<Future<Object>>( chunks );
+            for( int start = 0; start < order.length; start += mChunkWidth ){
+                final int lo = start;
+                final int hi = Math.min( start + mChunkWidth, order.length );
+                results.add( executor.submit( new Callable<Object>(){
+                    public Object call(){
+                        reduceChunk( index, order, position, lo, hi, redundant );
+                        return null;
+                    }
+                }));
+            }
+            for( Future<Object> result : results ){
+                result.get();
+            }
+        }
+        catch( InterruptedException e ){
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while reducing edges", e );
+        }
+        catch( ExecutionException e ){
+            throw new RuntimeException( "Unable to reduce edges", e.getCause() );
+        }
+        finally{
+            executor.shutdownNow();
+        }
+        return redundant;
+    }
+
+    /**
+     * Marks the redundant edges into the nodes at a range of positions.
+     *
+     * @param index      the index of the graph.
+     * @param order      the nodes in topological order.
+     * @param position   the position of each node in the order.
+     * @param lo         the first position in the chunk.
+     * @param hi         the position after the last one in the chunk.
+     * @param redundant  the redundant edges to be marked.
+     */
+    private void reduceChunk( GraphIndex index, int[] order, int[] position,
+                              int lo, int hi, boolean[] redundant ){
+        int width = hi - lo;
+        int[] offsets  = index.getChildOffsets();
+        int[] children = index.getChildIndices();
+
+        //the descendants of the nodes within the chunk, indexed by position.
+        //the nodes after the chunk cannot reach into it
+        Container[] descendants = new Container[ hi ];
+        int[] remaining = new int[ hi ];
+        for( int p = 0; p < hi; p++ ){
+            remaining[ p ] = index.getInDegree( order[ p ] );
+        }
+        int[] seen = new int[ width ];
+
+        for( int p = hi - 1; p >= 0; p-- ){
+            int node = order[ p ];
+
+            //the union of the descendants of the children
+            Container union = null;
+            boolean shared = false;
+            for( int e = offsets[ node ]; e < offsets[ node + 1 ]; e++ ){
+                int c = position[ children[ e ] ];
+                if( c >= hi || descendants[ c ] == null || descendants[ c ] == union ){
+                    continue;
+                }
+                if( union == null ){
+                    union  = descendants[ c ];
+                    shared = true;
+                }
+                else{
+                    if( shared ){
+                        union  = union.copy();
+                        shared = false;
+                    }
+                    union.or( descendants[ c ] );
+                }
+            }
+
+            //an edge into the chunk is redundant if the child is already
+            //reachable, or if it repeats an earlier edge
+            boolean hasChildren = false;
+            for( int e = offsets[ node ]; e < offsets[ node + 1 ]; e++ ){
+                int c = position[ children[ e ] ];
+                if( c < lo || c >= hi ){
+                    continue;
+                }
+                hasChildren = true;
+                if( seen[ c - lo ] == p + 1 ||
+                    ( union != null && union.contains( c - lo ) ) ){
+                    redundant[ e ] = true;
+                }
+                seen[ c - lo ] = p + 1;
+            }
+
+            //the descendants of the node are only needed by its parents
+            if( remaining[ p ] > 0 ){
+                if( hasChildren ){
+                    if( union == null ){
+                        union = new Container( width );
+                    }
+                    else if( shared ){
+                        union = union.copy();
+                    }
+                    for( int e = offsets[ node ]; e < offsets[ node + 1 ]; e++ ){
+                        int c = position[ children[ e ] ];
+                        if( c >= lo && c < hi ){
+                            union.add( c - lo );
+                        }
+                    }
+                }
+                descendants[ p ] = union;
+            }
+
+            //drop the descendants of the children that have no parents left
+            for( int e = offsets[ node ]; e < offsets[ node + 1 ]; e++ ){
+                int c = position[ children[ e ] ];
+                if( c < hi && --remaining[ c ] == 0 ){
+                    descendants[ c ] = null;
+                }
+            }
+        }
+    }
+
+    /**
+     * A set of offsets within a chunk. It is a sorted array of offsets while
+     * it is sparse, and a bitmap once the array would be larger than the
+     * bitmap.
+     */
+    private static final class Container {
+
+        /**
+         * The number of offsets in the chunk.
+         */
+        private final int mWidth;
+
+        /**
+         * The sorted offsets, or null if the set is a bitmap.
+         */
+        private char[] mValues;
+
+        /**
+         * The number of offsets in the array.
+         */
+        private int mSize;
+
+        /**
+         * The bitmap, or null if the set is an array.
+         */
+        private long[] mBits;
+
+        /**
+         * The overloaded constructor. The set is empty.
+         *
+         * @param width  the number of offsets in the chunk.
+         */
+        Container( int width ){
+            mWidth  = width;
+            mValues = new char[ 4 ];
+        }
+
+        /**
+         * Returns a copy of the set.
+         *
+         * @return the copy
+         */
+        Container copy(){
+            Container result = new Container( mWidth );
+            if( mBits != null ){
+                result.mValues = null;
+                result.mBits   = mBits.clone();
+            }
+            else{
+                result.mValues = Arrays.copyOf( mValues, Math.max( mSize, 4 ) );
+                result.mSize   = mSize;
+            }
+            return result;
+        }
+
+        /**
+         * Returns whether an offset is in the set.
+         *
+         * @param value  the offset.
+         *
+         * @return boolean
+         */
+        boolean contains( int value ){
+            if( mBits != null ){
+                return ( mBits[ value >>> 6 ] & ( 1L << value ) ) != 0;
+            }
+            return Arrays.binarySearch( mValues, 0, mSize, (char)value ) >= 0;
+        }
+
+        /**
+         * Adds an offset to the set.
+         *
+         * @param value  the offset.
+         */
+        void add( int value ){
+            if( mBits != null ){
+                mBits[ value >>> 6 ] |= 1L << value;
+                return;
+            }
+            int at = Arrays.binarySearch( mValues, 0, mSize, (char)value );
+            if( at >= 0 ){
+                return;
+            }
+            at = -at - 1;
+            if( mSize == mValues.length ){
+                if( 2 * mSize > getArrayLimit() ){
+                    toBitmap();
+                    mBits[ value >>> 6 ] |= 1L << value;
+                    return;
+                }
+                mValues = Arrays.copyOf( mValues, 2 * mSize );
+            }
+            System.arraycopy( mValues, at, mValues, at + 1, mSize - at );
+            mValues[ at ] = (char)value;
+            mSize++;
+        }
+
+        /**
+         * Adds the offsets of another set to the set.
+         *
+         * @param other  the other set.
+         */
+        void or( Container other ){
+            if( other.mBits != null ){
+                if( mBits == null ){
+                    long[] bits = other.mBits.clone();
+                    for( int i = 0; i < mSize; i++ ){
+                        bits[ mValues[ i ] >>> 6 ] |= 1L << mValues[ i ];
+                    }
+                    mBits   = bits;
+                    mValues = null;
+                    mSize   = 0;
+                }
+                else{
+                    for( int i = 0; i < mBits.length; i++ ){
+                        mBits[ i ] |= other.mBits[ i ];
+                    }
+                }
+                return;
+            }
+            if( mBits != null ){
+                for( int i = 0; i < other.mSize; i++ ){
+                    mBits[ other.mValues[ i ] >>> 6 ] |= 1L << other.mValues[ i ];
+                }
+                return;
+            }
+
+            //merge the two sorted arrays
+            char[] merged = new char[ mSize + other.mSize ];
+            int i = 0, j = 0, k = 0;
+            while( i < mSize && j < other.mSize ){
+                char a = mValues[ i ], b = other.mValues[ j ];
+                if( a <= b ){
+                    merged[ k++ ] = a;
+                    i++;
+                    if( a == b ){
+                        j++;
+                    }
+                }
+                else{
+                    merged[ k++ ] = b;
+                    j++;
+                }
+            }
+            while( i < mSize ){
+                merged[ k++ ] = mValues[ i++ ];
+            }
+            while( j < other.mSize ){
+                merged[ k++ ] = other.mValues[ j++ ];
+            }
+            mValues = merged;
+            mSize   = k;
+            if( mSize > getArrayLimit() ){
+                toBitmap();
+            }
+        }
+
+        /**
+         * Returns the largest number of offsets held in an array, which is
+         * where the array takes as much memory as the bitmap.
+         *
+         * @return the limit
+         */
+        private int getArrayLimit(){
+            return Math.max( mWidth / 16, 4 );
+        }
+
+        /**
+         * Converts the set from an array to a bitmap.
+         */
+        private void toBitmap(){
+            long[] bits = new long[ ( mWidth + 63 ) >>> 6 ];
+            for( int i = 0; i < mSize; i++ ){
+                bits[ mValues[ i ] >>> 6 ] |= 1L << mValues[ i ];
+            }
+            mBits   = bits;
+            mValues = null;
+            mSize   = 0;
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site;
+
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+
+import java.util.List;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Picks the site that minimizes the estimated finish time of a job, for the
+ * list based site selectors i.e. HEFT and Deco. If a job has at least a
+ * threshold number of candidate sites, the estimates are computed in
+ * parallel on a <code>ForkJoinPool</code>, else one after another.
+ *
+ * The estimates of the candidate sites are first all computed into an array,
+ * and the best site is then picked in the order of the candidate sites, with
+ * ties going to the earlier site. The result is thus the same as that of the
+ * sequential evaluation, irrespective of the number of threads.
+ *
+ * An estimator may tentatively schedule the job on the site it is asked
+ * about, but must not modify any other site or the scheduled jobs, as the
+ * sites are evaluated concurrently.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class CandidateSiteEvaluator {
+
+    /**
+     * The number of candidate sites evaluated by a single task.
+     */
+    public static final int SITES_PER_TASK = 8;
+
+    /**
+     * Estimates the start and finish time of a job on a site.
+     */
+    public interface Estimator {
+
+        /**
+         * Estimates the start and finish time of a job on a site.
+         *
+         * @param node  the node that is being scheduled
+         * @param site  the site for which the finish time is reqd.
+         *
+         * @return  long[0] the estimated start time.
+         *          long[1] the estimated finish time.
+         */
+        public long[] estimate( GraphNode node, String site );
+    }
+
+    /**
+     * The minimum number of candidate sites for a job to be evaluated in
+     * parallel.
+     */
+    private int mThreshold;
+
+    /**
+     * The pool the candidate sites are evaluated on. null if all evaluations
+     * are sequential.
+     */
+    private ForkJoinPool mPool;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param parallelism  the number of threads to use.
+     * @param threshold    the minimum number of candidate sites for a job
+     *                     to be evaluated in parallel.
+     */
+    public CandidateSiteEvaluator( int parallelism, int threshold ){
+        mThreshold = threshold;
+        mPool      = ( parallelism > 1 && threshold > 0 ) ? new ForkJoinPool( parallelism ) : null;
+    }
+
+    /**
+     * Returns whether the candidate sites of some jobs are evaluated in
+     * parallel.
+     *
+     * @return boolean
+     */
+    public boolean isParallel(){
+        return mPool != null;
+    }
+
+    /**
+     * Evaluates the candidate sites of a job, and returns the one with the
+     * earliest estimated finish time.
+     *
+     * @param node       the node that is being scheduled.
+     * @param sites      the candidate sites.
+     * @param estimator  the estimator of the start and finish times.
+     * @param result     array to hold the estimated start and finish time on
+     *                   the picked site.
+     *
+     * @return the index of the picked site, or -1 if there are no sites.
+     */
+    public int evaluate( GraphNode node, List<String> sites, Estimator estimator, long[] result ){
+        int n = sites.size();
+        long[][] estimates = new long[ n ][];
+        if( mPool == null || n < mThreshold ){
+            for( int i = 0; i < n; i++ ){
+                estimates[ i ] = estimator.estimate( node, sites.get( i ) );
+            }
+        }
+        else{
+            mPool.invoke( new Evaluation( node, sites, estimator, estimates, 0, n ) );
+        }
+
+        //pick in the order of the sites, so that ties go to the earlier site
+        int best = -1;
+        for( int i = 0; i < n; i++ ){
+            if( best == -1 || estimates[ best ][ 1 ] > estimates[ i ][ 1 ] ){
+                best = i;
+            }
+        }
+        if( best != -1 ){
+            result[ 0 ] = estimates[ best ][ 0 ];
+            result[ 1 ] = estimates[ best ][ 1 ];
+        }
+        return best;
+    }
+
+    /**
+     * Shuts down the threads of the evaluator.
+     */
+    public void shutdown(){
+        if( mPool != null ){
+            mPool.shutdown();
+            mPool = null;
+        }
+    }
+
+    /**
+     * The evaluation of a range of candidate sites.
+     */
+    private static class Evaluation extends RecursiveAction {
+
+        /**
+         * The serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The node that is being scheduled.
+         */
+        private final GraphNode mNode;
+
+        /**
+         * The candidate sites.
+         */
+        private final List<String> mSites;
+
+        /**
+         * The estimator of the start and finish times.
+         */
+        private final Estimator mEstimator;
+
+        /**
+         * The estimates indexed by the candidate site.
+         */
+        private final long[][] mEstimates;
+
+        /**
+         * The index of the first site to evaluate.
+         */
+        private final int mFrom;
+
+        /**
+         * The index after the last site to evaluate.
+         */
+        private final int mTo;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param node       the node that is being scheduled.
+         * @param sites      the candidate sites.
+         * @param estimator  the estimator of the start and finish times.
+         * @param estimates  the estimates indexed by the candidate site.
+         * @param from       the index of the first site to evaluate.
+         * @param to         the index after the last site to evaluate.
+         */
+        public Evaluation( GraphNode node, List<String> sites, Estimator estimator,
+                           long[][] estimates, int from, int to ){
+            mNode      = node;
+            mSites     = sites;
+            mEstimator = estimator;
+            mEstimates = estimates;
+            mFrom      = from;
+            mTo        = to;
+        }
+
+        /**
+         * Evaluates the range of sites, splitting it if it is large.
+         */
+        protected void compute(){
+            if( mTo - mFrom <= SITES_PER_TASK ){
+                for( int i = mFrom; i < mTo; i++ ){
+                    mEstimates[ i ] = mEstimator.estimate( mNode, mSites.get( i ) );
+                }
+                return;
+            }
+            int middle = ( mFrom + mTo ) >>> 1;
+            invokeAll( new Evaluation( mNode, mSites, mEstimator, mEstimates, mFrom, middle ),
+                       new Evaluation( mNode, mSites, mEstimator, mEstimates, middle, mTo ) );
+        }
+    }
+}
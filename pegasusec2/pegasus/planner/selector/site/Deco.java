@@ -25,6 +25,7 @@ import edu.isi.pegasus.common.logging.LogManager;
 
 import edu.isi.pegasus.planner.selector.site.deco.DecoBag;
 import edu.isi.pegasus.planner.selector.site.deco.Algorithm;
+import edu.isi.pegasus.planner.selector.site.deco.SimulationResult;
 
 import edu.isi.pegasus.planner.partitioner.graph.Graph;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
@@ -91,7 +92,7 @@ public class Deco extends Abstract {
      *                  execution sites that can be used.
      */
     public void mapWorkflow( ADag workflow, List sites ){
-        this.mapWorkflow(  Adapter.convert( workflow ), sites, workflow.getLabel() );
+        this.mapWorkflow(  Adapter.convert( workflow, true ), sites, workflow.getLabel() );
     }
     
     /**
@@ -125,8 +126,19 @@ public class Deco extends Abstract {
         mDecoImpl.schedule( workflow, sites, label );
 
         //get the makespan of the workflow
-        mLogger.log( "Makespan of scheduled workflow is " + mDecoImpl.getMakespan() ,
+        mLogger.log( "Cost of the instance types for the workflow is " + mDecoImpl.getCost() ,
                      LogManager.DEBUG_MESSAGE_LEVEL );
+        mLogger.log( "Makespan of scheduled workflow is " + mDecoImpl.getMakespan() +
+                     " seconds at a billed cost of " + mDecoImpl.getBilledCost() + " dollars on " +
+                     mDecoImpl.getPacking().getInstanceCount() + " instances",
+                     LogManager.INFO_MESSAGE_LEVEL );
+
+        //replay the schedule to check the deadline probability
+        SimulationResult simulation = mDecoImpl.simulate( workflow );
+        if( simulation != null ){
+            mLogger.log( "Simulation of scheduled workflow " + simulation ,
+                         LogManager.INFO_MESSAGE_LEVEL );
+        }
 
         //iterate through the jobs and just set the site handle
         //accordingly
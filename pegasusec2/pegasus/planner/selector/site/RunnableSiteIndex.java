@@ -0,0 +1,336 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site;
+
+import edu.isi.pegasus.planner.catalog.classes.SysInfo;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.catalog.transformation.Mapper;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
+
+import edu.isi.pegasus.planner.classes.Job;
+
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable index of the sites where the jobs of a workflow can run, built
+ * once per planning run for the list based site selectors i.e. HEFT and Deco.
+ *
+ * For each transformation of the workflow, the transformation mapper and the
+ * site store are queried once, and the runnable sites are recorded together
+ * with their instance types and the transformation catalog entry picked for
+ * each site. For each job, the expected runtime on each runnable site is
+ * resolved once into an <code>int[]</code> aligned with the runnable sites of
+ * its transformation. The scheduling loops then only do array lookups,
+ * instead of catalog queries and list allocations for every (job, site) pair.
+ *
+ * The runnable sites of a transformation are also bucketed by instance type,
+ * for the selectors that schedule a job only on sites of a particular type.
+ * Sites without an instance type are in a bucket of their own. The position
+ * of each runnable site of a transformation is kept in a map, so that the
+ * runtime of a job on a given site is found with one lookup.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class RunnableSiteIndex {
+
+    /**
+     * The bucket of the sites that have no instance type.
+     */
+    private static final int NO_TYPE = SysInfo.InstanceType.values().length;
+
+    /**
+     * The sites of a transformation that cannot run anywhere.
+     */
+    private static final String[] NO_SITES = new String[ 0 ];
+
+    /**
+     * Resolves the expected runtime of a job on a site.
+     */
+    public interface RuntimeEstimator {
+
+        /**
+         * Returns the expected runtime of a job.
+         *
+         * @param job    the job.
+         * @param entry  the transformation catalog entry for the site.
+         *
+         * @return the runtime in seconds.
+         */
+        public int getExpectedRuntime( Job job, TransformationCatalogEntry entry );
+    }
+
+    /**
+     * The runnable sites of each transformation, indexed by the complete
+     * name of the transformation.
+     */
+    private final Map<String,Transformation> mTransformations;
+
+    /**
+     * The runtimes of each job on the runnable sites of its transformation,
+     * indexed by the id of the job's node.
+     */
+    private final Map<String,int[]> mRuntimes;
+
+    /**
+     * The instance type of each candidate site. A site without an instance
+     * type maps to null.
+     */
+    private final Map<String,SysInfo.InstanceType> mSiteTypes;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param workflow   the workflow whose jobs are indexed.
+     * @param sites      the list of candidate sites.
+     * @param mapper     the transformation mapper.
+     * @param store      the site store.
+     * @param estimator  resolves the runtime of a job on a site.
+     */
+    public RunnableSiteIndex( Graph workflow, List sites, Mapper mapper, SiteStore store,
+                              RuntimeEstimator estimator ){
+        mSiteTypes = new HashMap<String,SysInfo.InstanceType>();
+        for( Iterator it = sites.iterator(); it.hasNext(); ){
+            String site = (String)it.next();
+            SiteCatalogEntry entry = store.lookup( site );
+            mSiteTypes.put( site, ( entry == null ) ? null : entry.getInstanceType() );
+        }
+
+        mTransformations = new HashMap<String,Transformation>();
+        mRuntimes        = new HashMap<String,int[]>();
+        for( Iterator it = workflow.nodeIterator(); it.hasNext(); ){
+            GraphNode node = (GraphNode)it.next();
+            Job job = (Job)node.getContent();
+            Transformation t = mTransformations.get( job.getCompleteTCName() );
+            if( t == null ){
+                t = new Transformation( job, sites, mapper );
+                mTransformations.put( job.getCompleteTCName(), t );
+            }
+
+            int[] runtimes = new int[ t.mSites.length ];
+            for( int i = 0; i < runtimes.length; i++ ){
+                try{
+                    runtimes[ i ] = estimator.getExpectedRuntime( job, t.mEntries[ i ] );
+                }
+                catch( RuntimeException e ){
+                    //only an error if the job is considered for the site
+                    runtimes[ i ] = -1;
+                }
+            }
+            mRuntimes.put( node.getID(), runtimes );
+        }
+    }
+
+    /**
+     * Returns the sites where a job can run. The returned array should not be
+     * modified.
+     *
+     * @param job  the job.
+     *
+     * @return the sites, empty if the job cannot run anywhere.
+     */
+    public String[] getRunnableSites( Job job ){
+        Transformation t = mTransformations.get( job.getCompleteTCName() );
+        return ( t == null ) ? NO_SITES : t.mSites;
+    }
+
+    /**
+     * Returns the sites of a particular instance type where a job can run.
+     * The returned array should not be modified.
+     *
+     * @param job   the job.
+     * @param type  the instance type, or null for the sites with no type.
+     *
+     * @return the sites, empty if the job cannot run on a site of the type.
+     */
+    public String[] getRunnableSites( Job job, SysInfo.InstanceType type ){
+        Transformation t = mTransformations.get( job.getCompleteTCName() );
+        return ( t == null ) ? NO_SITES : t.mSitesByType[ bucket( type ) ];
+    }
+
+    /**
+     * Returns the expected runtimes of a job, aligned with the sites returned
+     * by getRunnableSites( Job ). The returned array should not be modified.
+     *
+     * @param id  the id of the job's node.
+     *
+     * @return the runtimes in seconds, or null if the job is not indexed. A
+     *         runtime that could not be resolved is -1.
+     */
+    public int[] getRuntimes( String id ){
+        return mRuntimes.get( id );
+    }
+
+    /**
+     * Returns the expected runtime of a job on a site.
+     *
+     * @param job   the job.
+     * @param id    the id of the job's node.
+     * @param site  the site.
+     *
+     * @return the runtime in seconds.
+     *
+     * @throws RuntimeException if the job cannot run on the site, or its
+     *         runtime on the site could not be resolved.
+     */
+    public int getRuntime( Job job, String id, String site ){
+        Transformation t = mTransformations.get( job.getCompleteTCName() );
+        int[] runtimes = mRuntimes.get( id );
+        int i = ( t == null || runtimes == null ) ? -1 : t.indexOf( site );
+        if( i == -1 ){
+            throw new RuntimeException( "Job " + id + " cannot run on site " + site );
+        }
+        if( runtimes[ i ] < 0 ){
+            throw new RuntimeException( "Invalid or no runtime specified for job " + id + " on site " + site );
+        }
+        return runtimes[ i ];
+    }
+
+    /**
+     * Returns the transformation catalog entry picked for a job on a site.
+     *
+     * @param job   the job.
+     * @param site  the site.
+     *
+     * @return the entry, or null if the job cannot run on the site.
+     */
+    public TransformationCatalogEntry getEntry( Job job, String site ){
+        Transformation t = mTransformations.get( job.getCompleteTCName() );
+        int i = ( t == null ) ? -1 : t.indexOf( site );
+        return ( i == -1 ) ? null : t.mEntries[ i ];
+    }
+
+    /**
+     * Returns the instance type of a candidate site.
+     *
+     * @param site  the site.
+     *
+     * @return the instance type, or null if the site has none.
+     */
+    public SysInfo.InstanceType getInstanceType( String site ){
+        return mSiteTypes.get( site );
+    }
+
+    /**
+     * Returns the number of transformations indexed.
+     *
+     * @return the number of transformations
+     */
+    public int getTransformationCount(){
+        return mTransformations.size();
+    }
+
+    /**
+     * Returns the bucket of an instance type.
+     *
+     * @param type  the instance type, or null.
+     *
+     * @return the bucket
+     */
+    private static int bucket( SysInfo.InstanceType type ){
+        return ( type == null ) ? NO_TYPE : type.ordinal();
+    }
+
+    /**
+     * The runnable sites of a transformation.
+     */
+    private class Transformation {
+
+        /**
+         * The runnable sites in the order returned by the mapper.
+         */
+        private final String[] mSites;
+
+        /**
+         * The transformation catalog entry picked for each site.
+         */
+        private final TransformationCatalogEntry[] mEntries;
+
+        /**
+         * The runnable sites indexed by the bucket of their instance type.
+         */
+        private final String[][] mSitesByType;
+
+        /**
+         * The position of each runnable site in the array of sites.
+         */
+        private final Map<String,Integer> mPositions;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param job     a job of the transformation.
+         * @param sites   the list of candidate sites.
+         * @param mapper  the transformation mapper.
+         */
+        public Transformation( Job job, List sites, Mapper mapper ){
+            List runnable = mapper.getSiteList( job.getTXNamespace(),
+                                                job.getTXName(),
+                                                job.getTXVersion(),
+                                                sites );
+            int n = ( runnable == null ) ? 0 : runnable.size();
+            mSites     = new String[ n ];
+            mEntries   = new TransformationCatalogEntry[ n ];
+            mPositions = new HashMap<String,Integer>( 2 * n );
+            int[] counts = new int[ NO_TYPE + 1 ];
+            for( int i = 0; i < n; i++ ){
+                mSites[ i ] = (String)runnable.get( i );
+                if( !mPositions.containsKey( mSites[ i ] ) ){
+                    mPositions.put( mSites[ i ], i );
+                }
+                List entries = mapper.getTCList( job.getTXNamespace(),
+                                                 job.getTXName(),
+                                                 job.getTXVersion(),
+                                                 mSites[ i ] );
+                //pick the first one for time being
+                mEntries[ i ] = ( TransformationCatalogEntry ) entries.get( 0 );
+                counts[ bucket( mSiteTypes.get( mSites[ i ] ) ) ]++;
+            }
+
+            mSitesByType = new String[ NO_TYPE + 1 ][];
+            for( int b = 0; b < mSitesByType.length; b++ ){
+                mSitesByType[ b ] = new String[ counts[ b ] ];
+                counts[ b ] = 0;
+            }
+            for( int i = 0; i < n; i++ ){
+                int b = bucket( mSiteTypes.get( mSites[ i ] ) );
+                mSitesByType[ b ][ counts[ b ]++ ] = mSites[ i ];
+            }
+        }
+
+        /**
+         * Returns the position of a site in the array of runnable sites.
+         *
+         * @param site  the site.
+         *
+         * @return the position, or -1 if the transformation cannot run on
+         *         the site.
+         */
+        public int indexOf( String site ){
+            Integer i = mPositions.get( site );
+            return ( i == null ) ? -1 : i.intValue();
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site;
+
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests that the candidate site evaluator picks the same site as a
+ * sequential scan, whether or not the sites are evaluated in parallel.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestCandidateSiteEvaluator {
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments, ignored.
+     */
+    public static void main( String[] args ){
+        Random r = new Random( 42 );
+        GraphNode node = new GraphNode( "ID0", "job" );
+
+        CandidateSiteEvaluator sequential = new CandidateSiteEvaluator( 1, 4 );
+        CandidateSiteEvaluator parallel   = new CandidateSiteEvaluator( 4, 4 );
+        check( !sequential.isParallel(), "One thread evaluates in parallel" );
+        check( parallel.isParallel(), "Four threads do not evaluate in parallel" );
+        check( !new CandidateSiteEvaluator( 4, 0 ).isParallel(), "No threshold evaluates in parallel" );
+
+        for( int run = 0; run < 500; run++ ){
+            int n = r.nextInt( 60 );
+            List<String> sites = new ArrayList<String>();
+            final Map<String,long[]> estimates = new HashMap<String,long[]>();
+            for( int i = 0; i < n; i++ ){
+                String site = "site" + i;
+                long start = r.nextInt( 100 );
+                //few distinct finish times, so that there are ties
+                estimates.put( site, new long[]{ start, start + r.nextInt( 10 ) } );
+                sites.add( site );
+            }
+
+            //the earliest finish, ties going to the earlier site
+            int expected = -1;
+            for( int i = 0; i < n; i++ ){
+                if( expected == -1 ||
+                    estimates.get( sites.get( i ) )[ 1 ] < estimates.get( sites.get( expected ) )[ 1 ] ){
+                    expected = i;
+                }
+            }
+
+            for( CandidateSiteEvaluator evaluator : new CandidateSiteEvaluator[]{ sequential, parallel } ){
+                final Set<String> evaluated = Collections.synchronizedSet( new HashSet<String>() );
+                CandidateSiteEvaluator.Estimator estimator = new CandidateSiteEvaluator.Estimator(){
+                    public long[] estimate( GraphNode node, String site ){
+                        check( evaluated.add( site ), "Site " + site + " evaluated twice" );
+                        return estimates.get( site );
+                    }
+                };
+                long[] result = new long[]{ -1, -1 };
+                int actual = evaluator.evaluate( node, sites, estimator, result );
+                check( actual == expected, "Run " + run + ": picked " + actual + " expected " + expected );
+                check( evaluated.size() == n, "Run " + run + ": evaluated " + evaluated.size() + " of " + n );
+                if( expected == -1 ){
+                    check( result[ 0 ] == -1 && result[ 1 ] == -1, "Run " + run + ": result set without sites" );
+                }
+                else{
+                    long[] e = estimates.get( sites.get( expected ) );
+                    check( result[ 0 ] == e[ 0 ] && result[ 1 ] == e[ 1 ], "Run " + run + ": wrong times" );
+                }
+            }
+        }
+
+        sequential.shutdown();
+        parallel.shutdown();
+        check( !parallel.isParallel(), "Evaluator is parallel after shutdown" );
+        System.out.println( "TestCandidateSiteEvaluator passed" );
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site;
+
+import edu.isi.pegasus.planner.catalog.classes.SysInfo;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
+import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
+import edu.isi.pegasus.planner.catalog.transformation.Mapper;
+import edu.isi.pegasus.planner.catalog.transformation.TransformationCatalogEntry;
+
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusBag;
+
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the lookups of the runnable site index against scans of the
+ * runnable sites of the jobs, on random catalogs.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestRunnableSiteIndex {
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments are ignored.
+     */
+    public static void main( String[] args ){
+        Random r = new Random( 13 );
+        SysInfo.InstanceType[] types = SysInfo.InstanceType.values();
+        for( int run = 0; run < 50; run++ ){
+            //the candidate sites, some without an instance type
+            List<String> sites = new ArrayList<String>();
+            SiteStore store = new SiteStore();
+            int siteCount = 1 + r.nextInt( 12 );
+            for( int s = 0; s < siteCount; s++ ){
+                String site = "site" + s;
+                sites.add( site );
+                SiteCatalogEntry entry = new SiteCatalogEntry( site );
+                if( r.nextInt( 4 ) > 0 ){
+                    entry.setInstanceType( types[ r.nextInt( types.length ) ] );
+                }
+                store.addEntry( entry );
+            }
+
+            //the sites and entries of each transformation
+            int transformations = 1 + r.nextInt( 5 );
+            final Map<String,List<String>> runnable = new HashMap<String,List<String>>();
+            final Map<String,TransformationCatalogEntry> entries = new HashMap<String,TransformationCatalogEntry>();
+            for( int t = 0; t < transformations; t++ ){
+                List<String> l = new ArrayList<String>();
+                for( String site : sites ){
+                    if( r.nextBoolean() ){
+                        l.add( site );
+                        entries.put( "tx" + t + "@" + site,
+                                     new TransformationCatalogEntry( null, "tx" + t, null ) );
+                    }
+                }
+                runnable.put( "tx" + t, l );
+            }
+            Mapper mapper = new Mapper( new PegasusBag() ){
+                public Map getSiteMap( String namespace, String name, String version, List siteids ){
+                    return null;
+                }
+
+                public String getMode(){
+                    return "test";
+                }
+
+                public List getSiteList( String namespace, String name, String version, List siteids ){
+                    return runnable.get( name );
+                }
+
+                public List getTCList( String namespace, String name, String version, String siteid ){
+                    List result = new ArrayList();
+                    result.add( entries.get( name + "@" + siteid ) );
+                    return result;
+                }
+            };
+
+            //the jobs, with a runtime that depends on the job and the entry
+            Graph workflow = new MapGraph();
+            final Map<TransformationCatalogEntry,Integer> salt = new HashMap<TransformationCatalogEntry,Integer>();
+            for( TransformationCatalogEntry e : entries.values() ){
+                salt.put( e, r.nextInt( 1000 ) );
+            }
+            int jobs = 1 + r.nextInt( 20 );
+            for( int j = 0; j < jobs; j++ ){
+                Job job = new Job();
+                job.setLogicalID( "ID" + j );
+                job.setTXName( "tx" + r.nextInt( transformations ) );
+                workflow.addNode( new GraphNode( "ID" + j, job ) );
+            }
+            RunnableSiteIndex index = new RunnableSiteIndex( workflow, sites, mapper, store,
+                                                             new RunnableSiteIndex.RuntimeEstimator(){
+                public int getExpectedRuntime( Job job, TransformationCatalogEntry entry ){
+                    int runtime = salt.get( entry ) + job.getLogicalID().hashCode() % 100;
+                    if( runtime % 7 == 0 ){
+                        throw new RuntimeException( "No runtime" );
+                    }
+                    return runtime;
+                }
+            });
+            check( index.getTransformationCount() <= transformations, "Run " + run + ": transformations" );
+
+            for( int j = 0; j < jobs; j++ ){
+                String id = "ID" + j;
+                Job job = (Job)workflow.getNode( id ).getContent();
+                String[] runnableSites = index.getRunnableSites( job );
+                int[] runtimes = index.getRuntimes( id );
+                check( runnableSites.length == runnable.get( job.getTXName() ).size() &&
+                       runtimes.length == runnableSites.length, "Run " + run + ": runnable sites of " + id );
+                for( String site : sites ){
+                    int position = runnable.get( job.getTXName() ).indexOf( site );
+                    TransformationCatalogEntry entry = index.getEntry( job, site );
+                    check( ( position == -1 ) ? entry == null : entry == entries.get( job.getTXName() + "@" + site ),
+                           "Run " + run + ": entry of " + id + " on " + site );
+
+                    int expected = ( position == -1 ) ? -1 : runtimes[ position ];
+                    int actual;
+                    try{
+                        actual = index.getRuntime( job, id, site );
+                    }
+                    catch( RuntimeException e ){
+                        actual = -1;
+                    }
+                    check( actual == expected, "Run " + run + ": runtime of " + id + " on " + site );
+                    if( position != -1 && expected != -1 ){
+                        int runtime = salt.get( entry ) + id.hashCode() % 100;
+                        check( expected == runtime, "Run " + run + ": resolved runtime of " + id + " on " + site );
+                    }
+                }
+
+                //the sites bucketed by instance type
+                int count = 0;
+                for( SysInfo.InstanceType type : types ){
+                    for( String site : index.getRunnableSites( job, type ) ){
+                        check( index.getInstanceType( site ) == type, "Run " + run + ": bucket of " + site );
+                        count++;
+                    }
+                }
+                for( String site : index.getRunnableSites( job, null ) ){
+                    check( index.getInstanceType( site ) == null, "Run " + run + ": untyped bucket of " + site );
+                    count++;
+                }
+                check( count == runnableSites.length, "Run " + run + ": buckets of " + id );
+            }
+        }
+        System.out.println( "TestRunnableSiteIndex passed" );
+    }
+}
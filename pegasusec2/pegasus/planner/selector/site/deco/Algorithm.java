@@ -10,10 +10,12 @@ package edu.isi.pegasus.planner.selector.site.deco;
 
 import edu.isi.pegasus.planner.classes.ADag;
 import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusFile;
 import edu.isi.pegasus.planner.classes.PegasusBag;
 import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.common.logging.LogManager;
 import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphAnalytics;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
 import edu.isi.pegasus.planner.partitioner.graph.Adapter;
 import edu.isi.pegasus.planner.partitioner.graph.Bag;
@@ -23,14 +25,25 @@ import edu.isi.pegasus.planner.catalog.transformation.Mapper;
 
 
 import edu.isi.pegasus.planner.namespace.Pegasus;
+import edu.isi.pegasus.planner.catalog.classes.SysInfo;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
 import edu.isi.pegasus.planner.catalog.site.classes.GridGateway;
 
+import edu.isi.pegasus.planner.selector.site.CandidateSiteEvaluator;
+import edu.isi.pegasus.planner.selector.site.RunnableSiteIndex;
 
 
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.Iterator;
@@ -85,7 +98,213 @@ public class Algorithm {
     public static final long MAXIMUM_FINISH_TIME = Long.MAX_VALUE;
 
     /**
-     * The average communication cost between nodes.
+     * The property that specifies the deadline in seconds for the workflow.
+     * If specified, the instance types for the jobs are picked by the Deco
+     * search, instead of the instance types in the transformation catalog.
+     */
+    public static final String DEADLINE_PROPERTY = "pegasus.selector.deco.deadline";
+
+    /**
+     * The property that specifies the probability with which the deadline
+     * needs to be met.
+     */
+    public static final String PROBABILITY_PROPERTY = "pegasus.selector.deco.probability";
+
+    /**
+     * The default probability with which the deadline needs to be met.
+     */
+    public static final float DEFAULT_PROBABILITY = 0.96f;
+
+    /**
+     * The property that specifies the budget in dollars for the workflow.
+     * If specified without a deadline, the instance types for the jobs are
+     * picked to minimize the makespan within the budget.
+     *
+     * @see BudgetSearch
+     */
+    public static final String BUDGET_PROPERTY = "pegasus.selector.deco.budget";
+
+    /**
+     * The prefix for the properties that specify the hourly price of an
+     * instance type e.g. pegasus.selector.deco.price.m1small
+     */
+    public static final String PRICE_PROPERTY_PREFIX = "pegasus.selector.deco.price.";
+
+    /**
+     * The default hourly prices in dollars of the instance types, indexed by
+     * the ordinal of <code>SysInfo.InstanceType</code>.
+     */
+    public static final float[] DEFAULT_PRICES = { 0.06f, 0.12f, 0.24f, 0.48f };
+
+    /**
+     * The property that specifies the maximum number of states expanded by
+     * the Deco search.
+     */
+    public static final String SEARCH_LIMIT_PROPERTY = "pegasus.selector.deco.search.limit";
+
+    /**
+     * The property that specifies the number of threads used by the Deco search.
+     * Defaults to the number of available processors.
+     */
+    public static final String SEARCH_THREADS_PROPERTY = "pegasus.selector.deco.search.threads";
+
+    /**
+     * The property that specifies the maximum time in seconds the Deco search
+     * runs for, after which the cheapest configuration found so far is used.
+     * The search is not limited in time if not specified.
+     */
+    public static final String TIMEOUT_PROPERTY = "pegasus.selector.deco.timeout";
+
+    /**
+     * The property that specifies the weight of the minimum cost of the
+     * unplanned jobs in the order of the states expanded by the Deco search.
+     * Defaults to 1 i.e. the states with the lowest bounds are expanded first.
+     */
+    public static final String SEARCH_WEIGHT_PROPERTY = "pegasus.selector.deco.search.weight";
+
+    /**
+     * The property that specifies the path to the binary file with the
+     * performance samples of the instance types.
+     *
+     * @see PerformanceSampleFile
+     */
+    public static final String SAMPLES_PROPERTY = "pegasus.selector.deco.samples";
+
+    /**
+     * The property that specifies the maximum number of points in the
+     * histograms used to compute the probability of meeting the deadline,
+     * when performance samples are specified. A value of 0 disables the
+     * histograms, and the deadline is checked against the makespan computed
+     * from the runtime quantiles.
+     */
+    public static final String HISTOGRAM_POINTS_PROPERTY = "pegasus.selector.deco.histogram.points";
+
+    /**
+     * The property that specifies the number of Monte Carlo runs of the
+     * simulation of the scheduled workflow. No simulation is done if not
+     * specified.
+     *
+     * @see PlanSimulator
+     */
+    public static final String SIMULATION_RUNS_PROPERTY = "pegasus.selector.deco.simulation.runs";
+
+    /**
+     * The property that specifies the directory of the cache of schedules.
+     * Schedules are not cached if not specified.
+     *
+     * @see PlanCache
+     */
+    public static final String CACHE_DIRECTORY_PROPERTY = "pegasus.selector.deco.cache.dir";
+
+    /**
+     * The property that specifies whether the configurations not dominated in
+     * cost and makespan are written to the submit directory. Defaults to false.
+     *
+     * @see ParetoArchive
+     */
+    public static final String FRONTIER_PROPERTY = "pegasus.selector.deco.frontier";
+
+    /**
+     * The property that specifies whether the Deco search is seeded with the
+     * instance types picked by the previous run of the workflow. If true, the
+     * instance types are read from and written to the submit directory.
+     * Any other value apart from false is the path to the file to read the
+     * instance types from.
+     *
+     * @see InstanceTypePlan
+     */
+    public static final String WARM_START_PROPERTY = "pegasus.selector.deco.warm.start";
+
+    /**
+     * The property that specifies the minimum number of candidate sites of a
+     * job, for the sites to be evaluated in parallel by the threads of the
+     * Deco search. Defaults to 0 i.e. the sites are evaluated one after
+     * another.
+     *
+     * @see CandidateSiteEvaluator
+     */
+    public static final String SITE_THRESHOLD_PROPERTY = "pegasus.selector.deco.site.threshold";
+
+    /**
+     * The property that specifies the path to the runtime history file, from
+     * which the expected runtimes of the jobs are picked. The transformation
+     * catalog runtimes are used if not specified.
+     *
+     * @see RuntimeHistory
+     */
+    public static final String HISTORY_PROPERTY = "pegasus.selector.deco.history";
+
+    /**
+     * The property that specifies the minimum number of past runtimes of a
+     * transformation on an instance type, for the history to be used.
+     */
+    public static final String HISTORY_MIN_SAMPLES_PROPERTY = "pegasus.selector.deco.history.min.samples";
+
+    /**
+     * The default minimum number of past runtimes for the history to be used.
+     */
+    public static final int DEFAULT_HISTORY_MIN_SAMPLES = 3;
+
+    /**
+     * The property that specifies the length in seconds of the billing period
+     * of the instances. Defaults to an hour.
+     *
+     * @see BillingModel
+     */
+    public static final String BILLING_PERIOD_PROPERTY = "pegasus.selector.deco.billing.period";
+
+    /**
+     * The property that specifies the path to the region schedule file, for
+     * follow-the-sun placement of the jobs across regions with time varying
+     * prices. The jobs are placed on the sites with the earliest finish time
+     * if not specified.
+     *
+     * @see RegionSchedule
+     */
+    public static final String REGIONS_PROPERTY = "pegasus.selector.deco.regions";
+
+    /**
+     * The property that specifies the offset in seconds into the price period
+     * of the region schedule at which the workflow starts, overriding the
+     * start given in the schedule file. The value now takes the time of day
+     * at which the workflow is planned, in which case the schedules are not
+     * cached. Defaults to the start of the period if given in neither.
+     *
+     * @see RegionSchedule
+     */
+    public static final String REGIONS_START_PROPERTY = "pegasus.selector.deco.regions.start";
+
+    /**
+     * The value of the region start property for the time of day at which
+     * the workflow is planned.
+     */
+    public static final String REGIONS_START_NOW = "now";
+
+    /**
+     * The property that specifies the path to the file with the bandwidths
+     * in megabytes per second between pairs of sites, used to estimate the
+     * time to move the data along each edge of the workflow.
+     *
+     * @see TransferEstimates
+     */
+    public static final String BANDWIDTH_PROPERTY = "pegasus.selector.deco.bandwidth";
+
+    /**
+     * The property that specifies the bandwidth in megabytes per second
+     * between the pairs of sites not in the bandwidth file. Defaults to
+     * AVERAGE_BANDWIDTH.
+     */
+    public static final String DEFAULT_BANDWIDTH_PROPERTY = "pegasus.selector.deco.bandwidth.default";
+
+    /**
+     * The number of bytes in a megabyte, the unit of data volumes used by the
+     * Deco cost model.
+     */
+    public static final float BYTES_PER_MB = 1024 * 1024;
+
+    /**
+     * The average communication cost between nodes, for the edges whose data
+     * volume is not known.
      */
     private float mAverageCommunicationCost;
 
@@ -144,6 +363,160 @@ public class Algorithm {
      */
     private TransformationCatalog mTCHandle;
 
+    /**
+     * The deadline for the workflow in seconds. -1 if not specified.
+     */
+    private float mDeadline;
+
+    /**
+     * The probability with which the deadline needs to be met.
+     */
+    private float mProbability;
+
+    /**
+     * The budget for the workflow in dollars. -1 if not specified.
+     */
+    private float mBudget;
+
+    /**
+     * The hourly price of each instance type.
+     */
+    private float[] mPrices;
+
+    /**
+     * The maximum number of states expanded by the Deco search.
+     */
+    private long mSearchLimit;
+
+    /**
+     * The number of threads used by the Deco search.
+     */
+    private int mSearchThreads;
+
+    /**
+     * The maximum time in seconds the Deco search runs for. 0 for no limit.
+     */
+    private float mTimeout;
+
+    /**
+     * The weight of the minimum cost of the unplanned jobs in the Deco search.
+     */
+    private float mSearchWeight;
+
+    /**
+     * The cost in dollars of the instance types picked by the Deco search.
+     */
+    private float mCost;
+
+    /**
+     * The performance samples of the instance types. null if not specified.
+     */
+    private PerformanceSamples mPerformance;
+
+    /**
+     * The runtime distributions of the tasks computed for the last workflow
+     * planned. null if no performance samples are specified.
+     */
+    private RuntimeDistributions mDistributions;
+
+    /**
+     * The Deco problem for the last workflow planned with a deadline.
+     */
+    private DecoProblem mProblem;
+
+    /**
+     * The maximum number of points in the histograms of the probabilistic
+     * deadline evaluator.
+     */
+    private int mHistogramPoints;
+
+    /**
+     * The index of the sites where the jobs of the workflow being scheduled
+     * can run.
+     */
+    private RunnableSiteIndex mSiteIndex;
+
+    /**
+     * The billing model of the instances.
+     */
+    private BillingModel mBilling;
+
+    /**
+     * The assignment of the jobs of the last scheduled workflow to instances.
+     */
+    private BillingModel.Packing mPacking;
+
+    /**
+     * The regions of the sites with their prices and transfer costs. null if
+     * not specified.
+     */
+    private RegionSchedule mRegions;
+
+    /**
+     * The cost in dollars of running the jobs of the last scheduled workflow
+     * at the prices of their regions, including the transfers across regions.
+     */
+    private float mPlacementCost;
+
+    /**
+     * The estimated data transfer time along each edge of the workflow being
+     * scheduled.
+     */
+    private TransferEstimates mTransfers;
+
+    /**
+     * The history of the runtimes of past jobs. null if not specified.
+     */
+    private RuntimeHistory mHistory;
+
+    /**
+     * The minimum number of past runtimes for the history to be used.
+     */
+    private int mHistoryMinSamples;
+
+    /**
+     * The cache of schedules. null if not enabled.
+     */
+    private PlanCache mPlanCache;
+
+    /**
+     * The minimum number of candidate sites of a job for the sites to be
+     * evaluated in parallel. 0 to always evaluate them one after another.
+     */
+    private int mSiteThreshold;
+
+    /**
+     * Whether to collect the configurations not dominated in cost and makespan.
+     */
+    private boolean mCollectFrontier;
+
+    /**
+     * The configurations not dominated in cost and makespan, found by the
+     * last search. null if not collected.
+     */
+    private ParetoArchive mFrontier;
+
+    /**
+     * The submit directory the frontier is written to. null if unknown.
+     */
+    private String mSubmitDirectory;
+
+    /**
+     * The weights the ranks of the workflow are computed with, the average
+     * compute times of the jobs and the average transfer times of the edges.
+     * The same instance is passed each time, so that the ranks memoized for
+     * it are reused while the workflow is unchanged.
+     */
+    private final GraphAnalytics.Weights mRankWeights = new GraphAnalytics.Weights(){
+        public float getNodeWeight( GraphNode node ){
+            return getFloatValue( node.getBag().get( DecoBag.AVG_COMPUTE_TIME ) );
+        }
+
+        public float getEdgeWeight( GraphNode node, int k ){
+            return getAverageTransferTime( node, k );
+        }
+    };
+
     /**
      * The default constructor.
      *
@@ -159,6 +532,94 @@ public class Algorithm {
         mSiteStore = bag.getHandleToSiteStore();
         mAverageCommunicationCost = (this.AVERAGE_BANDWIDTH / this.AVERAGE_DATA_SIZE_BETWEEN_JOBS);
 
+        mDeadline      = getFloatProperty( DEADLINE_PROPERTY, -1 );
+        mProbability   = getFloatProperty( PROBABILITY_PROPERTY, DEFAULT_PROBABILITY );
+        mBudget        = getFloatProperty( BUDGET_PROPERTY, -1 );
+        mSearchLimit   = (long)getFloatProperty( SEARCH_LIMIT_PROPERTY, AstarSearch.DEFAULT_EXPANSION_LIMIT );
+        mSearchThreads = (int)getFloatProperty( SEARCH_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors() );
+        mTimeout       = getFloatProperty( TIMEOUT_PROPERTY, 0 );
+        mSearchWeight  = getFloatProperty( SEARCH_WEIGHT_PROPERTY, AstarSearch.DEFAULT_WEIGHT );
+        mHistogramPoints = (int)getFloatProperty( HISTOGRAM_POINTS_PROPERTY, Histogram.DEFAULT_MAX_POINTS );
+        mSiteThreshold = (int)getFloatProperty( SITE_THRESHOLD_PROPERTY, 0 );
+        mPrices        = new float[ DecoProblem.NUM_TYPES ];
+        for( int i = 0; i < mPrices.length; i++ ){
+            mPrices[ i ] = getFloatProperty( PRICE_PROPERTY_PREFIX + DecoProblem.TYPES[ i ], DEFAULT_PRICES[ i ] );
+        }
+        mCost = 0;
+        mBilling = new BillingModel( mPrices,
+                                     (long)getFloatProperty( BILLING_PERIOD_PROPERTY, BillingModel.DEFAULT_BILLING_PERIOD ) );
+        mCollectFrontier = Boolean.parseBoolean( mProps.getProperty( FRONTIER_PROPERTY ) );
+        mSubmitDirectory = ( bag.getPlannerOptions() == null ) ? null : bag.getPlannerOptions().getSubmitDirectory();
+
+        String regions = mProps.getProperty( REGIONS_PROPERTY );
+        boolean clock  = false;
+        if( regions != null ){
+            try{
+                mRegions = RegionSchedule.read( new File( regions ), mPrices );
+                String start = mProps.getProperty( REGIONS_START_PROPERTY );
+                if( REGIONS_START_NOW.equals( start ) ){
+                    //the workflow starts at the time of day it is planned
+                    mRegions.setStart( ( System.currentTimeMillis() / 1000 ) % mRegions.getPeriod() );
+                    clock = true;
+                }
+                else if( start != null ){
+                    mRegions.setStart( Long.parseLong( start.trim() ) );
+                }
+                if( mRegions.getStart() == RegionSchedule.UNSET ){
+                    mRegions.setStart( 0 );
+                }
+            }
+            catch( IOException e ){
+                mLogger.log( "Unable to load the region schedule from " + regions,
+                             e, LogManager.WARNING_MESSAGE_LEVEL );
+            }
+            catch( IllegalArgumentException e ){
+                mLogger.log( "Invalid value for property " + REGIONS_START_PROPERTY,
+                             e, LogManager.WARNING_MESSAGE_LEVEL );
+                mRegions = null;
+            }
+        }
+
+        String samples = mProps.getProperty( SAMPLES_PROPERTY );
+        if( samples != null ){
+            try{
+                mPerformance = PerformanceSampleFile.map( new File( samples ) );
+            }
+            catch( IOException e ){
+                mLogger.log( "Unable to load performance samples from " + samples,
+                             e, LogManager.WARNING_MESSAGE_LEVEL );
+            }
+        }
+
+        String history = mProps.getProperty( HISTORY_PROPERTY );
+        mHistoryMinSamples = (int)getFloatProperty( HISTORY_MIN_SAMPLES_PROPERTY, DEFAULT_HISTORY_MIN_SAMPLES );
+        if( history != null ){
+            try{
+                mHistory = RuntimeHistory.read( new File( history ) );
+                mLogger.log( "Loaded " + mHistory.size() + " runtime history entries from " + history,
+                             LogManager.DEBUG_MESSAGE_LEVEL );
+            }
+            catch( IOException e ){
+                mLogger.log( "Unable to load runtime history from " + history,
+                             e, LogManager.WARNING_MESSAGE_LEVEL );
+            }
+        }
+
+        String cache = mProps.getProperty( CACHE_DIRECTORY_PROPERTY );
+        if( cache != null && clock ){
+            //the schedules depend on the time of day they are planned at
+            mLogger.log( "Not caching schedules, as the regions start at the time the workflows are planned",
+                         LogManager.WARNING_MESSAGE_LEVEL );
+        }
+        else if( cache != null ){
+            try{
+                mPlanCache = new PlanCache( new File( cache ) );
+            }
+            catch( IOException e ){
+                mLogger.log( "Unable to use the plan cache in " + cache,
+                             e, LogManager.WARNING_MESSAGE_LEVEL );
+            }
+        }
     }
 
 
@@ -175,7 +636,7 @@ public class Algorithm {
         //mLabel     = dag.getLabel();
 
         //convert the dag into a graph representation
-        schedule( Adapter.convert( dag ), sites, dag.getLabel() );
+        schedule( Adapter.convert( dag, true ), sites, dag.getLabel() );
     }
 
 
@@ -195,7 +656,43 @@ public class Algorithm {
     public void schedule( Graph workflow , List sites, String label ){
         mLabel = label;
         mWorkflow = workflow;
+        mProblem  = null;
+        mFrontier = null;
+        mPacking  = null;
+        mPlacementCost = 0;
         populateSiteMap( sites );
+        mSiteIndex = createSiteIndex( workflow, sites );
+        mTransfers = createTransferEstimates( workflow, sites );
+
+        //reuse the schedule of a workflow of the same shape. The frontier
+        //comes from the search, so it is searched for if it is collected
+        DecoProblem structure = null;
+        int[] order = null;
+        int[][] parents = null;
+        String key  = null;
+        if( mPlanCache != null ){
+            structure = new DecoProblem( workflow );
+            long[] hashes = fingerprintJobs( workflow, structure );
+            order   = PlanCache.getCanonicalOrder( structure, hashes );
+            parents = PlanCache.getCanonicalParents( structure, order );
+            key     = getCacheKey( hashes, order, parents );
+            PlanCache.Plan plan = ( key == null || mCollectFrontier ) ? null : mPlanCache.get( key );
+            if( plan != null && plan.matches( parents ) ){
+                mLogger.log( "Reusing cached schedule " + key + " for workflow " + label,
+                             LogManager.DEBUG_MESSAGE_LEVEL );
+                applyPlan( workflow, structure, order, plan );
+                mPacking = packInstances( workflow );
+                mPlacementCost = computePlacementCost( workflow );
+                return;
+            }
+        }
+
+        //pick the instance types for the jobs if a deadline or a budget is specified
+        Map<String,SysInfo.InstanceType> types = ( mDeadline > 0 ) ?
+                                                  planInstanceTypes( workflow ):
+                                                  ( mBudget > 0 ) ?
+                                                  planInstanceTypesForBudget( workflow ):
+                                                  null;
 
         //compute weighted execution times for each job
         for( Iterator it = workflow.nodeIterator(); it.hasNext(); ){
@@ -203,10 +700,12 @@ public class Algorithm {
             Job job    = (Job)node.getContent();
 
             //add the deco bag to a node
-            Float averageComputeTime = new Float( calculateAverageComputeTime( job ) );
             DecoBag b = new DecoBag();
-            b.add( DecoBag.AVG_COMPUTE_TIME, averageComputeTime );
+            b.add( DecoBag.INSTANCE_TYPE,
+                   ( types == null ) ? getRequiredInstanceType( job ) : types.get( node.getID() ) );
             node.setBag( b );
+            Float averageComputeTime = new Float( calculateAverageComputeTime( node ) );
+            b.add( DecoBag.AVG_COMPUTE_TIME, averageComputeTime );
 
             mLogger.log( "Average Compute Time " + node.getID() + " is " + averageComputeTime,
                          LogManager.DEBUG_MESSAGE_LEVEL );
@@ -222,7 +721,11 @@ public class Algorithm {
         bag.add( DecoBag.DOWNWARD_RANK, new Float( 0 ) );
         dummyRoot.setBag( bag );
 
-        //do a breadth first traversal and compute the downward ranks
+        //the downward ranks of all the nodes are computed in one pass
+        //over the workflow in topological order
+        GraphAnalytics.Ranks ranks = GraphAnalytics.getInstance( workflow ).getRanks( mRankWeights );
+
+        //do a breadth first traversal and collect the downward ranks
         Iterator it = workflow.iterator();
         dummyRoot = ( GraphNode )it.next(); //we have the dummy root
         Float drank;
@@ -232,7 +735,7 @@ public class Algorithm {
         List sortedNodes = new LinkedList();
         while ( it.hasNext() ){
             GraphNode node = ( GraphNode ) it.next();
-            drank = new Float( computeDownwardRank( node ) );
+            drank = new Float( ranks.getDownwardRank( node ) );
             bag = node.getBag();
             bag.add( DecoBag.DOWNWARD_RANK , drank );
             sortedNodes.add( node );
@@ -248,6 +751,19 @@ public class Algorithm {
         dummyRoot.getBag().add( DecoBag.ACTUAL_START_TIME, new Long( 0 ) );
         dummyRoot.getBag().add( DecoBag.ACTUAL_FINISH_TIME, new Long( 0 ) );
 
+        //with regions, the jobs are given a share of the deadline
+        //proportional to the length of the longest path till they finish
+        float length = ranks.getCriticalPathLength();
+
+        //the candidate sites of a job are evaluated in parallel
+        //if there are enough of them
+        CandidateSiteEvaluator evaluator = new CandidateSiteEvaluator( mSearchThreads, mSiteThreshold );
+        CandidateSiteEvaluator.Estimator estimator = new CandidateSiteEvaluator.Estimator(){
+            public long[] estimate( GraphNode node, String site ){
+                return calculateEstimatedStartAndFinishTime( node, site );
+            }
+        };
+
         //schedule out the sorted order of the nodes
         for( it = sortedNodes.iterator(); it.hasNext(); ){
             GraphNode current = (GraphNode) it.next();
@@ -256,65 +772,22 @@ public class Algorithm {
                         LogManager.DEBUG_MESSAGE_LEVEL);
 
             //figure out the sites where a job can run
+            //that are of the instance type configured for the job
             Job job = (Job) current.getContent();
-            List initialrunnableSites = mTCMapper.getSiteList( job.getTXNamespace(),////
-                                                        job.getTXName(),
-                                                        job.getTXVersion(),
-                                                        mSites);
-            mLogger.log("Initial runnableSites " + initialrunnableSites,
-                        LogManager.DEBUG_MESSAGE_LEVEL); 
-            //Amelie: further select the sites with certain instance type
-            //first, query the required instance type of the transformation underlying the current job
-            List<TransformationCatalogEntry> tcentries = null;
-            try {
-                tcentries = mTCHandle.lookup( job.getTXNamespace(),
-                        job.getTXName(),
-                        job.getTXVersion(),
-                    ( List )null, null );
-            } catch ( Exception e ) {
-                mLogger.log(
-                    "Getting physical names from TC in the TC Mapper\n",
-                    e, LogManager.FATAL_MESSAGE_LEVEL );
-            }
-
-            String requiredinstancetype = null;
-            //second, find out the required instance type 
-            if(tcentries != null){                        	
-            	TransformationCatalogEntry tcentry = (TransformationCatalogEntry) tcentries.get(0);
-            	requiredinstancetype = tcentry.getSysInfo().getInstanceType().toString();            	
-            }else{
-            	mLogger.log("Amelie: cannot find the required transformation\n",LogManager.FATAL_MESSAGE_LEVEL);
-            }
-            //finally, select the sites of required instance types from runnableSites            
-            List<String> runnableSites = new LinkedList<String>(); 
-            for(Iterator rit = initialrunnableSites.iterator(); rit.hasNext();){
-            	//handle of the site to be looked up
-            	String siteid = (String) rit.next();
-            	SiteCatalogEntry siteentry = mSiteStore.lookup( siteid);
-            	String instancetype = siteentry.getInstanceType().toString();
-            	if(instancetype == requiredinstancetype)
-            		runnableSites.add(siteid);            	
-            }
-            
-            
+            List<String> runnableSites = getRunnableSites( job,
+                                                           (SysInfo.InstanceType)bag.get( DecoBag.INSTANCE_TYPE ) );
+
             //for each runnable site get the estimated finish time
             //and schedule job on site that minimizes the finish time
             String site;
-            long est_result[ ];
             long result[] = new long[ 2 ];
             result [ 1 ] = this.MAXIMUM_FINISH_TIME;
-            for( Iterator rit = runnableSites.iterator(); rit.hasNext(); ){
-                site = (String) rit.next();
-                est_result = calculateEstimatedStartAndFinishTime( current, site );
-
-                //if existing EFT is greater than the returned EFT
-                //set existing EFT to the returned EFT
-                if( result[ 1 ] > est_result[ 1 ] ){
-                    result[ 0 ] = est_result[ 0 ];
-                    result[ 1 ] = est_result[ 1 ];
-                    //tentatively schedule the job for that site
-                    bag.add( DecoBag.SCHEDULED_SITE , site );
-                }
+            int best = ( mRegions == null ) ?
+                       evaluator.evaluate( current, runnableSites, estimator, result ) :
+                       selectRegionSite( current, runnableSites, length, result );
+            if( best != -1 ){
+                //tentatively schedule the job for that site
+                bag.add( DecoBag.SCHEDULED_SITE , runnableSites.get( best ) );
             }
 
             //update the site selected with the job
@@ -334,9 +807,22 @@ public class Algorithm {
 
             mLogger.log( sb.toString(), LogManager.DEBUG_MESSAGE_LEVEL );
         }//end of going through all the sorted nodes
+        evaluator.shutdown();
 
         //remove the dummy root
         mWorkflow.remove( dummyRoot.getID() );
+
+        //assign the jobs to instances to minimize the billed cost
+        mPacking = packInstances( workflow );
+        mPlacementCost = computePlacementCost( workflow );
+        if( mRegions != null ){
+            mLogger.log( "Cost of the jobs at the prices of their regions is " + mPlacementCost,
+                         LogManager.DEBUG_MESSAGE_LEVEL );
+        }
+
+        if( key != null ){
+            storePlan( workflow, structure, order, parents, key );
+        }
     }
 
 
@@ -384,17 +870,16 @@ public class Algorithm {
         //that is time by which all the data needed
         //by the job has reached the site.
         long readyTime = 0;
-        for( Iterator it = node.getParents().iterator(); it.hasNext(); ){
+        int k = 0;
+        for( Iterator it = node.getParents().iterator(); it.hasNext(); k++ ){
             GraphNode parent = ( GraphNode )it.next();
             long current = 0;
             //add the parent finish time to current
             current += (Long)parent.getBag().get( DecoBag.ACTUAL_FINISH_TIME );
 
             //if the parent was scheduled on another site
-            //add the average data transfer time.
-            if( !parent.getBag().get( DecoBag.SCHEDULED_SITE ).equals( site ) ){
-                current += this.mAverageCommunicationCost;
-            }
+            //add the data transfer time.
+            current += getTransferTime( node, k, (String)parent.getBag().get( DecoBag.SCHEDULED_SITE ), site );
 
             if ( current > readyTime ){
                 //ready time is maximum of all currents
@@ -402,10 +887,11 @@ public class Algorithm {
             }
         }
 
-        //the estimated start time is the maximum
-        //of the ready time and available time of the site
-        //using non insertion based policy for time being
-        result[ 0 ] = getAvailableTime( site , readyTime );
+        //the estimated start time is the earliest time after the
+        //ready time at which a processor of the site is idle for
+        //the compute time on site, using insertion based policy
+        int runtime = mSiteIndex.getRuntime( job, node.getID(), site );
+        result[ 0 ] = getAvailableTime( site , readyTime, runtime );
 
 // do not need it, as available time is always >= ready time
 //        if ( result[ 0 ] < readyTime ){
@@ -414,123 +900,248 @@ public class Algorithm {
 
 
         //the estimated finish time is est + compute time on site
-        List entries = mTCMapper.getTCList( job.getTXNamespace(),
-                                            job.getTXName(),
-                                            job.getTXVersion(),
-                                            site );
-        //pick the first one for time being
-        TransformationCatalogEntry entry = ( TransformationCatalogEntry ) entries.get( 0 );
-        result[ 1 ] = result[ 0 ] + getExpectedRuntime( job, entry );
+        result[ 1 ] = result[ 0 ] + runtime;
 
         //est now stores the estimated finish time
         return result;
     }
 
     /**
-     * Computes the downward rank of a node.
-     *
-     * The downward rank of node i is
-     *                                   _    ___
-     *           max {       rank( n ) + w  + c    }
-     *         j E pred( i )     d  j     j    ji
+     * Creates the estimates of the data transfer time along each edge of a
+     * workflow, with the bandwidths between the candidate sites.
      *
+     * @param workflow  the workflow to be scheduled.
+     * @param sites     the list of candidate sites.
      *
+     * @return the estimates
+     */
+    protected TransferEstimates createTransferEstimates( Graph workflow, List sites ){
+        List<String> names = new ArrayList<String>( sites );
+        float[][] bandwidths = null;
+        String file = mProps.getProperty( BANDWIDTH_PROPERTY );
+        if( file != null ){
+            try{
+                bandwidths = TransferEstimates.readBandwidths( new File( file ), names );
+            }
+            catch( IOException e ){
+                mLogger.log( "Unable to load the bandwidths between sites from " + file,
+                             e, LogManager.WARNING_MESSAGE_LEVEL );
+            }
+        }
+        return new TransferEstimates( workflow, names, bandwidths,
+                                      getFloatProperty( DEFAULT_BANDWIDTH_PROPERTY, AVERAGE_BANDWIDTH ) );
+    }
+
+    /**
+     * Returns the edge from a parent of a node in the transfer estimates.
      *
-     * @param node   the <code>GraphNode</code> whose rank needs to be computed.
+     * @param node  the node.
+     * @param k     the position of the parent in the parents of the node.
      *
-     * @return computed rank.
+     * @return the index of the edge, or -1 if the edge is not in the estimates,
+     *         as for the edge from the dummy root.
      */
-    protected float computeDownwardRank( GraphNode node ){
-        float result = 0;
-	//value needs to be computed for each parent separately
-        //float value = 0;
-
-        for( Iterator it = node.getParents().iterator(); it.hasNext(); ){
-            GraphNode p = (GraphNode)it.next();
-            Bag pbag    = p.getBag();
-	    float value = 0;
-            value += ( getFloatValue ( pbag.get( DecoBag.DOWNWARD_RANK ) )+
-                       getFloatValue ( pbag.get( DecoBag.AVG_COMPUTE_TIME ) ) +
-                       mAverageCommunicationCost
-                     );
+    private int getEdge( GraphNode node, int k ){
+        if( mTransfers == null || k >= mTransfers.getEdgeCount( node.getID() ) ){
+            return -1;
+        }
+        return mTransfers.getFirstEdge( node.getID() ) + k;
+    }
 
-            if( value > result ){
-                 result = value;
+    /**
+     * Returns the time to move the output of a parent of a job from the site
+     * it ran on to another site. It is the data volume of the edge over the
+     * bandwidth between the sites, or the average communication cost if the
+     * volume is not known, within a region and across regions alike. Across
+     * regions the transfer time between the regions is added.
+     *
+     * @param node  the node of the job.
+     * @param k     the position of the parent in the parents of the node.
+     * @param from  the site the parent ran on.
+     * @param to    the site the output is moved to.
+     *
+     * @return the time in seconds
+     */
+    protected long getTransferTime( GraphNode node, int k, String from, String to ){
+        if( from.equals( to ) ){
+            return 0;
+        }
+        int edge = getEdge( node, k );
+        float time = ( edge == -1 ) ? TransferEstimates.UNKNOWN : mTransfers.getTransferTime( edge, from, to );
+        long result = ( time == TransferEstimates.UNKNOWN ) ? (long)mAverageCommunicationCost : (long)Math.ceil( time );
+        if( mRegions != null ){
+            int source = mRegions.getRegion( from );
+            int target = mRegions.getRegion( to );
+            if( source != -1 && target != -1 && source != target ){
+                result += mRegions.getTransferTime( source, target );
             }
         }
-
         return result;
     }
 
     /**
-     * Returns the average compute time in seconds for a job.
+     * Returns the time to move the output of a parent of a job at the mean
+     * bandwidth between the candidate sites, or the average communication
+     * cost if the volume is not known.
      *
-     * @param job the job whose average compute time is to be computed.
+     * @param node  the node of the job.
+     * @param k     the position of the parent in the parents of the node.
      *
-     * @return the weighted compute time in seconds.
+     * @return the time in seconds
      */
-    protected float calculateAverageComputeTime( Job job ){
-        //get all the TC entries for the sites where a job can run
-        List initialrunnableSites = mTCMapper.getSiteList( job.getTXNamespace(),
-                                                    job.getTXName(),
-                                                    job.getTXVersion(),
-                                                    mSites );
-	//Amelie: further select the sites with certain instance type
-        //first, query the required instance type of the transformation underlying the current job
-            List<TransformationCatalogEntry> tcentries = null;
-            try {
-                tcentries = mTCHandle.lookup( job.getTXNamespace(),
-                        job.getTXName(),
-                        job.getTXVersion(),
-                    ( List )null, null );
-            } catch ( Exception e ) {
-                mLogger.log(
-                    "Getting physical names from TC in the TC Mapper\n",
-                    e, LogManager.FATAL_MESSAGE_LEVEL );
-            }
-
-            String requiredinstancetype = null;
-            //second, find out the required instance type
-            if(tcentries != null){
-                TransformationCatalogEntry tcentry = (TransformationCatalogEntry) tcentries.get(0);
-                requiredinstancetype = tcentry.getSysInfo().getInstanceType().toString();
-            }else{
-                mLogger.log("Amelie: cannot find the required transformation\n",LogManager.FATAL_MESSAGE_LEVEL);
-            }
-            //finally, select the sites of required instance types from runnableSites
-            List<String> runnableSites = new LinkedList<String>();
-            for(Iterator rit = initialrunnableSites.iterator(); rit.hasNext();){
-                //handle of the site to be looked up
-                String siteid = (String) rit.next();
-                SiteCatalogEntry siteentry = mSiteStore.lookup( siteid);
-                String instancetype = siteentry.getInstanceType().toString();
-                if(instancetype == requiredinstancetype)
-                        runnableSites.add(siteid);
-            }
-
-	
-        //sanity check
-        if( runnableSites == null || runnableSites.isEmpty() ){
-            throw new RuntimeException( "No runnable site for job " + job.getName() );
-        }
+    protected float getAverageTransferTime( GraphNode node, int k ){
+        int edge = getEdge( node, k );
+        float time = ( edge == -1 ) ? TransferEstimates.UNKNOWN : mTransfers.getAverageTransferTime( edge );
+        return ( time == TransferEstimates.UNKNOWN ) ? mAverageCommunicationCost : time;
+    }
 
-        mLogger.log( "Runnables sites for job " + job.getName() + " " + runnableSites , LogManager.DEBUG_MESSAGE_LEVEL );
+    /**
+     * Picks the site for a job that is cheapest at the prices of its region,
+     * including the cost of moving the outputs of the parents from other
+     * regions, among the sites where the job finishes within its share of the
+     * deadline. The share is proportional to the length of the longest path
+     * through the workflow till the job finishes. If the job cannot finish
+     * within its share on any site, or no deadline is specified, the site
+     * with the earliest finish time is picked, and the cheapest site
+     * respectively.
+     *
+     * @param node    the node being scheduled.
+     * @param sites   the candidate sites.
+     * @param length  the length of the longest path through the workflow.
+     * @param result  array to hold the estimated start and finish time on the
+     *                picked site.
+     *
+     * @return the index of the picked site, or -1 if there are no sites.
+     */
+    protected int selectRegionSite( GraphNode node, List<String> sites, float length, long[] result ){
+        Bag bag = node.getBag();
+        long share = Long.MAX_VALUE;
+        if( mDeadline > 0 && length > 0 ){
+            share = (long)( mDeadline * ( getFloatValue( bag.get( DecoBag.DOWNWARD_RANK ) ) +
+                                          getFloatValue( bag.get( DecoBag.AVG_COMPUTE_TIME ) ) ) / length );
+        }
 
-        //for each runnable site get the expected runtime
-        String site;
+        int cheapest = -1, earliest = -1;
+        float cheapestCost = Float.MAX_VALUE;
+        long[] cheapestTimes = null, earliestTimes = null;
+        for( int i = 0; i < sites.size(); i++ ){
+            long[] times = calculateEstimatedStartAndFinishTime( node, sites.get( i ) );
+            if( earliest == -1 || times[ 1 ] < earliestTimes[ 1 ] ){
+                earliest = i;
+                earliestTimes = times;
+            }
+            if( times[ 1 ] > share ){
+                continue;
+            }
+            float cost = getPlacementCost( node, sites.get( i ), times[ 0 ], times[ 1 ] );
+            if( cost < cheapestCost || ( cost == cheapestCost && times[ 1 ] < cheapestTimes[ 1 ] ) ){
+                cheapest = i;
+                cheapestCost = cost;
+                cheapestTimes = times;
+            }
+        }
+
+        int best = ( cheapest == -1 ) ? earliest : cheapest;
+        if( best != -1 ){
+            long[] times = ( cheapest == -1 ) ? earliestTimes : cheapestTimes;
+            result[ 0 ] = times[ 0 ];
+            result[ 1 ] = times[ 1 ];
+        }
+        return best;
+    }
+
+    /**
+     * Returns the cost of running a job on a site at the prices of its region,
+     * plus the cost of moving the outputs of its parents from other regions.
+     *
+     * @param node    the node of the job, with its parents scheduled.
+     * @param site    the site.
+     * @param start   the start time of the job.
+     * @param finish  the finish time of the job.
+     *
+     * @return the cost in dollars
+     */
+    protected float getPlacementCost( GraphNode node, String site, long start, long finish ){
+        int region = mRegions.getRegion( site );
+        SysInfo.InstanceType type = mSiteIndex.getInstanceType( site );
+        float cost = ( type == null ) ? 0 : mRegions.getCost( region, type, start, finish );
+        for( Iterator it = node.getParents().iterator(); it.hasNext(); ){
+            GraphNode parent = (GraphNode)it.next();
+            String from = (String)parent.getBag().get( DecoBag.SCHEDULED_SITE );
+            if( from != null ){
+                int source = mRegions.getRegion( from );
+                if( source != region ){
+                    cost += mRegions.getTransferCost( source, region );
+                }
+            }
+        }
+        return cost;
+    }
+
+    /**
+     * Computes the cost of running the jobs of a scheduled workflow at the
+     * prices of their regions, including the transfers across regions.
+     *
+     * @param workflow  the scheduled workflow.
+     *
+     * @return the cost in dollars, or 0 if no region schedule is specified.
+     */
+    protected float computePlacementCost( Graph workflow ){
+        if( mRegions == null ){
+            return 0;
+        }
+        float cost = 0;
+        for( Iterator it = workflow.nodeIterator(); it.hasNext(); ){
+            GraphNode node = (GraphNode)it.next();
+            Bag b = node.getBag();
+            cost += getPlacementCost( node, (String)b.get( DecoBag.SCHEDULED_SITE ),
+                                      ( (Long)b.get( DecoBag.ACTUAL_START_TIME ) ).longValue(),
+                                      ( (Long)b.get( DecoBag.ACTUAL_FINISH_TIME ) ).longValue() );
+        }
+        return cost;
+    }
+
+    /**
+     * Returns the cost in dollars of running the jobs of the last scheduled
+     * workflow at the prices of their regions, including the transfers
+     * across regions.
+     *
+     * @return the cost, or 0 if no region schedule is specified.
+     *
+     * @see #REGIONS_PROPERTY
+     */
+    public float getPlacementCost(){
+        return mPlacementCost;
+    }
+
+    /**
+     * Returns the average compute time in seconds for a job, over the sites
+     * of the instance type configured for the job.
+     *
+     * @param node the node whose average compute time is to be computed.
+     *
+     * @return the weighted compute time in seconds.
+     */
+    protected float calculateAverageComputeTime( GraphNode node ){
+        Job job = (Job)node.getContent();
+        List<String> runnableSites = getRunnableSites( job,
+                                                       (SysInfo.InstanceType)node.getBag().get( DecoBag.INSTANCE_TYPE ) );
+
+        //sanity check
+        if( runnableSites == null || runnableSites.isEmpty() ){
+            throw new RuntimeException( "No runnable site for job " + job.getName() );
+        }
+
+        mLogger.log( "Runnables sites for job " + job.getName() + " " + runnableSites , LogManager.DEBUG_MESSAGE_LEVEL );
+
+        //for each runnable site get the expected runtime
+        String site;
         int total_nodes = 0;
         int total = 0;
         for( Iterator it = runnableSites.iterator(); it.hasNext(); ){
             site = ( String ) it.next();
             int nodes = getFreeNodesForSite( site );
-            List entries = mTCMapper.getTCList( job.getTXNamespace(),
-                                                job.getTXName(),
-                                                job.getTXVersion(),
-                                                site );
-
-            //pick the first one for time being
-            TransformationCatalogEntry entry = ( TransformationCatalogEntry ) entries.get( 0 );
-            int jobRuntime = getExpectedRuntime( job, entry );
+            int jobRuntime = mSiteIndex.getRuntime( job, node.getID(), site );
             total_nodes += nodes;
             total += jobRuntime * nodes;
 
@@ -539,6 +1150,670 @@ public class Algorithm {
         return total/total_nodes;
     }
 
+    /**
+     * Returns the instance type required by the transformation underlying a
+     * job, as specified in the transformation catalog.
+     *
+     * @param job  the job.
+     *
+     * @return the required instance type, else null if the transformation
+     *         cannot be found.
+     */
+    protected SysInfo.InstanceType getRequiredInstanceType( Job job ){
+        List<TransformationCatalogEntry> tcentries = null;
+        try {
+            tcentries = mTCHandle.lookup( job.getTXNamespace(),
+                    job.getTXName(),
+                    job.getTXVersion(),
+                ( List )null, null );
+        } catch ( Exception e ) {
+            mLogger.log(
+                "Getting physical names from TC in the TC Mapper\n",
+                e, LogManager.FATAL_MESSAGE_LEVEL );
+        }
+
+        if( tcentries == null || tcentries.isEmpty() ){
+            mLogger.log("Amelie: cannot find the required transformation\n",LogManager.FATAL_MESSAGE_LEVEL);
+            return null;
+        }
+        return tcentries.get( 0 ).getSysInfo().getInstanceType();
+    }
+
+    /**
+     * Returns the sites of a particular instance type where a job can run.
+     *
+     * @param job   the job.
+     * @param type  the instance type the job is configured to run on.
+     *
+     * @return list of site handles.
+     */
+    protected List<String> getRunnableSites( Job job, SysInfo.InstanceType type ){
+        return Arrays.asList( mSiteIndex.getRunnableSites( job, type ) );
+    }
+
+    /**
+     * Creates the index of the sites where the jobs of a workflow can run,
+     * with the runtimes of the jobs resolved by getExpectedRuntime().
+     *
+     * @param workflow  the workflow.
+     * @param sites     the list of candidate sites.
+     *
+     * @return the index
+     */
+    protected RunnableSiteIndex createSiteIndex( Graph workflow, List sites ){
+        return new RunnableSiteIndex( workflow, sites, mTCMapper, mSiteStore,
+                                      new RunnableSiteIndex.RuntimeEstimator(){
+                                          public int getExpectedRuntime( Job job, TransformationCatalogEntry entry ){
+                                              return Algorithm.this.getExpectedRuntime( job, entry );
+                                          }
+                                      });
+    }
+
+    /**
+     * Picks the instance type for each job in the workflow using the Deco
+     * A* search, such that the workflow meets the deadline at the lowest
+     * cost. If no configuration meets the deadline, each job is assigned
+     * its fastest instance type.
+     *
+     * @param workflow  the workflow to be planned.
+     *
+     * @return map indexed by the node id with the instance type as value.
+     */
+    protected Map<String,SysInfo.InstanceType> planInstanceTypes( Graph workflow ){
+        DecoProblem problem = createProblem( workflow, mSites );
+        AstarSearch search  = createSearch( problem, mSearchThreads );
+        mProblem  = problem;
+        mFrontier = mCollectFrontier ? new ParetoArchive() : null;
+        search.setArchive( mFrontier );
+        search.setIncumbent( loadWarmStart( problem ) );
+        byte[] configuration = search.search();
+        if( mFrontier != null ){
+            writeFrontier( problem );
+        }
+        if( configuration == null ){
+            mLogger.log( "Deco search unable to meet the deadline of " + mDeadline +
+                         " seconds. Assigning the fastest instance types",
+                         LogManager.WARNING_MESSAGE_LEVEL );
+            configuration = new byte[ problem.size() ];
+            for( int i = 0; i < configuration.length; i++ ){
+                configuration[ i ] = (byte)problem.getFastestType( i );
+            }
+        }
+        else if( search.isTimedOut() ){
+            mLogger.log( "Deco search timed out after " + mTimeout + " seconds. Cost of configuration is " +
+                         search.getBestCost() + " with a lower bound of " + search.getLowerBound() +
+                         " (gap " + search.getGap() + ")",
+                         LogManager.INFO_MESSAGE_LEVEL );
+        }
+        storeWarmStart( problem, configuration );
+        mCost = problem.getCost( configuration );
+        mLogger.log( "Deco search expanded " + search.getExpansions() + " states. Cost of configuration is " + mCost +
+                     ". Gap to the lower bound is " + search.getGap(),
+                     LogManager.DEBUG_MESSAGE_LEVEL );
+        return getInstanceTypes( problem, configuration );
+    }
+
+    /**
+     * Picks the instance type for each job in the workflow such that the
+     * makespan is minimized within the budget. If even the cheapest
+     * configuration exceeds the budget, each job is assigned its cheapest
+     * instance type.
+     *
+     * @param workflow  the workflow to be planned.
+     *
+     * @return map indexed by the node id with the instance type as value.
+     */
+    protected Map<String,SysInfo.InstanceType> planInstanceTypesForBudget( Graph workflow ){
+        DecoProblem problem = createProblem( workflow, mSites );
+        BudgetSearch search = new BudgetSearch( problem, mBudget );
+        mProblem  = problem;
+        mFrontier = mCollectFrontier ? new ParetoArchive() : null;
+        search.setArchive( mFrontier );
+        byte[] configuration = search.search();
+        if( mFrontier != null ){
+            writeFrontier( problem );
+        }
+        if( configuration == null ){
+            mLogger.log( "Deco budget of " + mBudget + " is less than the cost " + search.getCost() +
+                         " of the cheapest configuration. Assigning the cheapest instance types",
+                         LogManager.WARNING_MESSAGE_LEVEL );
+            configuration = new byte[ problem.size() ];
+            for( int i = 0; i < configuration.length; i++ ){
+                configuration[ i ] = (byte)problem.getCheapestType( i );
+            }
+        }
+        mCost = problem.getCost( configuration );
+        mLogger.log( "Deco budget search applied " + search.getUpgrades() + " upgrades with " +
+                     search.getEvaluations() + " evaluations. Cost of configuration is " + mCost +
+                     " with makespan " + search.getMakespan(),
+                     LogManager.DEBUG_MESSAGE_LEVEL );
+        return getInstanceTypes( problem, configuration );
+    }
+
+    /**
+     * Returns the instance types of the jobs in a configuration.
+     *
+     * @param problem        the problem the configuration is for.
+     * @param configuration  the instance type ordinal for each task.
+     *
+     * @return map indexed by the node id with the instance type as value.
+     */
+    private Map<String,SysInfo.InstanceType> getInstanceTypes( DecoProblem problem, byte[] configuration ){
+        Map<String,SysInfo.InstanceType> result = new HashMap<String,SysInfo.InstanceType>();
+        for( int i = 0; i < configuration.length; i++ ){
+            result.put( problem.getID( i ), DecoProblem.TYPES[ configuration[ i ] ] );
+        }
+        return result;
+    }
+
+    /**
+     * Loads the instance types picked by the previous run of the workflow,
+     * to seed the Deco search with.
+     *
+     * @param problem  the problem to be searched.
+     *
+     * @return the instance type ordinal for each task, or null if there is no
+     *         previous plan or the warm start is not enabled.
+     *
+     * @see #WARM_START_PROPERTY
+     */
+    protected byte[] loadWarmStart( DecoProblem problem ){
+        File f = getWarmStartFile( true );
+        if( f == null || !f.exists() ){
+            return null;
+        }
+        try{
+            InstanceTypePlan plan = InstanceTypePlan.read( f );
+            byte[] configuration  = new byte[ problem.size() ];
+            int matched = plan.apply( problem, configuration );
+            mLogger.log( "Warm starting the Deco search from " + f + " with " + matched + " of " +
+                         problem.size() + " jobs matched",
+                         LogManager.DEBUG_MESSAGE_LEVEL );
+            return ( matched == 0 ) ? null : configuration;
+        }
+        catch( IOException e ){
+            mLogger.log( "Unable to load the previous instance types from " + f,
+                         e, LogManager.WARNING_MESSAGE_LEVEL );
+            return null;
+        }
+    }
+
+    /**
+     * Writes the instance types picked by the Deco search to the submit
+     * directory, for the next run of the workflow to be seeded with.
+     *
+     * @param problem        the problem searched.
+     * @param configuration  the instance type ordinal for each task.
+     */
+    protected void storeWarmStart( DecoProblem problem, byte[] configuration ){
+        File f = getWarmStartFile( false );
+        if( f == null ){
+            return;
+        }
+        try{
+            new InstanceTypePlan( problem, configuration ).write( f );
+        }
+        catch( IOException e ){
+            mLogger.log( "Unable to write the instance types to " + f,
+                         e, LogManager.WARNING_MESSAGE_LEVEL );
+        }
+    }
+
+    /**
+     * Returns the file the instance types are warm started from or written
+     * to.
+     *
+     * @param read  whether the file is to be read from.
+     *
+     * @return the file, or null if the warm start is not enabled.
+     */
+    private File getWarmStartFile( boolean read ){
+        String value = mProps.getProperty( WARM_START_PROPERTY );
+        if( value == null || value.equalsIgnoreCase( "false" ) ){
+            return null;
+        }
+        if( !value.equalsIgnoreCase( "true" ) && read ){
+            return new File( value );
+        }
+        return ( mSubmitDirectory == null ) ? null : new File( mSubmitDirectory, mLabel + InstanceTypePlan.FILE_SUFFIX );
+    }
+
+    /**
+     * Writes the configurations not dominated in cost and makespan to a file
+     * named by the workflow label in the submit directory.
+     *
+     * @param problem  the problem whose configurations are archived.
+     */
+    protected void writeFrontier( DecoProblem problem ){
+        if( mSubmitDirectory == null ){
+            return;
+        }
+        File f = new File( mSubmitDirectory, mLabel + ParetoArchive.FRONTIER_FILE_SUFFIX );
+        try{
+            mFrontier.write( problem, f );
+            mLogger.log( "Written " + mFrontier.size() + " configurations of the cost and makespan frontier to " + f,
+                         LogManager.DEBUG_MESSAGE_LEVEL );
+        }
+        catch( IOException e ){
+            mLogger.log( "Unable to write the cost and makespan frontier to " + f,
+                         e, LogManager.WARNING_MESSAGE_LEVEL );
+        }
+    }
+
+    /**
+     * Returns the configurations not dominated in cost and makespan found by
+     * the last search.
+     *
+     * @return the archive, or null if not collected.
+     *
+     * @see #FRONTIER_PROPERTY
+     */
+    public ParetoArchive getFrontier(){
+        return mFrontier;
+    }
+
+    /**
+     * Creates the Deco problem for a workflow, with the deadline, the prices
+     * and the runtime of each job on each instance type set. The runtime of a
+     * job on an instance type is picked from the candidate sites of the type.
+     *
+     * @param workflow  the workflow to be planned.
+     * @param sites     the list of candidate sites.
+     *
+     * @return the problem
+     */
+    public DecoProblem createProblem( Graph workflow, List sites ){
+        DecoProblem problem = new DecoProblem( workflow );
+        problem.setDeadline( mDeadline, mProbability );
+        for( int t = 0; t < DecoProblem.NUM_TYPES; t++ ){
+            problem.setPrice( DecoProblem.TYPES[ t ], mPrices[ t ] );
+        }
+
+        //the runtime of a job on an instance type is the smallest
+        //runtime over the sites of the instance type
+        RunnableSiteIndex index = ( workflow == mWorkflow && sites == mSites && mSiteIndex != null ) ?
+                                  mSiteIndex :
+                                  createSiteIndex( workflow, sites );
+        for( int i = 0; i < problem.size(); i++ ){
+            Job job = (Job)workflow.getNode( problem.getID( i ) ).getContent();
+            String[] runnable = index.getRunnableSites( job );
+            for( int j = 0; j < runnable.length; j++ ){
+                SysInfo.InstanceType type = index.getInstanceType( runnable[ j ] );
+                float runtime = index.getRuntime( job, problem.getID( i ), runnable[ j ] );
+                if( runtime < problem.getRuntime( i, type.ordinal() ) ){
+                    problem.setRuntime( i, type, runtime );
+                }
+            }
+        }
+
+        //with performance samples, the runtime is the quantile of the
+        //runtime distribution at the deadline probability
+        if( mPerformance != null ){
+            mDistributions = computeDistributions( workflow, problem );
+            mDistributions.setRuntimes( problem );
+            problem.setDistributions( mDistributions );
+        }
+        return problem;
+    }
+
+    /**
+     * Creates the Deco search for a problem. If the problem has runtime
+     * distributions, the deadline is checked against the makespan distribution.
+     *
+     * @param problem      the problem created by createProblem().
+     * @param parallelism  the number of threads to use for the search.
+     *
+     * @return the search
+     */
+    public AstarSearch createSearch( DecoProblem problem, int parallelism ){
+        AstarSearch search = new AstarSearch( problem, parallelism, mSearchLimit );
+        search.setWeight( mSearchWeight );
+        search.setTimeout( (long)( mTimeout * 1000 ) );
+        if( problem.getDistributions() != null && mHistogramPoints > 1 ){
+            search.setEvaluator( new ProbabilisticEvaluator( problem, problem.getDistributions(), mHistogramPoints ) );
+        }
+        return search;
+    }
+
+    /**
+     * Creates a simulator for a scheduled workflow. Each job runs on the site
+     * it was scheduled to, on the instance type of the site.
+     *
+     * @param workflow  the workflow scheduled by the last call to schedule().
+     *
+     * @return the simulator
+     */
+    public PlanSimulator createSimulator( Graph workflow ){
+        DecoProblem problem = ( mProblem == null ) ? createProblem( workflow, mSites ) : mProblem;
+        int n = problem.size();
+        byte[] types = new byte[ n ];
+        int[] sites  = new int[ n ];
+        List<String> names = new ArrayList<String>();
+        for( int i = 0; i < n; i++ ){
+            GraphNode node = workflow.getNode( problem.getID( i ) );
+            String site = (String)node.getBag().get( DecoBag.SCHEDULED_SITE );
+            int index = names.indexOf( site );
+            if( index == -1 ){
+                index = names.size();
+                names.add( site );
+            }
+            sites[ i ] = index;
+            types[ i ] = (byte)mSiteStore.lookup( site ).getInstanceType().ordinal();
+        }
+
+        int[] nodes = new int[ names.size() ];
+        float[] prices = new float[ names.size() ];
+        for( int s = 0; s < nodes.length; s++ ){
+            nodes[ s ]  = getFreeNodesForSite( names.get( s ) );
+            prices[ s ] = mPrices[ mSiteStore.lookup( names.get( s ) ).getInstanceType().ordinal() ];
+        }
+        return new PlanSimulator( problem, types, sites, nodes, prices );
+    }
+
+    /**
+     * Simulates a scheduled workflow, if the number of simulation runs is
+     * specified in the properties.
+     *
+     * @param workflow  the workflow scheduled by the last call to schedule().
+     *
+     * @return the result, or null if no simulation runs are specified.
+     */
+    public SimulationResult simulate( Graph workflow ){
+        int runs = (int)getFloatProperty( SIMULATION_RUNS_PROPERTY, 0 );
+        if( runs <= 0 ){
+            return null;
+        }
+        return createSimulator( workflow ).simulate( runs, mRequestID == null ? 0 : mRequestID.hashCode(), mSearchThreads );
+    }
+
+    /**
+     * Computes a structural hash of each job, that is the same for jobs in
+     * workflows of the same shape irrespective of the job ids. The hash of a
+     * job covers its transformation, its runtime estimate on each candidate
+     * site, the size of its data, and the hashes of the jobs above and below it.
+     *
+     * @param workflow   the workflow.
+     * @param structure  the index view of the workflow.
+     *
+     * @return the hashes indexed by the task index.
+     *
+     * @see PlanCache#fingerprint(DecoProblem, long[])
+     */
+    protected long[] fingerprintJobs( Graph workflow, DecoProblem structure ){
+        List<String> sites = new ArrayList<String>( mSites );
+        Collections.sort( sites );
+
+        int n = structure.size();
+        long[] own = new long[ n ];
+        for( int i = 0; i < n; i++ ){
+            Job job = (Job)workflow.getNode( structure.getID( i ) ).getContent();
+            long h = PlanCache.hash( PlanCache.FNV_OFFSET, job.getCompleteTCName() );
+            for( String site : sites ){
+                long runtime = -1;
+                if( mSiteIndex.getEntry( job, site ) != null ){
+                    runtime = mSiteIndex.getRuntime( job, structure.getID( i ), site );
+                }
+                h = PlanCache.hash( h, runtime );
+            }
+            h = PlanCache.hash( h, Float.floatToIntBits( getDataVolume( job.getInputFiles() ) ) );
+            h = PlanCache.hash( h, Float.floatToIntBits( getDataVolume( job.getOutputFiles() ) ) );
+            own[ i ] = h;
+        }
+        return PlanCache.fingerprint( structure, own );
+    }
+
+    /**
+     * Returns the cache key of a workflow. The key covers the hashes and the
+     * parents of the jobs, the candidate sites with their instance types and
+     * node counts, the Deco properties, and the contents of the files named
+     * by the properties.
+     *
+     * @param hashes   the hashes of the jobs.
+     * @param order    the canonical order of the jobs.
+     * @param parents  the parents of the job at each canonical position.
+     *
+     * @return the key, or null if a file named by the properties cannot be
+     *         read.
+     */
+    protected String getCacheKey( long[] hashes, int[] order, int[][] parents ){
+        MessageDigest digest = PlanCache.digestStructure( hashes, order, parents );
+
+        List<String> sites = new ArrayList<String>( mSites );
+        Collections.sort( sites );
+        StringBuffer sb = new StringBuffer();
+        for( String site : sites ){
+            sb.append( site ).append( ' ' ).
+               append( mSiteIndex.getInstanceType( site ) ).append( ' ' ).
+               append( getFreeNodesForSite( site ) ).append( '\n' );
+        }
+        sb.append( mDeadline ).append( ' ' ).append( mProbability ).append( ' ' ).
+           append( mBudget ).append( ' ' ).
+           append( Arrays.toString( mPrices ) ).append( ' ' ).
+           append( mProps.getProperty( DEFAULT_BANDWIDTH_PROPERTY ) ).append( ' ' ).
+           append( mHistogramPoints ).append( ' ' ).
+           append( mTimeout ).append( ' ' ).
+           append( mSearchWeight ).append( ' ' ).
+           append( mSearchLimit ).append( ' ' ).
+           append( mProps.getProperty( WARM_START_PROPERTY ) ).append( ' ' ).
+           append( ( mRegions == null ) ? RegionSchedule.UNSET : mRegions.getStart() ).append( '\n' );
+        PlanCache.update( digest, sb.toString() );
+
+        //the files are keyed on their contents, not their paths
+        String[] properties = { SAMPLES_PROPERTY, REGIONS_PROPERTY, BANDWIDTH_PROPERTY };
+        try{
+            for( String property : properties ){
+                String value = mProps.getProperty( property );
+                PlanCache.update( digest, property + "\n" );
+                if( value != null ){
+                    PlanCache.update( digest, new File( value ) );
+                }
+            }
+            File warm = getWarmStartFile( true );
+            if( warm != null ){
+                PlanCache.update( digest, warm );
+            }
+        }
+        catch( IOException e ){
+            mLogger.log( "Unable to compute the cache key, the schedule is not cached",
+                         e, LogManager.WARNING_MESSAGE_LEVEL );
+            return null;
+        }
+        return PlanCache.toKey( digest.digest() );
+    }
+
+    /**
+     * Applies a cached schedule to a workflow. The jobs are scheduled on the
+     * timelines of their sites, and the instance types are stored for the
+     * warm start, as when the schedule is computed.
+     *
+     * @param workflow   the workflow.
+     * @param structure  the index view of the workflow.
+     * @param order      the canonical order of the jobs.
+     * @param plan       the cached schedule.
+     */
+    protected void applyPlan( Graph workflow, DecoProblem structure, final int[] order, final PlanCache.Plan plan ){
+        byte[] configuration = new byte[ order.length ];
+        boolean typed = true;
+        for( int k = 0; k < order.length; k++ ){
+            GraphNode node = workflow.getNode( structure.getID( order[ k ] ) );
+            int type = plan.getType( k );
+            DecoBag b = new DecoBag();
+            b.add( DecoBag.INSTANCE_TYPE, ( type < 0 ) ? null : DecoProblem.TYPES[ type ] );
+            b.add( DecoBag.SCHEDULED_SITE, plan.getSite( k ) );
+            b.add( DecoBag.ACTUAL_START_TIME, new Long( plan.getStart( k ) ) );
+            b.add( DecoBag.ACTUAL_FINISH_TIME, new Long( plan.getFinish( k ) ) );
+            node.setBag( b );
+            configuration[ order[ k ] ] = (byte)type;
+            typed = typed && type >= 0;
+        }
+        mCost = plan.getCost();
+
+        //the jobs are scheduled on their sites in the order they start
+        Integer[] starts = new Integer[ order.length ];
+        for( int k = 0; k < starts.length; k++ ){
+            starts[ k ] = k;
+        }
+        Arrays.sort( starts, new Comparator<Integer>(){
+            public int compare( Integer k1, Integer k2 ){
+                int result = Long.compare( plan.getStart( k1 ), plan.getStart( k2 ) );
+                return ( result == 0 ) ? k1 - k2 : result;
+            }
+        });
+        for( int k : starts ){
+            Site site = (Site)mSiteMap.get( plan.getSite( k ) );
+            if( site != null ){
+                site.getAvailableTime( plan.getStart( k ), plan.getFinish( k ) - plan.getStart( k ) );
+                site.scheduleJob( plan.getStart( k ), plan.getFinish( k ) );
+            }
+        }
+
+        if( mDeadline > 0 && typed ){
+            storeWarmStart( structure, configuration );
+        }
+    }
+
+    /**
+     * Stores the schedule of a workflow in the cache.
+     *
+     * @param workflow   the scheduled workflow.
+     * @param structure  the index view of the workflow.
+     * @param order      the canonical order of the jobs.
+     * @param parents    the parents of the job at each canonical position.
+     * @param key        the cache key.
+     */
+    protected void storePlan( Graph workflow, DecoProblem structure, int[] order, int[][] parents, String key ){
+        PlanCache.Plan plan = new PlanCache.Plan( getMakespan(), mCost );
+        for( int k = 0; k < order.length; k++ ){
+            Bag b = workflow.getNode( structure.getID( order[ k ] ) ).getBag();
+            //a job has no instance type without a deadline or a budget, if
+            //the catalog does not specify one
+            SysInfo.InstanceType type = (SysInfo.InstanceType)b.get( DecoBag.INSTANCE_TYPE );
+            plan.add( (String)b.get( DecoBag.SCHEDULED_SITE ),
+                      ( type == null ) ? -1 : type.ordinal(),
+                      ( (Long)b.get( DecoBag.ACTUAL_START_TIME ) ).longValue(),
+                      ( (Long)b.get( DecoBag.ACTUAL_FINISH_TIME ) ).longValue(),
+                      parents[ k ] );
+        }
+        try{
+            mPlanCache.put( key, plan );
+        }
+        catch( IOException e ){
+            mLogger.log( "Unable to cache the schedule " + key, e, LogManager.WARNING_MESSAGE_LEVEL );
+        }
+    }
+
+    /**
+     * Computes the runtime distributions of the tasks of a problem, from the
+     * runtimes set in the problem and the sizes of the files used by the jobs.
+     * The data read and written by a job is assumed to be sequential IO.
+     *
+     * @param workflow  the workflow being planned.
+     * @param problem   the problem with the runtimes set.
+     *
+     * @return the runtime distributions
+     */
+    protected RuntimeDistributions computeDistributions( Graph workflow, DecoProblem problem ){
+        int n = problem.size();
+        int types = DecoProblem.NUM_TYPES;
+        float[] cpu = new float[ n * types ];
+        float[] trans = new float[ n ];
+        float[] rec = new float[ n ];
+        float[] read = new float[ n ];
+        float[] seq = new float[ n ];
+        for( int i = 0; i < n; i++ ){
+            for( int t = 0; t < types; t++ ){
+                cpu[ i * types + t ] = problem.getRuntime( i, t );
+            }
+            Job job = (Job)workflow.getNode( problem.getID( i ) ).getContent();
+            trans[ i ] = getDataVolume( job.getOutputFiles() );
+            rec[ i ]   = getDataVolume( job.getInputFiles() );
+            seq[ i ]   = trans[ i ] + rec[ i ];
+        }
+
+        RuntimeDistributions result = new RuntimeDistributions( n, types, mPerformance.getSampleCount() );
+        result.compute( cpu, trans, rec, read, seq, mPerformance );
+        return result;
+    }
+
+    /**
+     * Returns the total size in megabytes of a set of files. Files with
+     * unknown sizes are ignored.
+     *
+     * @param files  set of <code>PegasusFile</code>
+     *
+     * @return the size in megabytes
+     */
+    protected float getDataVolume( Set files ){
+        double size = 0;
+        for( Iterator it = files.iterator(); it.hasNext(); ){
+            double s = ( (PegasusFile)it.next() ).getSize();
+            if( s > 0 ){
+                size += s;
+            }
+        }
+        return (float)( size / BYTES_PER_MB );
+    }
+
+    /**
+     * Assigns the scheduled jobs of a workflow to instances, filling the
+     * billed time of the instances already launched before launching new
+     * ones.
+     *
+     * @param workflow  the scheduled workflow.
+     *
+     * @return the packing
+     */
+    protected BillingModel.Packing packInstances( Graph workflow ){
+        List<GraphNode> nodes = new ArrayList<GraphNode>();
+        for( Iterator it = workflow.nodeIterator(); it.hasNext(); ){
+            nodes.add( (GraphNode)it.next() );
+        }
+        int n = nodes.size();
+        String[] sites = new String[ n ];
+        int[] types    = new int[ n ];
+        long[] start   = new long[ n ];
+        long[] finish  = new long[ n ];
+        for( int i = 0; i < n; i++ ){
+            Bag b = nodes.get( i ).getBag();
+            sites[ i ]  = (String)b.get( DecoBag.SCHEDULED_SITE );
+            SysInfo.InstanceType type = mSiteIndex.getInstanceType( sites[ i ] );
+            types[ i ]  = ( type == null ) ? -1 : type.ordinal();
+            start[ i ]  = ( (Long)b.get( DecoBag.ACTUAL_START_TIME ) ).longValue();
+            finish[ i ] = ( (Long)b.get( DecoBag.ACTUAL_FINISH_TIME ) ).longValue();
+        }
+        return mBilling.pack( sites, types, start, finish );
+    }
+
+    /**
+     * Returns the billed cost in dollars of the instances the last scheduled
+     * workflow runs on, with partial billing periods rounded up and the
+     * billed time of an instance reused by later jobs.
+     *
+     * @return the cost
+     */
+    public float getBilledCost(){
+        return ( mPacking == null ) ? 0 : mPacking.getCost();
+    }
+
+    /**
+     * Returns the assignment of the jobs of the last scheduled workflow to
+     * instances.
+     *
+     * @return the packing, or null if no workflow is scheduled.
+     */
+    public BillingModel.Packing getPacking(){
+        return mPacking;
+    }
+
+    /**
+     * Returns the cost in dollars of the instance types picked by the Deco
+     * search. Is 0 if no deadline is specified.
+     *
+     * @return the cost
+     */
+    public float getCost(){
+        return mCost;
+    }
 
     /**
      * Return expected runtime.
@@ -622,16 +1897,34 @@ public class Algorithm {
     }
 
     /**
-     * Return expected runtime from the AC only if the process catalog is
-     * initialized. Since Pegasus 3.0 release it always returns -1.
+     * Return expected runtime from the runtime history, if one is specified
+     * and it has enough past runtimes of the transformation on the instance
+     * type of the site of the TC entry. The runtime is the quantile of the
+     * past runtimes at the deadline probability if a deadline is specified,
+     * else their mean.
      *
      * @param job    the job in the workflow.
      * @param entry  the TC entry
      *
-     * @return the runtime in seconds.
+     * @return the runtime in seconds, else -1.
+     *
+     * @see #HISTORY_PROPERTY
      */
     protected double getExpectedRuntimeFromAC( Job job, TransformationCatalogEntry entry  ){
         double result = -1;
+        if( mHistory == null ){
+            return result;
+        }
+
+        SiteCatalogEntry site = mSiteStore.lookup( entry.getResourceId() );
+        if( site == null || site.getInstanceType() == null ){
+            return result;
+        }
+        long bytes = (long)( getDataVolume( job.getInputFiles() ) * BYTES_PER_MB );
+        RuntimeHistory.Entry e = mHistory.get( job.getCompleteTCName(), site.getInstanceType(), bytes );
+        if( e != null && e.getCount() >= mHistoryMinSamples ){
+            result = ( mDeadline > 0 ) ? e.getQuantile( mProbability ) : e.getMean();
+        }
         return result;
     }
 
@@ -740,6 +2033,25 @@ public class Algorithm {
 
     }
 
+    /**
+     * Returns the earliest time at which a job can start on a site, using
+     * insertion based policy.
+     *
+     * @param site       the site at which you want to schedule the job.
+     * @param readyTime  the time at which all the data reqd by the job will arrive at site.
+     * @param duration   the compute time of the job on the site.
+     *
+     * @return the available time of the site.
+     */
+    protected long getAvailableTime( String site , long readyTime, long duration ){
+        if( mSiteMap.containsKey( site ) ){
+            return ( ( Site )mSiteMap.get( site )).getAvailableTime( readyTime, duration );
+        }
+        else{
+            throw new RuntimeException( "Site information unavailable for site " + site );
+        }
+    }
+
     /**
      * This method returns a String describing the site selection technique
      * that is being implemented by the implementing class.
@@ -767,6 +2079,30 @@ public class Algorithm {
         return "";
     }
 
+    /**
+     * Returns the value of a property as a float.
+     *
+     * @param key           the property key.
+     * @param defaultValue  the value to return if the property is not
+     *                      specified or is invalid.
+     *
+     * @return the float value
+     */
+    private float getFloatProperty( String key, float defaultValue ){
+        String value = mProps.getProperty( key );
+        if( value == null ){
+            return defaultValue;
+        }
+        try{
+            return Float.parseFloat( value.trim() );
+        }
+        catch( NumberFormatException e ){
+            mLogger.log( "Invalid value " + value + " for property " + key,
+                         LogManager.WARNING_MESSAGE_LEVEL );
+            return defaultValue;
+        }
+    }
+
     /**
      * A convenience method to get the intValue for the object passed.
      *
@@ -0,0 +1,905 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * The A* search over the instance type configurations of a workflow. It is
+ * the in JVM counterpart of <code>SearchPrune::OfflineAstar()</code> in the
+ * native planner.
+ *
+ * The search fixes the instance type of one task at a time in topological
+ * order. The bound of a state is the cost of the fixed tasks plus the
+ * minimum cost of the remaining tasks, which never overestimates the cost
+ * of a configuration reachable from the state. A state is pruned if
+ * <pre>
+ *    - its bound is not lower than the cost of the best solution found so far.
+ *    - the deadline is not met even if all remaining tasks run on their
+ *      fastest instance types.
+ * </pre>
+ * Whether a configuration meets the deadline is decided by a pluggable
+ * <code>DeadlineEvaluator</code>. By default, the makespan computed from the
+ * runtimes of the problem is compared against the deadline.
+ *
+ * If a <code>ParetoArchive</code> is set, the search also collects the
+ * configurations that are not dominated in cost and makespan. The archive is
+ * seeded by tracing the greedy upgrades from the cheapest configuration till
+ * the critical path cannot be sped up, and every solution found by the A*
+ * search is offered to it.
+ *
+ * The states with the lowest bounds are taken off the open set in batches,
+ * and expanded in parallel on a ForkJoinPool. The children are merged back
+ * in batch order, so that the result does not depend on the number of
+ * threads.
+ *
+ * The search runs as an anytime search if a timeout is set. Before a
+ * round, the most promising state on the open set is completed greedily into
+ * a feasible configuration, which tightens the best solution while the
+ * search proceeds. The completions are skipped while they have taken more
+ * than <code>DIVE_SHARE</code> of the time of the search. If the timeout or
+ * the expansion limit is hit, the best solution found is returned, and the
+ * smallest bound of the states left on the open set gives a lower bound on
+ * the cost of the optimal solution. The timeout also covers the greedy
+ * phases before the A* search. If it is hit while a configuration is being
+ * made feasible, the remaining tasks are assigned their fastest types.
+ *
+ * The search can be warm started with the configuration of a previous run,
+ * which then serves as the initial upper bound if it is cheaper than the
+ * greedy initial solution.
+ *
+ * Optionally, the open set can be ordered by the cost of the fixed tasks plus
+ * the weighted minimum cost of the remaining tasks. A weight greater than 1
+ * favours deeper states. States are still pruned against the unweighted
+ * bound, so if the search runs to completion the result is optimal.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class AstarSearch {
+
+    /**
+     * The default maximum number of states that are expanded.
+     */
+    public static final long DEFAULT_EXPANSION_LIMIT = 1000000;
+
+    /**
+     * The number of states taken off the open set per thread in each round.
+     */
+    public static final int STATES_PER_THREAD = 64;
+
+    /**
+     * The default weight of the minimum cost of the remaining tasks in the
+     * order of the open set.
+     */
+    public static final float DEFAULT_WEIGHT = 1;
+
+    /**
+     * The maximum share of the time of an anytime search that is spent
+     * completing the most promising states greedily.
+     */
+    public static final float DIVE_SHARE = 0.25f;
+
+    /**
+     * The finish times of the state expanded last by a thread are recomputed
+     * from scratch, rather than updated, if the types of more than one in
+     * this many tasks change.
+     */
+    private static final int RESET_FRACTION = 16;
+
+    /**
+     * The seed for the random values used to hash the states.
+     */
+    private static final long HASH_SEED = 0x5DEECE66DL;
+
+    /**
+     * The problem being searched.
+     */
+    private DecoProblem mProblem;
+
+    /**
+     * The number of threads to use for expanding states.
+     */
+    private int mParallelism;
+
+    /**
+     * The maximum number of states to expand.
+     */
+    private long mExpansionLimit;
+
+    /**
+     * The random value for each task and type pair, whose XOR over the fixed
+     * assignments gives the hash of a state.
+     */
+    private long[] mHashKeys;
+
+    /**
+     * The number of states expanded in the last search.
+     */
+    private long mExpansions;
+
+    /**
+     * The cost of the best solution found.
+     */
+    private float mBestCost;
+
+    /**
+     * The best solution found.
+     */
+    private byte[] mBest;
+
+    /**
+     * The evaluator for the deadline. null to compare the makespan against
+     * the deadline.
+     */
+    private DeadlineEvaluator mEvaluator;
+
+    /**
+     * The archive of the configurations not dominated in cost and makespan.
+     * null if not collected.
+     */
+    private ParetoArchive mArchive;
+
+    /**
+     * The weight of the minimum cost of the remaining tasks in the order of
+     * the open set.
+     */
+    private float mWeight;
+
+    /**
+     * The configuration the search is seeded with. null if not specified.
+     */
+    private byte[] mIncumbent;
+
+    /**
+     * The maximum time in milliseconds the search runs for. 0 for no limit.
+     */
+    private long mTimeout;
+
+    /**
+     * The lower bound on the cost of the optimal solution, computed by the
+     * last search.
+     */
+    private float mLowerBound;
+
+    /**
+     * Whether the last search was stopped by the timeout.
+     */
+    private boolean mTimedOut;
+
+    /**
+     * The finish times of the state each thread expanded last, for the
+     * current search.
+     */
+    private ThreadLocal<StateTimes> mStateTimes;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param problem      the problem to be searched.
+     * @param parallelism  the number of threads to use.
+     * @param limit        the maximum number of states to expand.
+     */
+    public AstarSearch( DecoProblem problem, int parallelism, long limit ){
+        mProblem        = problem;
+        mParallelism    = ( parallelism < 1 ) ? 1 : parallelism;
+        mExpansionLimit = limit;
+        mWeight         = DEFAULT_WEIGHT;
+        mTimeout        = 0;
+
+        int n = problem.size();
+        Random r = new Random( HASH_SEED );
+        mHashKeys = new long[ n * DecoProblem.NUM_TYPES ];
+        for( int i = 0; i < mHashKeys.length; i++ ){
+            mHashKeys[ i ] = r.nextLong();
+        }
+    }
+
+    /**
+     * Sets the evaluator used to decide whether a configuration meets the
+     * deadline.
+     *
+     * @param evaluator  the evaluator, or null to compare the makespan
+     *                   against the deadline.
+     */
+    public void setEvaluator( DeadlineEvaluator evaluator ){
+        mEvaluator = evaluator;
+    }
+
+    /**
+     * Sets the archive to which the configurations seen by the search are
+     * offered.
+     *
+     * @param archive  the archive, or null to not collect the configurations.
+     */
+    public void setArchive( ParetoArchive archive ){
+        mArchive = archive;
+    }
+
+    /**
+     * Sets the configuration the search is seeded with, typically the
+     * configuration picked by a previous run of the same workflow. If it is
+     * cheaper than the greedy initial solution, its cost is the initial upper
+     * bound of the search. A configuration that misses the deadline is first
+     * upgraded greedily till it meets the deadline.
+     *
+     * @param configuration  the instance type ordinal for each task, or null.
+     */
+    public void setIncumbent( byte[] configuration ){
+        mIncumbent = configuration;
+    }
+
+    /**
+     * Sets the weight of the minimum cost of the remaining tasks in the order
+     * of the open set. A weight greater than 1 finds improving solutions
+     * sooner, without giving up on optimality if the search completes.
+     *
+     * @param weight  the weight. Values less than 1 are treated as 1.
+     */
+    public void setWeight( float weight ){
+        mWeight = ( weight < 1 ) ? 1 : weight;
+    }
+
+    /**
+     * Sets the maximum time the search runs for, after which the best
+     * solution found is returned.
+     *
+     * @param timeout  the timeout in milliseconds. 0 for no limit.
+     */
+    public void setTimeout( long timeout ){
+        mTimeout = ( timeout < 0 ) ? 0 : timeout;
+    }
+
+    /**
+     * Returns the archive of the configurations seen by the search.
+     *
+     * @return the archive, or null if not collected.
+     */
+    public ParetoArchive getArchive(){
+        return mArchive;
+    }
+
+    /**
+     * Searches for the cheapest configuration that meets the deadline.
+     *
+     * @return the instance type ordinal for each task, or null if no
+     *         configuration meets the deadline.
+     */
+    public byte[] search(){
+        int n = mProblem.size();
+        long end = ( mTimeout > 0 ) ? System.currentTimeMillis() + mTimeout : Long.MAX_VALUE;
+        mExpansions = 0;
+        mTimedOut   = false;
+        mStateTimes = new ThreadLocal<StateTimes>(){
+            protected StateTimes initialValue(){
+                return new StateTimes();
+            }
+        };
+        if( mArchive != null ){
+            traceFrontier( end );
+        }
+        float[] scratch = ( mArchive != null ) ? new float[ n ] : null;
+
+        //first step: search for a feasible solution and use it as upper bound
+        mBest     = initialFeasible( end );
+        mBestCost = ( mBest == null ) ? Float.MAX_VALUE : mProblem.getCost( mBest );
+        if( mIncumbent != null ){
+            //a warm start is repaired if it misses the deadline, and used
+            //if it is cheaper than the greedy solution
+            byte[] seed = makeFeasible( mIncumbent.clone(), 0, end );
+            float cost  = ( seed == null ) ? Float.MAX_VALUE : mProblem.getCost( seed );
+            if( cost < mBestCost ){
+                mBest     = seed;
+                mBestCost = cost;
+            }
+        }
+        mLowerBound = mBestCost;
+        if( mArchive != null && mBest != null ){
+            mArchive.offer( mBestCost, mProblem.getMakespan( mBest, scratch ), mBest );
+        }
+        if( n == 0 || mBest == null ){
+            return mBest;
+        }
+
+        boolean weighted = mWeight > 1;
+        boolean anytime  = mTimeout > 0;
+        PriorityQueue<ConfigState> open = new PriorityQueue<ConfigState>( 1024, weighted ?
+                                                                                 getWeightedComparator( mWeight ) :
+                                                                                 ConfigState.BOUND_COMPARATOR );
+        LongHashSet closed = new LongHashSet();
+        open.add( ConfigState.root( mProblem.getMinimumCost( 0 ) ) );
+
+        long started  = System.nanoTime();
+        long diveTime = 0;
+        ConfigState lastDive = null;
+        ForkJoinPool pool = ( mParallelism > 1 ) ? new ForkJoinPool( mParallelism ) : null;
+        try{
+            int batchSize = mParallelism * STATES_PER_THREAD;
+            while( !open.isEmpty() && mExpansions < mExpansionLimit ){
+                if( System.currentTimeMillis() >= end ){
+                    mTimedOut = true;
+                    break;
+                }
+                if( anytime && open.peek() != lastDive &&
+                    diveTime <= DIVE_SHARE * ( System.nanoTime() - started ) ){
+                    //complete the most promising state greedily, to
+                    //improve on the best solution before the timeout
+                    long diveStart = System.nanoTime();
+                    lastDive       = open.peek();
+                    byte[] dive    = complete( open.peek(), end );
+                    float cost     = ( dive == null ) ? Float.MAX_VALUE : mProblem.getCost( dive );
+                    if( cost < mBestCost ){
+                        mBestCost = cost;
+                        mBest     = dive;
+                        if( mArchive != null ){
+                            mArchive.offer( mBestCost, mProblem.getMakespan( mBest, scratch ), mBest );
+                        }
+                    }
+                    diveTime += System.nanoTime() - diveStart;
+                }
+                //take the most promising states off the open set
+                List<Expansion> batch = new ArrayList<Expansion>( batchSize );
+                while( batch.size() < batchSize && !open.isEmpty() ){
+                    ConfigState state = open.poll();
+                    if( state.getBound() >= mBestCost ){
+                        if( weighted ){
+                            //the open set is not ordered by the bound
+                            continue;
+                        }
+                        //all the remaining states are bounded by the best solution
+                        open.clear();
+                        break;
+                    }
+                    if( closed.add( state.getHash() ) ){
+                        batch.add( new Expansion( state, mBestCost ) );
+                    }
+                }
+
+                if( pool == null || batch.size() == 1 ){
+                    for( Expansion e : batch ){
+                        e.invoke();
+                    }
+                }
+                else{
+                    //each thread expands a contiguous slice of the batch, as
+                    //states close in the open set share most of their types
+                    int slice = ( batch.size() + mParallelism - 1 ) / mParallelism;
+                    for( int i = 0; i < batch.size(); i += slice ){
+                        pool.execute( new Slice( batch.subList( i, Math.min( i + slice, batch.size() ) ) ) );
+                    }
+                }
+
+                //merge the children in batch order
+                for( Expansion e : batch ){
+                    for( ConfigState child : e.join() ){
+                        if( child.getTask() == n - 1 ){
+                            //all tasks are fixed and the deadline is met
+                            if( child.getCost() < mBestCost ){
+                                mBestCost = child.getCost();
+                                mBest     = child.fill( new byte[ n ] );
+                                if( mArchive != null ){
+                                    mArchive.offer( mBestCost, mProblem.getMakespan( mBest, scratch ), mBest );
+                                }
+                            }
+                        }
+                        else if( child.getBound() < mBestCost && !closed.contains( child.getHash() ) ){
+                            open.add( child );
+                        }
+                    }
+                }
+                mExpansions += batch.size();
+            }
+        }
+        finally{
+            if( pool != null ){
+                pool.shutdown();
+            }
+            mStateTimes.remove();
+        }
+
+        //the optimal solution is either the best found, or reachable
+        //from one of the states left on the open set
+        mLowerBound = mBestCost;
+        for( ConfigState state : open ){
+            mLowerBound = Math.min( mLowerBound, state.getBound() );
+        }
+        return mBest;
+    }
+
+    /**
+     * Returns a comparator that orders states by the cost of the fixed tasks
+     * plus the weighted minimum cost of the remaining tasks.
+     *
+     * @param weight  the weight of the minimum cost of the remaining tasks.
+     *
+     * @return the comparator
+     */
+    private static Comparator<ConfigState> getWeightedComparator( final float weight ){
+        return new Comparator<ConfigState>(){
+            public int compare( ConfigState s1, ConfigState s2 ){
+                float f1 = s1.getCost() + weight * ( s1.getBound() - s1.getCost() );
+                float f2 = s2.getCost() + weight * ( s2.getBound() - s2.getCost() );
+                int result = Float.compare( f1, f2 );
+                return ( result == 0 ) ? ConfigState.BOUND_COMPARATOR.compare( s1, s2 ) : result;
+            }
+        };
+    }
+
+    /**
+     * Returns the number of states expanded by the last search.
+     *
+     * @return the number of expansions
+     */
+    public long getExpansions(){
+        return mExpansions;
+    }
+
+    /**
+     * Returns the cost of the best solution found by the last search.
+     *
+     * @return the cost in dollars
+     */
+    public float getBestCost(){
+        return mBestCost;
+    }
+
+    /**
+     * Returns the lower bound on the cost of the optimal solution computed by
+     * the last search. It equals the cost of the best solution if the search
+     * ran to completion.
+     *
+     * @return the lower bound in dollars
+     */
+    public float getLowerBound(){
+        return mLowerBound;
+    }
+
+    /**
+     * Returns the gap between the cost of the best solution found by the last
+     * search and the lower bound, relative to the cost of the best solution.
+     *
+     * @return the gap between 0 and 1, or 0 if no solution was found.
+     */
+    public float getGap(){
+        if( mBest == null || mBestCost <= 0 ){
+            return 0;
+        }
+        return Math.max( 0, ( mBestCost - mLowerBound ) / mBestCost );
+    }
+
+    /**
+     * Returns whether the last search was stopped by the timeout.
+     *
+     * @return boolean
+     */
+    public boolean isTimedOut(){
+        return mTimedOut;
+    }
+
+    /**
+     * Computes a feasible configuration greedily. Starting with the cheapest
+     * type for each task, the task on the critical path with the largest
+     * reduction in runtime per extra dollar is upgraded, till the deadline is met.
+     *
+     * @param end  the time in milliseconds after which the remaining tasks
+     *             are assigned their fastest types.
+     *
+     * @return the configuration, or null if the deadline cannot be met.
+     */
+    public byte[] initialFeasible( long end ){
+        return complete( ConfigState.root( 0 ), end );
+    }
+
+    /**
+     * Completes a state into a feasible configuration greedily. Starting with
+     * the cheapest type for each task not fixed by the state, the unfixed task
+     * on the critical path with the largest reduction in runtime per extra
+     * dollar is upgraded, till the deadline is met.
+     *
+     * @param state  the state whose fixed types are kept.
+     * @param end    the time in milliseconds after which the remaining tasks
+     *               are assigned their fastest types.
+     *
+     * @return the configuration, or null if the deadline cannot be met.
+     */
+    protected byte[] complete( ConfigState state, long end ){
+        int n = mProblem.size();
+        byte[] configuration = new byte[ n ];
+        for( int i = state.getTask() + 1; i < n; i++ ){
+            configuration[ i ] = (byte)mProblem.getCheapestType( i );
+        }
+        state.fill( configuration );
+        return makeFeasible( configuration, state.getTask() + 1, end );
+    }
+
+    /**
+     * Makes a configuration feasible greedily, by upgrading the task on the
+     * critical path with the largest reduction in runtime per extra dollar
+     * till the deadline is met. Only the tasks from a given index on are
+     * upgraded. If the time runs out, the tasks that may be upgraded are
+     * assigned their fastest types at once.
+     *
+     * @param configuration  the instance type ordinal for each task. It is
+     *                       modified in place.
+     * @param first          the index of the first task that may be upgraded.
+     * @param end            the time in milliseconds after which the tasks
+     *                       are assigned their fastest types.
+     *
+     * @return the configuration, or null if the deadline cannot be met.
+     */
+    protected byte[] makeFeasible( byte[] configuration, int first, long end ){
+        float[] finish = new float[ configuration.length ];
+
+        //without an evaluator only the upgraded task and its descendants
+        //need to be re-evaluated after each upgrade
+        IncrementalMakespan times = ( mEvaluator == null ) ? new IncrementalMakespan( mProblem, configuration ) : null;
+        while( true ){
+            if( times == null ){
+                if( meetsDeadline( configuration, finish ) ){
+                    break;
+                }
+            }
+            else if( times.getMakespan() <= mProblem.getDeadline() ){
+                break;
+            }
+            else{
+                finish = times.getFinishTimes();
+            }
+
+            if( System.currentTimeMillis() >= end ){
+                mTimedOut = true;
+                for( int i = first; i < configuration.length; i++ ){
+                    configuration[ i ] = (byte)mProblem.getFastestType( i );
+                }
+                return meetsDeadline( configuration, new float[ configuration.length ] ) ? configuration : null;
+            }
+            int[] upgrade = pickUpgrade( configuration, finish, first );
+            if( upgrade == null ){
+                //the critical path cannot be sped up any further
+                return null;
+            }
+            configuration[ upgrade[ 0 ] ] = (byte)upgrade[ 1 ];
+            if( times != null ){
+                times.setType( upgrade[ 0 ], upgrade[ 1 ] );
+            }
+        }
+        return configuration;
+    }
+
+    /**
+     * Offers the configurations on the greedy upgrade path to the archive,
+     * irrespective of the deadline. Starting with the cheapest type for each
+     * task, the task on the critical path with the largest reduction in
+     * runtime per extra dollar is upgraded, till the critical path cannot be
+     * sped up any further or the time runs out.
+     *
+     * @param end  the time in milliseconds at which the tracing stops.
+     */
+    protected void traceFrontier( long end ){
+        int n = mProblem.size();
+        byte[] configuration = new byte[ n ];
+        for( int i = 0; i < n; i++ ){
+            configuration[ i ] = (byte)mProblem.getCheapestType( i );
+        }
+        IncrementalMakespan times = new IncrementalMakespan( mProblem, configuration );
+        float cost = mProblem.getCost( configuration );
+        while( true ){
+            float makespan = times.getMakespan();
+            if( !mArchive.isDominated( cost, makespan ) ){
+                mArchive.offer( cost, makespan, configuration );
+            }
+            if( System.currentTimeMillis() >= end ){
+                mTimedOut = true;
+                return;
+            }
+            int[] upgrade = pickUpgrade( configuration, times.getFinishTimes(), 0 );
+            if( upgrade == null ){
+                return;
+            }
+            int task = upgrade[ 0 ];
+            cost += mProblem.getCost( task, upgrade[ 1 ] ) - mProblem.getCost( task, configuration[ task ] );
+            configuration[ task ] = (byte)upgrade[ 1 ];
+            times.setType( task, upgrade[ 1 ] );
+        }
+    }
+
+    /**
+     * Picks the upgrade of a task on the critical path, with the largest
+     * reduction in runtime per extra dollar.
+     *
+     * @param configuration  the instance type ordinal for each task.
+     * @param finish         the finish times of the tasks in the configuration.
+     * @param first          the index of the first task that may be upgraded.
+     *
+     * @return the task index and the instance type ordinal to upgrade it to,
+     *         or null if the critical path cannot be sped up.
+     */
+    private int[] pickUpgrade( byte[] configuration, float[] finish, int first ){
+        int task = -1, type = -1;
+        float bestRatio = -1;
+        for( int i : mProblem.getCriticalPath( configuration, finish ) ){
+            if( i < first ){
+                continue;
+            }
+            int current = configuration[ i ];
+            for( int t = 0; t < DecoProblem.NUM_TYPES; t++ ){
+                float gain = mProblem.getRuntime( i, current ) - mProblem.getRuntime( i, t );
+                if( !mProblem.isAvailable( i, t ) || gain <= 0 ){
+                    continue;
+                }
+                float extra = mProblem.getCost( i, t ) - mProblem.getCost( i, current );
+                float ratio = gain / Math.max( extra, Float.MIN_NORMAL );
+                if( ratio > bestRatio ){
+                    bestRatio = ratio;
+                    task = i;
+                    type = t;
+                }
+            }
+        }
+        return ( task == -1 ) ? null : new int[]{ task, type };
+    }
+
+    /**
+     * Returns whether a configuration meets the deadline.
+     *
+     * @param configuration  the instance type ordinal for each task.
+     * @param finish         scratch array to hold the finish times.
+     *
+     * @return boolean
+     */
+    protected boolean meetsDeadline( byte[] configuration, float[] finish ){
+        if( mEvaluator != null ){
+            return mEvaluator.meetsDeadline( configuration, finish );
+        }
+        return mProblem.getMakespan( configuration, finish ) <= mProblem.getDeadline();
+    }
+
+    /**
+     * The expansion of a single state. The expansion does not modify any
+     * shared state, and prunes against the best cost at the time the batch
+     * was formed.
+     */
+    private class Expansion extends RecursiveTask<List<ConfigState>> {
+
+        /**
+         * The serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The state to be expanded.
+         */
+        private final ConfigState mState;
+
+        /**
+         * The cost of the best solution when the expansion was created.
+         */
+        private final float mBound;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param state  the state to be expanded.
+         * @param bound  the cost of the best solution.
+         */
+        public Expansion( ConfigState state, float bound ){
+            mState = state;
+            mBound = bound;
+        }
+
+        /**
+         * Generates the children of the state that are not pruned.
+         *
+         * @return the children
+         */
+        protected List<ConfigState> compute(){
+            List<ConfigState> children = new LinkedList<ConfigState>();
+            int n    = mProblem.size();
+            int next = mState.getTask() + 1;
+            float rest = ( next + 1 < n ) ? mProblem.getMinimumCost( next + 1 ) : 0;
+
+            //the unfixed tasks are optimistically assigned their fastest
+            //types. the children differ only in the type of the next task,
+            //so only the next task and its descendants are re-evaluated
+            IncrementalMakespan times = null;
+            byte[] configuration = null;
+            if( mEvaluator == null ){
+                times = mStateTimes.get().moveTo( mState );
+            }
+            else{
+                configuration = new byte[ n ];
+                for( int i = next; i < n; i++ ){
+                    configuration[ i ] = (byte)mProblem.getFastestType( i );
+                }
+                mState.fill( configuration );
+            }
+            DeadlineEvaluator.Variation variation = null;
+
+            for( int t = 0; t < DecoProblem.NUM_TYPES; t++ ){
+                if( !mProblem.isAvailable( next, t ) ){
+                    continue;
+                }
+                float cost  = mState.getCost() + mProblem.getCost( next, t );
+                float bound = cost + rest;
+                if( bound >= mBound ){
+                    continue;
+                }
+                if( times != null ){
+                    times.setType( next, t );
+                    if( times.getMakespan() > mProblem.getDeadline() ){
+                        continue;
+                    }
+                }
+                else{
+                    configuration[ next ] = (byte)t;
+                    if( variation == null ){
+                        variation = mEvaluator.vary( configuration, next );
+                    }
+                    if( !variation.meetsDeadline( t ) ){
+                        continue;
+                    }
+                }
+                children.add( new ConfigState( mState, next, (byte)t, cost, bound,
+                                               mState.getHash() ^ mHashKeys[ next * DecoProblem.NUM_TYPES + t ] ) );
+            }
+            if( times != null ){
+                //the times are left at the configuration of the state
+                times.setType( next, mProblem.getFastestType( next ) );
+            }
+            return children;
+        }
+    }
+
+    /**
+     * The expansions of a slice of a batch, done in order by one thread.
+     */
+    private static class Slice extends RecursiveAction {
+
+        /**
+         * The serial version UID.
+         */
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * The expansions.
+         */
+        private final List<Expansion> mExpansions;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param expansions  the expansions.
+         */
+        public Slice( List<Expansion> expansions ){
+            mExpansions = expansions;
+        }
+
+        /**
+         * Does the expansions.
+         */
+        protected void compute(){
+            for( Expansion e : mExpansions ){
+                e.invoke();
+            }
+        }
+    }
+
+    /**
+     * The finish times of the configuration of the state a thread expanded
+     * last, where the unfixed tasks run on their fastest types. Consecutive
+     * states share most of their fixed types, so the times of the next state
+     * are derived from them by changing only the types that differ, and
+     * propagating each change to the descendants of the task.
+     */
+    private class StateTimes {
+
+        /**
+         * The finish times. null till the first state is expanded.
+         */
+        private IncrementalMakespan mTimes;
+
+        /**
+         * The state whose configuration the times are for.
+         */
+        private ConfigState mState;
+
+        /**
+         * Scratch array for the configuration of a state.
+         */
+        private byte[] mConfiguration;
+
+        /**
+         * Scratch array for the states fixing the types that change.
+         */
+        private ConfigState[] mFixed;
+
+        /**
+         * Moves the times to the configuration of a state.
+         *
+         * @param state  the state.
+         *
+         * @return the times
+         */
+        public IncrementalMakespan moveTo( ConfigState state ){
+            int n = mProblem.size();
+            if( mTimes == null ){
+                mConfiguration = new byte[ n ];
+                mFixed  = new ConfigState[ n ];
+                mTimes  = new IncrementalMakespan( mProblem, configure( state ) );
+                mState  = state;
+                return mTimes;
+            }
+
+            //walk both states up to their common ancestor. the tasks fixed
+            //only by the old state go back to their fastest types, and the
+            //types fixed by the new state are applied from the top down.
+            //if too many types change, all the times are recomputed
+            ConfigState from = mState;
+            ConfigState to   = state;
+            int changes = 0;
+            int limit   = Math.max( 1, n / RESET_FRACTION );
+            while( from != to && changes <= limit ){
+                if( from.getTask() >= to.getTask() ){
+                    from = from.getParent();
+                }
+                else{
+                    mFixed[ changes++ ] = to;
+                    to = to.getParent();
+                }
+            }
+            if( changes > limit ){
+                mTimes.reset( configure( state ) );
+            }
+            else{
+                for( ConfigState s = mState; s != from; s = s.getParent() ){
+                    if( s.getTask() > state.getTask() ){
+                        mTimes.setType( s.getTask(), mProblem.getFastestType( s.getTask() ) );
+                    }
+                }
+                for( int i = changes - 1; i >= 0; i-- ){
+                    mTimes.setType( mFixed[ i ].getTask(), mFixed[ i ].getType() );
+                }
+            }
+            mState = state;
+            return mTimes;
+        }
+
+        /**
+         * Returns the configuration of a state, where the unfixed tasks run on
+         * their fastest types.
+         *
+         * @param state  the state.
+         *
+         * @return the configuration in the scratch array
+         */
+        private byte[] configure( ConfigState state ){
+            for( int i = state.getTask() + 1; i < mConfiguration.length; i++ ){
+                mConfiguration[ i ] = (byte)mProblem.getFastestType( i );
+            }
+            return state.fill( mConfiguration );
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The EC2 style billing of the instances a workflow runs on. An instance is
+ * billed for every started billing period, by default an hour, from its
+ * launch till its termination, at the hourly price of its instance type.
+ *
+ * The packing step assigns the scheduled jobs of each site to concrete
+ * instances, without changing their start and finish times. The jobs are
+ * taken in order of start time, and each job is placed on the idle instance
+ * where it adds the fewest billed periods. A job that fits in the time
+ * already paid for on an instance adds none, so the leftover of the paid
+ * periods is filled before a new instance is launched. Among such instances
+ * the one whose paid time ends soonest after the job is picked. A new
+ * instance is launched only if it is cheaper than keeping an existing one
+ * up through its idle time.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class BillingModel {
+
+    /**
+     * The default length of a billing period in seconds.
+     */
+    public static final long DEFAULT_BILLING_PERIOD = 3600;
+
+    /**
+     * The hourly price of each instance type, indexed by the ordinal.
+     */
+    private float[] mPrices;
+
+    /**
+     * The length of a billing period in seconds.
+     */
+    private long mPeriod;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param prices  the hourly price of each instance type.
+     * @param period  the length of a billing period in seconds.
+     */
+    public BillingModel( float[] prices, long period ){
+        if( period <= 0 ){
+            throw new IllegalArgumentException( "Invalid billing period " + period );
+        }
+        mPrices = prices.clone();
+        mPeriod = period;
+    }
+
+    /**
+     * Returns the length of a billing period.
+     *
+     * @return the period in seconds
+     */
+    public long getPeriod(){
+        return mPeriod;
+    }
+
+    /**
+     * Returns the price of a billing period of an instance type.
+     *
+     * @param type  the ordinal of the instance type, or -1 for a site with
+     *              no instance type, which is free.
+     *
+     * @return the price in dollars
+     */
+    public float getPeriodPrice( int type ){
+        return ( type < 0 ) ? 0 : mPrices[ type ] * mPeriod / 3600f;
+    }
+
+    /**
+     * Returns the number of billing periods for an instance that is up for
+     * a duration. A partial period is billed as a full one, and an instance
+     * is billed for at least one period.
+     *
+     * @param seconds  the time the instance is up.
+     *
+     * @return the number of billed periods
+     */
+    public long getBilledPeriods( long seconds ){
+        return ( seconds <= 0 ) ? 1 : ( seconds + mPeriod - 1 ) / mPeriod;
+    }
+
+    /**
+     * Returns the billed cost of an instance that is up for a duration.
+     *
+     * @param type     the ordinal of the instance type.
+     * @param seconds  the time the instance is up.
+     *
+     * @return the cost in dollars
+     */
+    public float getBilledCost( int type, long seconds ){
+        return getBilledPeriods( seconds ) * getPeriodPrice( type );
+    }
+
+    /**
+     * Assigns the scheduled jobs to instances.
+     *
+     * @param sites   the site of each job.
+     * @param types   the instance type ordinal of the site of each job, or
+     *                -1 if the site has none.
+     * @param start   the start time of each job.
+     * @param finish  the finish time of each job.
+     *
+     * @return the packing
+     */
+    public Packing pack( String[] sites, int[] types, final long[] start, final long[] finish ){
+        int n = start.length;
+        Integer[] order = new Integer[ n ];
+        for( int i = 0; i < n; i++ ){
+            order[ i ] = i;
+        }
+        Arrays.sort( order, new Comparator<Integer>(){
+            public int compare( Integer i1, Integer i2 ){
+                int result = Long.compare( start[ i1 ], start[ i2 ] );
+                if( result == 0 ){
+                    result = Long.compare( finish[ i1 ], finish[ i2 ] );
+                }
+                return ( result == 0 ) ? i1 - i2 : result;
+            }
+        });
+
+        Packing packing = new Packing( n );
+        Map<String,List<Integer>> instances = new HashMap<String,List<Integer>>();
+        for( int j : order ){
+            List<Integer> candidates = instances.get( sites[ j ] );
+            if( candidates == null ){
+                candidates = new ArrayList<Integer>();
+                instances.put( sites[ j ], candidates );
+            }
+
+            //the idle instance where the job adds the fewest billed periods
+            int best = -1;
+            long bestExtra = getBilledPeriods( finish[ j ] - start[ j ] );
+            long bestPaidUntil = Long.MAX_VALUE;
+            for( int vm : candidates ){
+                if( packing.mEnd.get( vm ) > start[ j ] ){
+                    continue;
+                }
+                long launch   = packing.mLaunch.get( vm );
+                long paid     = getBilledPeriods( packing.mEnd.get( vm ) - launch );
+                long extra    = getBilledPeriods( finish[ j ] - launch ) - paid;
+                long paidUntil = launch + ( paid + extra ) * mPeriod;
+                if( extra < bestExtra || ( extra == bestExtra && paidUntil < bestPaidUntil ) ){
+                    best = vm;
+                    bestExtra = extra;
+                    bestPaidUntil = paidUntil;
+                }
+            }
+
+            if( best == -1 ){
+                best = packing.launch( sites[ j ], types[ j ], start[ j ] );
+                candidates.add( best );
+            }
+            packing.assign( j, best, finish[ j ] );
+        }
+
+        for( int vm = 0; vm < packing.getInstanceCount(); vm++ ){
+            packing.mCost += getBilledCost( packing.mTypes.get( vm ),
+                                            packing.mEnd.get( vm ) - packing.mLaunch.get( vm ) );
+        }
+        return packing;
+    }
+
+    /**
+     * The assignment of the jobs of a workflow to instances.
+     */
+    public static class Packing {
+
+        /**
+         * The instance of each job.
+         */
+        private int[] mInstance;
+
+        /**
+         * The site of each instance.
+         */
+        private List<String> mSites;
+
+        /**
+         * The instance type ordinal of each instance.
+         */
+        private List<Integer> mTypes;
+
+        /**
+         * The launch time of each instance.
+         */
+        private List<Long> mLaunch;
+
+        /**
+         * The finish time of the last job on each instance.
+         */
+        private List<Long> mEnd;
+
+        /**
+         * The billed cost of all instances.
+         */
+        private float mCost;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param jobs  the number of jobs.
+         */
+        private Packing( int jobs ){
+            mInstance = new int[ jobs ];
+            mSites    = new ArrayList<String>();
+            mTypes    = new ArrayList<Integer>();
+            mLaunch   = new ArrayList<Long>();
+            mEnd      = new ArrayList<Long>();
+            mCost     = 0;
+        }
+
+        /**
+         * Launches an instance.
+         *
+         * @param site    the site of the instance.
+         * @param type    the instance type ordinal.
+         * @param launch  the launch time.
+         *
+         * @return the index of the instance
+         */
+        private int launch( String site, int type, long launch ){
+            mSites.add( site );
+            mTypes.add( type );
+            mLaunch.add( launch );
+            mEnd.add( launch );
+            return mSites.size() - 1;
+        }
+
+        /**
+         * Assigns a job to an instance.
+         *
+         * @param job       the job index.
+         * @param instance  the instance index.
+         * @param finish    the finish time of the job.
+         */
+        private void assign( int job, int instance, long finish ){
+            mInstance[ job ] = instance;
+            mEnd.set( instance, finish );
+        }
+
+        /**
+         * Returns the instance a job is assigned to.
+         *
+         * @param job  the job index.
+         *
+         * @return the instance index
+         */
+        public int getInstance( int job ){
+            return mInstance[ job ];
+        }
+
+        /**
+         * Returns the number of instances launched.
+         *
+         * @return the number of instances
+         */
+        public int getInstanceCount(){
+            return mSites.size();
+        }
+
+        /**
+         * Returns the site of an instance.
+         *
+         * @param instance  the instance index.
+         *
+         * @return the site
+         */
+        public String getSite( int instance ){
+            return mSites.get( instance );
+        }
+
+        /**
+         * Returns the launch time of an instance.
+         *
+         * @param instance  the instance index.
+         *
+         * @return the launch time
+         */
+        public long getLaunch( int instance ){
+            return mLaunch.get( instance );
+        }
+
+        /**
+         * Returns the time an instance can be terminated, the finish time of
+         * its last job.
+         *
+         * @param instance  the instance index.
+         *
+         * @return the end time
+         */
+        public long getEnd( int instance ){
+            return mEnd.get( instance );
+        }
+
+        /**
+         * Returns the billed cost of all instances.
+         *
+         * @return the cost in dollars
+         */
+        public float getCost(){
+            return mCost;
+        }
+
+        /**
+         * Returns a textual description of the packing.
+         *
+         * @return String
+         */
+        public String toString(){
+            StringBuffer sb = new StringBuffer();
+            sb.append( getInstanceCount() ).append( " instances billed " ).append( mCost ).append( " dollars" );
+            return sb.toString();
+        }
+    }
+}
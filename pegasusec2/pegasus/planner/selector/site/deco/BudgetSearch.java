@@ -0,0 +1,375 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.util.PriorityQueue;
+
+/**
+ * Picks the instance type of each task of a workflow such that the makespan
+ * is as short as possible, while the cost stays within a budget. It is the
+ * dual of the deadline constrained <code>AstarSearch</code>.
+ *
+ * The search starts with the cheapest type for each task, and repeatedly
+ * upgrades a task on the critical path to a faster type, picking the upgrade
+ * with the largest reduction in makespan per extra dollar, till no upgrade on
+ * the critical path fits in the remaining budget.
+ *
+ * The candidate upgrades of a step are held in a priority queue ordered by
+ * the reduction in runtime per extra dollar, which bounds the reduction in
+ * makespan per extra dollar. The candidates are popped and their actual
+ * reduction in makespan evaluated, till the bound of the next candidate is no
+ * better than the best reduction found. The start and finish times of the
+ * tasks are maintained incrementally by <code>IncrementalMakespan</code>, and
+ * the critical path is traced back from the exit task finishing last, so a
+ * step only costs time proportional to the length of the critical path and
+ * the cones of the evaluated upgrades, besides summing up the cost of the
+ * upgraded configuration. The search stops when none of the evaluated
+ * upgrades reduces the makespan, as happens when there are several critical
+ * paths, since spending the budget on them would not shorten the workflow.
+ *
+ * An instance is not thread safe.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class BudgetSearch {
+
+    /**
+     * The maximum number of candidate upgrades whose reduction in makespan is
+     * evaluated in a step.
+     */
+    public static final int MAX_EVALUATIONS_PER_STEP = 4;
+
+    /**
+     * The problem to be solved.
+     */
+    private final DecoProblem mProblem;
+
+    /**
+     * The budget in dollars.
+     */
+    private final float mBudget;
+
+    /**
+     * The indices of the tasks without children.
+     */
+    private final int[] mExits;
+
+    /**
+     * The candidate upgrades of the current step.
+     */
+    private final PriorityQueue<Upgrade> mQueue;
+
+    /**
+     * The archive to which the configurations on the upgrade path are
+     * offered. null if not collected.
+     */
+    private ParetoArchive mArchive;
+
+    /**
+     * The makespan of the configuration found.
+     */
+    private float mMakespan;
+
+    /**
+     * The cost of the configuration found.
+     */
+    private float mCost;
+
+    /**
+     * The number of upgrades applied.
+     */
+    private int mUpgrades;
+
+    /**
+     * The number of upgrades whose reduction in makespan was evaluated.
+     */
+    private long mEvaluations;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param problem  the problem to be solved.
+     * @param budget   the budget in dollars.
+     */
+    public BudgetSearch( DecoProblem problem, float budget ){
+        mProblem = problem;
+        mBudget  = budget;
+        mQueue   = new PriorityQueue<Upgrade>();
+
+        int n = problem.size();
+        int exits = 0;
+        for( int i = 0; i < n; i++ ){
+            if( problem.getChildren( i ).length == 0 ){
+                exits++;
+            }
+        }
+        mExits = new int[ exits ];
+        for( int i = 0, j = 0; i < n; i++ ){
+            if( problem.getChildren( i ).length == 0 ){
+                mExits[ j++ ] = i;
+            }
+        }
+        mMakespan = -1;
+        mCost     = -1;
+    }
+
+    /**
+     * Sets the archive to which the configurations on the upgrade path are
+     * offered.
+     *
+     * @param archive  the archive, or null.
+     */
+    public void setArchive( ParetoArchive archive ){
+        mArchive = archive;
+    }
+
+    /**
+     * Searches for the configuration with the shortest makespan within the
+     * budget.
+     *
+     * @return the instance type ordinal for each task, or null if even the
+     *         cheapest configuration exceeds the budget.
+     */
+    public byte[] search(){
+        int n = mProblem.size();
+        byte[] configuration = new byte[ n ];
+        for( int i = 0; i < n; i++ ){
+            configuration[ i ] = (byte)mProblem.getCheapestType( i );
+        }
+        float cost = mProblem.getCost( configuration );
+        mUpgrades    = 0;
+        mEvaluations = 0;
+        if( cost > mBudget ){
+            mCost     = cost;
+            mMakespan = -1;
+            return null;
+        }
+
+        IncrementalMakespan times = new IncrementalMakespan( mProblem, configuration );
+        while( true ){
+            float makespan = times.getMakespan();
+            if( mArchive != null && !mArchive.isDominated( cost, makespan ) ){
+                mArchive.offer( cost, makespan, times.getConfiguration() );
+            }
+            Upgrade upgrade = pickUpgrade( times, mBudget - cost );
+            if( upgrade == null ){
+                mMakespan = makespan;
+                mCost     = cost;
+                return times.getConfiguration().clone();
+            }
+            //the cost is summed up again rather than accumulated, so that
+            //rounding errors do not add up against the budget
+            int previous = times.getType( upgrade.mTask );
+            times.setType( upgrade.mTask, upgrade.mType );
+            float upgraded = mProblem.getCost( times.getConfiguration() );
+            if( upgraded > mBudget ){
+                times.setType( upgrade.mTask, previous );
+                mMakespan = makespan;
+                mCost     = cost;
+                return times.getConfiguration().clone();
+            }
+            cost = upgraded;
+            mUpgrades++;
+        }
+    }
+
+    /**
+     * Picks the upgrade of a task on the critical path with the largest
+     * reduction in makespan per extra dollar, that fits in the remaining
+     * budget.
+     *
+     * @param times      the times of the current configuration.
+     * @param remaining  the remaining budget.
+     *
+     * @return the upgrade, or null if the critical path cannot be sped up
+     *         within the budget, or none of the evaluated upgrades reduces
+     *         the makespan.
+     */
+    private Upgrade pickUpgrade( IncrementalMakespan times, float remaining ){
+        mQueue.clear();
+        float[] finish = times.getFinishTimes();
+        for( int task = getLastExit( finish ); task != -1; task = getCriticalParent( task, finish ) ){
+            int current = times.getType( task );
+            for( int t = 0; t < DecoProblem.NUM_TYPES; t++ ){
+                if( !mProblem.isAvailable( task, t ) ){
+                    continue;
+                }
+                float gain  = mProblem.getRuntime( task, current ) - mProblem.getRuntime( task, t );
+                float extra = mProblem.getCost( task, t ) - mProblem.getCost( task, current );
+                if( gain > 0 && extra <= remaining ){
+                    mQueue.add( new Upgrade( task, t, extra, gain / Math.max( extra, Float.MIN_NORMAL ) ) );
+                }
+            }
+        }
+        if( mQueue.isEmpty() ){
+            return null;
+        }
+
+        Upgrade best = null;
+        float bestRatio = 0;
+        float makespan  = times.getMakespan();
+        for( int evaluated = 0;
+             evaluated < MAX_EVALUATIONS_PER_STEP && !mQueue.isEmpty() && mQueue.peek().mRatio > bestRatio;
+             evaluated++ ){
+            Upgrade candidate = mQueue.poll();
+            int previous = times.getType( candidate.mTask );
+            times.setType( candidate.mTask, candidate.mType );
+            float reduction = makespan - times.getMakespan();
+            times.setType( candidate.mTask, previous );
+            mEvaluations++;
+
+            float ratio = reduction / Math.max( candidate.mExtra, Float.MIN_NORMAL );
+            if( ratio > bestRatio ){
+                bestRatio = ratio;
+                best = candidate;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the exit task that finishes last.
+     *
+     * @param finish  the finish times of the tasks.
+     *
+     * @return the task index, or -1 if there are no tasks.
+     */
+    private int getLastExit( float[] finish ){
+        int last = -1;
+        for( int i : mExits ){
+            if( last == -1 || finish[ i ] > finish[ last ] ){
+                last = i;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Returns the parent of a task that finishes last.
+     *
+     * @param task    the task index.
+     * @param finish  the finish times of the tasks.
+     *
+     * @return the task index, or -1 if the task has no parents.
+     */
+    private int getCriticalParent( int task, float[] finish ){
+        int next = -1;
+        for( int p : mProblem.getParents( task ) ){
+            if( next == -1 || finish[ p ] > finish[ next ] ){
+                next = p;
+            }
+        }
+        return next;
+    }
+
+    /**
+     * Returns the makespan of the configuration found by the last search.
+     *
+     * @return the makespan, or -1 if no configuration was found.
+     */
+    public float getMakespan(){
+        return mMakespan;
+    }
+
+    /**
+     * Returns the cost of the configuration found by the last search, or of
+     * the cheapest configuration if it exceeds the budget.
+     *
+     * @return the cost in dollars
+     */
+    public float getCost(){
+        return mCost;
+    }
+
+    /**
+     * Returns the number of upgrades applied by the last search.
+     *
+     * @return the number of upgrades
+     */
+    public int getUpgrades(){
+        return mUpgrades;
+    }
+
+    /**
+     * Returns the number of upgrades whose reduction in makespan was
+     * evaluated by the last search.
+     *
+     * @return the number of evaluations
+     */
+    public long getEvaluations(){
+        return mEvaluations;
+    }
+
+    /**
+     * A candidate upgrade of a task to a faster instance type. Upgrades are
+     * ordered by decreasing reduction in runtime per extra dollar.
+     */
+    private static class Upgrade implements Comparable<Upgrade> {
+
+        /**
+         * The task index.
+         */
+        private final int mTask;
+
+        /**
+         * The instance type ordinal to upgrade to.
+         */
+        private final int mType;
+
+        /**
+         * The extra cost in dollars.
+         */
+        private final float mExtra;
+
+        /**
+         * The reduction in runtime per extra dollar.
+         */
+        private final float mRatio;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param task   the task index.
+         * @param type   the instance type ordinal to upgrade to.
+         * @param extra  the extra cost in dollars.
+         * @param ratio  the reduction in runtime per extra dollar.
+         */
+        public Upgrade( int task, int type, float extra, float ratio ){
+            mTask  = task;
+            mType  = type;
+            mExtra = extra;
+            mRatio = ratio;
+        }
+
+        /**
+         * Orders by decreasing ratio, with ties broken by task index.
+         *
+         * @param other  the upgrade to compare to.
+         *
+         * @return int
+         */
+        public int compareTo( Upgrade other ){
+            int c = Float.compare( other.mRatio, mRatio );
+            if( c == 0 ){
+                c = ( mTask < other.mTask ) ? -1 : ( mTask == other.mTask ? mType - other.mType : 1 );
+            }
+            return c;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.util.Comparator;
+
+/**
+ * A state in the Deco instance type search. It is the Java counterpart of the
+ * <code>configstack</code> in the native planner. A state at task index k has
+ * the instance types of tasks 0..k fixed.
+ *
+ * Instead of copying the whole configuration for every state, a state only
+ * records the type assigned to its own task and a link to its parent state.
+ * The full configuration is reconstructed on demand.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class ConfigState {
+
+    /**
+     * Orders the states by ascending bound. Ties are broken in favor of deeper
+     * states and then by hash, so that the order is deterministic.
+     */
+    public static final Comparator<ConfigState> BOUND_COMPARATOR = new Comparator<ConfigState>(){
+        public int compare( ConfigState s1, ConfigState s2 ){
+            int result = Float.compare( s1.mBound, s2.mBound );
+            if( result == 0 ){
+                result = s2.mTask - s1.mTask;
+            }
+            if( result == 0 ){
+                result = Long.compare( s1.mHash, s2.mHash );
+            }
+            return result;
+        }
+    };
+
+    /**
+     * The parent state. null for the root state.
+     */
+    private final ConfigState mParent;
+
+    /**
+     * The index of the last task whose type is fixed. -1 for the root state.
+     */
+    private final int mTask;
+
+    /**
+     * The instance type ordinal assigned to the task.
+     */
+    private final byte mType;
+
+    /**
+     * The cost of the tasks whose types are fixed.
+     */
+    private final float mCost;
+
+    /**
+     * The lower bound on the cost of any configuration reachable from the state.
+     */
+    private final float mBound;
+
+    /**
+     * The hash of the fixed assignments.
+     */
+    private final long mHash;
+
+    /**
+     * Creates the root state.
+     *
+     * @param bound  the lower bound on the cost of any configuration.
+     *
+     * @return the root state.
+     */
+    public static ConfigState root( float bound ){
+        return new ConfigState( null, -1, (byte)0, 0, bound, 0 );
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param parent  the parent state.
+     * @param task    the index of the task fixed by this state.
+     * @param type    the instance type ordinal assigned to the task.
+     * @param cost    the cost of the fixed tasks.
+     * @param bound   the lower bound on the cost of the reachable configurations.
+     * @param hash    the hash of the fixed assignments.
+     */
+    public ConfigState( ConfigState parent, int task, byte type, float cost, float bound, long hash ){
+        mParent = parent;
+        mTask   = task;
+        mType   = type;
+        mCost   = cost;
+        mBound  = bound;
+        mHash   = hash;
+    }
+
+    /**
+     * Returns the parent state.
+     *
+     * @return the parent, or null for root.
+     */
+    public ConfigState getParent(){
+        return mParent;
+    }
+
+    /**
+     * Returns the index of the last task whose type is fixed.
+     *
+     * @return the task index
+     */
+    public int getTask(){
+        return mTask;
+    }
+
+    /**
+     * Returns the instance type ordinal assigned to the task of the state.
+     *
+     * @return the instance type ordinal
+     */
+    public byte getType(){
+        return mType;
+    }
+
+    /**
+     * Returns the cost of the fixed tasks.
+     *
+     * @return the cost in dollars
+     */
+    public float getCost(){
+        return mCost;
+    }
+
+    /**
+     * Returns the lower bound on the cost of the reachable configurations.
+     *
+     * @return the bound in dollars
+     */
+    public float getBound(){
+        return mBound;
+    }
+
+    /**
+     * Returns the hash of the fixed assignments.
+     *
+     * @return the hash
+     */
+    public long getHash(){
+        return mHash;
+    }
+
+    /**
+     * Fills in the types of the fixed tasks into a configuration. The types
+     * of the tasks that are not fixed are left untouched.
+     *
+     * @param configuration  the configuration to be filled in.
+     *
+     * @return the configuration passed
+     */
+    public byte[] fill( byte[] configuration ){
+        for( ConfigState s = this; s.mTask >= 0; s = s.mParent ){
+            configuration[ s.mTask ] = s.mType;
+        }
+        return configuration;
+    }
+
+    /**
+     * Returns a textual description of the state.
+     *
+     * @return String
+     */
+    public String toString(){
+        StringBuffer sb = new StringBuffer();
+        sb.append( "task " ).append( mTask ).append( " type " ).append( mType ).
+           append( " cost " ).append( mCost ).append( " bound " ).append( mBound );
+        return sb.toString();
+    }
+}
@@ -0,0 +1,72 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+/**
+ * Decides whether an instance type configuration of a workflow meets the
+ * deadline. The Deco search calls the evaluator concurrently from multiple
+ * threads, so implementations should not keep any per call state.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public interface DeadlineEvaluator {
+
+    /**
+     * Returns whether a configuration meets the deadline.
+     *
+     * @param configuration  the instance type ordinal for each task.
+     * @param finish         array to be filled with the estimated finish time
+     *                       of each task, used to find the critical path.
+     *
+     * @return boolean
+     */
+    public boolean meetsDeadline( byte[] configuration, float[] finish );
+
+    /**
+     * Returns the evaluation of the configurations that differ from a
+     * configuration only in the type of one task. The search generates the
+     * children of a state this way, so only the task and its descendants
+     * need to be evaluated for each type.
+     *
+     * @param configuration  the instance type ordinal for each task. It is
+     *                       not modified, and is copied if needed.
+     * @param task           the index of the task whose type varies.
+     *
+     * @return the variation
+     */
+    public Variation vary( byte[] configuration, int task );
+
+    /**
+     * Decides whether the configurations that differ from a configuration
+     * only in the type of one task meet the deadline. A variation is used by
+     * a single thread.
+     */
+    public interface Variation {
+
+        /**
+         * Returns whether the configuration with the task set to a type meets
+         * the deadline.
+         *
+         * @param type  the instance type ordinal of the task.
+         *
+         * @return boolean
+         */
+        public boolean meetsDeadline( int type );
+    }
+}
@@ -2,6 +2,8 @@ package edu.isi.pegasus.planner.selector.site.deco;
 
 import edu.isi.pegasus.planner.partitioner.graph.Bag;
 
+import edu.isi.pegasus.planner.catalog.classes.SysInfo;
+
 /**
  * A data class that implements the Bag interface and stores the extra information
  * that is required by the Deco algorithm for each node.
@@ -92,6 +94,11 @@ public class DecoBag
      */
     private String mScheduledSite;
 
+    /**
+     * The instance type the job is configured to run on.
+     */
+    private SysInfo.InstanceType mInstanceType;
+
     /**
      * The default constructor.
      */
@@ -102,6 +109,7 @@ public class DecoBag
         mStartTime      = 0;
         mEndTime        = 0;
         mScheduledSite  = "";
+        mInstanceType   = null;
     }
 
     /**
@@ -127,6 +135,12 @@ public class DecoBag
            return result;
        }
 
+       //short cut for instance type
+       if( k == this.INSTANCE_TYPE ){
+           mInstanceType = (SysInfo.InstanceType)value;
+           return result;
+       }
+
        //parse the value correctly
        switch( k ){
            case 0:
@@ -219,6 +233,9 @@ public class DecoBag
             case 5:
                 return this.mScheduledSite;
 
+            case 6:
+                return this.mInstanceType;
+
             default:
             throw new RuntimeException(
                 " Wrong Heft key. Please use one of the predefined key types " + key );
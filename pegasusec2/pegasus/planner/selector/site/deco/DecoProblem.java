@@ -0,0 +1,547 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import edu.isi.pegasus.planner.catalog.classes.SysInfo;
+
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact, int indexed view of a workflow that is handed to the Deco
+ * instance type search. The tasks are numbered in topological order, so
+ * that a single forward pass over the task indices is enough to compute
+ * the finish times of all the tasks for a configuration.
+ *
+ * A configuration is a <code>byte[]</code> that holds, for each task, the
+ * ordinal of the <code>SysInfo.InstanceType</code> the task is assigned to.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class DecoProblem {
+
+    /**
+     * The instance types that can be assigned to a task.
+     */
+    public static final SysInfo.InstanceType[] TYPES = SysInfo.InstanceType.values();
+
+    /**
+     * The number of instance types.
+     */
+    public static final int NUM_TYPES = TYPES.length;
+
+    /**
+     * The runtime value designating that a task cannot run on an instance type.
+     */
+    public static final float UNAVAILABLE = Float.POSITIVE_INFINITY;
+
+    /**
+     * The IDs of the tasks indexed by the task index.
+     */
+    private String[] mIDs;
+
+    /**
+     * Maps the ID of a task to the task index.
+     */
+    private Map<String,Integer> mIndexMap;
+
+    /**
+     * The parent indices of each task.
+     */
+    private int[][] mParents;
+
+    /**
+     * The child indices of each task.
+     */
+    private int[][] mChildren;
+
+    /**
+     * The estimated runtime in seconds of a task on an instance type, indexed
+     * by task * NUM_TYPES + type.
+     */
+    private float[] mRuntime;
+
+    /**
+     * The price in dollars per hour of each instance type.
+     */
+    private float[] mPrice;
+
+    /**
+     * The deadline for the workflow in seconds.
+     */
+    private float mDeadline;
+
+    /**
+     * The probability with which the deadline needs to be met.
+     */
+    private float mProbability;
+
+    /**
+     * The runtime distributions of the tasks. null if not known.
+     */
+    private RuntimeDistributions mDistributions;
+
+    /**
+     * The bounds computed from the runtimes and prices, or null if they have
+     * to be computed. The search threads share the problem, so the bounds are
+     * published as a whole through a volatile field.
+     */
+    private volatile Bounds mBounds;
+
+    /**
+     * The overloaded constructor. The tasks are indexed in the topological
+     * order of the graph. All the runtimes are initialized to UNAVAILABLE.
+     *
+     * @param workflow  the workflow to be planned.
+     */
+    public DecoProblem( Graph workflow ){
+        int n = workflow.size();
+        mIDs      = new String[ n ];
+        mIndexMap = new HashMap<String,Integer>( n );
+
+        int index = 0;
+        for( Iterator<GraphNode> it = workflow.topologicalSortIterator(); it.hasNext(); ){
+            GraphNode node = it.next();
+            mIndexMap.put( node.getID(), index );
+            mIDs[ index++ ] = node.getID();
+        }
+
+        //sanity check
+        if( index != n ){
+            throw new RuntimeException( "Workflow has a cycle. Sorted " + index + " of " + n + " tasks" );
+        }
+
+        mParents  = new int[ n ][];
+        mChildren = new int[ n ][];
+        for( int i = 0; i < n; i++ ){
+            GraphNode node = workflow.getNode( mIDs[ i ] );
+            mParents[ i ]  = toIndices( node.getParents() );
+            mChildren[ i ] = toIndices( node.getChildren() );
+        }
+
+        mRuntime = new float[ n * NUM_TYPES ];
+        Arrays.fill( mRuntime, UNAVAILABLE );
+        mPrice = new float[ NUM_TYPES ];
+        mDeadline = Float.MAX_VALUE;
+        mProbability = 1;
+    }
+
+    /**
+     * Returns the number of tasks.
+     *
+     * @return the number of tasks
+     */
+    public int size(){
+        return mIDs.length;
+    }
+
+    /**
+     * Returns the ID of the task at an index.
+     *
+     * @param task  the task index.
+     *
+     * @return the ID of the task.
+     */
+    public String getID( int task ){
+        return mIDs[ task ];
+    }
+
+    /**
+     * Returns the index of a task.
+     *
+     * @param id  the ID of the task.
+     *
+     * @return the index, else -1 if the task is not part of the problem.
+     */
+    public int getIndex( String id ){
+        Integer index = mIndexMap.get( id );
+        return ( index == null ) ? -1 : index;
+    }
+
+    /**
+     * Returns the parent indices of a task.
+     *
+     * @param task  the task index.
+     *
+     * @return the parent indices
+     */
+    public int[] getParents( int task ){
+        return mParents[ task ];
+    }
+
+    /**
+     * Returns the child indices of a task.
+     *
+     * @param task  the task index.
+     *
+     * @return the child indices
+     */
+    public int[] getChildren( int task ){
+        return mChildren[ task ];
+    }
+
+    /**
+     * Sets the estimated runtime of a task on an instance type.
+     *
+     * @param task     the task index.
+     * @param type     the instance type.
+     * @param runtime  the runtime in seconds.
+     */
+    public void setRuntime( int task, SysInfo.InstanceType type, float runtime ){
+        mRuntime[ task * NUM_TYPES + type.ordinal() ] = runtime;
+        invalidate();
+    }
+
+    /**
+     * Returns the estimated runtime of a task on an instance type.
+     *
+     * @param task  the task index.
+     * @param type  the ordinal of the instance type.
+     *
+     * @return the runtime in seconds, or UNAVAILABLE.
+     */
+    public float getRuntime( int task, int type ){
+        return mRuntime[ task * NUM_TYPES + type ];
+    }
+
+    /**
+     * Returns whether a task can run on an instance type.
+     *
+     * @param task  the task index.
+     * @param type  the ordinal of the instance type.
+     *
+     * @return boolean
+     */
+    public boolean isAvailable( int task, int type ){
+        return mRuntime[ task * NUM_TYPES + type ] != UNAVAILABLE;
+    }
+
+    /**
+     * Sets the hourly price of an instance type.
+     *
+     * @param type   the instance type.
+     * @param price  the price in dollars per hour.
+     */
+    public void setPrice( SysInfo.InstanceType type, float price ){
+        mPrice[ type.ordinal() ] = price;
+        invalidate();
+    }
+
+    /**
+     * Returns the hourly price of an instance type.
+     *
+     * @param type  the ordinal of the instance type.
+     *
+     * @return the price in dollars per hour.
+     */
+    public float getPrice( int type ){
+        return mPrice[ type ];
+    }
+
+    /**
+     * Sets the deadline for the workflow.
+     *
+     * @param deadline     the deadline in seconds.
+     * @param probability  the probability with which the deadline needs to be met.
+     */
+    public void setDeadline( float deadline, float probability ){
+        mDeadline = deadline;
+        mProbability = probability;
+    }
+
+    /**
+     * Returns the deadline for the workflow.
+     *
+     * @return the deadline in seconds.
+     */
+    public float getDeadline(){
+        return mDeadline;
+    }
+
+    /**
+     * Returns the probability with which the deadline needs to be met.
+     *
+     * @return the probability
+     */
+    public float getProbability(){
+        return mProbability;
+    }
+
+    /**
+     * Sets the runtime distributions of the tasks.
+     *
+     * @param distributions  the distributions, indexed by the task indices of
+     *                       this problem.
+     */
+    public void setDistributions( RuntimeDistributions distributions ){
+        mDistributions = distributions;
+    }
+
+    /**
+     * Returns the runtime distributions of the tasks.
+     *
+     * @return the distributions, or null if not known.
+     */
+    public RuntimeDistributions getDistributions(){
+        return mDistributions;
+    }
+
+    /**
+     * Returns the monetary cost of running a task on an instance type.
+     *
+     * @param task  the task index.
+     * @param type  the ordinal of the instance type.
+     *
+     * @return the cost in dollars.
+     */
+    public float getCost( int task, int type ){
+        return mPrice[ type ] * getRuntime( task, type ) / 3600;
+    }
+
+    /**
+     * Returns the monetary cost of a configuration.
+     *
+     * @param configuration  the instance type ordinal for each task.
+     *
+     * @return the cost in dollars.
+     */
+    public float getCost( byte[] configuration ){
+        float cost = 0;
+        for( int i = 0; i < configuration.length; i++ ){
+            cost += getCost( i, configuration[ i ] );
+        }
+        return cost;
+    }
+
+    /**
+     * Returns a lower bound on the cost of the tasks with index greater than
+     * or equal to the task passed, irrespective of the types assigned.
+     *
+     * @param task  the task index.
+     *
+     * @return the lower bound in dollars.
+     */
+    public float getMinimumCost( int task ){
+        return getBounds().mSuffixMinimumCost[ task ];
+    }
+
+    /**
+     * Returns the cheapest instance type that a task can run on.
+     *
+     * @param task  the task index.
+     *
+     * @return the ordinal of the instance type.
+     */
+    public int getCheapestType( int task ){
+        return getBounds().mCheapest[ task ];
+    }
+
+    /**
+     * Returns the fastest instance type that a task can run on.
+     *
+     * @param task  the task index.
+     *
+     * @return the ordinal of the instance type.
+     */
+    public int getFastestType( int task ){
+        return getBounds().mFastest[ task ];
+    }
+
+    /**
+     * Computes the makespan of a configuration as the longest path through
+     * the workflow, using the runtimes of the assigned types.
+     *
+     * @param configuration  the instance type ordinal for each task.
+     * @param finish         scratch array of size() to hold the finish times.
+     *
+     * @return the makespan in seconds.
+     */
+    public float getMakespan( byte[] configuration, float[] finish ){
+        float makespan = 0;
+        for( int i = 0; i < mIDs.length; i++ ){
+            float start = 0;
+            for( int p : mParents[ i ] ){
+                if( finish[ p ] > start ){
+                    start = finish[ p ];
+                }
+            }
+            finish[ i ] = start + getRuntime( i, configuration[ i ] );
+            if( finish[ i ] > makespan ){
+                makespan = finish[ i ];
+            }
+        }
+        return makespan;
+    }
+
+    /**
+     * Returns the tasks on the critical path of a configuration, whose finish
+     * times have been computed by a prior call to getMakespan().
+     *
+     * @param configuration  the instance type ordinal for each task.
+     * @param finish         the finish times of the tasks.
+     *
+     * @return the task indices on the critical path, from the exit task
+     *         to the entry task.
+     */
+    public int[] getCriticalPath( byte[] configuration, float[] finish ){
+        int n = mIDs.length;
+        if( n == 0 ){
+            return new int[ 0 ];
+        }
+        int current = 0;
+        for( int i = 1; i < n; i++ ){
+            if( finish[ i ] > finish[ current ] ){
+                current = i;
+            }
+        }
+
+        int[] path = new int[ n ];
+        int length = 0;
+        while( current != -1 ){
+            path[ length++ ] = current;
+            //the critical parent is the one that finishes last
+            int next = -1;
+            for( int p : mParents[ current ] ){
+                if( next == -1 || finish[ p ] > finish[ next ] ){
+                    next = p;
+                }
+            }
+            current = next;
+        }
+        return Arrays.copyOf( path, length );
+    }
+
+    /**
+     * Returns the bounds, computing them once if the runtimes or prices have
+     * changed since they were last computed.
+     *
+     * @return the bounds
+     */
+    private Bounds getBounds(){
+        Bounds bounds = mBounds;
+        if( bounds == null ){
+            synchronized( this ){
+                bounds = mBounds;
+                if( bounds == null ){
+                    bounds = computeBounds();
+                    mBounds = bounds;
+                }
+            }
+        }
+        return bounds;
+    }
+
+    /**
+     * Computes the cheapest and fastest types for each task, and the suffix
+     * sums of the minimum task costs.
+     *
+     * @return the bounds
+     */
+    private Bounds computeBounds(){
+        int n = mIDs.length;
+        byte[] cheapest = new byte[ n ];
+        byte[] fastest  = new byte[ n ];
+        float[] suffix  = new float[ n + 1 ];
+        for( int i = n - 1; i >= 0; i-- ){
+            int c = -1, f = -1;
+            for( int t = 0; t < NUM_TYPES; t++ ){
+                if( !isAvailable( i, t ) ){
+                    continue;
+                }
+                if( c == -1 || getCost( i, t ) < getCost( i, c ) ){
+                    c = t;
+                }
+                if( f == -1 || getRuntime( i, t ) < getRuntime( i, f ) ){
+                    f = t;
+                }
+            }
+            if( c == -1 ){
+                throw new RuntimeException( "No instance type available for task " + mIDs[ i ] );
+            }
+            cheapest[ i ] = (byte)c;
+            fastest[ i ]  = (byte)f;
+            suffix[ i ]   = suffix[ i + 1 ] + getCost( i, c );
+        }
+        return new Bounds( cheapest, fastest, suffix );
+    }
+
+    /**
+     * Invalidates the precomputed bounds, whenever a runtime or a price is
+     * updated.
+     */
+    private void invalidate(){
+        mBounds = null;
+    }
+
+    /**
+     * Converts a list of nodes to their task indices.
+     *
+     * @param nodes  list of <code>GraphNode</code>
+     *
+     * @return the indices
+     */
+    private int[] toIndices( List<GraphNode> nodes ){
+        int[] result = new int[ nodes.size() ];
+        int i = 0;
+        for( GraphNode node : nodes ){
+            result[ i++ ] = mIndexMap.get( node.getID() );
+        }
+        return result;
+    }
+
+    /**
+     * The bounds of a problem. They are never modified once computed.
+     */
+    private static class Bounds {
+
+        /**
+         * The cheapest type for each task.
+         */
+        private final byte[] mCheapest;
+
+        /**
+         * The fastest type for each task.
+         */
+        private final byte[] mFastest;
+
+        /**
+         * The sum of the minimum costs of tasks with index greater than or
+         * equal to the index into the array.
+         */
+        private final float[] mSuffixMinimumCost;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param cheapest  the cheapest type for each task.
+         * @param fastest   the fastest type for each task.
+         * @param suffix    the suffix sums of the minimum task costs.
+         */
+        private Bounds( byte[] cheapest, byte[] fastest, float[] suffix ){
+            mCheapest = cheapest;
+            mFastest  = fastest;
+            mSuffixMinimumCost = suffix;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+
+/**
+ * A workflow in an ensemble planned by the <code>EnsemblePlanner</code>.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class EnsembleMember {
+
+    /**
+     * The name of the member, usually the path to the DAX.
+     */
+    private String mName;
+
+    /**
+     * The priority of the member. Higher is more important.
+     */
+    private float mPriority;
+
+    /**
+     * The workflow in the graph format.
+     */
+    private Graph mWorkflow;
+
+    /**
+     * The Deco problem for the workflow.
+     */
+    private DecoProblem mProblem;
+
+    /**
+     * The cheapest configuration that meets the deadline. null if the deadline
+     * cannot be met, or the member has not been evaluated.
+     */
+    private byte[] mConfiguration;
+
+    /**
+     * The cost of the configuration.
+     */
+    private float mCost;
+
+    /**
+     * Whether the member is admitted to run under the budget.
+     */
+    private boolean mAdmitted;
+
+    /**
+     * The reason the member is not admitted. null if it is admitted, or has
+     * not been planned.
+     */
+    private String mRejection;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param name      the name of the member.
+     * @param priority  the priority of the member.
+     * @param workflow  the workflow in the graph format.
+     */
+    public EnsembleMember( String name, float priority, Graph workflow ){
+        mName      = name;
+        mPriority  = priority;
+        mWorkflow  = workflow;
+        mCost      = Float.MAX_VALUE;
+        mAdmitted  = false;
+        mRejection = null;
+    }
+
+    /**
+     * Returns the name of the member.
+     *
+     * @return the name
+     */
+    public String getName(){
+        return mName;
+    }
+
+    /**
+     * Returns the priority of the member.
+     *
+     * @return the priority
+     */
+    public float getPriority(){
+        return mPriority;
+    }
+
+    /**
+     * Returns the workflow of the member.
+     *
+     * @return the workflow
+     */
+    public Graph getWorkflow(){
+        return mWorkflow;
+    }
+
+    /**
+     * Returns the Deco problem for the workflow.
+     *
+     * @return the problem
+     */
+    public DecoProblem getProblem(){
+        return mProblem;
+    }
+
+    /**
+     * Sets the Deco problem for the workflow.
+     *
+     * @param problem  the problem.
+     */
+    public void setProblem( DecoProblem problem ){
+        mProblem = problem;
+    }
+
+    /**
+     * Returns the cheapest configuration that meets the deadline.
+     *
+     * @return the instance type ordinal for each task, or null if the
+     *         deadline cannot be met.
+     */
+    public byte[] getConfiguration(){
+        return mConfiguration;
+    }
+
+    /**
+     * Sets the cheapest configuration that meets the deadline.
+     *
+     * @param configuration  the configuration, or null if the deadline
+     *                       cannot be met.
+     */
+    public void setConfiguration( byte[] configuration ){
+        mConfiguration = configuration;
+        mCost = ( configuration == null ) ? Float.MAX_VALUE : mProblem.getCost( configuration );
+    }
+
+    /**
+     * Returns whether the member can meet the deadline.
+     *
+     * @return boolean
+     */
+    public boolean isFeasible(){
+        return mConfiguration != null;
+    }
+
+    /**
+     * Returns the cost of the configuration.
+     *
+     * @return the cost in dollars, Float.MAX_VALUE if not feasible.
+     */
+    public float getCost(){
+        return mCost;
+    }
+
+    /**
+     * Returns whether the member is admitted.
+     *
+     * @return boolean
+     */
+    public boolean isAdmitted(){
+        return mAdmitted;
+    }
+
+    /**
+     * Sets whether the member is admitted.
+     *
+     * @param admitted  boolean.
+     */
+    public void setAdmitted( boolean admitted ){
+        mAdmitted = admitted;
+        if( admitted ){
+            mRejection = null;
+        }
+    }
+
+    /**
+     * Returns the reason the member is not admitted.
+     *
+     * @return the reason, or null if the member is admitted or has not been
+     *         planned.
+     */
+    public String getRejection(){
+        return mRejection;
+    }
+
+    /**
+     * Marks the member as not admitted for a reason.
+     *
+     * @param reason  the reason the member is not admitted.
+     */
+    public void reject( String reason ){
+        mAdmitted  = false;
+        mRejection = reason;
+    }
+
+    /**
+     * Returns a textual description of the member.
+     *
+     * @return String
+     */
+    public String toString(){
+        StringBuffer sb = new StringBuffer();
+        sb.append( mName ).append( "\t" ).append( mPriority ).append( "\t" ).
+           append( isFeasible() ? Float.toString( mCost ) : "infeasible" ).append( "\t" ).
+           append( mAdmitted );
+        return sb.toString();
+    }
+}
@@ -0,0 +1,255 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import edu.isi.pegasus.common.logging.LogManager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plans an ensemble of prioritized workflows under a dollar budget. It is the
+ * Java counterpart of the ensemble mode of the native Deco planner.
+ *
+ * The planning is done in two steps
+ * <pre>
+ *   - the cheapest configuration that meets the deadline is searched for
+ *     each member. The members are searched in parallel.
+ *   - the members to admit are picked so that the sum of the priorities of
+ *     the admitted members is maximized, and their total cost is within the
+ *     budget. This is a 0/1 knapsack, which is solved by dynamic programming
+ *     over the budget divided into units of at least a cent. The costs are
+ *     rounded up to whole units, so the budget is never exceeded.
+ * </pre>
+ * The result does not depend on the number of threads. Each member that is
+ * not admitted is given the reason, which is also logged.
+ *
+ * Every member needs a deadline, as without one the cheapest configuration
+ * is all on the cheapest instance type and the search has nothing to meet.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class EnsemblePlanner {
+
+    /**
+     * The smallest unit in dollars the budget is divided into.
+     */
+    public static final float BUDGET_UNIT = 0.01f;
+
+    /**
+     * The maximum number of units the budget is divided into.
+     */
+    public static final int MAX_BUDGET_UNITS = 1 << 16;
+
+    /**
+     * The Deco algorithm used to create and search the problems.
+     */
+    private Algorithm mAlgorithm;
+
+    /**
+     * The number of members searched in parallel.
+     */
+    private int mParallelism;
+
+    /**
+     * The handle to the logger.
+     */
+    private LogManager mLogger;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param algorithm    the Deco algorithm.
+     * @param parallelism  the number of members searched in parallel.
+     * @param logger       the handle to the logger.
+     */
+    public EnsemblePlanner( Algorithm algorithm, int parallelism, LogManager logger ){
+        mAlgorithm   = algorithm;
+        mParallelism = ( parallelism < 1 ) ? 1 : parallelism;
+        mLogger      = logger;
+    }
+
+    /**
+     * Plans the members of an ensemble. On return each member has its
+     * configuration set, and is marked admitted or not.
+     *
+     * @param members  the members of the ensemble.
+     * @param sites    the list of candidate sites.
+     * @param budget   the budget in dollars.
+     *
+     * @return the sum of the priorities of the admitted members.
+     *
+     * @throws RuntimeException if a member has no deadline.
+     */
+    public float plan( List<EnsembleMember> members, List sites, float budget ){
+        //the problems are created serially, as the catalogs are not
+        //guaranteed to be thread safe
+        for( EnsembleMember member : members ){
+            member.setProblem( mAlgorithm.createProblem( member.getWorkflow(), sites ) );
+        }
+
+        checkDeadlines( members );
+        evaluate( members );
+        return admit( members, budget );
+    }
+
+    /**
+     * Checks that every member has a deadline set on its problem.
+     *
+     * @param members  the members with their problems set.
+     *
+     * @throws RuntimeException if a member has no deadline.
+     */
+    protected void checkDeadlines( List<EnsembleMember> members ){
+        for( EnsembleMember member : members ){
+            float deadline = member.getProblem().getDeadline();
+            if( !( deadline > 0 ) || deadline == Float.MAX_VALUE ){
+                throw new RuntimeException( "Ensemble member " + member.getName() +
+                                            " has no deadline. Set the property " +
+                                            Algorithm.DEADLINE_PROPERTY );
+            }
+        }
+    }
+
+    /**
+     * Searches for the cheapest configuration of each member in parallel.
+     *
+     * @param members  the members with their problems set.
+     */
+    protected void evaluate( List<EnsembleMember> members ){
+        ExecutorService pool = Executors.newFixedThreadPool( Math.min( mParallelism, Math.max( 1, members.size() ) ) );
+        try{
+            List<Future<byte[]>> results = new ArrayList<Future<byte[]>>( members.size() );
+            for( EnsembleMember member : members ){
+                final AstarSearch search = mAlgorithm.createSearch( member.getProblem(), 1 );
+                results.add( pool.submit( new Callable<byte[]>(){
+                    public byte[] call(){
+                        return search.search();
+                    }
+                }));
+            }
+
+            for( int i = 0; i < members.size(); i++ ){
+                EnsembleMember member = members.get( i );
+                member.setConfiguration( results.get( i ).get() );
+                if( member.isFeasible() ){
+                    mLogger.log( "Ensemble member " + member.getName() + " costs " + member.getCost(),
+                                 LogManager.DEBUG_MESSAGE_LEVEL );
+                }
+            }
+        }
+        catch( InterruptedException e ){
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while searching the ensemble members", e );
+        }
+        catch( ExecutionException e ){
+            throw new RuntimeException( "Unable to search the ensemble members", e.getCause() );
+        }
+        finally{
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Admits the members that maximize the sum of the priorities within the
+     * budget. Of the selections with the maximum sum, the cheapest is picked.
+     * The members that are not admitted are given the reason.
+     *
+     * @param members  the members with their configurations set.
+     * @param budget   the budget in dollars.
+     *
+     * @return the sum of the priorities of the admitted members.
+     */
+    protected float admit( List<EnsembleMember> members, float budget ){
+        int m = members.size();
+        float unit = Math.max( BUDGET_UNIT, budget / MAX_BUDGET_UNITS );
+        int capacity = Math.max( 0, (int)Math.floor( budget / unit ) );
+
+        int[] weights = new int[ m ];
+        for( int i = 0; i < m; i++ ){
+            EnsembleMember member = members.get( i );
+            member.setAdmitted( false );
+            weights[ i ] = ( member.isFeasible() && member.getPriority() > 0 ) ?
+                           (int)Math.min( Integer.MAX_VALUE, (long)Math.ceil( member.getCost() / unit ) ) :
+                           -1;
+            if( !member.isFeasible() ){
+                member.reject( "cannot meet the deadline of " + member.getProblem().getDeadline() );
+            }
+            else if( member.getPriority() <= 0 ){
+                member.reject( "has a priority of " + member.getPriority() );
+            }
+            else if( weights[ i ] > capacity ){
+                member.reject( "costs " + member.getCost() + " which exceeds the budget of " + budget );
+            }
+            else{
+                member.reject( "does not fit in the budget of " + budget +
+                               " along with the admitted members" );
+            }
+        }
+
+        //best[ c ] is the largest sum of priorities for a cost of at most c
+        //units, and taken[ i ] records the capacities at which member i is used
+        double[] best = new double[ capacity + 1 ];
+        long[][] taken = new long[ m ][];
+        for( int i = 0; i < m; i++ ){
+            int w = weights[ i ];
+            if( w < 0 || w > capacity ){
+                continue;
+            }
+            double p = members.get( i ).getPriority();
+            taken[ i ] = new long[ ( capacity >> 6 ) + 1 ];
+            for( int c = capacity; c >= w; c-- ){
+                if( best[ c - w ] + p > best[ c ] ){
+                    best[ c ] = best[ c - w ] + p;
+                    taken[ i ][ c >> 6 ] |= 1L << c;
+                }
+            }
+        }
+
+        //the smallest capacity with the largest sum
+        int c = capacity;
+        while( c > 0 && best[ c - 1 ] == best[ capacity ] ){
+            c--;
+        }
+        float result = 0;
+        for( int i = m - 1; i >= 0; i-- ){
+            if( taken[ i ] != null && ( taken[ i ][ c >> 6 ] & ( 1L << c ) ) != 0 ){
+                EnsembleMember member = members.get( i );
+                member.setAdmitted( true );
+                result += member.getPriority();
+                c -= weights[ i ];
+            }
+        }
+
+        for( EnsembleMember member : members ){
+            if( !member.isAdmitted() ){
+                mLogger.log( "Ensemble member " + member.getName() + " is not admitted as it " +
+                             member.getRejection(),
+                             LogManager.INFO_MESSAGE_LEVEL );
+            }
+        }
+        return result;
+    }
+}
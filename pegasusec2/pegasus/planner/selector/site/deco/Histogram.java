@@ -0,0 +1,463 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+/**
+ * A discrete probability distribution of a duration, held as point masses on
+ * a uniform grid. It is the Java counterpart of the histograms convolved by
+ * <code>conv()</code> in the native Deco planner.
+ *
+ * The grid points of a histogram are multiples of its width, and the width is
+ * a base width times a power of two. Two histograms built with the same base
+ * width can always be brought on to a common grid, by rebinning the finer one.
+ * Rebinning merges pairs of grid points, and splits the mass of the odd points
+ * evenly between their neighbours, so that the mean is preserved.
+ *
+ * The algebra supported is
+ * <pre>
+ *   sum  the distribution of X + Y, which is the convolution of the masses.
+ *        Large convolutions are done with a FFT.
+ *   max  the distribution of max( X, Y ), which is the product of the CDFs.
+ * </pre>
+ * X and Y are assumed to be independent. The results are rebinned so that
+ * they have no more than a maximum number of points.
+ *
+ * Histograms are immutable.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class Histogram {
+
+    /**
+     * The default maximum number of points in a histogram.
+     */
+    public static final int DEFAULT_MAX_POINTS = 512;
+
+    /**
+     * The product of the sizes of two histograms, above which they are
+     * convolved with a FFT instead of directly.
+     */
+    public static final int FFT_THRESHOLD = 4096;
+
+    /**
+     * The width of the grid.
+     */
+    private final double mWidth;
+
+    /**
+     * The index of the first grid point.
+     */
+    private final long mStart;
+
+    /**
+     * The mass at each grid point, starting at mStart.
+     */
+    private final double[] mMass;
+
+    /**
+     * Returns a histogram with all of its mass at 0.
+     *
+     * @param width  the width of the grid.
+     *
+     * @return the histogram
+     */
+    public static Histogram zero( double width ){
+        return new Histogram( width, 0, new double[]{ 1 } );
+    }
+
+    /**
+     * Builds a histogram from samples. The mass of a sample is split between
+     * the two grid points around it, in proportion to its distance from them.
+     *
+     * @param values     the array with the samples.
+     * @param offset     the offset of the first sample.
+     * @param length     the number of samples.
+     * @param width      the width of the grid.
+     * @param maxPoints  the maximum number of points in the histogram.
+     *
+     * @return the histogram
+     */
+    public static Histogram fromSamples( float[] values, int offset, int length,
+                                         double width, int maxPoints ){
+        //the width is doubled till the samples span at most maxPoints points
+        double min = Double.MAX_VALUE, max = -Double.MAX_VALUE;
+        for( int i = offset; i < offset + length; i++ ){
+            min = Math.min( min, values[ i ] );
+            max = Math.max( max, values[ i ] );
+        }
+        while( Math.floor( max / width ) - Math.floor( min / width ) + 2 > maxPoints ){
+            width *= 2;
+        }
+
+        long start = (long)Math.floor( min / width );
+        double[] mass = new double[ (int)( (long)Math.floor( max / width ) - start + 2 ) ];
+        double unit = 1.0 / length;
+        for( int i = offset; i < offset + length; i++ ){
+            double x = values[ i ] / width;
+            long low = (long)Math.floor( x );
+            double fraction = x - low;
+            mass[ (int)( low - start ) ] += unit * ( 1 - fraction );
+            mass[ (int)( low - start ) + 1 ] += unit * fraction;
+        }
+        return new Histogram( width, start, mass );
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param width  the width of the grid.
+     * @param start  the index of the first grid point.
+     * @param mass   the mass at each grid point.
+     */
+    public Histogram( double width, long start, double[] mass ){
+        mWidth = width;
+        mStart = start;
+        mMass  = mass;
+    }
+
+    /**
+     * Returns the width of the grid.
+     *
+     * @return the width
+     */
+    public double getWidth(){
+        return mWidth;
+    }
+
+    /**
+     * Returns the number of points in the histogram.
+     *
+     * @return the number of points
+     */
+    public int size(){
+        return mMass.length;
+    }
+
+    /**
+     * Returns the smallest value with a mass.
+     *
+     * @return the value
+     */
+    public double getMin(){
+        return mStart * mWidth;
+    }
+
+    /**
+     * Returns the largest value with a mass.
+     *
+     * @return the value
+     */
+    public double getMax(){
+        return ( mStart + mMass.length - 1 ) * mWidth;
+    }
+
+    /**
+     * Returns the mean of the distribution.
+     *
+     * @return the mean
+     */
+    public double getMean(){
+        double sum = 0, total = 0;
+        for( int i = 0; i < mMass.length; i++ ){
+            sum   += mMass[ i ] * ( mStart + i );
+            total += mMass[ i ];
+        }
+        return sum / total * mWidth;
+    }
+
+    /**
+     * Returns the probability that the value is not greater than x.
+     *
+     * @param x  the value.
+     *
+     * @return the probability
+     */
+    public double getCDF( double x ){
+        long last = (long)Math.floor( x / mWidth ) - mStart;
+        if( last < 0 ){
+            return 0;
+        }
+        int end = (int)Math.min( last + 1, mMass.length );
+        double result = 0;
+        for( int i = 0; i < end; i++ ){
+            result += mMass[ i ];
+        }
+        return Math.min( result, 1 );
+    }
+
+    /**
+     * Returns the smallest grid value whose cumulative probability is at
+     * least p.
+     *
+     * @param p  the probability.
+     *
+     * @return the quantile
+     */
+    public double getQuantile( double p ){
+        double cumulative = 0;
+        for( int i = 0; i < mMass.length; i++ ){
+            cumulative += mMass[ i ];
+            if( cumulative >= p ){
+                return ( mStart + i ) * mWidth;
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Returns the distribution of the sum of this and another independent
+     * value.
+     *
+     * @param other      the other histogram.
+     * @param maxPoints  the maximum number of points in the result.
+     *
+     * @return the histogram of the sum
+     */
+    public Histogram add( Histogram other, int maxPoints ){
+        Histogram a = this.rebin( other.mWidth );
+        Histogram b = other.rebin( this.mWidth );
+        double[] mass = ( (long)a.mMass.length * b.mMass.length > FFT_THRESHOLD ) ?
+                        convolveFFT( a.mMass, b.mMass ) :
+                        convolve( a.mMass, b.mMass );
+        return new Histogram( a.mWidth, a.mStart + b.mStart, mass ).limit( maxPoints );
+    }
+
+    /**
+     * Returns the distribution of the maximum of this and another independent
+     * value.
+     *
+     * @param other      the other histogram.
+     * @param maxPoints  the maximum number of points in the result.
+     *
+     * @return the histogram of the maximum
+     */
+    public Histogram max( Histogram other, int maxPoints ){
+        Histogram a = this.rebin( other.mWidth );
+        Histogram b = other.rebin( this.mWidth );
+        long start = Math.max( a.mStart, b.mStart );
+        long end   = Math.max( a.mStart + a.mMass.length, b.mStart + b.mMass.length );
+        double[] mass = new double[ (int)( end - start ) ];
+
+        //the cdf of each at the point before the start
+        double fa = 0, fb = 0;
+        for( int i = 0; i < a.mMass.length && a.mStart + i < start; i++ ){
+            fa += a.mMass[ i ];
+        }
+        for( int i = 0; i < b.mMass.length && b.mStart + i < start; i++ ){
+            fb += b.mMass[ i ];
+        }
+        double previous = 0;
+        for( int i = 0; i < mass.length; i++ ){
+            long point = start + i;
+            if( point >= a.mStart && point < a.mStart + a.mMass.length ){
+                fa += a.mMass[ (int)( point - a.mStart ) ];
+            }
+            if( point >= b.mStart && point < b.mStart + b.mMass.length ){
+                fb += b.mMass[ (int)( point - b.mStart ) ];
+            }
+            double cdf = fa * fb;
+            mass[ i ] = cdf - previous;
+            previous  = cdf;
+        }
+        return new Histogram( a.mWidth, start, mass ).limit( maxPoints );
+    }
+
+    /**
+     * Returns this histogram on a grid at least as wide as a width.
+     *
+     * @param width  the width.
+     *
+     * @return the rebinned histogram, or this if the grid is already as wide.
+     */
+    public Histogram rebin( double width ){
+        Histogram result = this;
+        while( result.mWidth < width * 0.999 ){
+            result = result.coarsen();
+        }
+        return result;
+    }
+
+    /**
+     * Returns this histogram rebinned till it has at most maxPoints points.
+     *
+     * @param maxPoints  the maximum number of points.
+     *
+     * @return the histogram
+     */
+    private Histogram limit( int maxPoints ){
+        Histogram result = this;
+        while( result.mMass.length > maxPoints ){
+            result = result.coarsen();
+        }
+        return result;
+    }
+
+    /**
+     * Returns this histogram on a grid twice as wide. The mass at an even
+     * point goes to the corresponding point, and the mass at an odd point
+     * is split evenly between its two neighbours.
+     *
+     * @return the histogram
+     */
+    private Histogram coarsen(){
+        long start = mStart >> 1;
+        long end   = ( ( mStart + mMass.length - 1 ) >> 1 ) + 1;
+        double[] mass = new double[ (int)( end - start + 1 ) ];
+        for( int i = 0; i < mMass.length; i++ ){
+            long point = mStart + i;
+            int index  = (int)( ( point >> 1 ) - start );
+            if( ( point & 1 ) == 0 ){
+                mass[ index ] += mMass[ i ];
+            }
+            else{
+                mass[ index ]     += mMass[ i ] / 2;
+                mass[ index + 1 ] += mMass[ i ] / 2;
+            }
+        }
+
+        //drop a trailing point with no mass
+        int length = mass.length;
+        while( length > 1 && mass[ length - 1 ] == 0 ){
+            length--;
+        }
+        if( length < mass.length ){
+            double[] trimmed = new double[ length ];
+            System.arraycopy( mass, 0, trimmed, 0, length );
+            mass = trimmed;
+        }
+        return new Histogram( mWidth * 2, start, mass );
+    }
+
+    /**
+     * Convolves two arrays directly.
+     *
+     * @param a  the first array.
+     * @param b  the second array.
+     *
+     * @return the convolution
+     */
+    private static double[] convolve( double[] a, double[] b ){
+        double[] result = new double[ a.length + b.length - 1 ];
+        for( int i = 0; i < a.length; i++ ){
+            double x = a[ i ];
+            if( x == 0 ){
+                continue;
+            }
+            for( int j = 0; j < b.length; j++ ){
+                result[ i + j ] += x * b[ j ];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Convolves two arrays with a FFT.
+     *
+     * @param a  the first array.
+     * @param b  the second array.
+     *
+     * @return the convolution
+     */
+    private static double[] convolveFFT( double[] a, double[] b ){
+        int length = a.length + b.length - 1;
+        int n = Integer.highestOneBit( length );
+        if( n < length ){
+            n <<= 1;
+        }
+
+        //a goes into the real part, b into the imaginary part, and both
+        //transforms are recovered from the one transform
+        double[] re = new double[ n ];
+        double[] im = new double[ n ];
+        System.arraycopy( a, 0, re, 0, a.length );
+        System.arraycopy( b, 0, im, 0, b.length );
+        fft( re, im, false );
+
+        //A[k] = ( Z[k] + conj( Z[n-k] ) ) / 2, B[k] = ( Z[k] - conj( Z[n-k] ) ) / 2i
+        //and the product A[k] * B[k] is transformed back
+        double[] pr = new double[ n ];
+        double[] pi = new double[ n ];
+        for( int k = 0; k < n; k++ ){
+            int j = ( n - k ) & ( n - 1 );
+            double ar = ( re[ k ] + re[ j ] ) / 2, ai = ( im[ k ] - im[ j ] ) / 2;
+            double br = ( im[ k ] + im[ j ] ) / 2, bi = ( re[ j ] - re[ k ] ) / 2;
+            pr[ k ] = ar * br - ai * bi;
+            pi[ k ] = ar * bi + ai * br;
+        }
+        fft( pr, pi, true );
+
+        double[] result = new double[ length ];
+        for( int i = 0; i < length; i++ ){
+            //round off errors can make tiny masses negative
+            result[ i ] = Math.max( 0, pr[ i ] );
+        }
+        return result;
+    }
+
+    /**
+     * An in place iterative radix 2 FFT.
+     *
+     * @param re       the real parts. The length is a power of 2.
+     * @param im       the imaginary parts.
+     * @param inverse  whether to compute the inverse transform.
+     */
+    private static void fft( double[] re, double[] im, boolean inverse ){
+        int n = re.length;
+
+        //bit reversal permutation
+        for( int i = 1, j = 0; i < n; i++ ){
+            int bit = n >> 1;
+            for( ; ( j & bit ) != 0; bit >>= 1 ){
+                j ^= bit;
+            }
+            j ^= bit;
+            if( i < j ){
+                double t = re[ i ]; re[ i ] = re[ j ]; re[ j ] = t;
+                t = im[ i ]; im[ i ] = im[ j ]; im[ j ] = t;
+            }
+        }
+
+        for( int length = 2; length <= n; length <<= 1 ){
+            double angle = 2 * Math.PI / length * ( inverse ? 1 : -1 );
+            double wr = Math.cos( angle ), wi = Math.sin( angle );
+            int half = length >> 1;
+            for( int i = 0; i < n; i += length ){
+                double cr = 1, ci = 0;
+                for( int k = 0; k < half; k++ ){
+                    int p = i + k, q = p + half;
+                    double xr = re[ q ] * cr - im[ q ] * ci;
+                    double xi = re[ q ] * ci + im[ q ] * cr;
+                    re[ q ] = re[ p ] - xr;
+                    im[ q ] = im[ p ] - xi;
+                    re[ p ] += xr;
+                    im[ p ] += xi;
+                    double t = cr * wr - ci * wi;
+                    ci = cr * wi + ci * wr;
+                    cr = t;
+                }
+            }
+        }
+
+        if( inverse ){
+            for( int i = 0; i < n; i++ ){
+                re[ i ] /= n;
+                im[ i ] /= n;
+            }
+        }
+    }
+}
@@ -0,0 +1,304 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.util.Arrays;
+
+/**
+ * Maintains the earliest start and finish times of the tasks of a workflow
+ * for an instance type configuration, under changes to the type of single
+ * tasks. It works on the index view of a <code>Graph</code> built by
+ * <code>DecoProblem</code>.
+ *
+ * When the type of a task changes, only the tasks whose times actually change
+ * are visited. They are processed in ascending index order, which is a
+ * topological order, using a heap of the pending task indices. The
+ * propagation stops at a task whose finish time is unchanged, so the cost of
+ * a change is proportional to the size of the affected cone rather than to
+ * the size of the whole workflow.
+ *
+ * An instance is not thread safe.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class IncrementalMakespan {
+
+    /**
+     * The problem whose configurations are evaluated.
+     */
+    private final DecoProblem mProblem;
+
+    /**
+     * The instance type ordinal of each task.
+     */
+    private final byte[] mConfiguration;
+
+    /**
+     * The earliest start time of each task.
+     */
+    private final float[] mStart;
+
+    /**
+     * The earliest finish time of each task.
+     */
+    private final float[] mFinish;
+
+    /**
+     * The indices of the tasks without children.
+     */
+    private final int[] mExits;
+
+    /**
+     * The binary min heap of the task indices pending propagation.
+     */
+    private final int[] mHeap;
+
+    /**
+     * The number of task indices in the heap.
+     */
+    private int mHeapSize;
+
+    /**
+     * Whether a task index is in the heap.
+     */
+    private final boolean[] mQueued;
+
+    /**
+     * The makespan. Negative if it needs to be recomputed.
+     */
+    private float mMakespan;
+
+    /**
+     * The number of tasks visited since the last full evaluation.
+     */
+    private long mVisits;
+
+    /**
+     * The overloaded constructor. The times are computed for a configuration.
+     *
+     * @param problem        the problem.
+     * @param configuration  the instance type ordinal for each task. The array
+     *                       is copied.
+     */
+    public IncrementalMakespan( DecoProblem problem, byte[] configuration ){
+        int n = problem.size();
+        mProblem       = problem;
+        mConfiguration = Arrays.copyOf( configuration, n );
+        mStart         = new float[ n ];
+        mFinish        = new float[ n ];
+        mHeap          = new int[ n ];
+        mQueued        = new boolean[ n ];
+
+        int exits = 0;
+        for( int i = 0; i < n; i++ ){
+            if( problem.getChildren( i ).length == 0 ){
+                exits++;
+            }
+        }
+        mExits = new int[ exits ];
+        for( int i = 0, j = 0; i < n; i++ ){
+            if( problem.getChildren( i ).length == 0 ){
+                mExits[ j++ ] = i;
+            }
+        }
+        reset( configuration );
+    }
+
+    /**
+     * Recomputes the times of all the tasks for a configuration.
+     *
+     * @param configuration  the instance type ordinal for each task.
+     */
+    public void reset( byte[] configuration ){
+        System.arraycopy( configuration, 0, mConfiguration, 0, mConfiguration.length );
+        for( int i = 0; i < mFinish.length; i++ ){
+            mStart[ i ]  = getReadyTime( i );
+            mFinish[ i ] = mStart[ i ] + mProblem.getRuntime( i, mConfiguration[ i ] );
+        }
+        mMakespan = -1;
+        mVisits   = 0;
+    }
+
+    /**
+     * Changes the instance type of a task, and propagates the change in its
+     * finish time to the tasks that depend on it.
+     *
+     * @param task  the task index.
+     * @param type  the new instance type ordinal.
+     */
+    public void setType( int task, int type ){
+        if( mConfiguration[ task ] == type ){
+            return;
+        }
+        mConfiguration[ task ] = (byte)type;
+        push( task );
+        while( mHeapSize > 0 ){
+            int i = pop();
+            mVisits++;
+            float start  = getReadyTime( i );
+            float finish = start + mProblem.getRuntime( i, mConfiguration[ i ] );
+            mStart[ i ] = start;
+            if( finish == mFinish[ i ] ){
+                continue;
+            }
+            mFinish[ i ] = finish;
+            int[] children = mProblem.getChildren( i );
+            if( children.length == 0 ){
+                mMakespan = -1;
+            }
+            for( int child : children ){
+                push( child );
+            }
+        }
+    }
+
+    /**
+     * Returns the instance type of a task.
+     *
+     * @param task  the task index.
+     *
+     * @return the instance type ordinal
+     */
+    public int getType( int task ){
+        return mConfiguration[ task ];
+    }
+
+    /**
+     * Returns the current configuration. The array should not be modified.
+     *
+     * @return the instance type ordinal for each task
+     */
+    public byte[] getConfiguration(){
+        return mConfiguration;
+    }
+
+    /**
+     * Returns the earliest start time of a task.
+     *
+     * @param task  the task index.
+     *
+     * @return the start time
+     */
+    public float getStart( int task ){
+        return mStart[ task ];
+    }
+
+    /**
+     * Returns the earliest finish times of the tasks. The array should not be
+     * modified.
+     *
+     * @return the finish times indexed by task
+     */
+    public float[] getFinishTimes(){
+        return mFinish;
+    }
+
+    /**
+     * Returns the makespan of the current configuration.
+     *
+     * @return the makespan
+     */
+    public float getMakespan(){
+        if( mMakespan < 0 ){
+            float makespan = 0;
+            for( int i : mExits ){
+                makespan = Math.max( makespan, mFinish[ i ] );
+            }
+            mMakespan = makespan;
+        }
+        return mMakespan;
+    }
+
+    /**
+     * Returns the number of tasks visited by setType() since the last full
+     * evaluation.
+     *
+     * @return the number of visits
+     */
+    public long getVisits(){
+        return mVisits;
+    }
+
+    /**
+     * Returns the time at which all the parents of a task have finished.
+     *
+     * @param task  the task index.
+     *
+     * @return the ready time
+     */
+    private float getReadyTime( int task ){
+        float ready = 0;
+        for( int p : mProblem.getParents( task ) ){
+            if( mFinish[ p ] > ready ){
+                ready = mFinish[ p ];
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * Adds a task index to the heap, if it is not already in it.
+     *
+     * @param task  the task index.
+     */
+    private void push( int task ){
+        if( mQueued[ task ] ){
+            return;
+        }
+        mQueued[ task ] = true;
+        int i = mHeapSize++;
+        while( i > 0 ){
+            int parent = ( i - 1 ) >>> 1;
+            if( mHeap[ parent ] <= task ){
+                break;
+            }
+            mHeap[ i ] = mHeap[ parent ];
+            i = parent;
+        }
+        mHeap[ i ] = task;
+    }
+
+    /**
+     * Removes the smallest task index from the heap.
+     *
+     * @return the task index
+     */
+    private int pop(){
+        int result = mHeap[ 0 ];
+        mQueued[ result ] = false;
+        int last = mHeap[ --mHeapSize ];
+        int i = 0;
+        while( true ){
+            int child = 2 * i + 1;
+            if( child >= mHeapSize ){
+                break;
+            }
+            if( child + 1 < mHeapSize && mHeap[ child + 1 ] < mHeap[ child ] ){
+                child++;
+            }
+            if( mHeap[ child ] >= last ){
+                break;
+            }
+            mHeap[ i ] = mHeap[ child ];
+            i = child;
+        }
+        mHeap[ i ] = last;
+        return result;
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import edu.isi.pegasus.planner.catalog.classes.SysInfo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The instance type picked for each job of a workflow by a Deco run. It is
+ * written to the submit directory, so that a later run of the same workflow
+ * can seed its search with it.
+ *
+ * The file has a line per job, with the job id and the instance type
+ * separated by a tab.
+ * <pre>
+ *   #id        type
+ *   ID000001   m1small
+ *   ID000002   m1large
+ * </pre>
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class InstanceTypePlan {
+
+    /**
+     * The suffix of the plan files in the submit directory.
+     */
+    public static final String FILE_SUFFIX = ".types";
+
+    /**
+     * The instance type of each job indexed by the job id.
+     */
+    private final Map<String,SysInfo.InstanceType> mTypes;
+
+    /**
+     * The default constructor.
+     */
+    public InstanceTypePlan(){
+        mTypes = new LinkedHashMap<String,SysInfo.InstanceType>();
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param problem        the problem the configuration is for.
+     * @param configuration  the instance type ordinal for each task.
+     */
+    public InstanceTypePlan( DecoProblem problem, byte[] configuration ){
+        this();
+        for( int i = 0; i < configuration.length; i++ ){
+            mTypes.put( problem.getID( i ), DecoProblem.TYPES[ configuration[ i ] ] );
+        }
+    }
+
+    /**
+     * Sets the instance type of a job.
+     *
+     * @param id    the job id.
+     * @param type  the instance type.
+     */
+    public void put( String id, SysInfo.InstanceType type ){
+        mTypes.put( id, type );
+    }
+
+    /**
+     * Returns the instance type of a job.
+     *
+     * @param id  the job id.
+     *
+     * @return the instance type, or null if the job is not in the plan.
+     */
+    public SysInfo.InstanceType get( String id ){
+        return mTypes.get( id );
+    }
+
+    /**
+     * Returns the number of jobs in the plan.
+     *
+     * @return the number of jobs
+     */
+    public int size(){
+        return mTypes.size();
+    }
+
+    /**
+     * Maps the plan onto the tasks of a problem. The tasks that are not in
+     * the plan, or whose planned type is not available to them, are assigned
+     * their cheapest type.
+     *
+     * @param problem        the problem.
+     * @param configuration  array of size() of the problem, to hold the
+     *                       instance type ordinal for each task.
+     *
+     * @return the number of tasks whose type was taken from the plan.
+     */
+    public int apply( DecoProblem problem, byte[] configuration ){
+        int matched = 0;
+        for( int i = 0; i < problem.size(); i++ ){
+            SysInfo.InstanceType type = mTypes.get( problem.getID( i ) );
+            if( type != null && problem.isAvailable( i, type.ordinal() ) ){
+                configuration[ i ] = (byte)type.ordinal();
+                matched++;
+            }
+            else{
+                configuration[ i ] = (byte)problem.getCheapestType( i );
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * Writes the plan to a file.
+     *
+     * @param file  the file to write to.
+     *
+     * @throws IOException in case of error while writing.
+     */
+    public void write( File file ) throws IOException{
+        PrintWriter pw = new PrintWriter( new FileWriter( file ) );
+        try{
+            pw.println( "#id\ttype" );
+            for( Map.Entry<String,SysInfo.InstanceType> e : mTypes.entrySet() ){
+                pw.println( e.getKey() + "\t" + e.getValue() );
+            }
+            if( pw.checkError() ){
+                throw new IOException( "Unable to write the instance types to " + file );
+            }
+        }
+        finally{
+            pw.close();
+        }
+    }
+
+    /**
+     * Reads a plan from a file.
+     *
+     * @param file  the file to read from.
+     *
+     * @return the plan
+     *
+     * @throws IOException in case of error while reading, or if a line is
+     *         malformed.
+     */
+    public static InstanceTypePlan read( File file ) throws IOException{
+        InstanceTypePlan plan = new InstanceTypePlan();
+        BufferedReader reader = new BufferedReader( new FileReader( file ) );
+        try{
+            String line;
+            while( ( line = reader.readLine() ) != null ){
+                line = line.trim();
+                if( line.length() == 0 || line.startsWith( "#" ) ){
+                    continue;
+                }
+                String[] fields = line.split( "\t" );
+                if( fields.length != 2 ){
+                    throw new IOException( "Malformed line in " + file + ": " + line );
+                }
+                try{
+                    plan.put( fields[ 0 ], SysInfo.InstanceType.valueOf( fields[ 1 ] ) );
+                }
+                catch( IllegalArgumentException e ){
+                    throw new IOException( "Unknown instance type in " + file + ": " + line );
+                }
+            }
+        }
+        finally{
+            reader.close();
+        }
+        return plan;
+    }
+}
@@ -0,0 +1,152 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+/**
+ * An open addressing hash set of primitive longs. It is used as the closed set
+ * of the Deco search, where boxing a <code>Long</code> for every expanded state
+ * would dominate the memory footprint.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+class LongHashSet {
+
+    /**
+     * The value used to designate an empty slot.
+     */
+    private static final long EMPTY = 0;
+
+    /**
+     * The slots of the table.
+     */
+    private long[] mSlots;
+
+    /**
+     * The number of values in the set.
+     */
+    private int mSize;
+
+    /**
+     * Whether the EMPTY value is part of the set.
+     */
+    private boolean mContainsEmpty;
+
+    /**
+     * The default constructor.
+     */
+    public LongHashSet(){
+        mSlots = new long[ 1024 ];
+        mSize  = 0;
+        mContainsEmpty = false;
+    }
+
+    /**
+     * Adds a value to the set.
+     *
+     * @param value  the value to be added.
+     *
+     * @return true if the value was not already in the set.
+     */
+    public boolean add( long value ){
+        if( value == EMPTY ){
+            boolean result = !mContainsEmpty;
+            mContainsEmpty = true;
+            return result;
+        }
+        if( ( mSize + 1 ) * 2 > mSlots.length ){
+            rehash( mSlots.length * 2 );
+        }
+        int mask = mSlots.length - 1;
+        for( int i = mix( value ) & mask; ; i = ( i + 1 ) & mask ){
+            if( mSlots[ i ] == EMPTY ){
+                mSlots[ i ] = value;
+                mSize++;
+                return true;
+            }
+            if( mSlots[ i ] == value ){
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Returns whether a value is in the set.
+     *
+     * @param value  the value to be searched for.
+     *
+     * @return boolean
+     */
+    public boolean contains( long value ){
+        if( value == EMPTY ){
+            return mContainsEmpty;
+        }
+        int mask = mSlots.length - 1;
+        for( int i = mix( value ) & mask; ; i = ( i + 1 ) & mask ){
+            if( mSlots[ i ] == EMPTY ){
+                return false;
+            }
+            if( mSlots[ i ] == value ){
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of values in the set.
+     *
+     * @return the size
+     */
+    public int size(){
+        return mContainsEmpty ? mSize + 1 : mSize;
+    }
+
+    /**
+     * Grows the table to the capacity passed.
+     *
+     * @param capacity  the new capacity, a power of two.
+     */
+    private void rehash( int capacity ){
+        long[] old = mSlots;
+        mSlots = new long[ capacity ];
+        int mask = capacity - 1;
+        for( long value : old ){
+            if( value == EMPTY ){
+                continue;
+            }
+            int i = mix( value ) & mask;
+            while( mSlots[ i ] != EMPTY ){
+                i = ( i + 1 ) & mask;
+            }
+            mSlots[ i ] = value;
+        }
+    }
+
+    /**
+     * Spreads the bits of a value for use as a table index.
+     *
+     * @param value  the value.
+     *
+     * @return the mixed bits
+     */
+    private static int mix( long value ){
+        value ^= ( value >>> 33 );
+        value *= 0xff51afd7ed558ccdL;
+        value ^= ( value >>> 33 );
+        return (int)value;
+    }
+}
@@ -0,0 +1,270 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An archive of the configurations of a Deco problem that are not dominated
+ * in monetary cost and makespan. A configuration dominates another if it is
+ * neither more expensive nor slower, and is better in at least one of them.
+ *
+ * The archive is a skyline held in a <code>TreeMap</code> keyed by cost, in
+ * which the makespan strictly decreases as the cost increases. A candidate is
+ * dominated iff the entry with the largest cost not above its cost is no
+ * slower, so the dominance check is a single O(log n) lookup. Inserting a
+ * candidate removes the entries it dominates, which are the contiguous run of
+ * more expensive entries that are no faster.
+ *
+ * The archive is not thread safe. The search offers configurations to it only
+ * from the thread merging the expansions.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class ParetoArchive {
+
+    /**
+     * The suffix of the file the frontier of a workflow is written to.
+     */
+    public static final String FRONTIER_FILE_SUFFIX = ".frontier";
+
+    /**
+     * The entries indexed by cost.
+     */
+    private TreeMap<Float,Entry> mEntries;
+
+    /**
+     * The number of configurations offered.
+     */
+    private long mOffers;
+
+    /**
+     * The default constructor.
+     */
+    public ParetoArchive(){
+        mEntries = new TreeMap<Float,Entry>();
+        mOffers  = 0;
+    }
+
+    /**
+     * Returns whether a configuration with the given cost and makespan is
+     * dominated by, or equal to, a configuration in the archive.
+     *
+     * @param cost      the cost in dollars.
+     * @param makespan  the makespan in seconds.
+     *
+     * @return boolean
+     */
+    public boolean isDominated( float cost, float makespan ){
+        Map.Entry<Float,Entry> e = mEntries.floorEntry( cost );
+        return e != null && e.getValue().mMakespan <= makespan;
+    }
+
+    /**
+     * Offers a configuration to the archive. The configuration is added if it
+     * is not dominated, and the entries it dominates are removed.
+     *
+     * @param cost           the cost in dollars.
+     * @param makespan       the makespan in seconds.
+     * @param configuration  the instance type ordinal for each task. It is
+     *                       copied if added.
+     *
+     * @return true if the configuration is added
+     */
+    public boolean offer( float cost, float makespan, byte[] configuration ){
+        mOffers++;
+        if( isDominated( cost, makespan ) ){
+            return false;
+        }
+        //the more expensive entries that are no faster are dominated
+        Map.Entry<Float,Entry> e;
+        while( ( e = mEntries.ceilingEntry( cost ) ) != null && e.getValue().mMakespan >= makespan ){
+            mEntries.remove( e.getKey() );
+        }
+        mEntries.put( cost, new Entry( cost, makespan, configuration.clone() ) );
+        return true;
+    }
+
+    /**
+     * Returns the number of configurations in the archive.
+     *
+     * @return the size
+     */
+    public int size(){
+        return mEntries.size();
+    }
+
+    /**
+     * Returns the number of configurations offered to the archive.
+     *
+     * @return the number of offers
+     */
+    public long getOffers(){
+        return mOffers;
+    }
+
+    /**
+     * Returns the configurations in the archive by ascending cost, and so
+     * by descending makespan.
+     *
+     * @return the entries
+     */
+    public List<Entry> getEntries(){
+        return new ArrayList<Entry>( mEntries.values() );
+    }
+
+    /**
+     * Returns the cheapest configuration in the archive with a makespan not
+     * above a deadline.
+     *
+     * @param deadline  the deadline in seconds.
+     *
+     * @return the entry, or null if no configuration meets the deadline.
+     */
+    public Entry getCheapest( float deadline ){
+        for( Entry e : mEntries.values() ){
+            if( e.mMakespan <= deadline ){
+                return e;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Writes the frontier to a file as tab separated values. The file starts
+     * with a comment line, followed by a line with the ids of the tasks. Each
+     * following line is a configuration, with its cost, its makespan and
+     * the comma separated instance types of the tasks in the same order as
+     * the ids.
+     * <pre>
+     *   #cost  makespan  types
+     *   #ids   ID000001,ID000002,...
+     *   0.36   5230.0    m1small,m1large,...
+     * </pre>
+     *
+     * @param problem  the problem whose configurations are archived.
+     * @param file     the file to write to.
+     *
+     * @throws IOException in case of error while writing.
+     */
+    public void write( DecoProblem problem, File file ) throws IOException{
+        PrintWriter pw = new PrintWriter( new FileWriter( file ) );
+        try{
+            pw.println( "#cost\tmakespan\ttypes" );
+            StringBuffer sb = new StringBuffer();
+            sb.append( "#ids\t" );
+            for( int i = 0; i < problem.size(); i++ ){
+                sb.append( ( i == 0 ) ? "" : "," ).append( problem.getID( i ) );
+            }
+            pw.println( sb );
+            for( Entry e : mEntries.values() ){
+                pw.println( e );
+            }
+            if( pw.checkError() ){
+                throw new IOException( "Unable to write the frontier to " + file );
+            }
+        }
+        finally{
+            pw.close();
+        }
+    }
+
+    /**
+     * A configuration in the archive.
+     */
+    public static class Entry {
+
+        /**
+         * The cost in dollars.
+         */
+        private final float mCost;
+
+        /**
+         * The makespan in seconds.
+         */
+        private final float mMakespan;
+
+        /**
+         * The instance type ordinal for each task.
+         */
+        private final byte[] mConfiguration;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param cost           the cost in dollars.
+         * @param makespan       the makespan in seconds.
+         * @param configuration  the instance type ordinal for each task.
+         */
+        public Entry( float cost, float makespan, byte[] configuration ){
+            mCost          = cost;
+            mMakespan      = makespan;
+            mConfiguration = configuration;
+        }
+
+        /**
+         * Returns the cost of the configuration.
+         *
+         * @return the cost in dollars
+         */
+        public float getCost(){
+            return mCost;
+        }
+
+        /**
+         * Returns the makespan of the configuration.
+         *
+         * @return the makespan in seconds
+         */
+        public float getMakespan(){
+            return mMakespan;
+        }
+
+        /**
+         * Returns the configuration. The array should not be modified.
+         *
+         * @return the instance type ordinal for each task
+         */
+        public byte[] getConfiguration(){
+            return mConfiguration;
+        }
+
+        /**
+         * Returns the entry as a line of the frontier file.
+         *
+         * @return String
+         */
+        public String toString(){
+            StringBuffer sb = new StringBuffer();
+            sb.append( mCost ).append( '\t' ).append( mMakespan ).append( '\t' );
+            for( int i = 0; i < mConfiguration.length; i++ ){
+                sb.append( ( i == 0 ) ? "" : "," ).append( DecoProblem.TYPES[ mConfiguration[ i ] ] );
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import java.util.Arrays;
+
+/**
+ * Reads and writes the cloud performance samples in a compact binary format,
+ * that can be memory mapped by the Deco planner. This avoids parsing the
+ * csv files of the native planner on every run, and lets concurrent planners
+ * on the submit host share one page cached copy of the samples.
+ *
+ * The format is a 32 byte header followed by the columns of the metrics in
+ * the order of <code>PerformanceSamples.METRICS</code>. All values are little
+ * endian.
+ * <pre>
+ *   offset  0  8 bytes  the magic DECOPERF
+ *   offset  8  int      the format version
+ *   offset 12  int      the number of instance types
+ *   offset 16  int      the number of samples per instance type
+ *   offset 20  int      the number of metrics
+ *   offset 24  8 bytes  reserved
+ *   offset 32  float[]  metrics * types * samples values. The samples of
+ *                       an instance type are contiguous.
+ * </pre>
+ *
+ * The class can also be invoked from the command line to convert the csv
+ * files to the binary format
+ * <pre>
+ *   java edu.isi.pegasus.planner.selector.site.deco.PerformanceSampleFile
+ *        &lt;directory with csv files&gt; &lt;number of types&gt; &lt;output file&gt;
+ * </pre>
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class PerformanceSampleFile {
+
+    /**
+     * The magic bytes at the start of the file.
+     */
+    public static final byte[] MAGIC = { 'D', 'E', 'C', 'O', 'P', 'E', 'R', 'F' };
+
+    /**
+     * The version of the format.
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The size of the header in bytes.
+     */
+    public static final int HEADER_SIZE = 32;
+
+    /**
+     * The suffix of the csv files.
+     */
+    public static final String CSV_SUFFIX = ".csv";
+
+    /**
+     * Memory maps a binary performance sample file. The returned samples are
+     * views of the mapping, and nothing is copied on to the heap.
+     *
+     * @param file  the file to be mapped.
+     *
+     * @return the performance samples
+     *
+     * @throws IOException in case of error while mapping the file or if the
+     *         file is not in the expected format.
+     */
+    public static PerformanceSamples map( File file ) throws IOException{
+        RandomAccessFile raf = new RandomAccessFile( file, "r" );
+        try{
+            FileChannel channel = raf.getChannel();
+            MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_ONLY, 0, channel.size() );
+            buffer.order( ByteOrder.LITTLE_ENDIAN );
+
+            //validate the header
+            byte[] magic = new byte[ MAGIC.length ];
+            if( buffer.limit() < HEADER_SIZE ){
+                throw new IOException( "File too small to be a performance sample file " + file );
+            }
+            buffer.get( magic );
+            if( !Arrays.equals( magic, MAGIC ) ){
+                throw new IOException( "Not a performance sample file " + file );
+            }
+            int version = buffer.getInt( 8 );
+            if( version != VERSION ){
+                throw new IOException( "Unsupported version " + version + " of performance sample file " + file );
+            }
+            int types   = buffer.getInt( 12 );
+            int samples = buffer.getInt( 16 );
+            int metrics = buffer.getInt( 20 );
+            long expected = HEADER_SIZE + 4L * metrics * types * samples;
+            if( metrics != PerformanceSamples.METRICS.length || buffer.limit() != expected ){
+                throw new IOException( "Corrupt performance sample file " + file + ". Expected " + expected +
+                                       " bytes for " + metrics + " metrics, got " + buffer.limit() );
+            }
+
+            //each column is a float view into the mapping
+            FloatBuffer[] columns = new FloatBuffer[ metrics ];
+            int columnSize = types * samples;
+            for( int i = 0; i < metrics; i++ ){
+                buffer.position( HEADER_SIZE + 4 * i * columnSize );
+                ByteBuffer slice = buffer.slice().order( ByteOrder.LITTLE_ENDIAN );
+                slice.limit( 4 * columnSize );
+                columns[ i ] = slice.asFloatBuffer();
+            }
+            return new PerformanceSamples( types, samples, columns );
+        }
+        finally{
+            //the mapping stays valid after the channel is closed
+            raf.close();
+        }
+    }
+
+    /**
+     * Writes performance samples in the binary format.
+     *
+     * @param samples  the performance samples.
+     * @param file     the file to write to.
+     *
+     * @throws IOException in case of error while writing.
+     */
+    public static void write( PerformanceSamples samples, File file ) throws IOException{
+        int types   = samples.getTypeCount();
+        int count   = samples.getSampleCount();
+        int metrics = PerformanceSamples.METRICS.length;
+
+        RandomAccessFile raf = new RandomAccessFile( file, "rw" );
+        try{
+            FileChannel channel = raf.getChannel();
+            long size = HEADER_SIZE + 4L * metrics * types * count;
+            raf.setLength( size );
+            MappedByteBuffer buffer = channel.map( FileChannel.MapMode.READ_WRITE, 0, size );
+            buffer.order( ByteOrder.LITTLE_ENDIAN );
+            buffer.put( MAGIC );
+            buffer.putInt( VERSION );
+            buffer.putInt( types );
+            buffer.putInt( count );
+            buffer.putInt( metrics );
+            buffer.position( HEADER_SIZE );
+
+            float[] column = new float[ count ];
+            for( int metric = 0; metric < metrics; metric++ ){
+                for( int type = 0; type < types; type++ ){
+                    samples.get( metric, type, column );
+                    for( float value : column ){
+                        buffer.putFloat( value );
+                    }
+                }
+            }
+            buffer.force();
+        }
+        finally{
+            raf.close();
+        }
+    }
+
+    /**
+     * Reads the performance samples from the csv files of the native planner
+     * i.e. randio.csv, seqio.csv, netup.csv and netdown.csv in a directory.
+     * Each file has one value per line, with the samples of an instance type
+     * contiguous.
+     *
+     * @param directory  the directory containing the csv files.
+     * @param types      the number of instance types in the files.
+     *
+     * @return the performance samples
+     *
+     * @throws IOException in case of error while reading the files.
+     */
+    public static PerformanceSamples readCSV( File directory, int types ) throws IOException{
+        float[][] columns = new float[ PerformanceSamples.METRICS.length ][];
+        int samples = -1;
+        for( int i = 0; i < columns.length; i++ ){
+            File f = new File( directory, PerformanceSamples.METRICS[ i ] + CSV_SUFFIX );
+            columns[ i ] = readColumn( f );
+            if( columns[ i ].length % types != 0 ){
+                throw new IOException( "Number of values " + columns[ i ].length + " in " + f +
+                                       " is not a multiple of the number of types " + types );
+            }
+            int count = columns[ i ].length / types;
+            if( samples != -1 && count != samples ){
+                throw new IOException( "Number of samples " + count + " in " + f + " does not match " + samples );
+            }
+            samples = count;
+        }
+        return PerformanceSamples.wrap( types, samples, columns );
+    }
+
+    /**
+     * Reads a csv file with one value per line.
+     *
+     * @param file  the file.
+     *
+     * @return the values
+     *
+     * @throws IOException in case of error while reading the file.
+     */
+    private static float[] readColumn( File file ) throws IOException{
+        float[] values = new float[ 1024 ];
+        int count = 0;
+        BufferedReader reader = new BufferedReader( new FileReader( file ) );
+        try{
+            String line;
+            while( ( line = reader.readLine() ) != null ){
+                line = line.trim();
+                if( line.length() == 0 ){
+                    continue;
+                }
+                if( count == values.length ){
+                    values = Arrays.copyOf( values, count * 2 );
+                }
+                values[ count++ ] = Float.parseFloat( line );
+            }
+        }
+        catch( NumberFormatException e ){
+            throw new IOException( "Invalid value in " + file + " " + e.getMessage() );
+        }
+        finally{
+            reader.close();
+        }
+        return Arrays.copyOf( values, count );
+    }
+
+    /**
+     * Converts the csv files of the native planner to the binary format.
+     *
+     * @param args  the directory with the csv files, the number of types and
+     *              the output file.
+     */
+    public static void main( String[] args ){
+        if( args.length != 3 ){
+            System.err.println( "Usage: PerformanceSampleFile <csv directory> <number of types> <output file>" );
+            System.exit( 1 );
+        }
+        try{
+            PerformanceSamples samples = readCSV( new File( args[ 0 ] ), Integer.parseInt( args[ 1 ] ) );
+            write( samples, new File( args[ 2 ] ) );
+            System.out.println( "Wrote " + samples.getTypeCount() + " types with " + samples.getSampleCount() +
+                                " samples each to " + args[ 2 ] );
+        }
+        catch( Exception e ){
+            System.err.println( "Unable to convert performance samples " + e.getMessage() );
+            System.exit( 1 );
+        }
+    }
+}
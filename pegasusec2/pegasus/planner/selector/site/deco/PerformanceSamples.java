@@ -0,0 +1,163 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.nio.FloatBuffer;
+
+/**
+ * The measured performance samples of the cloud instance types, as in the
+ * randio.csv, seqio.csv, netup.csv and netdown.csv files used by the native
+ * Deco planner. For each metric, the samples are stored as a single column
+ * laid out type major i.e. the sample s of type t is at t * samples + s.
+ *
+ * The columns are held as <code>FloatBuffer</code> so that they can either
+ * wrap heap arrays or views of off-heap buffers.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class PerformanceSamples {
+
+    /**
+     * The index of the random IO performance metric.
+     */
+    public static final int RANDOM_IO = 0;
+
+    /**
+     * The index of the sequential IO performance metric.
+     */
+    public static final int SEQUENTIAL_IO = 1;
+
+    /**
+     * The index of the network upload performance metric.
+     */
+    public static final int NETWORK_UP = 2;
+
+    /**
+     * The index of the network download performance metric.
+     */
+    public static final int NETWORK_DOWN = 3;
+
+    /**
+     * The names of the metrics, indexed by the metric index. These are also
+     * the basenames of the csv files of the native planner.
+     */
+    public static final String METRICS[] = { "randio", "seqio", "netup", "netdown" };
+
+    /**
+     * The number of instance types.
+     */
+    private final int mTypes;
+
+    /**
+     * The number of samples per instance type.
+     */
+    private final int mSamples;
+
+    /**
+     * The columns indexed by the metric index.
+     */
+    private final FloatBuffer[] mColumns;
+
+    /**
+     * Wraps heap arrays as performance samples.
+     *
+     * @param types    the number of instance types.
+     * @param samples  the number of samples per instance type.
+     * @param columns  the columns indexed by metric, each of size types * samples.
+     *
+     * @return the performance samples
+     */
+    public static PerformanceSamples wrap( int types, int samples, float[][] columns ){
+        FloatBuffer[] buffers = new FloatBuffer[ columns.length ];
+        for( int i = 0; i < columns.length; i++ ){
+            buffers[ i ] = FloatBuffer.wrap( columns[ i ] );
+        }
+        return new PerformanceSamples( types, samples, buffers );
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param types    the number of instance types.
+     * @param samples  the number of samples per instance type.
+     * @param columns  the columns indexed by metric, each of size types * samples.
+     */
+    public PerformanceSamples( int types, int samples, FloatBuffer[] columns ){
+        //sanity check
+        if( columns.length != METRICS.length ){
+            throw new IllegalArgumentException( "Expected " + METRICS.length + " metrics, got " + columns.length );
+        }
+        for( int i = 0; i < columns.length; i++ ){
+            if( columns[ i ].limit() < types * samples ){
+                throw new IllegalArgumentException( "Column " + METRICS[ i ] + " has " + columns[ i ].limit() +
+                                                    " samples. Expected " + types * samples );
+            }
+        }
+        mTypes   = types;
+        mSamples = samples;
+        mColumns = columns;
+    }
+
+    /**
+     * Returns the number of instance types.
+     *
+     * @return the number of types
+     */
+    public int getTypeCount(){
+        return mTypes;
+    }
+
+    /**
+     * Returns the number of samples per instance type.
+     *
+     * @return the number of samples
+     */
+    public int getSampleCount(){
+        return mSamples;
+    }
+
+    /**
+     * Returns a sample.
+     *
+     * @param metric  the metric index.
+     * @param type    the ordinal of the instance type.
+     * @param sample  the sample index.
+     *
+     * @return the sample value
+     */
+    public float get( int metric, int type, int sample ){
+        return mColumns[ metric ].get( type * mSamples + sample );
+    }
+
+    /**
+     * Copies the first samples of a metric for an instance type into an array.
+     *
+     * @param metric  the metric index.
+     * @param type    the ordinal of the instance type.
+     * @param into    the array to copy into. Its length determines the
+     *                number of samples copied.
+     *
+     * @return the array passed
+     */
+    public float[] get( int metric, int type, float[] into ){
+        FloatBuffer column = mColumns[ metric ].duplicate();
+        column.position( type * mSamples );
+        column.get( into, 0, Math.min( into.length, mSamples ) );
+        return into;
+    }
+}
@@ -0,0 +1,636 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.UnsupportedEncodingException;
+
+import java.nio.ByteBuffer;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * An on disk cache of the Deco schedules of workflows. A schedule is stored
+ * in a file named by its key, and is a list of the site, instance type, start
+ * and finish time of each job, in the canonical order of the jobs.
+ *
+ * The key is a digest computed by the caller from everything the schedule
+ * depends on i.e. the structure of the workflow, the runtime estimates from
+ * the transformation catalog, the sites with their instance types and node
+ * counts, the Deco properties and the contents of the files they name. A
+ * change to any of these gives a new key, so stale entries are never returned.
+ *
+ * The structure of a workflow is captured by a hash of each job that covers
+ * the jobs above and below it, and by the parents of each job in the
+ * canonical order of the jobs. The parents are stored with the schedule, and
+ * a schedule is only reused for a workflow with the same parents.
+ *
+ * A schedule is written to a temporary file that is then renamed, so that
+ * concurrent planners never read a partially written entry.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class PlanCache {
+
+    /**
+     * The suffix of the cache files.
+     */
+    public static final String SUFFIX = ".plan";
+
+    /**
+     * The digest algorithm used for the keys.
+     */
+    public static final String DIGEST_ALGORITHM = "SHA-1";
+
+    /**
+     * The first line of a cache file, that identifies the format.
+     */
+    public static final String HEADER = "# Deco schedule 2";
+
+    /**
+     * The offset basis of the hashes of the jobs.
+     */
+    public static final long FNV_OFFSET = 0xcbf29ce484222325L;
+
+    /**
+     * The prime of the hashes of the jobs.
+     */
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * The directory holding the cache files.
+     */
+    private File mDirectory;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param directory  the directory holding the cache files. It is created
+     *                   if it does not exist.
+     *
+     * @throws IOException if the directory cannot be created.
+     */
+    public PlanCache( File directory ) throws IOException{
+        if( !directory.isDirectory() && !directory.mkdirs() ){
+            throw new IOException( "Unable to create the plan cache directory " + directory );
+        }
+        mDirectory = directory;
+    }
+
+    /**
+     * Returns a new digest for computing keys.
+     *
+     * @return the digest
+     */
+    public static MessageDigest newDigest(){
+        try{
+            return MessageDigest.getInstance( DIGEST_ALGORITHM );
+        }
+        catch( NoSuchAlgorithmException e ){
+            throw new RuntimeException( "Digest " + DIGEST_ALGORITHM + " not supported by the JVM", e );
+        }
+    }
+
+    /**
+     * Adds a string to a digest, in UTF-8.
+     *
+     * @param digest  the digest.
+     * @param value   the string.
+     */
+    public static void update( MessageDigest digest, String value ){
+        try{
+            digest.update( value.getBytes( "UTF-8" ) );
+        }
+        catch( UnsupportedEncodingException e ){
+            throw new RuntimeException( "UTF-8 not supported by the JVM", e );
+        }
+    }
+
+    /**
+     * Adds the contents of a file to a digest. A file that does not exist
+     * adds nothing but a marker.
+     *
+     * @param digest  the digest.
+     * @param file    the file.
+     *
+     * @throws IOException in case of error while reading.
+     */
+    public static void update( MessageDigest digest, File file ) throws IOException{
+        if( !file.isFile() ){
+            update( digest, "missing " );
+            return;
+        }
+        update( digest, "file " + file.length() + " " );
+        InputStream in = new FileInputStream( file );
+        try{
+            byte[] buffer = new byte[ 1 << 16 ];
+            int count;
+            while( ( count = in.read( buffer ) ) > 0 ){
+                digest.update( buffer, 0, count );
+            }
+        }
+        finally{
+            in.close();
+        }
+    }
+
+    /**
+     * Computes a structural hash of each task of a workflow, that is the same
+     * for tasks in workflows of the same shape irrespective of the job ids.
+     * The hash of a task folds its own hash with the hashes of its parents,
+     * computed from the roots down, and with the hashes of its children,
+     * computed from the leaves up. Workflows that differ only below or only
+     * above some task thus get different hashes.
+     *
+     * @param structure  the index view of the workflow.
+     * @param own        the hash of each task on its own, indexed by the task
+     *                   index.
+     *
+     * @return the hashes indexed by the task index.
+     */
+    public static long[] fingerprint( DecoProblem structure, long[] own ){
+        int n = structure.size();
+        long[] up   = new long[ n ];
+        long[] down = new long[ n ];
+
+        //the task indices are in topological order
+        for( int i = 0; i < n; i++ ){
+            up[ i ] = fold( own[ i ], up, structure.getParents( i ) );
+        }
+        for( int i = n - 1; i >= 0; i-- ){
+            down[ i ] = fold( own[ i ], down, structure.getChildren( i ) );
+        }
+
+        long[] result = new long[ n ];
+        for( int i = 0; i < n; i++ ){
+            result[ i ] = hash( hash( FNV_OFFSET, up[ i ] ), down[ i ] );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the canonical order of the tasks, by ascending hash and then
+     * job id.
+     *
+     * @param structure  the index view of the workflow.
+     * @param hashes     the hashes of the tasks.
+     *
+     * @return the task indices in canonical order
+     */
+    public static int[] getCanonicalOrder( final DecoProblem structure, final long[] hashes ){
+        Integer[] order = new Integer[ hashes.length ];
+        for( int i = 0; i < order.length; i++ ){
+            order[ i ] = i;
+        }
+        Arrays.sort( order, new Comparator<Integer>(){
+            public int compare( Integer i1, Integer i2 ){
+                int result = Long.compare( hashes[ i1 ], hashes[ i2 ] );
+                return ( result == 0 ) ? structure.getID( i1 ).compareTo( structure.getID( i2 ) ) : result;
+            }
+        });
+        int[] result = new int[ order.length ];
+        for( int i = 0; i < order.length; i++ ){
+            result[ i ] = order[ i ];
+        }
+        return result;
+    }
+
+    /**
+     * Returns the parents of each task in the canonical order. The parents
+     * are given by their sorted positions in the canonical order.
+     *
+     * @param structure  the index view of the workflow.
+     * @param order      the canonical order of the tasks.
+     *
+     * @return the parents of the task at each canonical position
+     */
+    public static int[][] getCanonicalParents( DecoProblem structure, int[] order ){
+        int[] position = new int[ order.length ];
+        for( int k = 0; k < order.length; k++ ){
+            position[ order[ k ] ] = k;
+        }
+        int[][] result = new int[ order.length ][];
+        for( int k = 0; k < order.length; k++ ){
+            int[] parents = structure.getParents( order[ k ] );
+            result[ k ] = new int[ parents.length ];
+            for( int j = 0; j < parents.length; j++ ){
+                result[ k ][ j ] = position[ parents[ j ] ];
+            }
+            Arrays.sort( result[ k ] );
+        }
+        return result;
+    }
+
+    /**
+     * Returns a new digest of the structure of a workflow, for the caller to
+     * add the rest of the key to.
+     *
+     * @param hashes   the hashes of the tasks.
+     * @param order    the canonical order of the tasks.
+     * @param parents  the parents of the task at each canonical position.
+     *
+     * @return the digest
+     */
+    public static MessageDigest digestStructure( long[] hashes, int[] order, int[][] parents ){
+        MessageDigest digest = newDigest();
+        ByteBuffer buffer = ByteBuffer.allocate( 8 * hashes.length );
+        for( int i : order ){
+            buffer.putLong( hashes[ i ] );
+        }
+        digest.update( buffer.array() );
+        for( int[] p : parents ){
+            buffer = ByteBuffer.allocate( 4 * ( p.length + 1 ) );
+            buffer.putInt( p.length );
+            for( int j : p ){
+                buffer.putInt( j );
+            }
+            digest.update( buffer.array() );
+        }
+        return digest;
+    }
+
+    /**
+     * Folds a long into a FNV-1a style 64 bit hash.
+     *
+     * @param h      the hash so far.
+     * @param value  the value.
+     *
+     * @return the hash
+     */
+    public static long hash( long h, long value ){
+        for( int i = 0; i < 8; i++ ){
+            h ^= ( value >>> ( 8 * i ) ) & 0xFF;
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Folds a string into a FNV-1a style 64 bit hash.
+     *
+     * @param h      the hash so far.
+     * @param value  the string.
+     *
+     * @return the hash
+     */
+    public static long hash( long h, String value ){
+        for( int i = 0; i < value.length(); i++ ){
+            h ^= value.charAt( i );
+            h *= FNV_PRIME;
+        }
+        return hash( h, value.length() );
+    }
+
+    /**
+     * Folds the hashes of a set of tasks into a hash, in sorted order so that
+     * the result does not depend on the order of the tasks.
+     *
+     * @param h       the hash so far.
+     * @param hashes  the hashes indexed by the task index.
+     * @param tasks   the task indices.
+     *
+     * @return the hash
+     */
+    private static long fold( long h, long[] hashes, int[] tasks ){
+        long[] values = new long[ tasks.length ];
+        for( int j = 0; j < tasks.length; j++ ){
+            values[ j ] = hashes[ tasks[ j ] ];
+        }
+        Arrays.sort( values );
+        h = hash( h, values.length );
+        for( long v : values ){
+            h = hash( h, v );
+        }
+        return h;
+    }
+
+    /**
+     * Converts a digest to a key.
+     *
+     * @param digest  the digest bytes.
+     *
+     * @return the key as a hexadecimal string
+     */
+    public static String toKey( byte[] digest ){
+        StringBuffer sb = new StringBuffer( digest.length * 2 );
+        for( byte b : digest ){
+            sb.append( Character.forDigit( ( b >> 4 ) & 0xF, 16 ) ).append( Character.forDigit( b & 0xF, 16 ) );
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Returns the schedule stored for a key.
+     *
+     * @param key  the key.
+     *
+     * @return the schedule, or null if there is no valid entry for the key.
+     */
+    public Plan get( String key ){
+        File f = new File( mDirectory, key + SUFFIX );
+        if( !f.exists() ){
+            return null;
+        }
+        try{
+            return Plan.read( f );
+        }
+        catch( Exception e ){
+            //a corrupt entry is treated as a miss, and is overwritten later
+            return null;
+        }
+    }
+
+    /**
+     * Stores the schedule for a key.
+     *
+     * @param key   the key.
+     * @param plan  the schedule.
+     *
+     * @throws IOException in case of error while writing.
+     */
+    public void put( String key, Plan plan ) throws IOException{
+        File f = new File( mDirectory, key + SUFFIX );
+        File temp = File.createTempFile( key, ".tmp", mDirectory );
+        try{
+            plan.write( temp );
+            if( !temp.renameTo( f ) ){
+                //rename does not replace an existing file on all platforms
+                f.delete();
+                if( !temp.renameTo( f ) ){
+                    throw new IOException( "Unable to rename " + temp + " to " + f );
+                }
+            }
+        }
+        finally{
+            temp.delete();
+        }
+    }
+
+    /**
+     * A cached schedule. The jobs are in the canonical order of the workflow,
+     * each with its parents given by their canonical positions.
+     */
+    public static class Plan {
+
+        /**
+         * The makespan of the schedule.
+         */
+        private long mMakespan;
+
+        /**
+         * The cost of the instance types.
+         */
+        private float mCost;
+
+        /**
+         * The site of each job.
+         */
+        private List<String> mSites;
+
+        /**
+         * The instance type ordinal of each job.
+         */
+        private List<Byte> mTypes;
+
+        /**
+         * The start time of each job.
+         */
+        private List<Long> mStarts;
+
+        /**
+         * The finish time of each job.
+         */
+        private List<Long> mFinishes;
+
+        /**
+         * The canonical positions of the parents of each job.
+         */
+        private List<int[]> mParents;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param makespan  the makespan of the schedule.
+         * @param cost      the cost of the instance types.
+         */
+        public Plan( long makespan, float cost ){
+            mMakespan = makespan;
+            mCost     = cost;
+            mSites    = new ArrayList<String>();
+            mTypes    = new ArrayList<Byte>();
+            mStarts   = new ArrayList<Long>();
+            mFinishes = new ArrayList<Long>();
+            mParents  = new ArrayList<int[]>();
+        }
+
+        /**
+         * Appends a job to the schedule.
+         *
+         * @param site     the site of the job.
+         * @param type     the instance type ordinal of the job, or -1 if the
+         *                 job has no instance type.
+         * @param start    the start time of the job.
+         * @param finish   the finish time of the job.
+         * @param parents  the sorted canonical positions of the parents.
+         */
+        public void add( String site, int type, long start, long finish, int[] parents ){
+            mSites.add( site );
+            mTypes.add( (byte)type );
+            mStarts.add( start );
+            mFinishes.add( finish );
+            mParents.add( parents );
+        }
+
+        /**
+         * Returns whether the schedule is for a workflow with the given
+         * parents of each job.
+         *
+         * @param parents  the sorted canonical positions of the parents of
+         *                 each job.
+         *
+         * @return boolean
+         */
+        public boolean matches( int[][] parents ){
+            if( parents.length != size() ){
+                return false;
+            }
+            for( int k = 0; k < parents.length; k++ ){
+                if( !Arrays.equals( parents[ k ], mParents.get( k ) ) ){
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Returns the number of jobs.
+         *
+         * @return the number of jobs
+         */
+        public int size(){
+            return mSites.size();
+        }
+
+        /**
+         * Returns the makespan of the schedule.
+         *
+         * @return the makespan
+         */
+        public long getMakespan(){
+            return mMakespan;
+        }
+
+        /**
+         * Returns the cost of the instance types.
+         *
+         * @return the cost
+         */
+        public float getCost(){
+            return mCost;
+        }
+
+        /**
+         * Returns the site of a job.
+         *
+         * @param i  the canonical index of the job.
+         *
+         * @return the site
+         */
+        public String getSite( int i ){
+            return mSites.get( i );
+        }
+
+        /**
+         * Returns the instance type ordinal of a job.
+         *
+         * @param i  the canonical index of the job.
+         *
+         * @return the type, or -1 if the job has no instance type
+         */
+        public int getType( int i ){
+            return mTypes.get( i );
+        }
+
+        /**
+         * Returns the start time of a job.
+         *
+         * @param i  the canonical index of the job.
+         *
+         * @return the start time
+         */
+        public long getStart( int i ){
+            return mStarts.get( i );
+        }
+
+        /**
+         * Returns the finish time of a job.
+         *
+         * @param i  the canonical index of the job.
+         *
+         * @return the finish time
+         */
+        public long getFinish( int i ){
+            return mFinishes.get( i );
+        }
+
+        /**
+         * Writes the schedule to a file.
+         *
+         * @param f  the file.
+         *
+         * @throws IOException in case of error while writing.
+         */
+        protected void write( File f ) throws IOException{
+            PrintWriter pw = new PrintWriter( new FileWriter( f ) );
+            try{
+                pw.println( HEADER );
+                pw.println( mMakespan + "\t" + mCost + "\t" + size() );
+                for( int i = 0; i < size(); i++ ){
+                    StringBuffer sb = new StringBuffer();
+                    sb.append( getSite( i ) ).append( '\t' ).append( getType( i ) ).append( '\t' ).
+                       append( getStart( i ) ).append( '\t' ).append( getFinish( i ) ).append( '\t' );
+                    int[] parents = mParents.get( i );
+                    for( int j = 0; j < parents.length; j++ ){
+                        sb.append( ( j == 0 ) ? "" : "," ).append( parents[ j ] );
+                    }
+                    pw.println( sb.toString() );
+                }
+                if( pw.checkError() ){
+                    throw new IOException( "Unable to write the schedule to " + f );
+                }
+            }
+            finally{
+                pw.close();
+            }
+        }
+
+        /**
+         * Reads a schedule from a file.
+         *
+         * @param f  the file.
+         *
+         * @return the schedule
+         *
+         * @throws IOException in case of error while reading, or if the file
+         *         is truncated or in another format.
+         */
+        protected static Plan read( File f ) throws IOException{
+            BufferedReader reader = new BufferedReader( new FileReader( f ) );
+            try{
+                if( !HEADER.equals( reader.readLine() ) ){
+                    throw new IOException( "Unknown schedule format in " + f );
+                }
+                String[] header = reader.readLine().split( "\t" );
+                Plan plan = new Plan( Long.parseLong( header[ 0 ] ), Float.parseFloat( header[ 1 ] ) );
+                int n = Integer.parseInt( header[ 2 ] );
+                for( int i = 0; i < n; i++ ){
+                    String line = reader.readLine();
+                    if( line == null ){
+                        throw new IOException( "Truncated schedule in " + f );
+                    }
+                    String[] fields = line.split( "\t", -1 );
+                    String[] values = ( fields[ 4 ].length() == 0 ) ? new String[ 0 ] : fields[ 4 ].split( "," );
+                    int[] parents = new int[ values.length ];
+                    for( int j = 0; j < values.length; j++ ){
+                        parents[ j ] = Integer.parseInt( values[ j ] );
+                    }
+                    plan.add( fields[ 0 ], Integer.parseInt( fields[ 1 ] ),
+                              Long.parseLong( fields[ 2 ] ), Long.parseLong( fields[ 3 ] ), parents );
+                }
+                return plan;
+            }
+            finally{
+                reader.close();
+            }
+        }
+    }
+}
@@ -0,0 +1,472 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * A discrete event simulator that replays a planned workflow on cloud sites.
+ * It is the Java counterpart of the <code>Autoscaling</code> simulator used by
+ * <code>SearchPrune::Simulate()</code> in the native Deco planner.
+ *
+ * Each task runs on the site it was scheduled to, and each site has a fixed
+ * number of nodes. A task starts as soon as all its parents have finished
+ * and a node of its site is free. Ready tasks wait at their site in the order
+ * in which they became ready. In every run, the runtime of each task is drawn
+ * from its runtime distribution on the instance type of its site.
+ *
+ * A node is billed by the hour, EC2 style, from the start of the first task
+ * it runs to the end of the last, with a partial hour billed as a full hour.
+ *
+ * The pending task completions are held in a binary heap of primitive times
+ * and task indices. The runs are spread over multiple threads, and each run
+ * has its own random seed, so the results do not depend on the number of
+ * threads.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class PlanSimulator {
+
+    /**
+     * The number of seconds in a billing hour.
+     */
+    public static final double SECONDS_PER_HOUR = 3600;
+
+    /**
+     * The default number of Monte Carlo runs.
+     */
+    public static final int DEFAULT_RUNS = 1000;
+
+    /**
+     * The problem whose plan is simulated.
+     */
+    private final DecoProblem mProblem;
+
+    /**
+     * The instance type ordinal of each task.
+     */
+    private final byte[] mTypes;
+
+    /**
+     * The site index of each task.
+     */
+    private final int[] mSites;
+
+    /**
+     * The number of nodes of each site.
+     */
+    private final int[] mNodes;
+
+    /**
+     * The index of the first node of each site, in the global node numbering.
+     */
+    private final int[] mFirstNode;
+
+    /**
+     * The hourly price of a node of each site.
+     */
+    private final float[] mPrices;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param problem  the problem, with runtime distributions if the runtimes
+     *                 are to be sampled.
+     * @param types    the instance type ordinal of each task.
+     * @param sites    the site index of each task.
+     * @param nodes    the number of nodes of each site.
+     * @param prices   the hourly price of a node of each site.
+     */
+    public PlanSimulator( DecoProblem problem, byte[] types, int[] sites, int[] nodes, float[] prices ){
+        int n = problem.size();
+        for( int i = 0; i < n; i++ ){
+            if( !problem.isAvailable( i, types[ i ] ) ){
+                throw new IllegalArgumentException( "Task " + problem.getID( i ) + " cannot run on " +
+                                                    DecoProblem.TYPES[ types[ i ] ] );
+            }
+            if( nodes[ sites[ i ] ] < 1 ){
+                throw new IllegalArgumentException( "No nodes at the site of task " + problem.getID( i ) );
+            }
+        }
+        mProblem   = problem;
+        mTypes     = types;
+        mSites     = sites;
+        mNodes     = nodes;
+        mPrices    = prices;
+        mFirstNode = new int[ nodes.length + 1 ];
+        for( int s = 0; s < nodes.length; s++ ){
+            mFirstNode[ s + 1 ] = mFirstNode[ s ] + nodes[ s ];
+        }
+    }
+
+    /**
+     * Simulates the plan a number of times.
+     *
+     * @param runs         the number of runs.
+     * @param seed         the seed for the random runtimes.
+     * @param parallelism  the number of threads to use.
+     *
+     * @return the result
+     */
+    public SimulationResult simulate( int runs, long seed, int parallelism ){
+        final double[] makespans = new double[ runs ];
+        final double[] costs     = new double[ runs ];
+        final long base = seed;
+        int threads = Math.max( 1, Math.min( parallelism, runs ) );
+        int chunk   = ( runs + threads - 1 ) / Math.max( 1, threads );
+
+        if( threads == 1 ){
+            new Replay().run( 0, runs, base, makespans, costs );
+            return new SimulationResult( makespans, costs );
+        }
+
+        ExecutorService pool = Executors.newFixedThreadPool( threads );
+        try{
+            List<Future<Object>> results = new ArrayList<Future<Object>>();
+            for( int start = 0; start < runs; start += chunk ){
+                final int from = start;
+                final int to   = Math.min( runs, start + chunk );
+                results.add( pool.submit( new Callable<Object>(){
+                    public Object call(){
+                        new Replay().run( from, to, base, makespans, costs );
+                        return null;
+                    }
+                }));
+            }
+            for( Future<Object> f : results ){
+                f.get();
+            }
+        }
+        catch( InterruptedException e ){
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( "Interrupted while simulating the plan", e );
+        }
+        catch( ExecutionException e ){
+            throw new RuntimeException( "Unable to simulate the plan", e.getCause() );
+        }
+        finally{
+            pool.shutdown();
+        }
+        return new SimulationResult( makespans, costs );
+    }
+
+    /**
+     * The state of one simulation run. An instance is reused for consecutive
+     * runs of a thread, so that the arrays are allocated once.
+     */
+    private class Replay {
+
+        /**
+         * The number of parents of each task that are yet to finish.
+         */
+        private final int[] mPending;
+
+        /**
+         * The next task in the ready queue of its site. -1 at the tail.
+         */
+        private final int[] mNext;
+
+        /**
+         * The first task in the ready queue of each site. -1 if empty.
+         */
+        private final int[] mHead;
+
+        /**
+         * The last task in the ready queue of each site.
+         */
+        private final int[] mTail;
+
+        /**
+         * The stack of free nodes of each site, in the global node numbering.
+         * The stack of a site occupies the slots of its nodes.
+         */
+        private final int[] mFree;
+
+        /**
+         * The number of free nodes of each site.
+         */
+        private final int[] mFreeCount;
+
+        /**
+         * The node each task runs on.
+         */
+        private final int[] mNodeOf;
+
+        /**
+         * The start of the first task on each node. Negative if unused.
+         */
+        private final double[] mFirstStart;
+
+        /**
+         * The end of the last task on each node.
+         */
+        private final double[] mLastEnd;
+
+        /**
+         * The completion times in the event heap.
+         */
+        private final double[] mHeapTime;
+
+        /**
+         * The tasks in the event heap.
+         */
+        private final int[] mHeapTask;
+
+        /**
+         * The number of events in the heap.
+         */
+        private int mHeapSize;
+
+        /**
+         * The default constructor.
+         */
+        public Replay(){
+            int n     = mProblem.size();
+            int sites = mNodes.length;
+            int nodes = mFirstNode[ sites ];
+            mPending    = new int[ n ];
+            mNext       = new int[ n ];
+            mHead       = new int[ sites ];
+            mTail       = new int[ sites ];
+            mFree       = new int[ nodes ];
+            mFreeCount  = new int[ sites ];
+            mNodeOf     = new int[ n ];
+            mFirstStart = new double[ nodes ];
+            mLastEnd    = new double[ nodes ];
+            mHeapTime   = new double[ n ];
+            mHeapTask   = new int[ n ];
+        }
+
+        /**
+         * Simulates a range of runs.
+         *
+         * @param from       the first run.
+         * @param to         the run after the last.
+         * @param seed       the base seed.
+         * @param makespans  the array to store the makespans into.
+         * @param costs      the array to store the costs into.
+         */
+        public void run( int from, int to, long seed, double[] makespans, double[] costs ){
+            RuntimeDistributions distributions = mProblem.getDistributions();
+            for( int run = from; run < to; run++ ){
+                Random random = new Random( seed + run * 0x9E3779B97F4A7C15L );
+                makespans[ run ] = replay( random, distributions );
+                costs[ run ]     = bill();
+            }
+        }
+
+        /**
+         * Replays the workflow once.
+         *
+         * @param random         the source of randomness.
+         * @param distributions  the runtime distributions, or null to use the
+         *                       runtimes of the problem.
+         *
+         * @return the makespan
+         */
+        private double replay( Random random, RuntimeDistributions distributions ){
+            int n = mProblem.size();
+            Arrays.fill( mHead, -1 );
+            Arrays.fill( mFirstStart, -1 );
+            Arrays.fill( mLastEnd, 0 );
+            for( int s = 0; s < mNodes.length; s++ ){
+                mFreeCount[ s ] = mNodes[ s ];
+                for( int k = 0; k < mNodes[ s ]; k++ ){
+                    mFree[ mFirstNode[ s ] + k ] = mFirstNode[ s ] + mNodes[ s ] - 1 - k;
+                }
+            }
+            mHeapSize = 0;
+
+            for( int i = 0; i < n; i++ ){
+                mPending[ i ] = mProblem.getParents( i ).length;
+            }
+            for( int i = 0; i < n; i++ ){
+                if( mPending[ i ] == 0 ){
+                    ready( i, 0, random, distributions );
+                }
+            }
+
+            double now = 0;
+            while( mHeapSize > 0 ){
+                now = mHeapTime[ 0 ];
+                int task = pop();
+
+                //free the node and start the next task waiting at the site
+                int site = mSites[ task ];
+                mFree[ mFirstNode[ site ] + mFreeCount[ site ]++ ] = mNodeOf[ task ];
+                int waiting = mHead[ site ];
+                if( waiting != -1 ){
+                    mHead[ site ] = mNext[ waiting ];
+                    start( waiting, now, random, distributions );
+                }
+
+                for( int child : mProblem.getChildren( task ) ){
+                    if( --mPending[ child ] == 0 ){
+                        ready( child, now, random, distributions );
+                    }
+                }
+            }
+            return now;
+        }
+
+        /**
+         * Starts a task that has become ready, or queues it at its site if
+         * there is no free node.
+         *
+         * @param task           the task index.
+         * @param now            the current time.
+         * @param random         the source of randomness.
+         * @param distributions  the runtime distributions.
+         */
+        private void ready( int task, double now, Random random, RuntimeDistributions distributions ){
+            int site = mSites[ task ];
+            if( mFreeCount[ site ] > 0 ){
+                start( task, now, random, distributions );
+                return;
+            }
+            mNext[ task ] = -1;
+            if( mHead[ site ] == -1 ){
+                mHead[ site ] = task;
+            }
+            else{
+                mNext[ mTail[ site ] ] = task;
+            }
+            mTail[ site ] = task;
+        }
+
+        /**
+         * Starts a task on a free node of its site.
+         *
+         * @param task           the task index.
+         * @param now            the current time.
+         * @param random         the source of randomness.
+         * @param distributions  the runtime distributions.
+         */
+        private void start( int task, double now, Random random, RuntimeDistributions distributions ){
+            int site = mSites[ task ];
+            int node = mFree[ mFirstNode[ site ] + --mFreeCount[ site ] ];
+            int type = mTypes[ task ];
+            double runtime = ( distributions == null ) ?
+                             mProblem.getRuntime( task, type ) :
+                             distributions.get( task, type, random.nextInt( distributions.getSampleCount() ) );
+            double end = now + runtime;
+
+            mNodeOf[ task ] = node;
+            if( mFirstStart[ node ] < 0 ){
+                mFirstStart[ node ] = now;
+            }
+            mLastEnd[ node ] = Math.max( mLastEnd[ node ], end );
+            push( end, task );
+        }
+
+        /**
+         * Returns the cost of the nodes used in the last replay.
+         *
+         * @return the cost in dollars
+         */
+        private double bill(){
+            double cost = 0;
+            for( int s = 0; s < mNodes.length; s++ ){
+                for( int node = mFirstNode[ s ]; node < mFirstNode[ s + 1 ]; node++ ){
+                    if( mFirstStart[ node ] >= 0 ){
+                        double hours = Math.max( 1, Math.ceil( ( mLastEnd[ node ] - mFirstStart[ node ] ) / SECONDS_PER_HOUR ) );
+                        cost += hours * mPrices[ s ];
+                    }
+                }
+            }
+            return cost;
+        }
+
+        /**
+         * Adds a completion event to the heap.
+         *
+         * @param time  the completion time.
+         * @param task  the task index.
+         */
+        private void push( double time, int task ){
+            int i = mHeapSize++;
+            while( i > 0 ){
+                int parent = ( i - 1 ) >>> 1;
+                if( !before( time, task, mHeapTime[ parent ], mHeapTask[ parent ] ) ){
+                    break;
+                }
+                mHeapTime[ i ] = mHeapTime[ parent ];
+                mHeapTask[ i ] = mHeapTask[ parent ];
+                i = parent;
+            }
+            mHeapTime[ i ] = time;
+            mHeapTask[ i ] = task;
+        }
+
+        /**
+         * Removes the earliest completion event from the heap.
+         *
+         * @return the task index of the event
+         */
+        private int pop(){
+            int result  = mHeapTask[ 0 ];
+            double time = mHeapTime[ --mHeapSize ];
+            int task    = mHeapTask[ mHeapSize ];
+            int i = 0;
+            while( true ){
+                int child = 2 * i + 1;
+                if( child >= mHeapSize ){
+                    break;
+                }
+                if( child + 1 < mHeapSize &&
+                    before( mHeapTime[ child + 1 ], mHeapTask[ child + 1 ], mHeapTime[ child ], mHeapTask[ child ] ) ){
+                    child++;
+                }
+                if( !before( mHeapTime[ child ], mHeapTask[ child ], time, task ) ){
+                    break;
+                }
+                mHeapTime[ i ] = mHeapTime[ child ];
+                mHeapTask[ i ] = mHeapTask[ child ];
+                i = child;
+            }
+            mHeapTime[ i ] = time;
+            mHeapTask[ i ] = task;
+            return result;
+        }
+
+        /**
+         * Returns whether an event comes before another. Events at the same
+         * time are ordered by task index.
+         *
+         * @param t1  the time of the first event.
+         * @param i1  the task of the first event.
+         * @param t2  the time of the second event.
+         * @param i2  the task of the second event.
+         *
+         * @return boolean
+         */
+        private boolean before( double t1, int i1, double t2, int i2 ){
+            return t1 < t2 || ( t1 == t2 && i1 < i2 );
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.util.Arrays;
+
+/**
+ * Evaluates whether a configuration meets the deadline with the probability
+ * of the problem, from the runtime distributions of the tasks. It is the Java
+ * counterpart of the probabilistic deadline check of the native planner.
+ *
+ * The finish time distribution of each task is computed in topological order
+ * as
+ * <pre>
+ *   finish( task ) = max over parents( finish( parent ) ) + runtime( task )
+ * </pre>
+ * with the histogram algebra of <code>Histogram</code>, and the configuration
+ * meets the deadline if the probability that the maximum finish time of the
+ * exit tasks is within the deadline is at least the problem probability.
+ * Each step costs O(m log m) for histograms of m points.
+ *
+ * The runtime histograms of the tasks are built once per instance type, on a
+ * grid whose base width divides the deadline into a fixed number of points.
+ *
+ * When the configurations differ only in the type of one task, the finish
+ * time distributions of the tasks that do not depend on the task are
+ * computed once, and only the task and its descendants are evaluated for
+ * each type.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class ProbabilisticEvaluator implements DeadlineEvaluator {
+
+    /**
+     * The problem being evaluated.
+     */
+    private final DecoProblem mProblem;
+
+    /**
+     * The maximum number of points in a histogram.
+     */
+    private final int mMaxPoints;
+
+    /**
+     * The base width of the grid.
+     */
+    private final double mWidth;
+
+    /**
+     * The runtime histograms indexed by task * types + type. null if the
+     * task cannot run on the type.
+     */
+    private final Histogram[] mRuntimes;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param problem        the problem with the deadline and probability set.
+     * @param distributions  the runtime distributions of the tasks of the problem.
+     * @param maxPoints      the maximum number of points in a histogram.
+     */
+    public ProbabilisticEvaluator( DecoProblem problem, RuntimeDistributions distributions, int maxPoints ){
+        mProblem   = problem;
+        mMaxPoints = maxPoints;
+        mWidth     = problem.getDeadline() / ( maxPoints / 2 );
+
+        int n = problem.size();
+        int types = DecoProblem.NUM_TYPES;
+        mRuntimes = new Histogram[ n * types ];
+        for( int task = 0; task < n; task++ ){
+            for( int type = 0; type < types; type++ ){
+                if( problem.isAvailable( task, type ) ){
+                    mRuntimes[ task * types + type ] = Histogram.fromSamples( distributions.getValues(),
+                                                                              distributions.offset( task, type ),
+                                                                              distributions.getSampleCount(),
+                                                                              mWidth,
+                                                                              maxPoints );
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns whether a configuration meets the deadline with the problem
+     * probability. The finish times are set to the quantiles of the finish
+     * time distributions at the problem probability.
+     *
+     * @param configuration  the instance type ordinal for each task.
+     * @param finish         array to be filled with the finish times.
+     *
+     * @return boolean
+     */
+    public boolean meetsDeadline( byte[] configuration, float[] finish ){
+        return getProbability( configuration, finish ) >= mProblem.getProbability();
+    }
+
+    /**
+     * Returns the probability that a configuration meets the deadline.
+     *
+     * @param configuration  the instance type ordinal for each task.
+     * @param finish         array to be filled with the finish times.
+     *
+     * @return the probability
+     */
+    public double getProbability( byte[] configuration, float[] finish ){
+        Histogram makespan = getMakespan( configuration, finish );
+        return ( makespan == null ) ? 1 : makespan.getCDF( mProblem.getDeadline() );
+    }
+
+    /**
+     * Returns the distribution of the makespan of a configuration.
+     *
+     * @param configuration  the instance type ordinal for each task.
+     * @param finish         array to be filled with the finish times.
+     *
+     * @return the histogram of the makespan, or null for an empty problem.
+     */
+    public Histogram getMakespan( byte[] configuration, float[] finish ){
+        int n = mProblem.size();
+        float probability = mProblem.getProbability();
+        Histogram[] finishes = new Histogram[ n ];
+        Histogram makespan = null;
+        for( int task = 0; task < n; task++ ){
+            finishes[ task ] = getFinish( finishes, task, configuration[ task ] );
+            finish[ task ]   = (float)finishes[ task ].getQuantile( probability );
+            if( mProblem.getChildren( task ).length == 0 ){
+                makespan = max( makespan, finishes[ task ] );
+            }
+        }
+        return makespan;
+    }
+
+    /**
+     * Returns the evaluation of the configurations that differ from a
+     * configuration only in the type of one task. The finish time
+     * distributions of the tasks that are not descendants of the task are
+     * computed once here.
+     *
+     * @param configuration  the instance type ordinal for each task.
+     * @param task           the index of the task whose type varies.
+     *
+     * @return the variation
+     */
+    public DeadlineEvaluator.Variation vary( byte[] configuration, int task ){
+        return new Variation( configuration, task );
+    }
+
+    /**
+     * Computes the finish time distribution of a task, from the finish time
+     * distributions of its parents.
+     *
+     * @param finishes  the finish time distributions of the tasks.
+     * @param task      the task index.
+     * @param type      the instance type ordinal of the task.
+     *
+     * @return the finish time distribution
+     */
+    private Histogram getFinish( Histogram[] finishes, int task, int type ){
+        Histogram start = null;
+        for( int parent : mProblem.getParents( task ) ){
+            start = max( start, finishes[ parent ] );
+        }
+        Histogram runtime = mRuntimes[ task * DecoProblem.NUM_TYPES + type ];
+        return ( start == null ) ? runtime : start.add( runtime, mMaxPoints );
+    }
+
+    /**
+     * Returns the distribution of the maximum of two distributions.
+     *
+     * @param h1  the first distribution, or null.
+     * @param h2  the second distribution.
+     *
+     * @return the maximum
+     */
+    private Histogram max( Histogram h1, Histogram h2 ){
+        return ( h1 == null ) ? h2 : h1.max( h2, mMaxPoints );
+    }
+
+    /**
+     * The configurations that differ from a configuration only in the type
+     * of one task.
+     */
+    private class Variation implements DeadlineEvaluator.Variation {
+
+        /**
+         * The configuration.
+         */
+        private final byte[] mConfiguration;
+
+        /**
+         * The index of the task whose type varies.
+         */
+        private final int mTask;
+
+        /**
+         * The indices of the task and its descendants, in ascending order.
+         */
+        private final int[] mCone;
+
+        /**
+         * The finish time distributions of the tasks. The entries of the tasks
+         * in the cone are overwritten for each type.
+         */
+        private final Histogram[] mFinishes;
+
+        /**
+         * The distribution of the maximum finish time of the exit tasks that
+         * are not in the cone. null if there are none.
+         */
+        private final Histogram mRest;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param configuration  the instance type ordinal for each task.
+         * @param task           the index of the task whose type varies.
+         */
+        private Variation( byte[] configuration, int task ){
+            int n = mProblem.size();
+            mConfiguration = configuration.clone();
+            mTask          = task;
+            mFinishes      = new Histogram[ n ];
+
+            //collect the cone of the task
+            boolean[] affected = new boolean[ n ];
+            int[] cone = new int[ n ];
+            int size = 0;
+            affected[ task ] = true;
+            cone[ size++ ]   = task;
+            for( int i = 0; i < size; i++ ){
+                for( int child : mProblem.getChildren( cone[ i ] ) ){
+                    if( !affected[ child ] ){
+                        affected[ child ] = true;
+                        cone[ size++ ]    = child;
+                    }
+                }
+            }
+            mCone = Arrays.copyOf( cone, size );
+            Arrays.sort( mCone );
+
+            //the tasks outside the cone do not depend on the task
+            Histogram rest = null;
+            for( int i = 0; i < n; i++ ){
+                if( affected[ i ] ){
+                    continue;
+                }
+                mFinishes[ i ] = getFinish( mFinishes, i, mConfiguration[ i ] );
+                if( mProblem.getChildren( i ).length == 0 ){
+                    rest = max( rest, mFinishes[ i ] );
+                }
+            }
+            mRest = rest;
+        }
+
+        /**
+         * Returns whether the configuration with the task set to a type meets
+         * the deadline. Only the tasks in the cone are evaluated.
+         *
+         * @param type  the instance type ordinal of the task.
+         *
+         * @return boolean
+         */
+        public boolean meetsDeadline( int type ){
+            Histogram makespan = mRest;
+            for( int i : mCone ){
+                mFinishes[ i ] = getFinish( mFinishes, i, ( i == mTask ) ? type : mConfiguration[ i ] );
+                if( mProblem.getChildren( i ).length == 0 ){
+                    makespan = max( makespan, mFinishes[ i ] );
+                }
+            }
+            double probability = ( makespan == null ) ? 1 : makespan.getCDF( mProblem.getDeadline() );
+            return probability >= mProblem.getProbability();
+        }
+    }
+}
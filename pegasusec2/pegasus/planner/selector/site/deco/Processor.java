@@ -17,31 +17,90 @@
 
 package edu.isi.pegasus.planner.selector.site.deco;
 
+import java.util.Map;
+import java.util.TreeMap;
+
 /**
  * A data class that is used to simulate a processor on a site.
  *
+ * The processor is busy till the end time of the last job scheduled on it.
+ * Before that, it records the idle gaps between the scheduled jobs in a
+ * <code>TreeMap</code> keyed by the start of the gap, so that a job can be
+ * inserted into a gap that is long enough for it. The lengths of the gaps are
+ * kept in a multiset, so that a processor without a long enough gap is
+ * skipped in O(1) time.
+ *
  * @author Karan Vahi
  * @version $Revision$
  */
 public class Processor {
 
     /**
-     * The start time of the current scheduled job.
+     * The id of the processor on its site.
      */
-    private long mStartTime;
+    private int mID;
 
     /**
-     * The end time of the current scheduled job.
+     * The end time of the last scheduled job.
      */
     private long mEndTime;
 
+    /**
+     * The idle gaps before the end time, with the end of each gap indexed by
+     * its start.
+     */
+    private TreeMap<Long,Long> mGaps;
+
+    /**
+     * The number of gaps of each length.
+     */
+    private TreeMap<Long,Integer> mGapLengths;
+
 
     /**
      * The default constructor.
      */
     public Processor() {
-        mStartTime = 0;
-        mEndTime   = 0;
+        this( 0 );
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param id  the id of the processor on its site.
+     */
+    public Processor( int id ) {
+        mID         = id;
+        mEndTime    = 0;
+        mGaps       = new TreeMap<Long,Long>();
+        mGapLengths = new TreeMap<Long,Integer>();
+    }
+
+    /**
+     * Returns the id of the processor on its site.
+     *
+     * @return the id
+     */
+    public int getID(){
+        return mID;
+    }
+
+    /**
+     * Returns the end time of the last job scheduled on the processor.
+     *
+     * @return the end time
+     */
+    public long getEndTime(){
+        return mEndTime;
+    }
+
+    /**
+     * Returns the length of the longest idle gap between the scheduled jobs.
+     *
+     * @return the length, or 0 if there are no gaps.
+     */
+    public long getLongestGap(){
+        return mGapLengths.isEmpty() ? 0 : mGapLengths.lastKey();
     }
 
     /**
@@ -56,15 +115,89 @@ public class Processor {
        return ( mEndTime > start )? mEndTime : start;
     }
 
+    /**
+     * Returns the earliest time at which a job of a given duration can start
+     * on the processor. It is insertion based scheduling policy i.e. the job
+     * is placed in the first idle gap that fits it, else after the last job.
+     *
+     * @param start     the time at which to start the search.
+     * @param duration  the duration of the job.
+     * @param bound     the search stops at gaps starting at or after this
+     *                  time, as a later start is of no interest.
+     *
+     * @return the start time, or bound if the job cannot start before it.
+     */
+    public long getAvailableTime( long start, long duration, long bound ){
+        if( duration <= getLongestGap() ){
+            Long key = mGaps.floorKey( start );
+            Map<Long,Long> gaps = ( key == null ) ? mGaps : mGaps.tailMap( key );
+            for( Map.Entry<Long,Long> gap : gaps.entrySet() ){
+                long begin = Math.max( gap.getKey(), start );
+                if( begin >= bound ){
+                    return bound;
+                }
+                if( gap.getValue() - begin >= duration ){
+                    return begin;
+                }
+            }
+        }
+        return Math.min( getAvailableTime( start ), bound );
+    }
 
     /**
-     * Schedules a job on to a processor.
+     * Schedules a job on to a processor. The job either starts at or after
+     * the end time of the last job, or lies within an idle gap.
      *
      * @param start    the start time of the job.
      * @param end      the end time for the job
      */
     public void scheduleJob( long start, long end ){
-        mStartTime = start;
-        mEndTime   = end;
+        if( start >= mEndTime ){
+            addGap( mEndTime, start );
+            mEndTime = end;
+            return;
+        }
+
+        //insert the job into the gap that contains it
+        Map.Entry<Long,Long> gap = mGaps.floorEntry( start );
+        if( gap == null || gap.getValue() < end ){
+            throw new RuntimeException( "Job from " + start + " till " + end +
+                                        " overlaps with the jobs on processor " + mID );
+        }
+        removeGap( gap.getKey(), gap.getValue() );
+        addGap( gap.getKey(), start );
+        addGap( end, gap.getValue() );
+    }
+
+    /**
+     * Adds an idle gap, if it is not empty.
+     *
+     * @param start  the start of the gap.
+     * @param end    the end of the gap.
+     */
+    private void addGap( long start, long end ){
+        if( end <= start ){
+            return;
+        }
+        mGaps.put( start, end );
+        Integer count = mGapLengths.get( end - start );
+        mGapLengths.put( end - start, ( count == null ) ? 1 : count + 1 );
+    }
+
+    /**
+     * Removes an idle gap.
+     *
+     * @param start  the start of the gap.
+     * @param end    the end of the gap.
+     */
+    private void removeGap( long start, long end ){
+        mGaps.remove( start );
+        int count = mGapLengths.get( end - start );
+        if( count == 1 ){
+            mGapLengths.remove( end - start );
+        }
+        else{
+            mGapLengths.put( end - start, count - 1 );
+        }
     }
 }
@@ -0,0 +1,551 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+import java.util.Arrays;
+
+/**
+ * A mergeable quantile sketch in the style of KLL. Values are added to a
+ * buffer at level 0. When a level fills up it is sorted, and every other value
+ * is promoted to the next level, where each value stands for twice as many
+ * inputs. The capacity of the levels shrinks geometrically from the top
+ * level down, so the memory is bounded by O(k log(n/k)) floats irrespective
+ * of the number of values n added.
+ *
+ * The sketch is built in a single pass over the values, sketches built from
+ * different tasks or planner runs can be merged, and a quantile query is a
+ * binary search over a sorted summary that is cached between updates.
+ *
+ * The values kept at compaction are picked by a coin flip. The coin is a
+ * pseudo random generator with a fixed seed, so that the sketch of a
+ * sequence of values is deterministic. Simply alternating the values kept
+ * per level lets the rank error grow with the number of values.
+ *
+ * The queries can be made concurrently from multiple threads. The sorted
+ * summary is built once, and published as a whole through a volatile field.
+ * Updates should not run concurrently with any other call.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class QuantileSketch {
+
+    /**
+     * The default value of the accuracy parameter k. The rank error is within
+     * about 1.5% for this k.
+     */
+    public static final int DEFAULT_K = 200;
+
+    /**
+     * The minimum capacity of a level.
+     */
+    private static final int MINIMUM_CAPACITY = 8;
+
+    /**
+     * The factor by which the capacity of a level shrinks, going down from
+     * the top level.
+     */
+    private static final double CAPACITY_DECAY = 2.0 / 3.0;
+
+    /**
+     * The accuracy parameter.
+     */
+    private final int mK;
+
+    /**
+     * The values at each level. A value at level h has a weight of 2^h.
+     */
+    private float[][] mLevels;
+
+    /**
+     * The number of values at each level.
+     */
+    private int[] mSizes;
+
+    /**
+     * The number of levels in use.
+     */
+    private int mNumLevels;
+
+    /**
+     * The seed of the coin flipped at each compaction.
+     */
+    private static final long COIN_SEED = 0x9E3779B97F4A7C15L;
+
+    /**
+     * The state of the coin flipped at each compaction.
+     */
+    private long mCoin;
+
+    /**
+     * The number of values added to the sketch.
+     */
+    private long mCount;
+
+    /**
+     * The minimum value added.
+     */
+    private float mMin;
+
+    /**
+     * The maximum value added.
+     */
+    private float mMax;
+
+    /**
+     * The sorted summary of the values. null if the summary is stale.
+     */
+    private volatile Summary mSummary;
+
+    /**
+     * The default constructor.
+     */
+    public QuantileSketch(){
+        this( DEFAULT_K );
+    }
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param k  the accuracy parameter.
+     */
+    public QuantileSketch( int k ){
+        if( k < MINIMUM_CAPACITY ){
+            throw new IllegalArgumentException( "k should be at least " + MINIMUM_CAPACITY + " " + k );
+        }
+        mK         = k;
+        mLevels    = new float[ 1 ][ k ];
+        mSizes     = new int[ 1 ];
+        mCoin      = COIN_SEED;
+        mNumLevels = 1;
+        mCount     = 0;
+        mMin       = Float.POSITIVE_INFINITY;
+        mMax       = Float.NEGATIVE_INFINITY;
+    }
+
+    /**
+     * Adds a value to the sketch.
+     *
+     * @param value  the value to be added.
+     */
+    public void add( float value ){
+        if( mSizes[ 0 ] == mLevels[ 0 ].length ){
+            compress();
+        }
+        mLevels[ 0 ][ mSizes[ 0 ]++ ] = value;
+        mCount++;
+        if( value < mMin ){
+            mMin = value;
+        }
+        if( value > mMax ){
+            mMax = value;
+        }
+        mSummary = null;
+    }
+
+    /**
+     * Adds a range of values from an array to the sketch.
+     *
+     * @param values  the array.
+     * @param offset  the offset of the first value.
+     * @param length  the number of values.
+     */
+    public void add( float[] values, int offset, int length ){
+        for( int i = offset; i < offset + length; i++ ){
+            add( values[ i ] );
+        }
+    }
+
+    /**
+     * Merges another sketch into this sketch. The other sketch is not modified.
+     *
+     * @param other  the sketch to be merged.
+     */
+    public void merge( QuantileSketch other ){
+        if( other.mCount == 0 ){
+            return;
+        }
+        while( mNumLevels < other.mNumLevels ){
+            addLevel();
+        }
+        for( int h = 0; h < other.mNumLevels; h++ ){
+            int size = mSizes[ h ] + other.mSizes[ h ];
+            if( size > mLevels[ h ].length ){
+                mLevels[ h ] = Arrays.copyOf( mLevels[ h ], size );
+            }
+            System.arraycopy( other.mLevels[ h ], 0, mLevels[ h ], mSizes[ h ], other.mSizes[ h ] );
+            mSizes[ h ] = size;
+        }
+        mCount += other.mCount;
+        mMin = Math.min( mMin, other.mMin );
+        mMax = Math.max( mMax, other.mMax );
+
+        //bring all the levels back within their capacities
+        for( int h = 0; h < mNumLevels; h++ ){
+            if( mSizes[ h ] > capacity( h ) ){
+                compact( h );
+            }
+        }
+        mSummary = null;
+    }
+
+    /**
+     * Returns the number of values added to the sketch.
+     *
+     * @return the count
+     */
+    public long getCount(){
+        return mCount;
+    }
+
+    /**
+     * Returns the minimum value added to the sketch.
+     *
+     * @return the minimum
+     */
+    public float getMin(){
+        return mMin;
+    }
+
+    /**
+     * Returns the maximum value added to the sketch.
+     *
+     * @return the maximum
+     */
+    public float getMax(){
+        return mMax;
+    }
+
+    /**
+     * Returns the approximate quantile of the values added.
+     *
+     * @param probability  the probability of the quantile, between 0 and 1.
+     *
+     * @return the quantile, or NaN if the sketch is empty.
+     */
+    public float getQuantile( float probability ){
+        if( mCount == 0 ){
+            return Float.NaN;
+        }
+        if( probability <= 0 ){
+            return mMin;
+        }
+        if( probability >= 1 ){
+            return mMax;
+        }
+        Summary summary = getSummary();
+
+        //the first value whose cumulative weight exceeds the rank
+        long rank = (long)( probability * mCount );
+        long[] weights = summary.mCumulativeWeights;
+        int low = 0, high = weights.length - 1;
+        while( low < high ){
+            int mid = ( low + high ) >>> 1;
+            if( weights[ mid ] > rank ){
+                high = mid;
+            }
+            else{
+                low = mid + 1;
+            }
+        }
+        return summary.mSortedValues[ low ];
+    }
+
+    /**
+     * Returns the approximate fraction of the values added that are less than
+     * or equal to a value.
+     *
+     * @param value  the value.
+     *
+     * @return the fraction between 0 and 1.
+     */
+    public float getRank( float value ){
+        if( mCount == 0 ){
+            return Float.NaN;
+        }
+        Summary summary = getSummary();
+        float[] values = summary.mSortedValues;
+        int low = 0, high = values.length;
+        while( low < high ){
+            int mid = ( low + high ) >>> 1;
+            if( values[ mid ] <= value ){
+                low = mid + 1;
+            }
+            else{
+                high = mid;
+            }
+        }
+        return ( low == 0 ) ? 0 : (float)summary.mCumulativeWeights[ low - 1 ] / mCount;
+    }
+
+    /**
+     * Writes the sketch out.
+     *
+     * @param out  the output to write to.
+     *
+     * @throws IOException in case of error while writing.
+     */
+    public void write( DataOutput out ) throws IOException{
+        out.writeInt( mK );
+        out.writeLong( mCount );
+        out.writeFloat( mMin );
+        out.writeFloat( mMax );
+        out.writeLong( mCoin );
+        out.writeInt( mNumLevels );
+        for( int h = 0; h < mNumLevels; h++ ){
+            out.writeInt( mSizes[ h ] );
+            for( int i = 0; i < mSizes[ h ]; i++ ){
+                out.writeFloat( mLevels[ h ][ i ] );
+            }
+        }
+    }
+
+    /**
+     * Reads a sketch written out by write().
+     *
+     * @param in  the input to read from.
+     *
+     * @return the sketch
+     *
+     * @throws IOException in case of error while reading.
+     */
+    public static QuantileSketch read( DataInput in ) throws IOException{
+        QuantileSketch sketch = new QuantileSketch( in.readInt() );
+        sketch.mCount = in.readLong();
+        sketch.mMin   = in.readFloat();
+        sketch.mMax   = in.readFloat();
+        sketch.mCoin  = in.readLong();
+        int levels    = in.readInt();
+        while( sketch.mNumLevels < levels ){
+            sketch.addLevel();
+        }
+        for( int h = 0; h < levels; h++ ){
+            int size = in.readInt();
+            if( size > sketch.mLevels[ h ].length ){
+                sketch.mLevels[ h ] = new float[ size ];
+            }
+            for( int i = 0; i < size; i++ ){
+                sketch.mLevels[ h ][ i ] = in.readFloat();
+            }
+            sketch.mSizes[ h ] = size;
+        }
+        return sketch;
+    }
+
+    /**
+     * Makes room at level 0 by compacting the lowest level that is at or
+     * over its capacity.
+     */
+    private void compress(){
+        for( int h = 0; h < mNumLevels; h++ ){
+            if( mSizes[ h ] >= capacity( h ) ){
+                compact( h );
+                return;
+            }
+        }
+        //no level is full, the level 0 buffer is just too small
+        mLevels[ 0 ] = Arrays.copyOf( mLevels[ 0 ], mLevels[ 0 ].length * 2 );
+    }
+
+    /**
+     * Compacts a level, by promoting every other sorted value to the level
+     * above. If the number of values is odd, the last value stays behind.
+     *
+     * @param h  the level to be compacted.
+     */
+    private void compact( int h ){
+        if( h + 1 == mNumLevels ){
+            addLevel();
+        }
+        float[] level = mLevels[ h ];
+        int size = mSizes[ h ];
+        Arrays.sort( level, 0, size );
+
+        int pairs = size / 2;
+        float leftover = level[ size - 1 ];
+        int start = flipCoin();
+
+        int above = mSizes[ h + 1 ];
+        if( above + pairs > mLevels[ h + 1 ].length ){
+            mLevels[ h + 1 ] = Arrays.copyOf( mLevels[ h + 1 ], above + pairs );
+        }
+        for( int i = 0; i < pairs; i++ ){
+            mLevels[ h + 1 ][ above + i ] = level[ 2 * i + start ];
+        }
+        mSizes[ h + 1 ] = above + pairs;
+
+        if( size % 2 == 1 ){
+            level[ 0 ] = leftover;
+            mSizes[ h ] = 1;
+        }
+        else{
+            mSizes[ h ] = 0;
+        }
+
+        if( mSizes[ h + 1 ] > capacity( h + 1 ) ){
+            compact( h + 1 );
+        }
+    }
+
+    /**
+     * Flips the coin that picks the values kept at compaction. The coin is
+     * a xorshift generator.
+     *
+     * @return 0 or 1
+     */
+    private int flipCoin(){
+        long x = mCoin;
+        x ^= x << 13;
+        x ^= x >>> 7;
+        x ^= x << 17;
+        mCoin = x;
+        return (int)( x >>> 63 );
+    }
+
+    /**
+     * Adds a level at the top.
+     */
+    private void addLevel(){
+        int h = mNumLevels;
+        if( h == mLevels.length ){
+            mLevels = Arrays.copyOf( mLevels, h * 2 );
+            mSizes  = Arrays.copyOf( mSizes, h * 2 );
+        }
+        mLevels[ h ] = new float[ MINIMUM_CAPACITY ];
+        mSizes[ h ]  = 0;
+        mNumLevels++;
+    }
+
+    /**
+     * Returns the capacity of a level. The top level has a capacity of k.
+     *
+     * @param h  the level.
+     *
+     * @return the capacity
+     */
+    private int capacity( int h ){
+        int depth = mNumLevels - h - 1;
+        return Math.max( MINIMUM_CAPACITY, (int)Math.ceil( mK * Math.pow( CAPACITY_DECAY, depth ) ) );
+    }
+
+    /**
+     * Returns the sorted summary of the values, building it if it is stale.
+     *
+     * @return the summary
+     */
+    private Summary getSummary(){
+        Summary summary = mSummary;
+        if( summary == null ){
+            synchronized( this ){
+                summary = mSummary;
+                if( summary == null ){
+                    summary  = summarize();
+                    mSummary = summary;
+                }
+            }
+        }
+        return summary;
+    }
+
+    /**
+     * Builds the sorted summary of the values with their cumulative weights.
+     *
+     * @return the summary
+     */
+    private Summary summarize(){
+        int total = 0;
+        for( int h = 0; h < mNumLevels; h++ ){
+            total += mSizes[ h ];
+        }
+
+        //sort the values together with their weights
+        long[] packed = new long[ total ];
+        int index = 0;
+        for( int h = 0; h < mNumLevels; h++ ){
+            for( int i = 0; i < mSizes[ h ]; i++ ){
+                packed[ index++ ] = ( (long)sortableBits( mLevels[ h ][ i ] ) << 32 ) | h;
+            }
+        }
+        Arrays.sort( packed );
+
+        float[] values = new float[ total ];
+        long[] weights = new long[ total ];
+        long cumulative = 0;
+        for( int i = 0; i < total; i++ ){
+            values[ i ] = fromSortableBits( (int)( packed[ i ] >> 32 ) );
+            cumulative += 1L << (int)( packed[ i ] & 0xFFFFFFFFL );
+            weights[ i ] = cumulative;
+        }
+        return new Summary( values, weights );
+    }
+
+    /**
+     * Returns the bits of a float such that signed integer order matches the
+     * float order.
+     *
+     * @param value  the value.
+     *
+     * @return the bits
+     */
+    private static int sortableBits( float value ){
+        int bits = Float.floatToIntBits( value );
+        return ( bits < 0 ) ? bits ^ 0x7FFFFFFF : bits;
+    }
+
+    /**
+     * Inverse of sortableBits().
+     *
+     * @param bits  the sortable bits.
+     *
+     * @return the value
+     */
+    private static float fromSortableBits( int bits ){
+        return Float.intBitsToFloat( ( bits < 0 ) ? bits ^ 0x7FFFFFFF : bits );
+    }
+
+    /**
+     * The sorted values of a sketch with their cumulative weights. It is never
+     * modified once built.
+     */
+    private static class Summary {
+
+        /**
+         * The sorted values.
+         */
+        private final float[] mSortedValues;
+
+        /**
+         * The cumulative weights of the sorted values.
+         */
+        private final long[] mCumulativeWeights;
+
+        /**
+         * The overloaded constructor.
+         *
+         * @param values   the sorted values.
+         * @param weights  the cumulative weights of the values.
+         */
+        private Summary( float[] values, long[] weights ){
+            mSortedValues      = values;
+            mCumulativeWeights = weights;
+        }
+    }
+}
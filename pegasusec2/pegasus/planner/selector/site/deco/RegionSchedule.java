@@ -0,0 +1,637 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import edu.isi.pegasus.planner.catalog.classes.SysInfo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The regions the sites of a follow-the-sun deployment are grouped into, with
+ * the hourly price of each instance type in each region varying over the day,
+ * and the time and cost of moving the output of a job from one region to
+ * another.
+ *
+ * The prices are piecewise constant over a period, a day by default, and
+ * repeat from one period to the next. Time 0 of a schedule is mapped to an
+ * offset into the period, so that a job is charged the prices of the hours of
+ * the day it actually runs in. The cost of running a job from start to finish
+ * is the integral of the hourly price over that interval, computed in
+ * logarithmic time from the prefix sums of the price segments.
+ *
+ * The schedule is read from a text file with a directive per line.
+ * <pre>
+ *   # seconds in a period, and the offset into the period of time 0
+ *   period    86400
+ *   start     0
+ *   # a region and its sites
+ *   region    us-east   ec2-us-east-a ec2-us-east-b
+ *   region    eu-west   ec2-eu-west-a
+ *   # the hourly price of a type in a region from an offset into the period
+ *   price     us-east   m1small  0      0.06
+ *   price     us-east   m1small  43200  0.03
+ *   # the seconds and dollars to move the output of a job between regions
+ *   transfer  us-east   eu-west  120    0.02
+ * </pre>
+ * A transfer applies in both directions, unless the reverse direction is
+ * given as well. The types without a price in a region are charged the
+ * default price of the type. The start is left unset if not given, for the
+ * caller to set. An unset start is taken as the start of the period.
+ *
+ * An instance is not thread safe while it is being populated.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class RegionSchedule {
+
+    /**
+     * The default length of the price period in seconds.
+     */
+    public static final long DEFAULT_PERIOD = 86400;
+
+    /**
+     * The value of the start if it is not set.
+     */
+    public static final long UNSET = -1;
+
+    /**
+     * The number of seconds in an hour, the unit of the prices.
+     */
+    private static final double SECONDS_PER_HOUR = 3600;
+
+    /**
+     * The default hourly price of each instance type.
+     */
+    private final float[] mDefaultPrices;
+
+    /**
+     * The names of the regions in the order they were added.
+     */
+    private final List<String> mRegions;
+
+    /**
+     * The index of a region indexed by its name.
+     */
+    private final Map<String,Integer> mRegionIndex;
+
+    /**
+     * The index of the region of a site indexed by the site name.
+     */
+    private final Map<String,Integer> mSiteRegions;
+
+    /**
+     * The hourly prices from each offset into the period, indexed by
+     * region * NUM_TYPES + type.
+     */
+    private final List<TreeMap<Long,Float>> mSegments;
+
+    /**
+     * The offsets at which the price segments start, indexed by
+     * region * NUM_TYPES + type. null for a type without prices.
+     */
+    private long[][] mStarts;
+
+    /**
+     * The hourly price of each segment.
+     */
+    private float[][] mPrices;
+
+    /**
+     * The integral of the hourly price from the start of the period till the
+     * start of each segment, and till the end of the period as the last
+     * element.
+     */
+    private double[][] mIntegrals;
+
+    /**
+     * Whether the segments have changed since the arrays were compiled.
+     */
+    private boolean mDirty;
+
+    /**
+     * The seconds to move the output of a job, indexed by [from][to].
+     */
+    private long[][] mTransferTimes;
+
+    /**
+     * The dollars to move the output of a job, indexed by [from][to].
+     */
+    private float[][] mTransferCosts;
+
+    /**
+     * Whether a transfer was given explicitly, indexed by [from][to].
+     */
+    private boolean[][] mExplicit;
+
+    /**
+     * The length of the price period in seconds.
+     */
+    private long mPeriod;
+
+    /**
+     * The offset into the period of time 0.
+     */
+    private long mStart;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param defaultPrices  the hourly price of each instance type, for the
+     *                       types without prices in a region.
+     */
+    public RegionSchedule( float[] defaultPrices ){
+        mDefaultPrices = defaultPrices.clone();
+        mRegions       = new ArrayList<String>();
+        mRegionIndex   = new HashMap<String,Integer>();
+        mSiteRegions   = new HashMap<String,Integer>();
+        mSegments      = new ArrayList<TreeMap<Long,Float>>();
+        mTransferTimes = new long[ 0 ][ 0 ];
+        mTransferCosts = new float[ 0 ][ 0 ];
+        mExplicit      = new boolean[ 0 ][ 0 ];
+        mPeriod        = DEFAULT_PERIOD;
+        mStart         = UNSET;
+        mDirty         = true;
+    }
+
+    /**
+     * Adds a region with its sites.
+     *
+     * @param name   the name of the region.
+     * @param sites  the names of the sites in the region.
+     *
+     * @return the index of the region
+     */
+    public int addRegion( String name, String... sites ){
+        Integer index = mRegionIndex.get( name );
+        if( index == null ){
+            index = mRegions.size();
+            mRegions.add( name );
+            mRegionIndex.put( name, index );
+            for( int t = 0; t < DecoProblem.NUM_TYPES; t++ ){
+                mSegments.add( new TreeMap<Long,Float>() );
+            }
+            mTransferTimes = grow( mTransferTimes );
+            mTransferCosts = grow( mTransferCosts );
+            mExplicit      = grow( mExplicit );
+            mDirty = true;
+        }
+        for( String site : sites ){
+            mSiteRegions.put( site, index );
+        }
+        return index;
+    }
+
+    /**
+     * Sets the hourly price of an instance type in a region, from an offset
+     * into the period till the next offset with a price.
+     *
+     * @param region  the index of the region.
+     * @param type    the instance type.
+     * @param offset  the offset in seconds into the period.
+     * @param price   the hourly price in dollars.
+     */
+    public void setPrice( int region, SysInfo.InstanceType type, long offset, float price ){
+        if( offset < 0 || price < 0 ){
+            throw new IllegalArgumentException( "Invalid price " + price + " at offset " + offset );
+        }
+        mSegments.get( region * DecoProblem.NUM_TYPES + type.ordinal() ).put( offset, price );
+        mDirty = true;
+    }
+
+    /**
+     * Sets the time and cost of moving the output of a job from one region to
+     * another. The reverse direction is set as well, unless it was given
+     * explicitly.
+     *
+     * @param from     the index of the region the job ran in.
+     * @param to       the index of the region the output is moved to.
+     * @param seconds  the time of the transfer.
+     * @param dollars  the cost of the transfer.
+     */
+    public void setTransfer( int from, int to, long seconds, float dollars ){
+        mTransferTimes[ from ][ to ] = seconds;
+        mTransferCosts[ from ][ to ] = dollars;
+        mExplicit[ from ][ to ] = true;
+        if( !mExplicit[ to ][ from ] ){
+            mTransferTimes[ to ][ from ] = seconds;
+            mTransferCosts[ to ][ from ] = dollars;
+        }
+    }
+
+    /**
+     * Sets the length of the price period.
+     *
+     * @param period  the period in seconds.
+     */
+    public void setPeriod( long period ){
+        if( period <= 0 ){
+            throw new IllegalArgumentException( "Invalid period " + period );
+        }
+        mPeriod = period;
+        mDirty  = true;
+    }
+
+    /**
+     * Returns the length of the price period.
+     *
+     * @return the period in seconds
+     */
+    public long getPeriod(){
+        return mPeriod;
+    }
+
+    /**
+     * Sets the offset into the period of time 0.
+     *
+     * @param start  the offset in seconds.
+     */
+    public void setStart( long start ){
+        if( start < 0 && start != UNSET ){
+            throw new IllegalArgumentException( "Invalid start " + start );
+        }
+        mStart = start;
+    }
+
+    /**
+     * Returns the offset into the period of time 0.
+     *
+     * @return the offset in seconds, or UNSET.
+     */
+    public long getStart(){
+        return mStart;
+    }
+
+    /**
+     * Returns the number of regions.
+     *
+     * @return the number of regions
+     */
+    public int getRegionCount(){
+        return mRegions.size();
+    }
+
+    /**
+     * Returns the name of a region.
+     *
+     * @param region  the index of the region.
+     *
+     * @return the name
+     */
+    public String getRegionName( int region ){
+        return mRegions.get( region );
+    }
+
+    /**
+     * Returns the region of a site.
+     *
+     * @param site  the name of the site.
+     *
+     * @return the index of the region, or -1 if the site is in no region.
+     */
+    public int getRegion( String site ){
+        Integer region = mSiteRegions.get( site );
+        return ( region == null ) ? -1 : region;
+    }
+
+    /**
+     * Returns the hourly price of an instance type in a region at a time.
+     *
+     * @param region  the index of the region, or -1 for the default price.
+     * @param type    the instance type.
+     * @param time    the time in seconds since time 0.
+     *
+     * @return the hourly price in dollars
+     */
+    public float getPrice( int region, SysInfo.InstanceType type, long time ){
+        int index = getIndex( region, type );
+        if( index == -1 ){
+            return mDefaultPrices[ type.ordinal() ];
+        }
+        long[] starts = mStarts[ index ];
+        return mPrices[ index ][ getSegment( starts, offset( time ) ) ];
+    }
+
+    /**
+     * Returns the cost of running an instance of a type in a region from a
+     * start time till a finish time.
+     *
+     * @param region  the index of the region, or -1 for the default price.
+     * @param type    the instance type.
+     * @param start   the start time in seconds since time 0.
+     * @param finish  the finish time in seconds since time 0.
+     *
+     * @return the cost in dollars
+     */
+    public float getCost( int region, SysInfo.InstanceType type, long start, long finish ){
+        if( finish <= start ){
+            return 0;
+        }
+        int index = getIndex( region, type );
+        if( index == -1 ){
+            return (float)( mDefaultPrices[ type.ordinal() ] * ( finish - start ) / SECONDS_PER_HOUR );
+        }
+        long zero = getOffsetOfZero();
+        return (float)( ( cumulative( index, finish + zero ) - cumulative( index, start + zero ) ) / SECONDS_PER_HOUR );
+    }
+
+    /**
+     * Returns the time to move the output of a job from one region to another.
+     *
+     * @param from  the index of the region the job ran in, or -1.
+     * @param to    the index of the region the output is moved to, or -1.
+     *
+     * @return the time in seconds. 0 if either site is in no region, or both
+     *         are in the same region.
+     */
+    public long getTransferTime( int from, int to ){
+        return ( from == -1 || to == -1 ) ? 0 : mTransferTimes[ from ][ to ];
+    }
+
+    /**
+     * Returns the cost of moving the output of a job from one region to
+     * another.
+     *
+     * @param from  the index of the region the job ran in, or -1.
+     * @param to    the index of the region the output is moved to, or -1.
+     *
+     * @return the cost in dollars. 0 if either site is in no region, or both
+     *         are in the same region.
+     */
+    public float getTransferCost( int from, int to ){
+        return ( from == -1 || to == -1 ) ? 0 : mTransferCosts[ from ][ to ];
+    }
+
+    /**
+     * Returns the index of the price segments of a type in a region.
+     *
+     * @param region  the index of the region, or -1.
+     * @param type    the instance type.
+     *
+     * @return the index, or -1 if the type has no prices in the region.
+     */
+    private int getIndex( int region, SysInfo.InstanceType type ){
+        if( region == -1 ){
+            return -1;
+        }
+        if( mDirty ){
+            compile();
+        }
+        int index = region * DecoProblem.NUM_TYPES + type.ordinal();
+        return ( mStarts[ index ] == null ) ? -1 : index;
+    }
+
+    /**
+     * Returns the offset into the period of time 0, treating an unset start
+     * as the start of the period.
+     *
+     * @return the offset in seconds
+     */
+    private long getOffsetOfZero(){
+        return ( mStart == UNSET ) ? 0 : mStart;
+    }
+
+    /**
+     * Returns the offset into the period of a time.
+     *
+     * @param time  the time in seconds since time 0.
+     *
+     * @return the offset in seconds
+     */
+    private long offset( long time ){
+        long offset = ( time + getOffsetOfZero() ) % mPeriod;
+        return ( offset < 0 ) ? offset + mPeriod : offset;
+    }
+
+    /**
+     * Returns the integral of the hourly price of a segment list from the
+     * start of the first period till a time.
+     *
+     * @param index  the index of the segment list.
+     * @param time   the time in seconds since the start of the first period.
+     *                 Not negative.
+     *
+     * @return the integral in dollar seconds per hour
+     */
+    private double cumulative( int index, long time ){
+        long[] starts      = mStarts[ index ];
+        double[] integrals = mIntegrals[ index ];
+        long periods = time / mPeriod;
+        long offset  = time - periods * mPeriod;
+        int k = getSegment( starts, offset );
+        return periods * integrals[ integrals.length - 1 ] +
+               integrals[ k ] + mPrices[ index ][ k ] * (double)( offset - starts[ k ] );
+    }
+
+    /**
+     * Returns the segment an offset into the period falls in.
+     *
+     * @param starts  the offsets at which the segments start, beginning at 0.
+     * @param offset  the offset into the period.
+     *
+     * @return the index of the segment
+     */
+    private int getSegment( long[] starts, long offset ){
+        int k = Arrays.binarySearch( starts, offset );
+        return ( k >= 0 ) ? k : -k - 2;
+    }
+
+    /**
+     * Compiles the price segments into the arrays used for the queries. The
+     * price before the first offset of a type is the price of its last offset,
+     * as the prices wrap around from one period to the next.
+     */
+    private void compile(){
+        int n = mSegments.size();
+        mStarts    = new long[ n ][];
+        mPrices    = new float[ n ][];
+        mIntegrals = new double[ n ][];
+        for( int i = 0; i < n; i++ ){
+            TreeMap<Long,Float> segments = new TreeMap<Long,Float>( mSegments.get( i ).headMap( mPeriod ) );
+            if( segments.isEmpty() ){
+                continue;
+            }
+            if( segments.firstKey() != 0 ){
+                segments.put( 0L, segments.lastEntry().getValue() );
+            }
+            int m = segments.size();
+            long[] starts = new long[ m ];
+            float[] prices = new float[ m ];
+            double[] integrals = new double[ m + 1 ];
+            int k = 0;
+            for( Map.Entry<Long,Float> e : segments.entrySet() ){
+                starts[ k ] = e.getKey();
+                prices[ k ] = e.getValue();
+                k++;
+            }
+            for( k = 0; k < m; k++ ){
+                long end = ( k + 1 < m ) ? starts[ k + 1 ] : mPeriod;
+                integrals[ k + 1 ] = integrals[ k ] + prices[ k ] * (double)( end - starts[ k ] );
+            }
+            mStarts[ i ]    = starts;
+            mPrices[ i ]    = prices;
+            mIntegrals[ i ] = integrals;
+        }
+        mDirty = false;
+    }
+
+    /**
+     * Returns a copy of a square matrix with an extra row and column.
+     *
+     * @param matrix  the matrix.
+     *
+     * @return the grown matrix
+     */
+    private static long[][] grow( long[][] matrix ){
+        long[][] result = new long[ matrix.length + 1 ][ matrix.length + 1 ];
+        for( int i = 0; i < matrix.length; i++ ){
+            System.arraycopy( matrix[ i ], 0, result[ i ], 0, matrix.length );
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of a square matrix with an extra row and column.
+     *
+     * @param matrix  the matrix.
+     *
+     * @return the grown matrix
+     */
+    private static float[][] grow( float[][] matrix ){
+        float[][] result = new float[ matrix.length + 1 ][ matrix.length + 1 ];
+        for( int i = 0; i < matrix.length; i++ ){
+            System.arraycopy( matrix[ i ], 0, result[ i ], 0, matrix.length );
+        }
+        return result;
+    }
+
+    /**
+     * Returns a copy of a square matrix with an extra row and column.
+     *
+     * @param matrix  the matrix.
+     *
+     * @return the grown matrix
+     */
+    private static boolean[][] grow( boolean[][] matrix ){
+        boolean[][] result = new boolean[ matrix.length + 1 ][ matrix.length + 1 ];
+        for( int i = 0; i < matrix.length; i++ ){
+            System.arraycopy( matrix[ i ], 0, result[ i ], 0, matrix.length );
+        }
+        return result;
+    }
+
+    /**
+     * Reads a schedule from a file.
+     *
+     * @param file           the file to read from.
+     * @param defaultPrices  the hourly price of each instance type, for the
+     *                       types without prices in a region.
+     *
+     * @return the schedule
+     *
+     * @throws IOException in case of error while reading, or if a line is
+     *         malformed.
+     */
+    public static RegionSchedule read( File file, float[] defaultPrices ) throws IOException{
+        RegionSchedule schedule = new RegionSchedule( defaultPrices );
+        BufferedReader reader = new BufferedReader( new FileReader( file ) );
+        try{
+            String line;
+            int number = 0;
+            while( ( line = reader.readLine() ) != null ){
+                number++;
+                line = line.trim();
+                if( line.length() == 0 || line.startsWith( "#" ) ){
+                    continue;
+                }
+                String[] fields = line.split( "\\s+" );
+                try{
+                    schedule.parse( fields );
+                }
+                catch( IllegalArgumentException e ){
+                    throw new IOException( "Invalid line " + number + " in " + file + ": " + e.getMessage() );
+                }
+                catch( ArrayIndexOutOfBoundsException e ){
+                    throw new IOException( "Missing fields on line " + number + " in " + file + ": " + line );
+                }
+            }
+        }
+        finally{
+            reader.close();
+        }
+        return schedule;
+    }
+
+    /**
+     * Applies a directive read from a schedule file.
+     *
+     * @param fields  the whitespace separated fields of the directive.
+     *
+     * @throws IllegalArgumentException if the directive is malformed.
+     */
+    private void parse( String[] fields ){
+        String directive = fields[ 0 ];
+        if( directive.equals( "period" ) ){
+            setPeriod( Long.parseLong( fields[ 1 ] ) );
+        }
+        else if( directive.equals( "start" ) ){
+            setStart( Long.parseLong( fields[ 1 ] ) );
+        }
+        else if( directive.equals( "region" ) ){
+            addRegion( fields[ 1 ], Arrays.copyOfRange( fields, 2, fields.length ) );
+        }
+        else if( directive.equals( "price" ) ){
+            setPrice( getRegionIndex( fields[ 1 ] ), SysInfo.InstanceType.valueOf( fields[ 2 ] ),
+                      Long.parseLong( fields[ 3 ] ), Float.parseFloat( fields[ 4 ] ) );
+        }
+        else if( directive.equals( "transfer" ) ){
+            setTransfer( getRegionIndex( fields[ 1 ] ), getRegionIndex( fields[ 2 ] ),
+                         Long.parseLong( fields[ 3 ] ), Float.parseFloat( fields[ 4 ] ) );
+        }
+        else{
+            throw new IllegalArgumentException( "Unknown directive " + directive );
+        }
+    }
+
+    /**
+     * Returns the index of a region declared earlier.
+     *
+     * @param name  the name of the region.
+     *
+     * @return the index
+     *
+     * @throws IllegalArgumentException if the region is not declared.
+     */
+    private int getRegionIndex( String name ){
+        Integer index = mRegionIndex.get( name );
+        if( index == null ){
+            throw new IllegalArgumentException( "Undeclared region " + name );
+        }
+        return index;
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.util.Arrays;
+
+/**
+ * Stores the sampled runtime distribution of each task on each instance type.
+ * It is the Java counterpart of the <code>probestTime</code> arrays of the
+ * native Deco planner.
+ *
+ * The samples are held in a single flat <code>float[]</code> indexed by
+ * [task][type][sample], instead of boxed values in the <code>DecoBag</code>.
+ * The samples of a task are computed from the data volumes of the task and
+ * the performance samples of the instance types as
+ * <pre>
+ *   cpu time + transferred data * network up   / 8000
+ *            + received data    * network down / 8000
+ *            + random read data    / random IO
+ *            + sequential data     / sequential IO
+ * </pre>
+ *
+ * The computation runs over one instance type at a time, with the performance
+ * samples of the type first copied into arrays, so that the inner per sample
+ * loop only touches primitive arrays and can be vectorized by the JIT.
+ *
+ * The quantiles are answered from a <code>QuantileSketch</code> per task and
+ * type, built in one pass over the samples the first time it is asked for,
+ * instead of sorting the samples for every query.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class RuntimeDistributions {
+
+    /**
+     * The factor by which the network performance samples are scaled.
+     */
+    public static final float NETWORK_SCALE = 8000;
+
+    /**
+     * The number of tasks.
+     */
+    private final int mTasks;
+
+    /**
+     * The number of instance types.
+     */
+    private final int mTypes;
+
+    /**
+     * The number of samples per task and type.
+     */
+    private final int mSamples;
+
+    /**
+     * The samples indexed by [task][type][sample].
+     */
+    private final float[] mValues;
+
+    /**
+     * The quantile sketches indexed by task * types + type. An entry is null
+     * till the sketch is first asked for.
+     */
+    private final QuantileSketch[] mSketches;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param tasks    the number of tasks.
+     * @param types    the number of instance types.
+     * @param samples  the number of samples per task and type.
+     */
+    public RuntimeDistributions( int tasks, int types, int samples ){
+        long size = (long)tasks * types * samples;
+        if( size > Integer.MAX_VALUE ){
+            throw new IllegalArgumentException( "Too many samples " + size + ". Reduce the number of samples per task" );
+        }
+        mTasks   = tasks;
+        mTypes   = types;
+        mSamples = samples;
+        mValues  = new float[ (int)size ];
+        mSketches = new QuantileSketch[ tasks * types ];
+    }
+
+    /**
+     * Computes the runtime samples for all the tasks.
+     *
+     * @param cpuTime       the cpu time of each task on each type indexed by
+     *                      task * types + type. DecoProblem.UNAVAILABLE if a
+     *                      task cannot run on a type.
+     * @param transData     the data transferred out by each task.
+     * @param recData       the data received by each task.
+     * @param readData      the random read data of each task.
+     * @param seqData       the sequential data of each task.
+     * @param performance   the performance samples of the instance types.
+     */
+    public void compute( float[] cpuTime, float[] transData, float[] recData,
+                         float[] readData, float[] seqData, PerformanceSamples performance ){
+        //sanity check
+        if( performance.getSampleCount() < mSamples || performance.getTypeCount() < mTypes ){
+            throw new IllegalArgumentException( "Performance samples have " + performance.getTypeCount() +
+                                                " types and " + performance.getSampleCount() +
+                                                " samples. Need " + mTypes + " types and " + mSamples + " samples" );
+        }
+
+        float[] up       = new float[ mSamples ];
+        float[] down     = new float[ mSamples ];
+        float[] random   = new float[ mSamples ];
+        float[] sequence = new float[ mSamples ];
+        for( int type = 0; type < mTypes; type++ ){
+            performance.get( PerformanceSamples.NETWORK_UP, type, up );
+            performance.get( PerformanceSamples.NETWORK_DOWN, type, down );
+            performance.get( PerformanceSamples.RANDOM_IO, type, random );
+            performance.get( PerformanceSamples.SEQUENTIAL_IO, type, sequence );
+
+            for( int task = 0; task < mTasks; task++ ){
+                int offset = offset( task, type );
+                float cpu  = cpuTime[ task * mTypes + type ];
+                if( cpu == DecoProblem.UNAVAILABLE ){
+                    Arrays.fill( mValues, offset, offset + mSamples, DecoProblem.UNAVAILABLE );
+                    continue;
+                }
+                float t = transData[ task ] / NETWORK_SCALE;
+                float r = recData[ task ] / NETWORK_SCALE;
+                float rd = readData[ task ];
+                float sd = seqData[ task ];
+                for( int s = 0; s < mSamples; s++ ){
+                    mValues[ offset + s ] = cpu + t * up[ s ] + r * down[ s ] + rd / random[ s ] + sd / sequence[ s ];
+                }
+            }
+        }
+        Arrays.fill( mSketches, null );
+    }
+
+    /**
+     * Returns the number of tasks.
+     *
+     * @return the number of tasks
+     */
+    public int getTaskCount(){
+        return mTasks;
+    }
+
+    /**
+     * Returns the number of instance types.
+     *
+     * @return the number of types
+     */
+    public int getTypeCount(){
+        return mTypes;
+    }
+
+    /**
+     * Returns the number of samples per task and type.
+     *
+     * @return the number of samples
+     */
+    public int getSampleCount(){
+        return mSamples;
+    }
+
+    /**
+     * Returns the offset of the first sample of a task and type into the
+     * backing array.
+     *
+     * @param task  the task index.
+     * @param type  the ordinal of the instance type.
+     *
+     * @return the offset
+     */
+    public int offset( int task, int type ){
+        return ( task * mTypes + type ) * mSamples;
+    }
+
+    /**
+     * Returns the backing array of the samples, indexed by [task][type][sample].
+     *
+     * @return the samples
+     */
+    public float[] getValues(){
+        return mValues;
+    }
+
+    /**
+     * Returns a single runtime sample.
+     *
+     * @param task    the task index.
+     * @param type    the ordinal of the instance type.
+     * @param sample  the sample index.
+     *
+     * @return the runtime sample in seconds.
+     */
+    public float get( int task, int type, int sample ){
+        return mValues[ offset( task, type ) + sample ];
+    }
+
+    /**
+     * Returns the mean runtime of a task on a type.
+     *
+     * @param task  the task index.
+     * @param type  the ordinal of the instance type.
+     *
+     * @return the mean in seconds.
+     */
+    public float getMean( int task, int type ){
+        int offset = offset( task, type );
+        double sum = 0;
+        for( int s = 0; s < mSamples; s++ ){
+            sum += mValues[ offset + s ];
+        }
+        return (float)( sum / mSamples );
+    }
+
+    /**
+     * Returns a quantile of the runtime of a task on a type.
+     *
+     * @param task         the task index.
+     * @param type         the ordinal of the instance type.
+     * @param probability  the probability of the quantile.
+     *
+     * @return the quantile in seconds.
+     */
+    public float getQuantile( int task, int type, float probability ){
+        return getSketch( task, type ).getQuantile( probability );
+    }
+
+    /**
+     * Returns the quantile sketch of the runtime of a task on a type. The
+     * sketch should not be modified, but can be merged into other sketches.
+     *
+     * @param task  the task index.
+     * @param type  the ordinal of the instance type.
+     *
+     * @return the sketch
+     */
+    public synchronized QuantileSketch getSketch( int task, int type ){
+        int index = task * mTypes + type;
+        if( mSketches[ index ] == null ){
+            QuantileSketch sketch = new QuantileSketch();
+            sketch.add( mValues, offset( task, type ), mSamples );
+            mSketches[ index ] = sketch;
+        }
+        return mSketches[ index ];
+    }
+
+    /**
+     * Sets the runtime of each task on each type in a problem to the quantile
+     * of its distribution at the probability of the problem.
+     *
+     * @param problem  the problem whose runtimes are to be set.
+     */
+    public void setRuntimes( DecoProblem problem ){
+        float probability = problem.getProbability();
+        for( int task = 0; task < mTasks; task++ ){
+            for( int type = 0; type < mTypes; type++ ){
+                if( problem.isAvailable( task, type ) ){
+                    problem.setRuntime( task, DecoProblem.TYPES[ type ], getQuantile( task, type, probability ) );
+                }
+            }
+        }
+    }
+}
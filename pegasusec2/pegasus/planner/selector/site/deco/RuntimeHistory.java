@@ -0,0 +1,454 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import edu.isi.pegasus.planner.catalog.classes.SysInfo;
+
+import edu.isi.pegasus.planner.invocation.InvocationRecord;
+import edu.isi.pegasus.planner.invocation.Job;
+import edu.isi.pegasus.planner.invocation.StatCall;
+import edu.isi.pegasus.planner.invocation.StatInfo;
+
+import edu.isi.pegasus.planner.parser.InvocationParser;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * A store of the runtimes of past jobs, fed from the kickstart invocation
+ * records of the jobs. The runtimes are indexed by the transformation, the
+ * instance type the job ran on and the bucket of the size of its input. The
+ * bucket of a size is the number of bits needed to represent it in bytes,
+ * so each bucket spans a factor of two in size.
+ *
+ * Each index entry keeps the online mean and variance of the runtimes, and a
+ * <code>QuantileSketch</code> of them, so that the store stays compact no
+ * matter how many runtimes are added. Each runtime is also added to an entry
+ * for all input sizes of the transformation and type, which answers queries
+ * for a size bucket with no history. A query is two hash lookups.
+ *
+ * The store is saved in a binary file. The class can be invoked from the
+ * command line to add kickstart records to a store
+ * <pre>
+ *   java edu.isi.pegasus.planner.selector.site.deco.RuntimeHistory
+ *        &lt;history file&gt; &lt;instance type&gt; &lt;kickstart record&gt; ...
+ * </pre>
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class RuntimeHistory {
+
+    /**
+     * The magic number at the start of the file.
+     */
+    public static final int MAGIC = 0x4445484E;
+
+    /**
+     * The version of the file format.
+     */
+    public static final int VERSION = 2;
+
+    /**
+     * The size bucket of the entries over all input sizes.
+     */
+    public static final int ANY_SIZE = -1;
+
+    /**
+     * The accuracy parameter of the quantile sketches.
+     */
+    public static final int SKETCH_K = 64;
+
+    /**
+     * The tag of the main job in a kickstart record.
+     */
+    public static final String MAIN_JOB_TAG = "mainjob";
+
+    /**
+     * The handle of the stat calls made on the input files before the job.
+     */
+    public static final String INPUT_STAT_HANDLE = "initial";
+
+    /**
+     * The entries indexed by their key.
+     */
+    private Map<String,Entry> mEntries;
+
+    /**
+     * The default constructor.
+     */
+    public RuntimeHistory(){
+        mEntries = new HashMap<String,Entry>();
+    }
+
+    /**
+     * Returns the size bucket of an input size.
+     *
+     * @param bytes  the input size in bytes.
+     *
+     * @return the bucket
+     */
+    public static int getSizeBucket( long bytes ){
+        return ( bytes <= 0 ) ? 0 : 64 - Long.numberOfLeadingZeros( bytes );
+    }
+
+    /**
+     * Adds the runtime of a job.
+     *
+     * @param transformation  the complete name of the transformation.
+     * @param type            the instance type the job ran on.
+     * @param bytes           the input size of the job in bytes.
+     * @param runtime         the runtime in seconds.
+     */
+    public void add( String transformation, SysInfo.InstanceType type, long bytes, float runtime ){
+        getOrCreate( key( transformation, type, getSizeBucket( bytes ) ) ).add( runtime );
+        getOrCreate( key( transformation, type, ANY_SIZE ) ).add( runtime );
+    }
+
+    /**
+     * Adds the runtime of the main job in a kickstart record. The input size
+     * is the total size of the files stat'ed before the job.
+     *
+     * @param record  the kickstart record.
+     * @param type    the instance type the job ran on.
+     *
+     * @return true if added, false if the record has no main job or the
+     *         main job failed.
+     */
+    public boolean add( InvocationRecord record, SysInfo.InstanceType type ){
+        Job main = null;
+        for( Iterator it = record.iterateJob(); it.hasNext(); ){
+            Job job = (Job)it.next();
+            if( MAIN_JOB_TAG.equals( job.getTag() ) ){
+                main = job;
+                break;
+            }
+        }
+        if( main == null || main.getStatus() == null || main.getStatus().getStatus() != 0 ||
+            record.getTransformation() == null ){
+            return false;
+        }
+
+        long bytes = 0;
+        for( Iterator it = record.iterateStatCall(); it.hasNext(); ){
+            StatCall call = (StatCall)it.next();
+            StatInfo info = call.getStatInfo();
+            if( INPUT_STAT_HANDLE.equals( call.getHandle() ) && info != null && info.getSize() > 0 ){
+                bytes += info.getSize();
+            }
+        }
+        add( record.getTransformation(), type, bytes, (float)main.getDuration() );
+        return true;
+    }
+
+    /**
+     * Returns the entry for the runtimes of a transformation on an instance
+     * type, for an input size. If there is no entry for the size bucket of
+     * the input size, the entry for all input sizes is returned.
+     *
+     * @param transformation  the complete name of the transformation.
+     * @param type            the instance type.
+     * @param bytes           the input size in bytes.
+     *
+     * @return the entry, or null if there is no history.
+     */
+    public Entry get( String transformation, SysInfo.InstanceType type, long bytes ){
+        Entry e = mEntries.get( key( transformation, type, getSizeBucket( bytes ) ) );
+        return ( e == null ) ? mEntries.get( key( transformation, type, ANY_SIZE ) ) : e;
+    }
+
+    /**
+     * Returns the number of entries in the store.
+     *
+     * @return the number of entries
+     */
+    public int size(){
+        return mEntries.size();
+    }
+
+    /**
+     * Writes the store to a file. The store is written to a temporary file
+     * that is then renamed, so that concurrent planners never read a
+     * partially written store.
+     *
+     * @param file  the file to write to.
+     *
+     * @throws IOException in case of error while writing.
+     */
+    public void write( File file ) throws IOException{
+        File dir  = file.getAbsoluteFile().getParentFile();
+        File temp = File.createTempFile( file.getName(), ".tmp", dir );
+        try{
+            DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( temp ) ) );
+            try{
+                out.writeInt( MAGIC );
+                out.writeInt( VERSION );
+                out.writeInt( mEntries.size() );
+                for( Map.Entry<String,Entry> e : mEntries.entrySet() ){
+                    out.writeUTF( e.getKey() );
+                    e.getValue().write( out );
+                }
+            }
+            finally{
+                out.close();
+            }
+            if( !temp.renameTo( file ) ){
+                //rename does not replace an existing file on all platforms
+                file.delete();
+                if( !temp.renameTo( file ) ){
+                    throw new IOException( "Unable to rename " + temp + " to " + file );
+                }
+            }
+        }
+        finally{
+            temp.delete();
+        }
+    }
+
+    /**
+     * Reads a store from a file written by write().
+     *
+     * @param file  the file to read from.
+     *
+     * @return the store, empty if the file does not exist.
+     *
+     * @throws IOException in case of error while reading, or if the file is
+     *         not a runtime history.
+     */
+    public static RuntimeHistory read( File file ) throws IOException{
+        RuntimeHistory history = new RuntimeHistory();
+        if( !file.exists() ){
+            return history;
+        }
+        DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( file ) ) );
+        try{
+            if( in.readInt() != MAGIC ){
+                throw new IOException( "Not a runtime history file " + file );
+            }
+            int version = in.readInt();
+            if( version != VERSION ){
+                throw new IOException( "Unsupported version " + version + " of runtime history file " + file );
+            }
+            int n = in.readInt();
+            for( int i = 0; i < n; i++ ){
+                String key = in.readUTF();
+                history.mEntries.put( key, Entry.read( in ) );
+            }
+        }
+        finally{
+            in.close();
+        }
+        return history;
+    }
+
+    /**
+     * Returns the key of an entry.
+     *
+     * @param transformation  the complete name of the transformation.
+     * @param type            the instance type.
+     * @param bucket          the size bucket.
+     *
+     * @return the key
+     */
+    private static String key( String transformation, SysInfo.InstanceType type, int bucket ){
+        StringBuffer sb = new StringBuffer( transformation.length() + 16 );
+        sb.append( transformation ).append( '\t' ).append( type ).append( '\t' ).append( bucket );
+        return sb.toString();
+    }
+
+    /**
+     * Returns the entry for a key, creating it if required.
+     *
+     * @param key  the key.
+     *
+     * @return the entry
+     */
+    private Entry getOrCreate( String key ){
+        Entry e = mEntries.get( key );
+        if( e == null ){
+            e = new Entry();
+            mEntries.put( key, e );
+        }
+        return e;
+    }
+
+    /**
+     * Adds kickstart records to a history file.
+     *
+     * @param args  the history file, the instance type the jobs ran on and
+     *              the kickstart records.
+     */
+    public static void main( String[] args ){
+        if( args.length < 3 ){
+            System.err.println( "Usage: RuntimeHistory <history file> <instance type> <kickstart record> ..." );
+            System.exit( 1 );
+        }
+        try{
+            File file = new File( args[ 0 ] );
+            SysInfo.InstanceType type = SysInfo.InstanceType.valueOf( args[ 1 ] );
+            RuntimeHistory history = read( file );
+            InvocationParser parser = new InvocationParser( InvocationRecord.SCHEMA_LOCATION );
+            int added = 0;
+            for( int i = 2; i < args.length; i++ ){
+                InputStream in = new FileInputStream( args[ i ] );
+                try{
+                    InvocationRecord record = parser.parse( in );
+                    if( record != null && history.add( record, type ) ){
+                        added++;
+                    }
+                }
+                finally{
+                    in.close();
+                }
+            }
+            history.write( file );
+            System.out.println( "Added " + added + " of " + ( args.length - 2 ) + " records to " + file );
+        }
+        catch( Exception e ){
+            System.err.println( "Unable to update runtime history " + e.getMessage() );
+            System.exit( 1 );
+        }
+    }
+
+    /**
+     * The statistics of the runtimes for a key.
+     */
+    public static class Entry {
+
+        /**
+         * The number of runtimes.
+         */
+        private long mCount;
+
+        /**
+         * The mean of the runtimes.
+         */
+        private double mMean;
+
+        /**
+         * The sum of the squared differences from the mean.
+         */
+        private double mM2;
+
+        /**
+         * The sketch of the runtimes.
+         */
+        private QuantileSketch mSketch;
+
+        /**
+         * The default constructor.
+         */
+        public Entry(){
+            mSketch = new QuantileSketch( SKETCH_K );
+        }
+
+        /**
+         * Adds a runtime, updating the mean and variance by Welford's method.
+         *
+         * @param runtime  the runtime in seconds.
+         */
+        public void add( float runtime ){
+            mCount++;
+            double delta = runtime - mMean;
+            mMean += delta / mCount;
+            mM2   += delta * ( runtime - mMean );
+            mSketch.add( runtime );
+        }
+
+        /**
+         * Returns the number of runtimes.
+         *
+         * @return the count
+         */
+        public long getCount(){
+            return mCount;
+        }
+
+        /**
+         * Returns the mean of the runtimes.
+         *
+         * @return the mean in seconds
+         */
+        public double getMean(){
+            return mMean;
+        }
+
+        /**
+         * Returns the standard deviation of the runtimes.
+         *
+         * @return the standard deviation in seconds
+         */
+        public double getStandardDeviation(){
+            return ( mCount < 2 ) ? 0 : Math.sqrt( mM2 / ( mCount - 1 ) );
+        }
+
+        /**
+         * Returns a quantile of the runtimes.
+         *
+         * @param probability  the probability of the quantile.
+         *
+         * @return the quantile in seconds
+         */
+        public float getQuantile( float probability ){
+            return mSketch.getQuantile( probability );
+        }
+
+        /**
+         * Writes the entry out.
+         *
+         * @param out  the output to write to.
+         *
+         * @throws IOException in case of error while writing.
+         */
+        protected void write( DataOutputStream out ) throws IOException{
+            out.writeLong( mCount );
+            out.writeDouble( mMean );
+            out.writeDouble( mM2 );
+            mSketch.write( out );
+        }
+
+        /**
+         * Reads an entry written out by write().
+         *
+         * @param in  the input to read from.
+         *
+         * @return the entry
+         *
+         * @throws IOException in case of error while reading.
+         */
+        protected static Entry read( DataInputStream in ) throws IOException{
+            Entry e = new Entry();
+            e.mCount  = in.readLong();
+            e.mMean   = in.readDouble();
+            e.mM2     = in.readDouble();
+            e.mSketch = QuantileSketch.read( in );
+            return e;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.util.Arrays;
+
+/**
+ * The makespans and costs of the Monte Carlo runs of a <code>PlanSimulator</code>.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class SimulationResult {
+
+    /**
+     * The makespans of the runs in ascending order.
+     */
+    private final double[] mMakespans;
+
+    /**
+     * The costs of the runs in ascending order.
+     */
+    private final double[] mCosts;
+
+    /**
+     * The overloaded constructor. The arrays are sorted in place.
+     *
+     * @param makespans  the makespans of the runs in seconds.
+     * @param costs      the costs of the runs in dollars.
+     */
+    public SimulationResult( double[] makespans, double[] costs ){
+        Arrays.sort( makespans );
+        Arrays.sort( costs );
+        mMakespans = makespans;
+        mCosts     = costs;
+    }
+
+    /**
+     * Returns the number of runs.
+     *
+     * @return the number of runs
+     */
+    public int getRuns(){
+        return mMakespans.length;
+    }
+
+    /**
+     * Returns a percentile of the makespan.
+     *
+     * @param p  the percentile between 0 and 100.
+     *
+     * @return the makespan in seconds
+     */
+    public double getMakespanPercentile( double p ){
+        return percentile( mMakespans, p );
+    }
+
+    /**
+     * Returns a percentile of the cost.
+     *
+     * @param p  the percentile between 0 and 100.
+     *
+     * @return the cost in dollars
+     */
+    public double getCostPercentile( double p ){
+        return percentile( mCosts, p );
+    }
+
+    /**
+     * Returns the mean makespan.
+     *
+     * @return the makespan in seconds
+     */
+    public double getMeanMakespan(){
+        return mean( mMakespans );
+    }
+
+    /**
+     * Returns the mean cost.
+     *
+     * @return the cost in dollars
+     */
+    public double getMeanCost(){
+        return mean( mCosts );
+    }
+
+    /**
+     * Returns the fraction of the runs that finished within a deadline.
+     *
+     * @param deadline  the deadline in seconds.
+     *
+     * @return the fraction between 0 and 1
+     */
+    public double getProbability( double deadline ){
+        if( mMakespans.length == 0 ){
+            return 1;
+        }
+        int low = 0, high = mMakespans.length;
+        while( low < high ){
+            int mid = ( low + high ) >>> 1;
+            if( mMakespans[ mid ] <= deadline ){
+                low = mid + 1;
+            }
+            else{
+                high = mid;
+            }
+        }
+        return (double)low / mMakespans.length;
+    }
+
+    /**
+     * Returns a textual description of the result.
+     *
+     * @return String
+     */
+    public String toString(){
+        StringBuffer sb = new StringBuffer();
+        sb.append( "runs " ).append( getRuns() ).
+           append( " makespan p50 " ).append( getMakespanPercentile( 50 ) ).
+           append( " p90 " ).append( getMakespanPercentile( 90 ) ).
+           append( " p99 " ).append( getMakespanPercentile( 99 ) ).
+           append( " mean cost " ).append( getMeanCost() );
+        return sb.toString();
+    }
+
+    /**
+     * Returns a percentile of sorted values, by the nearest rank.
+     *
+     * @param values  the sorted values.
+     * @param p       the percentile between 0 and 100.
+     *
+     * @return the value
+     */
+    private static double percentile( double[] values, double p ){
+        if( values.length == 0 ){
+            return Double.NaN;
+        }
+        int rank = (int)Math.ceil( p / 100 * values.length ) - 1;
+        return values[ Math.min( values.length - 1, Math.max( 0, rank ) ) ];
+    }
+
+    /**
+     * Returns the mean of values.
+     *
+     * @param values  the values.
+     *
+     * @return the mean
+     */
+    private static double mean( double[] values ){
+        double sum = 0;
+        for( double v : values ){
+            sum += v;
+        }
+        return ( values.length == 0 ) ? Double.NaN : sum / values.length;
+    }
+}
@@ -16,19 +16,47 @@
 
 package edu.isi.pegasus.planner.selector.site.deco;
 
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
-import java.util.LinkedList;
-import java.util.ListIterator;
+import java.util.TreeSet;
 
 /**
  * A data class that models a site as a collection of processors.
  * The number of processors can only be specified in the constructor.
  *
+ * Jobs are scheduled with an insertion based policy. The processors in use
+ * are kept in a set ordered by the end time of their last job, whose first
+ * element is the processor that frees up earliest. The processors with idle
+ * gaps between their jobs are kept in a second set ordered by their longest
+ * gap, so that only the processors with a gap long enough for a job are
+ * searched, and each such search is a lookup in the gaps of the processor.
+ *
  * @author Karan Vahi
  * @version $Revision$
  */
 public class Site {
 
+    /**
+     * Orders the processors by the end time of their last job, and then by id.
+     */
+    private static final Comparator<Processor> END_TIME_COMPARATOR = new Comparator<Processor>(){
+        public int compare( Processor p1, Processor p2 ){
+            int result = Long.compare( p1.getEndTime(), p2.getEndTime() );
+            return ( result == 0 ) ? p1.getID() - p2.getID() : result;
+        }
+    };
+
+    /**
+     * Orders the processors by their longest idle gap, and then by id.
+     */
+    private static final Comparator<Processor> GAP_COMPARATOR = new Comparator<Processor>(){
+        public int compare( Processor p1, Processor p2 ){
+            int result = Long.compare( p1.getLongestGap(), p2.getLongestGap() );
+            return ( result == 0 ) ? p1.getID() - p2.getID() : result;
+        }
+    };
 
     /**
      * The number of processors making up a site.
@@ -36,14 +64,25 @@ public class Site {
     private int mNumProcessors;
 
     /**
-     * A list of processors making up the site.
+     * A list of processors in use on the site.
      */
-    private List mProcessors;
+    private List<Processor> mProcessors;
 
     /**
-     * The index to the processor that is to be used for scheduling a job.
+     * The processors in use ordered by the end time of their last job.
      */
-    private int mCurrentProcessorIndex;
+    private TreeSet<Processor> mByEndTime;
+
+    /**
+     * The processors with idle gaps ordered by their longest gap.
+     */
+    private TreeSet<Processor> mByGap;
+
+    /**
+     * The processor that is to be used for scheduling a job. It is not yet
+     * in use if it is not in the list of processors.
+     */
+    private Processor mCurrentProcessor;
 
     /**
      * The logical name assigned to the site.
@@ -56,10 +95,7 @@ public class Site {
      * @param name  the name to be assigned to the site.
      */
     public Site( String name ) {
-        mName          = name;
-        mNumProcessors = 0;
-        mProcessors    = new LinkedList();
-        mCurrentProcessorIndex = 0;
+        this( name, 0 );
     }
 
     /**
@@ -71,8 +107,10 @@ public class Site {
     public Site( String name, int num ){
         mName          = name;
         mNumProcessors = num;
-        mCurrentProcessorIndex = -1;
-        mProcessors    = new LinkedList( );
+        mCurrentProcessor = null;
+        mProcessors    = new ArrayList<Processor>();
+        mByEndTime     = new TreeSet<Processor>( END_TIME_COMPARATOR );
+        mByGap         = new TreeSet<Processor>( GAP_COMPARATOR );
     }
 
 
@@ -85,30 +123,46 @@ public class Site {
      * @return long
      */
     public long getAvailableTime( long start ){
-        int num = 0;
-
-        //each processor is checked for start of list
-        long result  = Long.MAX_VALUE;
-        long current;
-        ListIterator it;
-        for( it = mProcessors.listIterator( ); it.hasNext(); num++ ){
-            Processor p = ( Processor ) it.next();
-            current     = p.getAvailableTime( start );
+        return getAvailableTime( start, Long.MAX_VALUE );
+    }
+
+    /**
+     * Returns the earliest time at which a job of a given duration can start
+     * on the site, and tentatively schedules the job on the processor that
+     * gives that time. It is insertion based scheduling policy.
+     *
+     * @param start     the time at which to start the search.
+     * @param duration  the duration of the job.
+     *
+     * @return long
+     */
+    public long getAvailableTime( long start, long duration ){
+        long result = Long.MAX_VALUE;
+        mCurrentProcessor = null;
+
+        //the processor that frees up first
+        if( !mByEndTime.isEmpty() ){
+            mCurrentProcessor = mByEndTime.first();
+            result = mCurrentProcessor.getAvailableTime( start );
+        }
+
+        //an earlier start in a gap on the processors with long enough gaps
+        for( Iterator<Processor> it = mByGap.descendingIterator(); it.hasNext() && result > start; ){
+            Processor p = it.next();
+            if( p.getLongestGap() < duration ){
+                break;
+            }
+            long current = p.getAvailableTime( start, duration, result );
             if( current < result ){
-                //tentatively schedule a job on the processor
                 result = current;
-                mCurrentProcessorIndex = num;
+                mCurrentProcessor = p;
             }
         }
 
-        if( result > start && num < mNumProcessors ){
+        if( result > start && mProcessors.size() < mNumProcessors ){
             //tentatively schedule a job to an unused processor as yet.
             result = start;
-            mCurrentProcessorIndex = num++;
-            //if using a normal iterator
-            //could use addLast() method
-            it.add( new Processor () );
-
+            mCurrentProcessor = new Processor( mProcessors.size() );
         }
 
         //sanity check
@@ -128,15 +182,26 @@ public class Site {
      */
     public void scheduleJob( long start, long end ){
         //sanity check
-        if(  mCurrentProcessorIndex == -1 ){
+        if(  mCurrentProcessor == null ){
             throw new RuntimeException( "Invalid State. The job needs to be tentatively scheduled first!" );
         }
 
-        Processor p = ( Processor )mProcessors.get( mCurrentProcessorIndex );
+        Processor p = mCurrentProcessor;
+        if( p.getID() == mProcessors.size() ){
+            mProcessors.add( p );
+        }
+        else{
+            mByEndTime.remove( p );
+            mByGap.remove( p );
+        }
         p.scheduleJob( start, end );
+        mByEndTime.add( p );
+        if( p.getLongestGap() > 0 ){
+            mByGap.add( p );
+        }
 
-        //reset the index
-        mCurrentProcessorIndex = -1;
+        //reset the processor
+        mCurrentProcessor = null;
     }
 
 
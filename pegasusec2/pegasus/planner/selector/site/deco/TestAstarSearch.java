@@ -0,0 +1,210 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the A* instance type search against an exhaustive search over all
+ * the configurations of small random workflows.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestAstarSearch {
+
+    /**
+     * The hourly prices of the instance types.
+     */
+    private static final float[] PRICES = { 0.06f, 0.12f, 0.24f, 0.48f };
+
+    /**
+     * Creates a random workflow, where each task has up to two parents
+     * among the tasks created before it.
+     *
+     * @param tasks  the number of tasks.
+     * @param r      the random number generator.
+     *
+     * @return the workflow
+     */
+    public static Graph createWorkflow( int tasks, Random r ){
+        Graph g = new MapGraph();
+        for( int i = 0; i < tasks; i++ ){
+            g.addNode( new GraphNode( "ID" + i, "ID" + i ) );
+        }
+        for( int i = 1; i < tasks; i++ ){
+            int p = r.nextInt( i );
+            g.addEdge( "ID" + p, "ID" + i );
+            int q = r.nextInt( i );
+            if( q != p && r.nextBoolean() ){
+                g.addEdge( "ID" + q, "ID" + i );
+            }
+        }
+        return g;
+    }
+
+    /**
+     * Creates a random problem for a workflow, with a deadline between the
+     * makespans of the fastest and the slowest configurations.
+     *
+     * @param workflow  the workflow.
+     * @param r         the random number generator.
+     *
+     * @return the problem
+     */
+    public static DecoProblem createProblem( Graph workflow, Random r ){
+        DecoProblem problem = new DecoProblem( workflow );
+        int n = problem.size();
+        for( int t = 0; t < DecoProblem.NUM_TYPES; t++ ){
+            problem.setPrice( DecoProblem.TYPES[ t ], PRICES[ t ] );
+        }
+        for( int i = 0; i < n; i++ ){
+            float base = 100 + r.nextInt( 900 );
+            for( int t = 0; t < DecoProblem.NUM_TYPES; t++ ){
+                //some tasks cannot run on the smallest type
+                if( t == 0 && r.nextInt( 5 ) == 0 ){
+                    continue;
+                }
+                problem.setRuntime( i, DecoProblem.TYPES[ t ], base / ( 1 + t * ( 0.5f + r.nextFloat() ) ) );
+            }
+        }
+        float[] finish = new float[ n ];
+        byte[] slowest = new byte[ n ];
+        byte[] fastest = new byte[ n ];
+        for( int i = 0; i < n; i++ ){
+            slowest[ i ] = (byte)( problem.isAvailable( i, 0 ) ? 0 : 1 );
+            fastest[ i ] = (byte)problem.getFastestType( i );
+        }
+        float low  = problem.getMakespan( fastest, finish );
+        float high = problem.getMakespan( slowest, finish );
+        problem.setDeadline( low + r.nextFloat() * ( high - low ), 1 );
+        return problem;
+    }
+
+    /**
+     * Returns the cost of the cheapest configuration that meets the deadline,
+     * by enumerating all the configurations.
+     *
+     * @param problem  the problem.
+     *
+     * @return the cost, or -1 if no configuration meets the deadline.
+     */
+    public static float exhaustiveSearch( DecoProblem problem ){
+        int n = problem.size();
+        byte[] configuration = new byte[ n ];
+        float[] finish = new float[ n ];
+        float best = -1;
+        long count = 1;
+        for( int i = 0; i < n; i++ ){
+            count *= DecoProblem.NUM_TYPES;
+        }
+        for( long c = 0; c < count; c++ ){
+            long v = c;
+            boolean available = true;
+            for( int i = 0; i < n; i++ ){
+                configuration[ i ] = (byte)( v % DecoProblem.NUM_TYPES );
+                v /= DecoProblem.NUM_TYPES;
+                available = available && problem.isAvailable( i, configuration[ i ] );
+            }
+            if( !available || problem.getMakespan( configuration, finish ) > problem.getDeadline() ){
+                continue;
+            }
+            float cost = problem.getCost( configuration );
+            if( best == -1 || cost < best ){
+                best = cost;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments are ignored.
+     */
+    public static void main( String[] args ){
+        Random r = new Random( 42 );
+        float[] finish = new float[ 16 ];
+        for( int run = 0; run < 200; run++ ){
+            DecoProblem problem = createProblem( createWorkflow( 1 + r.nextInt( 7 ), r ), r );
+            float expected = exhaustiveSearch( problem );
+            for( int threads : new int[]{ 1, 4 } ){
+                AstarSearch search = new AstarSearch( problem, threads, AstarSearch.DEFAULT_EXPANSION_LIMIT );
+                byte[] best = search.search();
+                if( expected == -1 ){
+                    check( best == null, "Run " + run + ": found a solution for an infeasible problem" );
+                    continue;
+                }
+                check( best != null, "Run " + run + ": no solution found" );
+                check( problem.getMakespan( best, finish ) <= problem.getDeadline(),
+                       "Run " + run + ": solution misses the deadline" );
+                check( Math.abs( problem.getCost( best ) - expected ) <= 1e-5 * expected,
+                       "Run " + run + ": cost " + problem.getCost( best ) + " expected " + expected );
+                check( search.getGap() == 0, "Run " + run + ": search did not complete" );
+
+                //the anytime search with a timeout that is not hit
+                search.setTimeout( 60000 );
+                best = search.search();
+                check( best != null && Math.abs( problem.getCost( best ) - expected ) <= 1e-5 * expected,
+                       "Run " + run + ": anytime search did not find the optimum" );
+                check( !search.isTimedOut(), "Run " + run + ": anytime search timed out" );
+            }
+        }
+
+        //the timeout covers the greedy phases on a long chain, whose
+        //critical path takes many upgrades to speed up
+        int n = 20000;
+        Graph chain = new MapGraph();
+        for( int i = 0; i < n; i++ ){
+            chain.addNode( new GraphNode( "ID" + i, "ID" + i ) );
+            if( i > 0 ){
+                chain.addEdge( "ID" + ( i - 1 ), "ID" + i );
+            }
+        }
+        DecoProblem problem = createProblem( chain, r );
+        finish = new float[ n ];
+        byte[] fastest = new byte[ n ];
+        for( int i = 0; i < n; i++ ){
+            fastest[ i ] = (byte)problem.getFastestType( i );
+        }
+        problem.setDeadline( problem.getMakespan( fastest, finish ) * 1.01f, 1 );
+        AstarSearch search = new AstarSearch( problem, 1, AstarSearch.DEFAULT_EXPANSION_LIMIT );
+        search.setArchive( new ParetoArchive() );
+        search.setTimeout( 200 );
+        long start = System.currentTimeMillis();
+        byte[] best = search.search();
+        long elapsed = System.currentTimeMillis() - start;
+        check( search.isTimedOut(), "Chain: search did not time out" );
+        check( elapsed < 5000, "Chain: search took " + elapsed + " ms with a timeout of 200 ms" );
+        check( best != null && problem.getMakespan( best, finish ) <= problem.getDeadline(),
+               "Chain: solution misses the deadline" );
+
+        //without time left, the remaining tasks get their fastest types
+        best = search.initialFeasible( 0 );
+        check( best != null && Arrays.equals( best, fastest ), "Chain: fastest types not assigned" );
+
+        System.out.println( "TestAstarSearch passed" );
+    }
+}
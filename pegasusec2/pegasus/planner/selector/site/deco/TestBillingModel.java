@@ -0,0 +1,157 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the billing of instances and the packing of jobs on instances, on
+ * small hand checked schedules and on random schedules.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestBillingModel {
+
+    /**
+     * The hourly prices of the instance types.
+     */
+    private static final float[] PRICES = { 0.1f, 0.2f, 0.4f, 0.8f };
+
+    /**
+     * Checks that a packing is a valid assignment of the jobs to instances,
+     * and that its cost is that of the instances.
+     *
+     * @param model    the billing model.
+     * @param packing  the packing.
+     * @param sites    the site of each job.
+     * @param types    the instance type of each job.
+     * @param start    the start time of each job.
+     * @param finish   the finish time of each job.
+     * @param label    the label for the error messages.
+     */
+    private static void checkPacking( BillingModel model, BillingModel.Packing packing, String[] sites, int[] types,
+                                      long[] start, long[] finish, String label ){
+        int n = start.length;
+        int instances = packing.getInstanceCount();
+        check( instances <= n, label + ": more instances than jobs" );
+        double cost = 0;
+        for( int vm = 0; vm < instances; vm++ ){
+            List<Integer> jobs = new ArrayList<Integer>();
+            long launch = Long.MAX_VALUE, end = Long.MIN_VALUE;
+            int type = -2;
+            for( int j = 0; j < n; j++ ){
+                if( packing.getInstance( j ) != vm ){
+                    continue;
+                }
+                check( sites[ j ].equals( packing.getSite( vm ) ), label + ": job " + j + " on an instance of another site" );
+                check( type == -2 || type == types[ j ], label + ": jobs of two types on an instance" );
+                type = types[ j ];
+                for( int k : jobs ){
+                    check( finish[ k ] <= start[ j ] || finish[ j ] <= start[ k ],
+                           label + ": jobs " + k + " and " + j + " overlap on instance " + vm );
+                }
+                jobs.add( j );
+                launch = Math.min( launch, start[ j ] );
+                end    = Math.max( end, finish[ j ] );
+            }
+            check( !jobs.isEmpty(), label + ": instance " + vm + " without jobs" );
+            check( packing.getLaunch( vm ) == launch, label + ": launch of instance " + vm );
+            check( packing.getEnd( vm ) == end, label + ": end of instance " + vm );
+            cost += model.getBilledCost( type, end - launch );
+        }
+        check( Math.abs( packing.getCost() - cost ) <= 1e-4 * Math.max( 1, cost ),
+               label + ": cost " + packing.getCost() + " expected " + cost );
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments, ignored.
+     */
+    public static void main( String[] args ){
+        //billing of a single instance
+        BillingModel hourly = new BillingModel( PRICES, BillingModel.DEFAULT_BILLING_PERIOD );
+        check( hourly.getBilledPeriods( 0 ) == 1 && hourly.getBilledPeriods( 1 ) == 1 &&
+               hourly.getBilledPeriods( 3600 ) == 1 && hourly.getBilledPeriods( 3601 ) == 2, "Hourly periods" );
+        check( hourly.getPeriodPrice( -1 ) == 0 && hourly.getBilledCost( -1, 10000 ) == 0, "Site without type is billed" );
+        check( Math.abs( hourly.getBilledCost( 2, 7201 ) - 1.2f ) < 1e-6, "Hourly cost" );
+        BillingModel halfHourly = new BillingModel( PRICES, 1800 );
+        check( Math.abs( halfHourly.getPeriodPrice( 3 ) - 0.4f ) < 1e-6, "Half hourly price" );
+        check( Math.abs( halfHourly.getBilledCost( 3, 2000 ) - 0.8f ) < 1e-6, "Half hourly cost" );
+        try{
+            new BillingModel( PRICES, 0 );
+            check( false, "Empty billing period accepted" );
+        }
+        catch( IllegalArgumentException e ){
+            //expected
+        }
+
+        //a job that fits in the paid hour goes on the same instance, and so
+        //does one that needs another hour, as a new instance is no cheaper
+        String[] sites = { "a", "a", "a", "b" };
+        int[] types = { 1, 1, 1, 1 };
+        long[] start  = {    0, 2000, 4000,  100 };
+        long[] finish = { 1000, 3000, 4500,  200 };
+        BillingModel.Packing p = hourly.pack( sites, types, start, finish );
+        checkPacking( hourly, p, sites, types, start, finish, "Leftover" );
+        check( p.getInstance( 0 ) == p.getInstance( 1 ), "Leftover of the paid hour not used" );
+        check( p.getInstance( 0 ) == p.getInstance( 2 ), "Instance launched though no cheaper" );
+        check( p.getInstanceCount() == 2, "Leftover: " + p.getInstanceCount() + " instances" );
+        check( Math.abs( p.getCost() - 0.6f ) < 1e-6, "Leftover: cost " + p.getCost() );
+
+        //of two idle instances, the one whose paid time ends soonest
+        sites  = new String[]{ "a", "a", "a", "a" };
+        types  = new int[]{ 0, 0, 0, 0 };
+        start  = new long[]{    0,    0, 4000, 4200 };
+        finish = new long[]{ 3900, 1000, 4100, 4300 };
+        p = hourly.pack( sites, types, start, finish );
+        checkPacking( hourly, p, sites, types, start, finish, "Soonest" );
+        check( p.getInstanceCount() == 2, "Soonest: " + p.getInstanceCount() + " instances" );
+        check( p.getInstance( 2 ) == p.getInstance( 0 ) && p.getInstance( 3 ) == p.getInstance( 0 ),
+               "Soonest: job not put on the instance paid till 7200" );
+
+        //random schedules
+        Random r = new Random( 42 );
+        for( int run = 0; run < 300; run++ ){
+            int n = 1 + r.nextInt( 40 );
+            BillingModel model = new BillingModel( PRICES, 600 + r.nextInt( 4000 ) );
+            sites  = new String[ n ];
+            types  = new int[ n ];
+            start  = new long[ n ];
+            finish = new long[ n ];
+            double separate = 0;
+            for( int j = 0; j < n; j++ ){
+                int site = r.nextInt( 3 );
+                sites[ j ]  = "site" + site;
+                types[ j ]  = site - 1;
+                start[ j ]  = r.nextInt( 20000 );
+                finish[ j ] = start[ j ] + r.nextInt( 5000 );
+                separate += model.getBilledCost( types[ j ], finish[ j ] - start[ j ] );
+            }
+            p = model.pack( sites, types, start, finish );
+            checkPacking( model, p, sites, types, start, finish, "Run " + run );
+            //never worse than an instance per job
+            check( p.getCost() <= separate + 1e-4, "Run " + run + ": cost " + p.getCost() + " above " + separate );
+        }
+        System.out.println( "TestBillingModel passed" );
+    }
+}
@@ -0,0 +1,196 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the budget constrained search against the enumeration of all the
+ * configurations of small random workflows.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestBudgetSearch {
+
+    /**
+     * Returns the shortest makespan of the configurations within a budget,
+     * by enumerating all the configurations.
+     *
+     * @param problem  the problem.
+     * @param budget   the budget in dollars.
+     *
+     * @return the makespan, or -1 if no configuration is within the budget.
+     */
+    private static float exhaustiveSearch( DecoProblem problem, float budget ){
+        int n = problem.size();
+        byte[] configuration = new byte[ n ];
+        float[] finish = new float[ n ];
+        float best = -1;
+        long count = 1;
+        for( int i = 0; i < n; i++ ){
+            count *= DecoProblem.NUM_TYPES;
+        }
+        for( long c = 0; c < count; c++ ){
+            long v = c;
+            boolean available = true;
+            for( int i = 0; i < n; i++ ){
+                configuration[ i ] = (byte)( v % DecoProblem.NUM_TYPES );
+                v /= DecoProblem.NUM_TYPES;
+                available = available && problem.isAvailable( i, configuration[ i ] );
+            }
+            if( !available || problem.getCost( configuration ) > budget ){
+                continue;
+            }
+            float makespan = problem.getMakespan( configuration, finish );
+            if( best == -1 || makespan < best ){
+                best = makespan;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments, ignored.
+     */
+    public static void main( String[] args ){
+        Random r = new Random( 42 );
+        for( int run = 0; run < 200; run++ ){
+            int n = 1 + r.nextInt( 7 );
+            Graph workflow = TestAstarSearch.createWorkflow( n, r );
+            DecoProblem problem = TestAstarSearch.createProblem( workflow, r );
+            float[] finish = new float[ n ];
+            byte[] cheapest = new byte[ n ];
+            byte[] fastest  = new byte[ n ];
+            for( int i = 0; i < n; i++ ){
+                cheapest[ i ] = (byte)problem.getCheapestType( i );
+                fastest[ i ]  = (byte)problem.getFastestType( i );
+            }
+            float low  = problem.getCost( cheapest );
+            float high = problem.getCost( fastest );
+            float budget = low + r.nextFloat() * ( high - low );
+            String label = "Run " + run + " with " + n + " tasks and budget " + budget;
+
+            ParetoArchive archive = new ParetoArchive();
+            BudgetSearch search = new BudgetSearch( problem, budget );
+            search.setArchive( archive );
+            byte[] configuration = search.search();
+            check( configuration != null, label + ": no configuration" );
+            float cost = problem.getCost( configuration );
+            float makespan = problem.getMakespan( configuration, finish );
+            check( cost <= budget * ( 1 + 1e-5f ), label + ": cost " + cost + " exceeds the budget" );
+            check( Math.abs( search.getCost() - cost ) <= 1e-4f * Math.max( 1, cost ), label + ": reported cost " + search.getCost() );
+            check( search.getMakespan() == makespan, label + ": reported makespan " + search.getMakespan() + " expected " + makespan );
+            check( search.getEvaluations() <= (long)( search.getUpgrades() + 1 ) * BudgetSearch.MAX_EVALUATIONS_PER_STEP,
+                   label + ": too many evaluations" );
+
+            //the greedy search is no better than the optimum, and no worse
+            //than the cheapest configuration
+            float optimum = exhaustiveSearch( problem, cost * ( 1 + 1e-5f ) );
+            check( makespan >= optimum * ( 1 - 1e-5f ), label + ": makespan " + makespan + " below the optimum " + optimum );
+            check( makespan <= problem.getMakespan( cheapest, finish ), label + ": slower than the cheapest configuration" );
+
+            //the archive holds the configurations on the upgrade path, which
+            //do not dominate each other and are no better than the optimum
+            boolean archived = false;
+            for( ParetoArchive.Entry e : archive.getEntries() ){
+                archived = archived || Arrays.equals( e.getConfiguration(), configuration );
+                check( e.getCost() <= budget * ( 1 + 1e-5f ), label + ": archived configuration exceeds the budget" );
+                check( e.getMakespan() == problem.getMakespan( e.getConfiguration(), finish ),
+                       label + ": archived makespan " + e.getMakespan() );
+                check( e.getMakespan() >= exhaustiveSearch( problem, e.getCost() * ( 1 + 1e-5f ) ) * ( 1 - 1e-5f ),
+                       label + ": archived makespan below the optimum" );
+            }
+            check( archived, label + ": result not in the archive" );
+
+            //a budget below the cheapest configuration
+            BudgetSearch none = new BudgetSearch( problem, low * 0.99f );
+            check( none.search() == null, label + ": configuration below the cheapest cost" );
+            check( none.getCost() == low && none.getMakespan() == -1, label + ": reported cost without configuration" );
+        }
+
+        //on a chain with an unlimited budget, every task is upgraded to its
+        //fastest type
+        Graph chain = new MapGraph();
+        int n = 20;
+        for( int i = 0; i < n; i++ ){
+            chain.addNode( new GraphNode( "ID" + i, "ID" + i ) );
+            if( i > 0 ){
+                chain.addEdge( "ID" + ( i - 1 ), "ID" + i );
+            }
+        }
+        DecoProblem problem = TestAstarSearch.createProblem( chain, r );
+        byte[] fastest = new byte[ n ];
+        for( int i = 0; i < n; i++ ){
+            fastest[ i ] = (byte)problem.getFastestType( i );
+        }
+        BudgetSearch search = new BudgetSearch( problem, Float.MAX_VALUE );
+        byte[] configuration = search.search();
+        float[] finish = new float[ n ];
+        check( search.getMakespan() == problem.getMakespan( fastest, finish ),
+               "Chain: makespan " + search.getMakespan() + " expected " + problem.getMakespan( fastest, finish ) );
+        for( int i = 0; i < n; i++ ){
+            check( problem.getRuntime( i, configuration[ i ] ) == problem.getRuntime( i, fastest[ i ] ),
+                   "Chain: task " + i + " not on its fastest type" );
+        }
+
+        //on two parallel tasks of the same runtimes, no single upgrade reduces
+        //the makespan, so none is bought
+        Graph parallel = new MapGraph();
+        for( String id : new String[]{ "a", "b", "c", "d" } ){
+            parallel.addNode( new GraphNode( id, id ) );
+        }
+        parallel.addEdge( "a", "b" );
+        parallel.addEdge( "a", "c" );
+        parallel.addEdge( "b", "d" );
+        parallel.addEdge( "c", "d" );
+        problem = new DecoProblem( parallel );
+        for( int t = 0; t < DecoProblem.NUM_TYPES; t++ ){
+            problem.setPrice( DecoProblem.TYPES[ t ], 0.06f * ( 1 << t ) );
+            for( int i = 0; i < problem.size(); i++ ){
+                //the fork and join tasks gain nothing from faster types
+                problem.setRuntime( i, DecoProblem.TYPES[ t ], ( i == 0 || i == 3 ) ? 100 : 1000f / ( 1 + t ) );
+            }
+        }
+        byte[] cheapest = new byte[ problem.size() ];
+        for( int i = 0; i < cheapest.length; i++ ){
+            cheapest[ i ] = (byte)problem.getCheapestType( i );
+        }
+        float low = problem.getCost( cheapest );
+        search = new BudgetSearch( problem, low + problem.getCost( 1, 1 ) );
+        configuration = search.search();
+        check( Arrays.equals( configuration, cheapest ) && search.getUpgrades() == 0,
+               "Parallel: upgraded to " + Arrays.toString( configuration ) );
+        check( search.getCost() == low, "Parallel: reported cost " + search.getCost() + " expected " + low );
+
+        //with enough budget for both, the cost reported is summed up again
+        search = new BudgetSearch( problem, Float.MAX_VALUE );
+        configuration = search.search();
+        check( search.getCost() == problem.getCost( configuration ),
+               "Parallel: reported cost " + search.getCost() + " expected " + problem.getCost( configuration ) );
+        System.out.println( "TestBudgetSearch passed" );
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import edu.isi.pegasus.common.logging.LogManager;
+import edu.isi.pegasus.common.logging.format.Simple;
+import edu.isi.pegasus.common.logging.logger.Default;
+
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the admission of the members of an ensemble against an enumeration
+ * of all the subsets of the members, and the checks and the reasons given
+ * for the members that are not admitted.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestEnsemblePlanner {
+
+    /**
+     * Returns the largest sum of the priorities of a subset of the members
+     * whose costs, rounded up to cents, fit in the budget.
+     *
+     * @param members  the members with their configurations set.
+     * @param budget   the budget in dollars.
+     *
+     * @return the sum of the priorities
+     */
+    private static float enumerate( List<EnsembleMember> members, float budget ){
+        int capacity = (int)Math.floor( budget / EnsemblePlanner.BUDGET_UNIT );
+        float best = 0;
+        for( int subset = 0; subset < ( 1 << members.size() ); subset++ ){
+            long cost = 0;
+            float priority = 0;
+            boolean valid = true;
+            for( int i = 0; i < members.size(); i++ ){
+                if( ( subset & ( 1 << i ) ) == 0 ){
+                    continue;
+                }
+                EnsembleMember member = members.get( i );
+                if( !member.isFeasible() || member.getPriority() <= 0 ){
+                    valid = false;
+                    break;
+                }
+                cost += (long)Math.ceil( member.getCost() / EnsemblePlanner.BUDGET_UNIT );
+                priority += member.getPriority();
+            }
+            if( valid && cost <= capacity && priority > best ){
+                best = priority;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Creates a member with a random workflow, and searches for its cheapest
+     * configuration.
+     *
+     * @param name  the name of the member.
+     * @param r     the random number generator.
+     *
+     * @return the member
+     */
+    private static EnsembleMember createMember( String name, Random r ){
+        Graph workflow = TestAstarSearch.createWorkflow( 1 + r.nextInt( 6 ), r );
+        EnsembleMember member = new EnsembleMember( name, r.nextInt( 10 ), workflow );
+        member.setProblem( TestAstarSearch.createProblem( workflow, r ) );
+        member.setConfiguration( new AstarSearch( member.getProblem(), 1, AstarSearch.DEFAULT_EXPANSION_LIMIT ).search() );
+        return member;
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments are ignored.
+     */
+    public static void main( String[] args ){
+        LogManager logger = new Default();
+        logger.initialize( new Simple(), null );
+        logger.logEventStart( "test.ensemble", "ensemble", "0", LogManager.DEBUG_MESSAGE_LEVEL );
+        EnsemblePlanner planner = new EnsemblePlanner( null, 1, logger );
+        Random r = new Random( 7 );
+
+        for( int run = 0; run < 100; run++ ){
+            List<EnsembleMember> members = new ArrayList<EnsembleMember>();
+            for( int i = 0; i < 1 + r.nextInt( 8 ); i++ ){
+                members.add( createMember( "member-" + i, r ) );
+            }
+            planner.checkDeadlines( members );
+
+            float budget = r.nextFloat() * 2;
+            float priority = planner.admit( members, budget );
+            check( Math.abs( priority - enumerate( members, budget ) ) < 1e-4,
+                   "Run " + run + ": priority " + priority + " expected " + enumerate( members, budget ) );
+
+            float cost = 0;
+            float admitted = 0;
+            for( EnsembleMember member : members ){
+                if( member.isAdmitted() ){
+                    check( member.getRejection() == null, "Run " + run + ": admitted member has a rejection" );
+                    cost += member.getCost();
+                    admitted += member.getPriority();
+                }
+                else{
+                    check( member.getRejection() != null, "Run " + run + ": rejected member has no reason" );
+                    if( !member.isFeasible() ){
+                        check( member.getRejection().contains( "deadline" ),
+                               "Run " + run + ": wrong reason " + member.getRejection() );
+                    }
+                }
+            }
+            check( cost <= budget + 1e-4, "Run " + run + ": cost " + cost + " exceeds the budget " + budget );
+            check( admitted == priority, "Run " + run + ": admitted priority does not match" );
+        }
+
+        //members without a deadline are rejected up front
+        for( float deadline : new float[]{ -1, 0, Float.MAX_VALUE } ){
+            List<EnsembleMember> members = new ArrayList<EnsembleMember>();
+            members.add( createMember( "member", r ) );
+            members.get( 0 ).getProblem().setDeadline( deadline, 1 );
+            boolean thrown = false;
+            try{
+                planner.checkDeadlines( members );
+            }
+            catch( RuntimeException e ){
+                thrown = e.getMessage().contains( Algorithm.DEADLINE_PROPERTY );
+            }
+            check( thrown, "Deadline " + deadline + " was not rejected" );
+        }
+        System.out.println( "TestEnsemblePlanner passed" );
+    }
+}
@@ -0,0 +1,185 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the histogram algebra against direct computations on the grid, and
+ * the probabilistic deadline evaluator of the search against a full
+ * evaluation of every configuration.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestHistogram {
+
+    /**
+     * The tolerance for comparing probabilities.
+     */
+    private static final double EPSILON = 1e-9;
+
+    /**
+     * Creates a random histogram on a grid of width 1.
+     *
+     * @param points  the number of points.
+     * @param r       the random number generator.
+     *
+     * @return the histogram
+     */
+    private static Histogram random( int points, Random r ){
+        double[] mass = new double[ points ];
+        double total = 0;
+        for( int i = 0; i < points; i++ ){
+            mass[ i ] = r.nextDouble();
+            total += mass[ i ];
+        }
+        for( int i = 0; i < points; i++ ){
+            mass[ i ] /= total;
+        }
+        return new Histogram( 1, r.nextInt( 50 ), mass );
+    }
+
+    /**
+     * Returns the mass of a histogram at a grid point of width 1.
+     *
+     * @param h      the histogram.
+     * @param point  the grid point.
+     *
+     * @return the mass
+     */
+    private static double mass( Histogram h, long point ){
+        return h.getCDF( point ) - h.getCDF( point - 1 );
+    }
+
+    /**
+     * Checks the sum and the maximum of two histograms against the direct
+     * convolution and the product of the CDFs.
+     *
+     * @param a  the first histogram.
+     * @param b  the second histogram.
+     */
+    private static void checkAlgebra( Histogram a, Histogram b ){
+        Histogram sum = a.add( b, Integer.MAX_VALUE );
+        Histogram max = a.max( b, Integer.MAX_VALUE );
+        check( Math.abs( sum.getMean() - a.getMean() - b.getMean() ) <= EPSILON * sum.getMean(), "Mean of the sum" );
+        long low  = (long)( a.getMin() + b.getMin() );
+        long high = (long)( a.getMax() + b.getMax() );
+        for( long x = low - 1; x <= high + 1; x++ ){
+            double expected = 0;
+            for( long i = (long)a.getMin(); i <= (long)a.getMax(); i++ ){
+                expected += mass( a, i ) * mass( b, x - i );
+            }
+            check( Math.abs( mass( sum, x ) - expected ) <= EPSILON, "Mass of the sum at " + x );
+            double cdf = a.getCDF( x ) * b.getCDF( x );
+            check( Math.abs( max.getCDF( x ) - cdf ) <= EPSILON, "CDF of the maximum at " + x );
+        }
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments are ignored.
+     */
+    public static void main( String[] args ){
+        Random r = new Random( 5 );
+
+        //direct and FFT convolutions
+        checkAlgebra( random( 10, r ), random( 20, r ) );
+        checkAlgebra( random( 300, r ), random( 200, r ) );
+
+        //histograms from samples preserve the mean of the samples, and
+        //differ from the empirical CDF by at most the samples within a width
+        float[] samples = new float[ 5000 ];
+        double sum = 0;
+        for( int i = 0; i < samples.length; i++ ){
+            samples[ i ] = 100 + (float)Math.abs( r.nextGaussian() * 30 );
+            sum += samples[ i ];
+        }
+        Histogram h = Histogram.fromSamples( samples, 0, samples.length, 0.5, 64 );
+        check( h.size() <= 64, "Too many points " + h.size() );
+        check( Math.abs( h.getMean() - sum / samples.length ) <= 1e-6 * sum / samples.length, "Mean of the samples" );
+        for( double x = 100; x < 250; x += 7 ){
+            int below = 0, near = 0;
+            for( float s : samples ){
+                below += ( s <= x ) ? 1 : 0;
+                near  += ( Math.abs( s - x ) <= h.getWidth() ) ? 1 : 0;
+            }
+            check( Math.abs( h.getCDF( x ) - below / (double)samples.length ) <= near / (double)samples.length + EPSILON,
+                   "CDF of the samples at " + x );
+        }
+
+        //the search evaluates only the cone of the varied task, and has to
+        //agree with a full evaluation of every configuration
+        for( int run = 0; run < 100; run++ ){
+            DecoProblem problem = TestAstarSearch.createProblem( TestAstarSearch.createWorkflow( 1 + r.nextInt( 5 ), r ), r );
+            int n = problem.size();
+            RuntimeDistributions distributions = new RuntimeDistributions( n, DecoProblem.NUM_TYPES, 200 );
+            float[] values = distributions.getValues();
+            for( int task = 0; task < n; task++ ){
+                for( int type = 0; type < DecoProblem.NUM_TYPES; type++ ){
+                    for( int s = 0; s < 200; s++ ){
+                        values[ distributions.offset( task, type ) + s ] = problem.isAvailable( task, type ) ?
+                                problem.getRuntime( task, type ) * ( 0.8f + 0.4f * r.nextFloat() ) :
+                                DecoProblem.UNAVAILABLE;
+                    }
+                }
+            }
+            problem.setDeadline( problem.getDeadline(), 0.9f );
+            ProbabilisticEvaluator evaluator = new ProbabilisticEvaluator( problem, distributions, 128 );
+
+            byte[] configuration = new byte[ n ];
+            float[] finish = new float[ n ];
+            float best = -1;
+            for( int c = 0; c < 1 << ( 2 * n ); c++ ){
+                boolean available = true;
+                for( int i = 0; i < n; i++ ){
+                    configuration[ i ] = (byte)( ( c >> ( 2 * i ) ) & 3 );
+                    available = available && problem.isAvailable( i, configuration[ i ] );
+                }
+                if( !available ){
+                    continue;
+                }
+                boolean meets = evaluator.meetsDeadline( configuration, finish );
+                int task = r.nextInt( n );
+                byte[] base = configuration.clone();
+                base[ task ] = (byte)problem.getFastestType( task );
+                check( evaluator.vary( base, task ).meetsDeadline( configuration[ task ] ) == meets,
+                       "Run " + run + ": variation of task " + task + " disagrees" );
+                if( meets && ( best == -1 || problem.getCost( configuration ) < best ) ){
+                    best = problem.getCost( configuration );
+                }
+            }
+
+            AstarSearch search = new AstarSearch( problem, 2, AstarSearch.DEFAULT_EXPANSION_LIMIT );
+            search.setEvaluator( evaluator );
+            byte[] result = search.search();
+            if( best == -1 ){
+                check( result == null, "Run " + run + ": found a solution for an infeasible problem" );
+            }
+            else{
+                check( result != null && evaluator.meetsDeadline( result, finish ), "Run " + run + ": no feasible solution" );
+                check( Math.abs( problem.getCost( result ) - best ) <= 1e-5 * best,
+                       "Run " + run + ": cost " + problem.getCost( result ) + " expected " + best );
+            }
+        }
+        System.out.println( "TestHistogram passed" );
+    }
+}
@@ -0,0 +1,83 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests that the times maintained by <code>IncrementalMakespan</code> under a
+ * random sequence of type changes match a full evaluation of the
+ * configuration, and that a change only visits the affected tasks.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestIncrementalMakespan {
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments are ignored.
+     */
+    public static void main( String[] args ){
+        Random r = new Random( 17 );
+        for( int run = 0; run < 50; run++ ){
+            DecoProblem problem = TestAstarSearch.createProblem( TestAstarSearch.createWorkflow( 1 + r.nextInt( 200 ), r ), r );
+            int n = problem.size();
+            byte[] configuration = new byte[ n ];
+            for( int i = 0; i < n; i++ ){
+                configuration[ i ] = (byte)problem.getFastestType( i );
+            }
+            IncrementalMakespan times = new IncrementalMakespan( problem, configuration );
+            float[] finish = new float[ n ];
+            for( int step = 0; step < 500; step++ ){
+                int task = r.nextInt( n );
+                int type = r.nextInt( DecoProblem.NUM_TYPES );
+                if( !problem.isAvailable( task, type ) ){
+                    continue;
+                }
+                long visits = times.getVisits();
+                configuration[ task ] = (byte)type;
+                times.setType( task, type );
+
+                //only the task and its descendants may be visited
+                int cone = 0;
+                boolean[] affected = new boolean[ n ];
+                affected[ task ] = true;
+                for( int i = task; i < n; i++ ){
+                    for( int p : problem.getParents( i ) ){
+                        affected[ i ] = affected[ i ] || affected[ p ];
+                    }
+                    cone += affected[ i ] ? 1 : 0;
+                }
+                check( times.getVisits() - visits <= cone, "Run " + run + ": visited more than the cone" );
+
+                float makespan = problem.getMakespan( configuration, finish );
+                check( times.getMakespan() == makespan,
+                       "Run " + run + ": makespan " + times.getMakespan() + " expected " + makespan );
+                for( int i = 0; i < n; i++ ){
+                    check( times.getFinishTimes()[ i ] == finish[ i ], "Run " + run + ": finish time of " + i );
+                    check( times.getType( i ) == configuration[ i ], "Run " + run + ": type of " + i );
+                }
+            }
+        }
+        System.out.println( "TestIncrementalMakespan passed" );
+    }
+}
@@ -0,0 +1,138 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import edu.isi.pegasus.planner.catalog.classes.SysInfo;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the round trip of instance type plans through files, their mapping
+ * onto problems, and the warm start of the search from them.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestInstanceTypePlan {
+
+    /**
+     * Returns whether reading a plan file with some contents fails.
+     *
+     * @param file      the file.
+     * @param contents  the contents of the file.
+     *
+     * @return boolean
+     *
+     * @throws IOException in case of error while writing the file.
+     */
+    private static boolean fails( File file, String contents ) throws IOException{
+        FileWriter writer = new FileWriter( file );
+        writer.write( contents );
+        writer.close();
+        try{
+            InstanceTypePlan.read( file );
+            return false;
+        }
+        catch( IOException e ){
+            return true;
+        }
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments, ignored.
+     *
+     * @throws IOException in case of error with the temporary files.
+     */
+    public static void main( String[] args ) throws IOException{
+        Random r = new Random( 42 );
+        File file = File.createTempFile( "plan", InstanceTypePlan.FILE_SUFFIX );
+        float[] finish = new float[ 16 ];
+        for( int run = 0; run < 100; run++ ){
+            int n = 1 + r.nextInt( 7 );
+            DecoProblem problem = TestAstarSearch.createProblem( TestAstarSearch.createWorkflow( n, r ), r );
+            AstarSearch search = new AstarSearch( problem, 1, AstarSearch.DEFAULT_EXPANSION_LIMIT );
+            byte[] optimum = search.search();
+            if( optimum == null ){
+                continue;
+            }
+            float cost = problem.getCost( optimum );
+
+            //the round trip through a file keeps the types of all tasks
+            new InstanceTypePlan( problem, optimum ).write( file );
+            InstanceTypePlan plan = InstanceTypePlan.read( file );
+            check( plan.size() == n, "Run " + run + ": plan has " + plan.size() + " jobs" );
+            byte[] configuration = new byte[ n ];
+            check( plan.apply( problem, configuration ) == n, "Run " + run + ": not all jobs matched" );
+            check( Arrays.equals( configuration, optimum ), "Run " + run + ": configuration differs" );
+
+            //warm started with its own result, the search finds the same cost
+            search.setIncumbent( configuration );
+            byte[] warm = search.search();
+            check( warm != null && Math.abs( problem.getCost( warm ) - cost ) <= 1e-5 * cost,
+                   "Run " + run + ": warm started search found " + ( warm == null ? -1 : problem.getCost( warm ) ) +
+                   " expected " + cost );
+
+            //jobs that are missing or whose type is not available get the
+            //cheapest type, and a warm start that misses the deadline is
+            //repaired
+            InstanceTypePlan partial = new InstanceTypePlan();
+            int expected = 0;
+            for( int i = 0; i < n; i++ ){
+                int type = r.nextInt( DecoProblem.NUM_TYPES + 1 );
+                if( type == DecoProblem.NUM_TYPES ){
+                    continue;
+                }
+                partial.put( problem.getID( i ), DecoProblem.TYPES[ type ] );
+                if( problem.isAvailable( i, type ) ){
+                    expected++;
+                }
+            }
+            partial.put( "unknown", SysInfo.InstanceType.m1xlarge );
+            check( partial.apply( problem, configuration ) == expected, "Run " + run + ": matched jobs" );
+            for( int i = 0; i < n; i++ ){
+                SysInfo.InstanceType type = partial.get( problem.getID( i ) );
+                int ordinal = ( type != null && problem.isAvailable( i, type.ordinal() ) ) ?
+                              type.ordinal() :
+                              problem.getCheapestType( i );
+                check( configuration[ i ] == ordinal, "Run " + run + ": type of task " + i );
+            }
+            search.setIncumbent( configuration );
+            warm = search.search();
+            check( warm != null && problem.getMakespan( warm, finish ) <= problem.getDeadline() &&
+                   Math.abs( problem.getCost( warm ) - cost ) <= 1e-5 * cost,
+                   "Run " + run + ": search warm started from a partial plan" );
+        }
+
+        //malformed files are rejected, comments and blank lines skipped
+        check( !fails( file, "#id\ttype\n\nID1\tm1small\n  # comment\n" ), "Comments not skipped" );
+        check( InstanceTypePlan.read( file ).get( "ID1" ) == SysInfo.InstanceType.m1small, "Type not read" );
+        check( fails( file, "ID1 m1small\n" ), "Line without a tab read" );
+        check( fails( file, "ID1\tm1small\textra\n" ), "Line with three fields read" );
+        check( fails( file, "ID1\tm9huge\n" ), "Unknown type read" );
+        file.delete();
+        System.out.println( "TestInstanceTypePlan passed" );
+    }
+}
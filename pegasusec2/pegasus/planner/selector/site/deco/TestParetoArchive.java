@@ -0,0 +1,168 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the Pareto archive against a pairwise comparison of all the
+ * configurations offered, and the configurations archived by the search.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestParetoArchive {
+
+    /**
+     * Returns whether a point is dominated by, or equal to, another point.
+     *
+     * @param p  the point as cost and makespan.
+     * @param q  the other point.
+     *
+     * @return boolean
+     */
+    private static boolean covers( float[] q, float[] p ){
+        return q[ 0 ] <= p[ 0 ] && q[ 1 ] <= p[ 1 ];
+    }
+
+    /**
+     * Encodes an offer number as a configuration of four tasks.
+     *
+     * @param k  the offer number, below 256.
+     *
+     * @return the configuration
+     */
+    private static byte[] encode( int k ){
+        byte[] result = new byte[ 4 ];
+        for( int i = 0; i < result.length; i++ ){
+            result[ i ] = (byte)( ( k >> ( 2 * i ) ) & 3 );
+        }
+        return result;
+    }
+
+    /**
+     * Decodes the offer number from a configuration.
+     *
+     * @param configuration  the configuration.
+     *
+     * @return the offer number
+     */
+    private static int decode( byte[] configuration ){
+        int result = 0;
+        for( int i = 0; i < configuration.length; i++ ){
+            result |= configuration[ i ] << ( 2 * i );
+        }
+        return result;
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments are ignored.
+     */
+    public static void main( String[] args ){
+        Random r = new Random( 5 );
+        for( int run = 0; run < 300; run++ ){
+            ParetoArchive archive = new ParetoArchive();
+            List<float[]> offered = new ArrayList<float[]>();
+            int offers = 1 + r.nextInt( 200 );
+            int range = 1 + r.nextInt( 50 );
+            for( int k = 0; k < offers; k++ ){
+                float[] p = { r.nextInt( range ), r.nextInt( range ) };
+                boolean expected = true;
+                for( float[] q : offered ){
+                    expected = expected && !covers( q, p );
+                }
+                check( archive.isDominated( p[ 0 ], p[ 1 ] ) == !expected, "Run " + run + ": dominance of offer " + k );
+                check( archive.offer( p[ 0 ], p[ 1 ], encode( k ) ) == expected,
+                       "Run " + run + ": offer " + k );
+                offered.add( p );
+            }
+            check( archive.getOffers() == offers, "Run " + run + ": number of offers" );
+
+            //the frontier is the first of each point not dominated by another
+            List<float[]> frontier = new ArrayList<float[]>();
+            for( int k = 0; k < offered.size(); k++ ){
+                float[] p = offered.get( k );
+                boolean kept = true;
+                for( int j = 0; j < offered.size() && kept; j++ ){
+                    float[] q = offered.get( j );
+                    kept = !( covers( q, p ) && ( q[ 0 ] < p[ 0 ] || q[ 1 ] < p[ 1 ] || j < k ) );
+                }
+                if( kept ){
+                    frontier.add( new float[]{ p[ 0 ], p[ 1 ], k } );
+                }
+            }
+            List<ParetoArchive.Entry> entries = archive.getEntries();
+            check( entries.size() == frontier.size() && archive.size() == frontier.size(),
+                   "Run " + run + ": size " + entries.size() + " expected " + frontier.size() );
+            for( int k = 0; k < entries.size(); k++ ){
+                ParetoArchive.Entry e = entries.get( k );
+                if( k > 0 ){
+                    check( e.getCost() > entries.get( k - 1 ).getCost() &&
+                           e.getMakespan() < entries.get( k - 1 ).getMakespan(),
+                           "Run " + run + ": entries out of order" );
+                }
+                boolean found = false;
+                for( float[] p : frontier ){
+                    found = found || ( p[ 0 ] == e.getCost() && p[ 1 ] == e.getMakespan() &&
+                                       p[ 2 ] == decode( e.getConfiguration() ) );
+                }
+                check( found, "Run " + run + ": entry " + e + " is not on the frontier" );
+            }
+
+            //the cheapest entry within a deadline
+            for( int deadline = -1; deadline <= range; deadline++ ){
+                float[] best = null;
+                for( float[] p : frontier ){
+                    if( p[ 1 ] <= deadline && ( best == null || p[ 0 ] < best[ 0 ] ) ){
+                        best = p;
+                    }
+                }
+                ParetoArchive.Entry e = archive.getCheapest( deadline );
+                check( ( best == null ) ? e == null : e != null && e.getCost() == best[ 0 ],
+                       "Run " + run + ": cheapest within " + deadline );
+            }
+        }
+
+        //the configurations archived by the search have the cost and the
+        //makespan they are archived with
+        for( int run = 0; run < 100; run++ ){
+            DecoProblem problem = TestAstarSearch.createProblem( TestAstarSearch.createWorkflow( 1 + r.nextInt( 7 ), r ), r );
+            ParetoArchive archive = new ParetoArchive();
+            AstarSearch search = new AstarSearch( problem, 1, AstarSearch.DEFAULT_EXPANSION_LIMIT );
+            search.setArchive( archive );
+            byte[] best = search.search();
+            float[] finish = new float[ problem.size() ];
+            for( ParetoArchive.Entry e : archive.getEntries() ){
+                //the search sums the cost task by task
+                check( Math.abs( problem.getCost( e.getConfiguration() ) - e.getCost() ) <= 1e-5 * e.getCost(),
+                       "Search run " + run + ": cost" );
+                check( problem.getMakespan( e.getConfiguration(), finish ) == e.getMakespan(), "Search run " + run + ": makespan" );
+            }
+            if( best != null ){
+                ParetoArchive.Entry e = archive.getCheapest( problem.getDeadline() );
+                check( e != null && e.getCost() <= problem.getCost( best ), "Search run " + run + ": best not archived" );
+            }
+        }
+        System.out.println( "TestParetoArchive passed" );
+    }
+}
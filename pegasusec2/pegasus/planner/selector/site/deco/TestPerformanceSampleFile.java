@@ -0,0 +1,128 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests that the performance samples read from the csv files survive a round
+ * trip through the binary format, and that malformed files are rejected.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestPerformanceSampleFile {
+
+    /**
+     * Returns whether mapping a file fails with an IOException.
+     *
+     * @param file  the file.
+     *
+     * @return boolean
+     */
+    private static boolean isRejected( File file ){
+        try{
+            PerformanceSampleFile.map( file );
+            return false;
+        }
+        catch( IOException e ){
+            return true;
+        }
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments are ignored.
+     *
+     * @throws IOException in case of error while writing the test files.
+     */
+    public static void main( String[] args ) throws IOException{
+        Random r = new Random( 3 );
+        int types = 4, samples = 250;
+
+        File directory = File.createTempFile( "perf", "" );
+        directory.delete();
+        directory.mkdir();
+        float[][] expected = new float[ PerformanceSamples.METRICS.length ][ types * samples ];
+        for( int m = 0; m < expected.length; m++ ){
+            PrintWriter pw = new PrintWriter( new File( directory, PerformanceSamples.METRICS[ m ] + PerformanceSampleFile.CSV_SUFFIX ) );
+            for( int i = 0; i < expected[ m ].length; i++ ){
+                expected[ m ][ i ] = r.nextFloat() * 1000;
+                pw.println( expected[ m ][ i ] );
+                if( i % 100 == 0 ){
+                    //blank lines are skipped
+                    pw.println();
+                }
+            }
+            pw.close();
+        }
+
+        PerformanceSamples csv = PerformanceSampleFile.readCSV( directory, types );
+        File binary = new File( directory, "samples.bin" );
+        PerformanceSampleFile.write( csv, binary );
+        check( binary.length() == PerformanceSampleFile.HEADER_SIZE + 4L * expected.length * types * samples,
+               "Unexpected file size " + binary.length() );
+
+        PerformanceSamples mapped = PerformanceSampleFile.map( binary );
+        check( mapped.getTypeCount() == types && mapped.getSampleCount() == samples, "Unexpected dimensions" );
+        float[] into = new float[ samples ];
+        for( int m = 0; m < expected.length; m++ ){
+            for( int t = 0; t < types; t++ ){
+                mapped.get( m, t, into );
+                for( int s = 0; s < samples; s++ ){
+                    float value = expected[ m ][ t * samples + s ];
+                    check( csv.get( m, t, s ) == value, "csv value " + m + "," + t + "," + s );
+                    check( mapped.get( m, t, s ) == value, "mapped value " + m + "," + t + "," + s );
+                    check( into[ s ] == value, "copied value " + m + "," + t + "," + s );
+                }
+            }
+        }
+
+        //a truncated file and a file with a wrong magic are rejected
+        File truncated = new File( directory, "truncated.bin" );
+        RandomAccessFile raf = new RandomAccessFile( binary, "r" );
+        byte[] content = new byte[ (int)raf.length() ];
+        raf.readFully( content );
+        raf.close();
+        raf = new RandomAccessFile( truncated, "rw" );
+        raf.write( content, 0, content.length - 4 );
+        raf.close();
+        check( isRejected( truncated ), "Truncated file accepted" );
+
+        File corrupt = new File( directory, "corrupt.bin" );
+        content[ 0 ] = 'X';
+        raf = new RandomAccessFile( corrupt, "rw" );
+        raf.write( content );
+        raf.close();
+        check( isRejected( corrupt ), "File with wrong magic accepted" );
+
+        for( File f : directory.listFiles() ){
+            f.delete();
+        }
+        directory.delete();
+        System.out.println( "TestPerformanceSampleFile passed" );
+    }
+}
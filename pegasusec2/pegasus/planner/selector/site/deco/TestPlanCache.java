@@ -0,0 +1,229 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import java.security.MessageDigest;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the structural keys of the plan cache, that workflows of the same
+ * shape get the same key irrespective of the job ids and that workflows of
+ * different shapes get different keys, and the round trip of the cached
+ * schedules.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestPlanCache {
+
+    /**
+     * Returns the structural key of a workflow, with the hash of each job on
+     * its own given by its content.
+     *
+     * @param workflow  the workflow.
+     * @param content   the content of each job by id.
+     *
+     * @return the key
+     */
+    private static String getKey( Graph workflow, Map<String,Long> content ){
+        DecoProblem structure = new DecoProblem( workflow );
+        long[] own = new long[ structure.size() ];
+        for( int i = 0; i < own.length; i++ ){
+            own[ i ] = PlanCache.hash( PlanCache.FNV_OFFSET, content.get( structure.getID( i ) ) );
+        }
+        long[] hashes = PlanCache.fingerprint( structure, own );
+        int[] order = PlanCache.getCanonicalOrder( structure, hashes );
+        return PlanCache.toKey( PlanCache.digestStructure( hashes, order,
+                                                           PlanCache.getCanonicalParents( structure, order ) ).digest() );
+    }
+
+    /**
+     * Creates a workflow from a list of edges.
+     *
+     * @param ids    the job ids.
+     * @param edges  the pairs of parent and child ids.
+     *
+     * @return the workflow
+     */
+    private static Graph createWorkflow( String[] ids, String[][] edges ){
+        Graph g = new MapGraph();
+        for( String id : ids ){
+            g.addNode( new GraphNode( id, id ) );
+        }
+        for( String[] e : edges ){
+            g.addEdge( e[ 0 ], e[ 1 ] );
+        }
+        return g;
+    }
+
+    /**
+     * Writes a string to a file.
+     *
+     * @param f      the file.
+     * @param value  the string.
+     *
+     * @throws IOException in case of error while writing.
+     */
+    private static void write( File f, String value ) throws IOException{
+        FileWriter w = new FileWriter( f );
+        w.write( value );
+        w.close();
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments are ignored.
+     *
+     * @throws Exception in case of error.
+     */
+    public static void main( String[] args ) throws Exception{
+        //A1 feeds B1 and B2, and A2 has no children, against A1 feeding B1
+        //and A2 feeding B2. The jobs have the same content and the same
+        //parents in both, and only differ in their children
+        Map<String,Long> content = new HashMap<String,Long>();
+        content.put( "A1", 1L );
+        content.put( "A2", 1L );
+        content.put( "B1", 2L );
+        content.put( "B2", 2L );
+        String[] ids = { "A1", "A2", "B1", "B2" };
+        Graph fork  = createWorkflow( ids, new String[][]{ { "A1", "B1" }, { "A1", "B2" } } );
+        Graph pairs = createWorkflow( ids, new String[][]{ { "A1", "B1" }, { "A2", "B2" } } );
+        check( !getKey( fork, content ).equals( getKey( pairs, content ) ), "Fork and pairs have the same key" );
+
+        Random r = new Random( 3 );
+        for( int run = 0; run < 500; run++ ){
+            int n = 2 + r.nextInt( 10 );
+            Graph g = TestAstarSearch.createWorkflow( n, r );
+            content = new HashMap<String,Long>();
+            for( int i = 0; i < n; i++ ){
+                content.put( "ID" + i, r.nextBoolean() ? r.nextLong() : r.nextInt( 2 ) );
+            }
+            String key = getKey( g, content );
+
+            //the same workflow with the jobs renamed and added in another order
+            int[] permutation = new int[ n ];
+            for( int i = 0; i < n; i++ ){
+                permutation[ i ] = i;
+            }
+            for( int i = n - 1; i > 0; i-- ){
+                int j = r.nextInt( i + 1 );
+                int t = permutation[ i ];
+                permutation[ i ] = permutation[ j ];
+                permutation[ j ] = t;
+            }
+            Graph renamed = new MapGraph();
+            Map<String,Long> renamedContent = new HashMap<String,Long>();
+            for( int i = 0; i < n; i++ ){
+                String id = "J" + permutation[ i ];
+                renamed.addNode( new GraphNode( id, id ) );
+                renamedContent.put( id, content.get( "ID" + i ) );
+            }
+            for( int i = 0; i < n; i++ ){
+                for( GraphNode child : g.getNode( "ID" + i ).getChildren() ){
+                    renamed.addEdge( "J" + permutation[ i ], "J" + permutation[ Integer.parseInt( child.getID().substring( 2 ) ) ] );
+                }
+            }
+            //jobs of the same hash are ordered by id, so the keys only agree
+            //if the hashes tell all the jobs apart
+            DecoProblem structure = new DecoProblem( g );
+            long[] own = new long[ n ];
+            for( int i = 0; i < n; i++ ){
+                own[ i ] = PlanCache.hash( PlanCache.FNV_OFFSET, content.get( structure.getID( i ) ) );
+            }
+            long[] hashes = PlanCache.fingerprint( structure, own );
+            long[] sorted = hashes.clone();
+            Arrays.sort( sorted );
+            boolean distinct = true;
+            for( int i = 1; i < n; i++ ){
+                distinct = distinct && sorted[ i ] != sorted[ i - 1 ];
+            }
+            if( distinct ){
+                check( key.equals( getKey( renamed, renamedContent ) ), "Run " + run + ": renamed workflow has another key" );
+            }
+
+            //the workflow with one more edge
+            int child = 1 + r.nextInt( n - 1 );
+            int parent = r.nextInt( child );
+            if( !g.getNode( "ID" + parent ).getChildren().contains( g.getNode( "ID" + child ) ) ){
+                g.addEdge( "ID" + parent, "ID" + child );
+                check( !key.equals( getKey( g, content ) ), "Run " + run + ": workflow with an edge more has the same key" );
+            }
+        }
+
+        //the contents of the files are digested, not their paths
+        File dir = File.createTempFile( "plancache", "" );
+        dir.delete();
+        PlanCache cache = new PlanCache( dir );
+        File f1 = new File( dir, "a.txt" );
+        File f2 = new File( dir, "b.txt" );
+        write( f1, "regions" );
+        write( f2, "regions" );
+        MessageDigest d1 = PlanCache.newDigest();
+        MessageDigest d2 = PlanCache.newDigest();
+        PlanCache.update( d1, f1 );
+        PlanCache.update( d2, f2 );
+        check( Arrays.equals( d1.digest(), d2.digest() ), "Same contents give different digests" );
+        write( f2, "regionz" );
+        PlanCache.update( d1, f1 );
+        PlanCache.update( d2, f2 );
+        check( !Arrays.equals( d1.digest(), d2.digest() ), "Different contents give the same digest" );
+
+        //the schedules round trip with their parents, and a job without
+        //an instance type
+        PlanCache.Plan plan = new PlanCache.Plan( 120, 0.5f );
+        plan.add( "site-a", 2, 0, 60, new int[ 0 ] );
+        plan.add( "site-b", -1, 60, 120, new int[]{ 0 } );
+        plan.add( "site-a", 0, 60, 90, new int[]{ 0, 1 } );
+        cache.put( "key", plan );
+        PlanCache.Plan read = cache.get( "key" );
+        check( read != null && read.size() == 3, "Schedule not read back" );
+        check( read.getMakespan() == 120 && read.getCost() == 0.5f, "Header not read back" );
+        for( int k = 0; k < 3; k++ ){
+            check( read.getSite( k ).equals( plan.getSite( k ) ) && read.getType( k ) == plan.getType( k ) &&
+                   read.getStart( k ) == plan.getStart( k ) && read.getFinish( k ) == plan.getFinish( k ),
+                   "Job " + k + " not read back" );
+        }
+        check( read.matches( new int[][]{ {}, { 0 }, { 0, 1 } } ), "Parents not read back" );
+        check( !read.matches( new int[][]{ {}, { 0 }, { 1 } } ), "Different parents match" );
+        check( !read.matches( new int[][]{ {}, { 0 } } ), "Different size matches" );
+
+        //entries of the previous format are misses
+        write( new File( dir, "old" + PlanCache.SUFFIX ), "# Deco schedule\n60\t0.1\t1\nsite-a\t0\t0\t60\n" );
+        check( cache.get( "old" ) == null, "Entry of the previous format is a hit" );
+
+        for( File f : dir.listFiles() ){
+            f.delete();
+        }
+        dir.delete();
+        System.out.println( "TestPlanCache passed" );
+    }
+}
@@ -0,0 +1,277 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the plan simulator against a straightforward simulation with lists
+ * and queues, against the makespan of the problem when no task waits for a
+ * node, and for the independence of the results from the number of threads.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestPlanSimulator {
+
+    /**
+     * The relative tolerance on the makespans.
+     */
+    private static final double EPSILON = 1e-5;
+
+    /**
+     * Simulates one run of a plan with lists and queues, drawing the runtimes
+     * in the same order as the simulator.
+     *
+     * @param problem  the problem.
+     * @param types    the instance type ordinal of each task.
+     * @param sites    the site index of each task.
+     * @param nodes    the number of nodes of each site.
+     * @param prices   the hourly price of a node of each site.
+     * @param random   the source of randomness.
+     *
+     * @return the makespan and the cost
+     */
+    private static double[] simulate( DecoProblem problem, byte[] types, int[] sites, int[] nodes,
+                                      float[] prices, Random random ){
+        int n = problem.size();
+        RuntimeDistributions distributions = problem.getDistributions();
+        List<ArrayDeque<Integer>> free = new ArrayList<ArrayDeque<Integer>>();
+        List<ArrayDeque<Integer>> waiting = new ArrayList<ArrayDeque<Integer>>();
+        List<double[]> first = new ArrayList<double[]>();
+        List<double[]> last = new ArrayList<double[]>();
+        for( int s = 0; s < nodes.length; s++ ){
+            ArrayDeque<Integer> stack = new ArrayDeque<Integer>();
+            for( int k = nodes[ s ] - 1; k >= 0; k-- ){
+                stack.push( k );
+            }
+            free.add( stack );
+            waiting.add( new ArrayDeque<Integer>() );
+            double[] f = new double[ nodes[ s ] ];
+            Arrays.fill( f, -1 );
+            first.add( f );
+            last.add( new double[ nodes[ s ] ] );
+        }
+
+        int[] pending = new int[ n ];
+        int[] node = new int[ n ];
+        List<double[]> running = new ArrayList<double[]>();
+        List<Integer> ready = new ArrayList<Integer>();
+        for( int i = 0; i < n; i++ ){
+            pending[ i ] = problem.getParents( i ).length;
+            if( pending[ i ] == 0 ){
+                ready.add( i );
+            }
+        }
+
+        double now = 0;
+        while( true ){
+            for( int task : ready ){
+                int s = sites[ task ];
+                if( free.get( s ).isEmpty() ){
+                    waiting.get( s ).add( task );
+                    continue;
+                }
+                start( problem, distributions, task, types[ task ], free.get( s ).pop(), now, random,
+                       node, first.get( s ), last.get( s ), running );
+            }
+            ready.clear();
+            if( running.isEmpty() ){
+                break;
+            }
+
+            //the earliest completion, ties broken by task index
+            int e = 0;
+            for( int k = 1; k < running.size(); k++ ){
+                double[] a = running.get( k ), b = running.get( e );
+                if( a[ 0 ] < b[ 0 ] || ( a[ 0 ] == b[ 0 ] && a[ 1 ] < b[ 1 ] ) ){
+                    e = k;
+                }
+            }
+            double[] event = running.remove( e );
+            now = event[ 0 ];
+            int task = (int)event[ 1 ];
+            int s = sites[ task ];
+            free.get( s ).push( node[ task ] );
+            if( !waiting.get( s ).isEmpty() ){
+                int next = waiting.get( s ).poll();
+                start( problem, distributions, next, types[ next ], free.get( s ).pop(), now, random,
+                       node, first.get( s ), last.get( s ), running );
+            }
+            for( int child : problem.getChildren( task ) ){
+                if( --pending[ child ] == 0 ){
+                    ready.add( child );
+                }
+            }
+        }
+
+        double cost = 0;
+        for( int s = 0; s < nodes.length; s++ ){
+            for( int k = 0; k < nodes[ s ]; k++ ){
+                if( first.get( s )[ k ] >= 0 ){
+                    double hours = Math.ceil( ( last.get( s )[ k ] - first.get( s )[ k ] ) / PlanSimulator.SECONDS_PER_HOUR );
+                    cost += Math.max( 1, hours ) * prices[ s ];
+                }
+            }
+        }
+        return new double[]{ now, cost };
+    }
+
+    /**
+     * Starts a task on a node in the reference simulation.
+     *
+     * @param problem        the problem.
+     * @param distributions  the runtime distributions, or null.
+     * @param task           the task index.
+     * @param type           the instance type ordinal of the task.
+     * @param k              the node of the site.
+     * @param now            the current time.
+     * @param random         the source of randomness.
+     * @param node           the node of each task.
+     * @param first          the first start on each node of the site.
+     * @param last           the last end on each node of the site.
+     * @param running        the running tasks as completion time and index.
+     */
+    private static void start( DecoProblem problem, RuntimeDistributions distributions, int task, int type,
+                               int k, double now, Random random, int[] node, double[] first, double[] last,
+                               List<double[]> running ){
+        double runtime = ( distributions == null ) ?
+                         problem.getRuntime( task, type ) :
+                         distributions.get( task, type, random.nextInt( distributions.getSampleCount() ) );
+        node[ task ] = k;
+        if( first[ k ] < 0 ){
+            first[ k ] = now;
+        }
+        last[ k ] = Math.max( last[ k ], now + runtime );
+        running.add( new double[]{ now + runtime, task } );
+    }
+
+    /**
+     * Sets random runtime distributions around the runtimes of a problem.
+     *
+     * @param problem  the problem.
+     * @param samples  the number of samples.
+     * @param r        the random number generator.
+     */
+    private static void setDistributions( DecoProblem problem, int samples, Random r ){
+        int n = problem.size();
+        RuntimeDistributions distributions = new RuntimeDistributions( n, DecoProblem.NUM_TYPES, samples );
+        float[] values = distributions.getValues();
+        for( int task = 0; task < n; task++ ){
+            for( int type = 0; type < DecoProblem.NUM_TYPES; type++ ){
+                for( int s = 0; s < samples; s++ ){
+                    values[ distributions.offset( task, type ) + s ] = problem.isAvailable( task, type ) ?
+                            problem.getRuntime( task, type ) * ( 0.5f + r.nextFloat() ) :
+                            DecoProblem.UNAVAILABLE;
+                }
+            }
+        }
+        problem.setDistributions( distributions );
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments are ignored.
+     */
+    public static void main( String[] args ){
+        Random r = new Random( 11 );
+        for( int run = 0; run < 200; run++ ){
+            DecoProblem problem = TestAstarSearch.createProblem( TestAstarSearch.createWorkflow( 1 + r.nextInt( 12 ), r ), r );
+            int n = problem.size();
+            byte[] types = new byte[ n ];
+            for( int i = 0; i < n; i++ ){
+                types[ i ] = (byte)problem.getFastestType( i );
+            }
+            int siteCount = 1 + r.nextInt( 3 );
+            int[] sites = new int[ n ];
+            for( int i = 0; i < n; i++ ){
+                sites[ i ] = r.nextInt( siteCount );
+            }
+            float[] prices = new float[ siteCount ];
+            for( int s = 0; s < siteCount; s++ ){
+                prices[ s ] = 0.1f * ( 1 + s );
+            }
+
+            //with as many nodes as tasks no task waits, and the makespan is
+            //the makespan of the problem
+            int[] nodes = new int[ siteCount ];
+            Arrays.fill( nodes, n );
+            SimulationResult unlimited = new PlanSimulator( problem, types, sites, nodes, prices ).simulate( 3, 1, 1 );
+            float expected = problem.getMakespan( types, new float[ n ] );
+            check( Math.abs( unlimited.getMakespanPercentile( 100 ) - expected ) <= EPSILON * expected,
+                   "Run " + run + ": makespan " + unlimited.getMakespanPercentile( 100 ) + " expected " + expected );
+
+            //with few nodes and sampled runtimes, the simulator agrees with
+            //the reference for every run, whatever the number of threads
+            for( int s = 0; s < siteCount; s++ ){
+                nodes[ s ] = 1 + r.nextInt( 2 );
+            }
+            if( r.nextBoolean() ){
+                setDistributions( problem, 50, r );
+            }
+            int runs = 20;
+            long seed = r.nextLong();
+            double[] makespans = new double[ runs ];
+            double[] costs = new double[ runs ];
+            for( int k = 0; k < runs; k++ ){
+                double[] result = simulate( problem, types, sites, nodes, prices,
+                                            new Random( seed + k * 0x9E3779B97F4A7C15L ) );
+                makespans[ k ] = result[ 0 ];
+                costs[ k ] = result[ 1 ];
+            }
+            SimulationResult reference = new SimulationResult( makespans, costs );
+            PlanSimulator simulator = new PlanSimulator( problem, types, sites, nodes, prices );
+            for( int threads : new int[]{ 1, 4 } ){
+                SimulationResult result = simulator.simulate( runs, seed, threads );
+                for( int p = 0; p <= 100; p += 5 ){
+                    check( result.getMakespanPercentile( p ) == reference.getMakespanPercentile( p ),
+                           "Run " + run + ": makespan percentile " + p + " with " + threads + " threads" );
+                    check( result.getCostPercentile( p ) == reference.getCostPercentile( p ),
+                           "Run " + run + ": cost percentile " + p + " with " + threads + " threads" );
+                }
+            }
+        }
+
+        //a chain of two tasks of 3000 seconds on one node is billed two hours
+        MapGraph graph = new MapGraph();
+        graph.addNode( new GraphNode( "ID0", "ID0" ) );
+        graph.addNode( new GraphNode( "ID1", "ID1" ) );
+        graph.addEdge( "ID0", "ID1" );
+        DecoProblem problem = new DecoProblem( graph );
+        for( int i = 0; i < 2; i++ ){
+            for( int t = 0; t < DecoProblem.NUM_TYPES; t++ ){
+                problem.setRuntime( i, DecoProblem.TYPES[ t ], 3000 );
+            }
+        }
+        SimulationResult result = new PlanSimulator( problem, new byte[ 2 ], new int[ 2 ], new int[]{ 1 },
+                                                     new float[]{ 0.5f } ).simulate( 1, 0, 1 );
+        check( result.getMakespanPercentile( 50 ) == 6000, "Chain makespan " + result.getMakespanPercentile( 50 ) );
+        check( Math.abs( result.getMeanCost() - 1.0 ) < 1e-6, "Chain cost " + result.getMeanCost() );
+        check( result.getProbability( 5999 ) == 0 && result.getProbability( 6000 ) == 1, "Chain probability" );
+        System.out.println( "TestPlanSimulator passed" );
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the insertion of jobs into the idle gaps of processors and sites
+ * against a scan of the busy intervals.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestProcessor {
+
+    /**
+     * Returns the earliest time at or after a start at which a job of a
+     * duration does not overlap any of the busy intervals.
+     *
+     * @param busy      the busy intervals as start and end.
+     * @param start     the earliest start.
+     * @param duration  the duration of the job.
+     *
+     * @return the start time
+     */
+    private static long earliest( List<long[]> busy, long start, long duration ){
+        long best = Long.MAX_VALUE;
+        List<Long> candidates = new ArrayList<Long>();
+        candidates.add( start );
+        for( long[] b : busy ){
+            if( b[ 1 ] >= start ){
+                candidates.add( b[ 1 ] );
+            }
+        }
+        for( long c : candidates ){
+            boolean free = true;
+            for( long[] b : busy ){
+                free = free && ( c + duration <= b[ 0 ] || c >= b[ 1 ] );
+            }
+            if( free && c < best ){
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Returns the end of the last of the busy intervals.
+     *
+     * @param busy  the busy intervals.
+     *
+     * @return the end time, or 0 if there are none
+     */
+    private static long getEnd( List<long[]> busy ){
+        long result = 0;
+        for( long[] b : busy ){
+            result = Math.max( result, b[ 1 ] );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the longest idle gap before the end of the last of the busy
+     * intervals.
+     *
+     * @param busy  the busy intervals.
+     *
+     * @return the length of the gap, or 0 if there are none
+     */
+    private static long getLongestGap( List<long[]> busy ){
+        List<long[]> sorted = new ArrayList<long[]>( busy );
+        Collections.sort( sorted, new Comparator<long[]>(){
+            public int compare( long[] a, long[] b ){
+                return Long.compare( a[ 0 ], b[ 0 ] );
+            }
+        });
+        long result = 0, previous = 0;
+        for( long[] b : sorted ){
+            result = Math.max( result, b[ 0 ] - previous );
+            previous = b[ 1 ];
+        }
+        return result;
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments are ignored.
+     */
+    public static void main( String[] args ){
+        Random r = new Random( 17 );
+
+        //a single processor
+        for( int run = 0; run < 500; run++ ){
+            Processor p = new Processor( 0 );
+            List<long[]> busy = new ArrayList<long[]>();
+            for( int k = 0; k < 40; k++ ){
+                long start = r.nextInt( 200 );
+                long duration = 1 + r.nextInt( 30 );
+                long expected = earliest( busy, start, duration );
+                long bound = r.nextBoolean() ? Long.MAX_VALUE : start + r.nextInt( 100 );
+                check( p.getAvailableTime( start, duration, bound ) == Math.min( expected, bound ),
+                       "Run " + run + ": start of job " + k + " with bound " + bound );
+                check( p.getAvailableTime( start, duration, Long.MAX_VALUE ) == expected,
+                       "Run " + run + ": start of job " + k );
+
+                check( p.getEndTime() == getEnd( busy ), "Run " + run + ": end time" );
+
+                p.scheduleJob( expected, expected + duration );
+                busy.add( new long[]{ expected, expected + duration } );
+                check( p.getLongestGap() == getLongestGap( busy ), "Run " + run + ": longest gap" );
+            }
+
+            //a job overlapping a scheduled one is rejected
+            long[] b = busy.get( r.nextInt( busy.size() ) );
+            boolean thrown = false;
+            try{
+                p.scheduleJob( b[ 0 ], b[ 1 ] );
+            }
+            catch( RuntimeException e ){
+                thrown = true;
+            }
+            check( thrown, "Run " + run + ": overlapping job accepted" );
+        }
+
+        //a site picks the earliest start over its processors. Of the
+        //processors giving the earliest start, the one that frees up first
+        //is preferred, then the one with the longest gap, and an unused
+        //processor is only taken if none can start the job right away
+        for( int run = 0; run < 200; run++ ){
+            int processors = 1 + r.nextInt( 4 );
+            Site site = new Site( "site", processors );
+            List<List<long[]>> busy = new ArrayList<List<long[]>>();
+            for( int k = 0; k < 60; k++ ){
+                long start = r.nextInt( 300 );
+                long duration = 1 + r.nextInt( 40 );
+
+                List<long[]> chosen = null;
+                long expected = Long.MAX_VALUE;
+                long firstEnd = Long.MAX_VALUE;
+                for( List<long[]> b : busy ){
+                    if( getEnd( b ) < firstEnd ){
+                        firstEnd = getEnd( b );
+                        chosen = b;
+                        expected = Math.max( firstEnd, start );
+                    }
+                }
+                for( int g = busy.size() - 1; g >= 0 && expected > start; g-- ){
+                    //the processors by descending longest gap, then id
+                    List<long[]> b = null;
+                    long gap = -1;
+                    for( List<long[]> c : busy ){
+                        int smaller = 0;
+                        for( List<long[]> d : busy ){
+                            long gc = getLongestGap( c ), gd = getLongestGap( d );
+                            if( gd < gc || ( gd == gc && busy.indexOf( d ) < busy.indexOf( c ) ) ){
+                                smaller++;
+                            }
+                        }
+                        if( smaller == g ){
+                            b = c;
+                            gap = getLongestGap( c );
+                        }
+                    }
+                    if( gap < duration ){
+                        break;
+                    }
+                    long t = earliest( b, start, duration );
+                    if( t < expected ){
+                        expected = t;
+                        chosen = b;
+                    }
+                }
+                if( expected > start && busy.size() < processors ){
+                    expected = start;
+                    chosen = new ArrayList<long[]>();
+                    busy.add( chosen );
+                }
+
+                long actual = site.getAvailableTime( start, duration );
+                check( actual == expected, "Site run " + run + ": start " + actual + " expected " + expected );
+                site.scheduleJob( actual, actual + duration );
+                chosen.add( new long[]{ actual, actual + duration } );
+            }
+        }
+        System.out.println( "TestProcessor passed" );
+    }
+}
@@ -0,0 +1,163 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the rank error of the quantiles answered by
+ * <code>QuantileSketch</code>, for single, merged and serialized sketches and
+ * for concurrent queries.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestQuantileSketch {
+
+    /**
+     * The maximum rank error allowed.
+     */
+    private static final double MAX_ERROR = 0.02;
+
+    /**
+     * Checks the quantiles of a sketch against the sorted values added to it.
+     *
+     * @param sketch  the sketch.
+     * @param sorted  the sorted values.
+     * @param label   the label for the error messages.
+     */
+    private static void checkQuantiles( QuantileSketch sketch, float[] sorted, String label ){
+        int n = sorted.length;
+        check( sketch.getCount() == n, label + ": count " + sketch.getCount() + " expected " + n );
+        check( sketch.getMin() == sorted[ 0 ] && sketch.getMax() == sorted[ n - 1 ], label + ": min or max" );
+        for( int i = 1; i < 100; i++ ){
+            float p = i / 100f;
+            float q = sketch.getQuantile( p );
+            //the rank of the quantile is between the first and last position
+            //of the value in the sorted values
+            int low  = lowerBound( sorted, q );
+            int high = lowerBound( sorted, Math.nextUp( q ) );
+            double rank = p * n;
+            check( rank >= low - MAX_ERROR * n && rank <= high + MAX_ERROR * n,
+                   label + ": quantile " + p + " has ranks " + low + " to " + high + " of " + n );
+            check( Math.abs( sketch.getRank( q ) - high / (double)n ) <= MAX_ERROR,
+                   label + ": rank of " + q );
+        }
+    }
+
+    /**
+     * Returns the number of values less than a value.
+     *
+     * @param sorted  the sorted values.
+     * @param value   the value.
+     *
+     * @return the count
+     */
+    private static int lowerBound( float[] sorted, float value ){
+        int low = 0, high = sorted.length;
+        while( low < high ){
+            int mid = ( low + high ) >>> 1;
+            if( sorted[ mid ] < value ){
+                low = mid + 1;
+            }
+            else{
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments are ignored.
+     *
+     * @throws Exception in case of error while serializing or in the query threads.
+     */
+    public static void main( String[] args ) throws Exception{
+        Random r = new Random( 11 );
+        check( Float.isNaN( new QuantileSketch().getQuantile( 0.5f ) ), "Empty sketch" );
+
+        for( int n : new int[]{ 1, 10, 1000, 100000, 1000000 } ){
+            float[] values = new float[ n ];
+            QuantileSketch sketch = new QuantileSketch();
+            QuantileSketch left   = new QuantileSketch();
+            QuantileSketch right  = new QuantileSketch();
+            for( int i = 0; i < n; i++ ){
+                //a skewed distribution with ties
+                values[ i ] = ( i % 7 == 0 ) ? 42 : (float)Math.exp( r.nextGaussian() * 2 );
+                sketch.add( values[ i ] );
+                ( ( i % 3 == 0 ) ? left : right ).add( values[ i ] );
+            }
+            float[] sorted = values.clone();
+            Arrays.sort( sorted );
+            checkQuantiles( sketch, sorted, "sketch of " + n );
+
+            left.merge( right );
+            checkQuantiles( left, sorted, "merged sketch of " + n );
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            sketch.write( new DataOutputStream( bytes ) );
+            QuantileSketch read = QuantileSketch.read( new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ) );
+            for( int i = 0; i <= 100; i++ ){
+                check( read.getQuantile( i / 100f ) == sketch.getQuantile( i / 100f ), "Read sketch of " + n );
+            }
+        }
+
+        //concurrent queries on a fresh summary agree with a single thread
+        final QuantileSketch shared = new QuantileSketch();
+        for( int i = 0; i < 100000; i++ ){
+            shared.add( r.nextFloat() );
+        }
+        final float[] expected = new float[ 100 ];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        shared.write( new DataOutputStream( bytes ) );
+        QuantileSketch copy = QuantileSketch.read( new DataInputStream( new ByteArrayInputStream( bytes.toByteArray() ) ) );
+        for( int i = 0; i < expected.length; i++ ){
+            expected[ i ] = copy.getQuantile( i / 100f );
+        }
+        final boolean[] failed = new boolean[ 1 ];
+        Thread[] threads = new Thread[ 8 ];
+        for( int t = 0; t < threads.length; t++ ){
+            threads[ t ] = new Thread(){
+                public void run(){
+                    for( int i = 0; i < expected.length; i++ ){
+                        if( shared.getQuantile( i / 100f ) != expected[ i ] ){
+                            failed[ 0 ] = true;
+                        }
+                    }
+                }
+            };
+            threads[ t ].start();
+        }
+        for( Thread t : threads ){
+            t.join();
+        }
+        check( !failed[ 0 ], "Concurrent queries disagree" );
+        System.out.println( "TestQuantileSketch passed" );
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import edu.isi.pegasus.planner.catalog.classes.SysInfo;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the prices and costs of a region schedule against a minute by minute
+ * model of the prices, and the reading of schedule files.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestRegionSchedule {
+
+    /**
+     * The default hourly prices of the instance types.
+     */
+    private static final float[] DEFAULT_PRICES = { 0.1f, 0.2f, 0.4f, 0.8f };
+
+    /**
+     * Writes a schedule file and reads it.
+     *
+     * @param file      the file.
+     * @param contents  the contents of the file.
+     *
+     * @return the schedule, or null if the file is rejected.
+     *
+     * @throws IOException in case of error while writing the file.
+     */
+    private static RegionSchedule read( File file, String contents ) throws IOException{
+        FileWriter writer = new FileWriter( file );
+        writer.write( contents );
+        writer.close();
+        try{
+            return RegionSchedule.read( file, DEFAULT_PRICES );
+        }
+        catch( IOException e ){
+            return null;
+        }
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments, ignored.
+     *
+     * @throws IOException in case of error with the temporary files.
+     */
+    public static void main( String[] args ) throws IOException{
+        Random r = new Random( 42 );
+        SysInfo.InstanceType[] types = SysInfo.InstanceType.values();
+        for( int run = 0; run < 100; run++ ){
+            //the prices change on minute boundaries, so that a minute by
+            //minute model is exact
+            int minutes = 1 + r.nextInt( 30 );
+            long period = minutes * 60;
+            RegionSchedule schedule = new RegionSchedule( DEFAULT_PRICES );
+            schedule.setPeriod( period );
+            long start = r.nextBoolean() ? RegionSchedule.UNSET : r.nextInt( minutes ) * 60;
+            schedule.setStart( start );
+            int regions = 1 + r.nextInt( 3 );
+            float[][][] model = new float[ regions ][ types.length ][];
+            for( int g = 0; g < regions; g++ ){
+                check( schedule.addRegion( "region" + g, "site" + g, "other" + g ) == g, "Run " + run + ": region index" );
+                for( SysInfo.InstanceType type : types ){
+                    if( r.nextInt( 4 ) == 0 ){
+                        continue;
+                    }
+                    //the minutes at which the price changes, the price before
+                    //the first change being that of the last
+                    float[] prices = new float[ minutes ];
+                    float current = -1;
+                    for( int m = 0; m < minutes; m++ ){
+                        if( m == 0 || r.nextInt( 4 ) == 0 ){
+                            current = r.nextInt( 100 ) / 100f;
+                            if( m > 0 || r.nextBoolean() ){
+                                schedule.setPrice( g, type, m * 60, current );
+                            }
+                            else{
+                                current = -1;
+                            }
+                        }
+                        prices[ m ] = current;
+                    }
+                    if( current == -1 ){
+                        //no price set, so the default price applies
+                        continue;
+                    }
+                    for( int m = 0; prices[ m ] == -1; m++ ){
+                        prices[ m ] = current;
+                    }
+                    model[ g ][ type.ordinal() ] = prices;
+                }
+            }
+            check( schedule.getRegionCount() == regions, "Run " + run + ": region count" );
+
+            long zero = ( start == RegionSchedule.UNSET ) ? 0 : start;
+            for( int q = 0; q < 200; q++ ){
+                int g = r.nextInt( regions + 1 ) - 1;
+                SysInfo.InstanceType type = types[ r.nextInt( types.length ) ];
+                long from = r.nextInt( 5 * (int)period );
+                long to   = from + r.nextInt( 3 * (int)period );
+                float[] prices = ( g == -1 ) ? null : model[ g ][ type.ordinal() ];
+
+                double expected = 0;
+                for( long t = from; t < to; t++ ){
+                    expected += ( prices == null ) ? DEFAULT_PRICES[ type.ordinal() ] :
+                                                     prices[ (int)( ( ( t + zero ) % period ) / 60 ) ];
+                }
+                expected /= 3600;
+                float cost = schedule.getCost( g, type, from, to );
+                check( Math.abs( cost - expected ) <= 1e-4 * Math.max( 1, expected ),
+                       "Run " + run + ": cost " + cost + " expected " + expected );
+
+                float price = ( prices == null ) ? DEFAULT_PRICES[ type.ordinal() ] :
+                                                   prices[ (int)( ( ( from + zero ) % period ) / 60 ) ];
+                check( schedule.getPrice( g, type, from ) == price,
+                       "Run " + run + ": price " + schedule.getPrice( g, type, from ) + " expected " + price );
+            }
+            check( schedule.getRegion( "site0" ) == 0 && schedule.getRegion( "other0" ) == 0 &&
+                   schedule.getRegion( "nowhere" ) == -1, "Run " + run + ": regions of sites" );
+        }
+
+        //transfers apply in both directions unless given explicitly
+        RegionSchedule schedule = new RegionSchedule( DEFAULT_PRICES );
+        int a = schedule.addRegion( "a", "sa" );
+        int b = schedule.addRegion( "b", "sb" );
+        int c = schedule.addRegion( "c", "sc" );
+        schedule.setTransfer( a, b, 120, 0.02f );
+        schedule.setTransfer( c, a, 60, 0.5f );
+        schedule.setTransfer( a, c, 30, 0.25f );
+        schedule.setTransfer( c, a, 90, 0.75f );
+        check( schedule.getTransferTime( a, b ) == 120 && schedule.getTransferTime( b, a ) == 120, "Symmetric transfer time" );
+        check( schedule.getTransferCost( b, a ) == 0.02f, "Symmetric transfer cost" );
+        check( schedule.getTransferTime( a, c ) == 30 && schedule.getTransferTime( c, a ) == 90, "Explicit transfer time" );
+        check( schedule.getTransferCost( a, c ) == 0.25f && schedule.getTransferCost( c, a ) == 0.75f, "Explicit transfer cost" );
+        check( schedule.getTransferTime( b, c ) == 0 && schedule.getTransferTime( -1, a ) == 0 &&
+               schedule.getTransferCost( a, -1 ) == 0, "Transfer without regions" );
+        check( schedule.getStart() == RegionSchedule.UNSET, "Start set without a directive" );
+
+        //files
+        File file = File.createTempFile( "regions", ".txt" );
+        schedule = read( file,
+                         "# a schedule\n" +
+                         "period    7200\n" +
+                         "start     3600\n" +
+                         "region    us-east   ec2-us-east-a ec2-us-east-b\n" +
+                         "region    eu-west   ec2-eu-west-a\n" +
+                         "\n" +
+                         "price     us-east   m1small  0      0.06\n" +
+                         "price     us-east   m1small  1800   0.03\n" +
+                         "transfer  us-east   eu-west  120    0.02\n" );
+        check( schedule != null, "Schedule file rejected" );
+        check( schedule.getPeriod() == 7200 && schedule.getStart() == 3600, "Period and start" );
+        check( schedule.getRegion( "ec2-us-east-b" ) == 0 && schedule.getRegion( "ec2-eu-west-a" ) == 1, "Regions" );
+        //time 0 is an hour into the period, where the later price applies
+        check( schedule.getPrice( 0, SysInfo.InstanceType.m1small, 0 ) == 0.03f, "Price at the start" );
+        check( schedule.getPrice( 0, SysInfo.InstanceType.m1small, 3600 ) == 0.06f, "Price after the wrap" );
+        check( Math.abs( schedule.getCost( 0, SysInfo.InstanceType.m1small, 0, 7200 ) - 0.075f ) < 1e-6, "Cost of a period" );
+        check( schedule.getPrice( 1, SysInfo.InstanceType.m1small, 0 ) == DEFAULT_PRICES[ 0 ], "Default price" );
+        check( schedule.getTransferCost( 1, 0 ) == 0.02f, "Transfer from the file" );
+
+        check( read( file, "region a x\nprice b m1small 0 0.1\n" ) == null, "Undeclared region read" );
+        check( read( file, "region a x\nprice a m9huge 0 0.1\n" ) == null, "Unknown type read" );
+        check( read( file, "region a x\nprice a m1small 0\n" ) == null, "Missing field read" );
+        check( read( file, "period 0\n" ) == null, "Empty period read" );
+        check( read( file, "start -5\n" ) == null, "Negative start read" );
+        check( read( file, "sunrise 6\n" ) == null, "Unknown directive read" );
+        file.delete();
+        System.out.println( "TestRegionSchedule passed" );
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the runtime samples computed by <code>RuntimeDistributions</code>
+ * against the runtime formula evaluated sample by sample.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestRuntimeDistributions {
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments are ignored.
+     */
+    public static void main( String[] args ){
+        Random r = new Random( 7 );
+        int tasks = 20, types = DecoProblem.NUM_TYPES, samples = 1000;
+
+        float[][] columns = new float[ PerformanceSamples.METRICS.length ][ types * samples ];
+        for( float[] column : columns ){
+            for( int i = 0; i < column.length; i++ ){
+                column[ i ] = 1 + r.nextFloat() * 10;
+            }
+        }
+        PerformanceSamples performance = PerformanceSamples.wrap( types, samples, columns );
+
+        float[] cpu   = new float[ tasks * types ];
+        float[] trans = new float[ tasks ];
+        float[] rec   = new float[ tasks ];
+        float[] read  = new float[ tasks ];
+        float[] seq   = new float[ tasks ];
+        for( int task = 0; task < tasks; task++ ){
+            for( int type = 0; type < types; type++ ){
+                cpu[ task * types + type ] = ( task % 5 == 0 && type == 0 ) ?
+                                              DecoProblem.UNAVAILABLE :
+                                              10 + r.nextInt( 100 );
+            }
+            trans[ task ] = r.nextInt( 100000 );
+            rec[ task ]   = r.nextInt( 100000 );
+            read[ task ]  = r.nextInt( 100 );
+            seq[ task ]   = r.nextInt( 100 );
+        }
+
+        RuntimeDistributions d = new RuntimeDistributions( tasks, types, samples );
+        d.compute( cpu, trans, rec, read, seq, performance );
+
+        float[] values = new float[ samples ];
+        for( int task = 0; task < tasks; task++ ){
+            for( int type = 0; type < types; type++ ){
+                float c = cpu[ task * types + type ];
+                double sum = 0;
+                for( int s = 0; s < samples; s++ ){
+                    float expected = ( c == DecoProblem.UNAVAILABLE ) ?
+                                     DecoProblem.UNAVAILABLE :
+                                     c + trans[ task ] / RuntimeDistributions.NETWORK_SCALE * performance.get( PerformanceSamples.NETWORK_UP, type, s ) +
+                                         rec[ task ] / RuntimeDistributions.NETWORK_SCALE * performance.get( PerformanceSamples.NETWORK_DOWN, type, s ) +
+                                         read[ task ] / performance.get( PerformanceSamples.RANDOM_IO, type, s ) +
+                                         seq[ task ] / performance.get( PerformanceSamples.SEQUENTIAL_IO, type, s );
+                    float actual = d.get( task, type, s );
+                    check( actual == expected || Math.abs( actual - expected ) <= 1e-4 * expected,
+                           "Sample " + task + "," + type + "," + s + " is " + actual + " expected " + expected );
+                    values[ s ] = actual;
+                    sum += actual;
+                }
+                if( c == DecoProblem.UNAVAILABLE ){
+                    continue;
+                }
+                check( Math.abs( d.getMean( task, type ) - sum / samples ) <= 1e-4 * sum / samples,
+                       "Mean of " + task + "," + type );
+
+                //the quantiles are within a small rank error of the exact ones
+                Arrays.sort( values );
+                for( float p : new float[]{ 0.1f, 0.5f, 0.9f, 0.99f } ){
+                    float q = d.getQuantile( task, type, p );
+                    int rank = Arrays.binarySearch( values, q );
+                    check( rank >= 0, "Quantile " + q + " is not a sample" );
+                    check( Math.abs( rank - p * samples ) <= 0.02 * samples,
+                           "Quantile " + p + " of " + task + "," + type + " has rank " + rank );
+                }
+            }
+        }
+        System.out.println( "TestRuntimeDistributions passed" );
+    }
+}
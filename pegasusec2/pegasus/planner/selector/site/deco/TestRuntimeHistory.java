@@ -0,0 +1,275 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import edu.isi.pegasus.planner.catalog.classes.SysInfo;
+
+import edu.isi.pegasus.planner.invocation.InvocationRecord;
+import edu.isi.pegasus.planner.invocation.Job;
+import edu.isi.pegasus.planner.invocation.StatCall;
+import edu.isi.pegasus.planner.invocation.StatInfo;
+import edu.isi.pegasus.planner.invocation.Status;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the runtime history against the runtimes kept in lists, for the
+ * statistics, the fall back to all input sizes, the kickstart records and
+ * the round trip through a file.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestRuntimeHistory {
+
+    /**
+     * The transformations of the runtimes.
+     */
+    private static final String[] TRANSFORMATIONS = { "ns::a:1.0", "ns::b:1.0", "c" };
+
+    /**
+     * Checks an entry against the runtimes added to it.
+     *
+     * @param e         the entry.
+     * @param runtimes  the runtimes.
+     * @param label     the label for the error messages.
+     */
+    private static void checkEntry( RuntimeHistory.Entry e, List<Float> runtimes, String label ){
+        int n = runtimes.size();
+        check( e != null, label + ": no entry" );
+        check( e.getCount() == n, label + ": count " + e.getCount() + " expected " + n );
+
+        double mean = 0;
+        for( float f : runtimes ){
+            mean += f;
+        }
+        mean /= n;
+        double m2 = 0;
+        for( float f : runtimes ){
+            m2 += ( f - mean ) * ( f - mean );
+        }
+        double sd = ( n < 2 ) ? 0 : Math.sqrt( m2 / ( n - 1 ) );
+        check( Math.abs( e.getMean() - mean ) <= 1e-9 * Math.max( 1, mean ), label + ": mean " + e.getMean() + " expected " + mean );
+        check( Math.abs( e.getStandardDeviation() - sd ) <= 1e-6 * Math.max( 1, sd ),
+               label + ": standard deviation " + e.getStandardDeviation() + " expected " + sd );
+
+        float[] sorted = new float[ n ];
+        for( int i = 0; i < n; i++ ){
+            sorted[ i ] = runtimes.get( i );
+        }
+        Arrays.sort( sorted );
+        check( e.getQuantile( 0 ) >= sorted[ 0 ] && e.getQuantile( 1 ) <= sorted[ n - 1 ], label + ": quantiles out of range" );
+        for( float p = 0.1f; p < 1; p += 0.2f ){
+            check( e.getQuantile( p ) <= e.getQuantile( p + 0.1f ), label + ": quantiles not ascending" );
+        }
+    }
+
+    /**
+     * Returns a kickstart record.
+     *
+     * @param transformation  the transformation.
+     * @param tag             the tag of the job.
+     * @param status          the raw exit status of the job.
+     * @param duration        the duration of the job.
+     * @param sizes           the sizes of the input files.
+     *
+     * @return the record
+     */
+    private static InvocationRecord createRecord( String transformation, String tag, int status,
+                                                  double duration, long... sizes ){
+        InvocationRecord record = new InvocationRecord();
+        record.setTransformation( transformation );
+        Job setup = new Job( "setup" );
+        setup.setDuration( 1000 );
+        setup.setStatus( new Status( 0 ) );
+        record.addJob( setup );
+        Job job = new Job( tag );
+        job.setDuration( duration );
+        job.setStatus( new Status( status ) );
+        record.addJob( job );
+        for( long size : sizes ){
+            StatCall call = new StatCall( RuntimeHistory.INPUT_STAT_HANDLE );
+            StatInfo info = new StatInfo();
+            info.setSize( size );
+            call.setStatInfo( info );
+            record.addStatCall( call );
+        }
+        //output files do not count towards the input size
+        StatCall out = new StatCall( "final" );
+        StatInfo info = new StatInfo();
+        info.setSize( 1L << 40 );
+        out.setStatInfo( info );
+        record.addStatCall( out );
+        return record;
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments, ignored.
+     *
+     * @throws IOException in case of error with the temporary files.
+     */
+    public static void main( String[] args ) throws IOException{
+        check( RuntimeHistory.getSizeBucket( 0 ) == 0 && RuntimeHistory.getSizeBucket( -5 ) == 0, "Bucket of no input" );
+        check( RuntimeHistory.getSizeBucket( 1 ) == 1 && RuntimeHistory.getSizeBucket( 2 ) == 2 &&
+               RuntimeHistory.getSizeBucket( 3 ) == 2 && RuntimeHistory.getSizeBucket( 4 ) == 3 &&
+               RuntimeHistory.getSizeBucket( 1L << 40 ) == 41, "Buckets of small sizes" );
+
+        Random r = new Random( 42 );
+        SysInfo.InstanceType[] types = SysInfo.InstanceType.values();
+        RuntimeHistory history = new RuntimeHistory();
+        Map<String,List<Float>> bySize = new HashMap<String,List<Float>>();
+        Map<String,List<Float>> byType = new HashMap<String,List<Float>>();
+        for( int i = 0; i < 2000; i++ ){
+            String t = TRANSFORMATIONS[ r.nextInt( TRANSFORMATIONS.length ) ];
+            SysInfo.InstanceType type = types[ r.nextInt( 3 ) ];
+            long bytes = ( r.nextInt( 5 ) == 0 ) ? 0 : 1L << r.nextInt( 6 );
+            bytes += r.nextInt( (int)Math.max( 1, bytes ) );
+            float runtime = 10 + r.nextInt( 1000 ) / 10f;
+            history.add( t, type, bytes, runtime );
+            add( bySize, t + type + RuntimeHistory.getSizeBucket( bytes ), runtime );
+            add( byType, t + type, runtime );
+        }
+
+        int entries = 0;
+        for( String t : TRANSFORMATIONS ){
+            for( SysInfo.InstanceType type : types ){
+                List<Float> all = byType.get( t + type );
+                if( all == null ){
+                    check( history.get( t, type, 8 ) == null, t + " " + type + ": entry without history" );
+                    continue;
+                }
+                entries++;
+                for( int bucket = 0; bucket < 12; bucket++ ){
+                    long bytes = ( bucket == 0 ) ? 0 : 1L << ( bucket - 1 );
+                    List<Float> runtimes = bySize.get( t + type + bucket );
+                    String label = t + " " + type + " bucket " + bucket;
+                    if( runtimes == null ){
+                        //falls back to all input sizes
+                        checkEntry( history.get( t, type, bytes ), all, label + " fallback" );
+                    }
+                    else{
+                        entries++;
+                        checkEntry( history.get( t, type, bytes ), runtimes, label );
+                    }
+                }
+            }
+        }
+        check( history.size() == entries, "Size " + history.size() + " expected " + entries );
+
+        //the round trip through a file
+        File file = File.createTempFile( "history", ".bin" );
+        file.delete();
+        check( RuntimeHistory.read( file ).size() == 0, "Missing file is not empty" );
+        history.write( file );
+        history.write( file );
+        RuntimeHistory copy = RuntimeHistory.read( file );
+        check( copy.size() == history.size(), "Copy has " + copy.size() + " entries" );
+        for( String t : TRANSFORMATIONS ){
+            for( SysInfo.InstanceType type : types ){
+                for( int bucket = 0; bucket < 12; bucket++ ){
+                    long bytes = ( bucket == 0 ) ? 0 : 1L << ( bucket - 1 );
+                    RuntimeHistory.Entry e = history.get( t, type, bytes );
+                    RuntimeHistory.Entry c = copy.get( t, type, bytes );
+                    if( e == null ){
+                        check( c == null, "Copy has an extra entry" );
+                        continue;
+                    }
+                    check( c.getCount() == e.getCount() && c.getMean() == e.getMean() &&
+                           c.getStandardDeviation() == e.getStandardDeviation() &&
+                           c.getQuantile( 0.9f ) == e.getQuantile( 0.9f ), "Copy differs for " + t + " " + type );
+                }
+            }
+        }
+
+        //files that are not histories are rejected
+        DataOutputStream out = new DataOutputStream( new FileOutputStream( file ) );
+        out.writeInt( RuntimeHistory.MAGIC );
+        out.writeInt( RuntimeHistory.VERSION + 1 );
+        out.close();
+        check( fails( file ), "Other version is read" );
+        out = new DataOutputStream( new FileOutputStream( file ) );
+        out.writeInt( 0 );
+        out.close();
+        check( fails( file ), "Other magic number is read" );
+        file.delete();
+
+        //kickstart records add the main job, with the initial stat calls as
+        //the input size
+        RuntimeHistory records = new RuntimeHistory();
+        check( records.add( createRecord( "k", RuntimeHistory.MAIN_JOB_TAG, 0, 42, 100, 28 ), SysInfo.InstanceType.m1large ),
+               "Record not added" );
+        check( !records.add( createRecord( "k", RuntimeHistory.MAIN_JOB_TAG, 256, 7, 100, 28 ), SysInfo.InstanceType.m1large ),
+               "Failed job added" );
+        check( !records.add( createRecord( "k", "cleanup", 0, 7, 100, 28 ), SysInfo.InstanceType.m1large ),
+               "Record without main job added" );
+        check( !records.add( createRecord( null, RuntimeHistory.MAIN_JOB_TAG, 0, 7 ), SysInfo.InstanceType.m1large ),
+               "Record without transformation added" );
+        RuntimeHistory.Entry e = records.get( "k", SysInfo.InstanceType.m1large, 128 );
+        check( e != null && e.getCount() == 1 && e.getMean() == 42, "Record entry " + e );
+        check( records.get( "k", SysInfo.InstanceType.m1large, 64 ).getCount() == 1, "Record not in the all sizes entry" );
+        check( records.size() == 2, "Record entries " + records.size() );
+
+        System.out.println( "TestRuntimeHistory passed" );
+    }
+
+    /**
+     * Adds a runtime to a list in a map.
+     *
+     * @param map      the map.
+     * @param key      the key of the list.
+     * @param runtime  the runtime.
+     */
+    private static void add( Map<String,List<Float>> map, String key, float runtime ){
+        List<Float> list = map.get( key );
+        if( list == null ){
+            list = new ArrayList<Float>();
+            map.put( key, list );
+        }
+        list.add( runtime );
+    }
+
+    /**
+     * Returns whether reading a history file fails.
+     *
+     * @param file  the file.
+     *
+     * @return boolean
+     */
+    private static boolean fails( File file ){
+        try{
+            RuntimeHistory.read( file );
+            return false;
+        }
+        catch( IOException e ){
+            return true;
+        }
+    }
+}
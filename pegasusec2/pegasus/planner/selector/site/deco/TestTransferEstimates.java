@@ -0,0 +1,239 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+import edu.isi.pegasus.planner.partitioner.graph.MapGraph;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static edu.isi.pegasus.common.util.Check.check;
+
+/**
+ * Tests the data volumes and transfer times of the edges of random workflows
+ * against the sizes of the files the jobs share, and the reading of
+ * bandwidth files.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TestTransferEstimates {
+
+    /**
+     * The number of bytes in a megabyte.
+     */
+    private static final double BYTES_PER_MB = 1024 * 1024;
+
+    /**
+     * Returns whether two times are equal up to rounding.
+     *
+     * @param actual    the actual time.
+     * @param expected  the expected time.
+     *
+     * @return boolean
+     */
+    private static boolean equals( float actual, double expected ){
+        return Math.abs( actual - expected ) <= 1e-5 * Math.max( 1, Math.abs( expected ) );
+    }
+
+    /**
+     * Returns a file with a size.
+     *
+     * @param lfn   the logical name.
+     * @param size  the size in bytes, 0 if not known.
+     *
+     * @return the file
+     */
+    private static PegasusFile createFile( String lfn, double size ){
+        PegasusFile f = new PegasusFile( lfn );
+        f.setSize( size );
+        return f;
+    }
+
+    /**
+     * Writes a bandwidth file and reads it.
+     *
+     * @param file      the file.
+     * @param contents  the contents of the file.
+     * @param sites     the candidate sites.
+     *
+     * @return the bandwidths, or null if the file is rejected.
+     *
+     * @throws IOException in case of error while writing the file.
+     */
+    private static float[][] read( File file, String contents, List<String> sites ) throws IOException{
+        FileWriter writer = new FileWriter( file );
+        writer.write( contents );
+        writer.close();
+        try{
+            return TransferEstimates.readBandwidths( file, sites );
+        }
+        catch( IOException e ){
+            return null;
+        }
+    }
+
+    /**
+     * The main program.
+     *
+     * @param args  the arguments, ignored.
+     *
+     * @throws IOException in case of error with the temporary files.
+     */
+    public static void main( String[] args ) throws IOException{
+        Random r = new Random( 42 );
+        for( int run = 0; run < 100; run++ ){
+            //each job produces a few files, some of them without a size,
+            //and consumes some of the files of its parents
+            int n = 1 + r.nextInt( 30 );
+            Graph workflow = new MapGraph();
+            Job[] jobs = new Job[ n ];
+            for( int i = 0; i < n; i++ ){
+                jobs[ i ] = new Job();
+                for( int k = 0; k < 3; k++ ){
+                    double size = r.nextBoolean() ? 0 : 1 + r.nextInt( 100000000 );
+                    jobs[ i ].addOutputFile( createFile( "f" + i + "." + k, size ) );
+                }
+                workflow.addNode( new GraphNode( "ID" + i, jobs[ i ] ) );
+            }
+            for( int i = 1; i < n; i++ ){
+                for( int p = 0; p < i; p++ ){
+                    if( r.nextInt( 4 ) != 0 ){
+                        continue;
+                    }
+                    workflow.addEdge( "ID" + p, "ID" + i );
+                    for( int k = 0; k < 3; k++ ){
+                        if( r.nextBoolean() ){
+                            //the size of the input is used if the output has none
+                            double size = r.nextBoolean() ? 0 : 1 + r.nextInt( 1000000 );
+                            jobs[ i ].addInputFile( createFile( "f" + p + "." + k, size ) );
+                        }
+                    }
+                }
+                //an input no parent produces
+                jobs[ i ].addInputFile( createFile( "raw" + i, 1000 ) );
+            }
+
+            int m = 1 + r.nextInt( 4 );
+            List<String> sites = new ArrayList<String>();
+            float[][] bandwidths = new float[ m ][ m ];
+            double sum = 0;
+            for( int i = 0; i < m; i++ ){
+                sites.add( "site" + i );
+                for( int j = 0; j < m; j++ ){
+                    bandwidths[ i ][ j ] = r.nextInt( 3 ) == 0 ? 0 : 1 + r.nextInt( 100 );
+                }
+            }
+            float defaultBandwidth = 1 + r.nextInt( 50 );
+            for( int i = 0; i < m; i++ ){
+                for( int j = 0; j < m; j++ ){
+                    if( i != j ){
+                        sum += ( bandwidths[ i ][ j ] > 0 ) ? bandwidths[ i ][ j ] : defaultBandwidth;
+                    }
+                }
+            }
+            TransferEstimates estimates = new TransferEstimates( workflow, sites, bandwidths, defaultBandwidth );
+
+            int edges = 0;
+            for( int i = 0; i < n; i++ ){
+                GraphNode node = workflow.getNode( "ID" + i );
+                int first = estimates.getFirstEdge( node.getID() );
+                check( estimates.getEdgeCount( node.getID() ) == node.getParents().size(), "Run " + run + ": edges of " + i );
+                int e = first;
+                for( GraphNode parent : node.getParents() ){
+                    //the files of the parent the child consumes
+                    Job pj = (Job)parent.getContent();
+                    double volume = 0;
+                    boolean known = false;
+                    for( Object o : jobs[ i ].getInputFiles() ){
+                        PegasusFile in = (PegasusFile)o;
+                        for( Object q : pj.getOutputFiles() ){
+                            PegasusFile out = (PegasusFile)q;
+                            if( out.getLFN().equals( in.getLFN() ) ){
+                                double size = ( out.getSize() > 0 ) ? out.getSize() : in.getSize();
+                                if( size > 0 ){
+                                    volume += size;
+                                    known = true;
+                                }
+                            }
+                        }
+                    }
+                    float v = estimates.getVolume( e );
+                    String label = "Run " + run + ": edge " + parent.getID() + " -> " + node.getID();
+                    if( !known ){
+                        check( v == TransferEstimates.UNKNOWN, label + ": volume " + v + " expected unknown" );
+                        check( estimates.getTransferTime( e, "site0", "elsewhere" ) == TransferEstimates.UNKNOWN &&
+                               estimates.getAverageTransferTime( e ) == TransferEstimates.UNKNOWN, label + ": time of unknown volume" );
+                    }
+                    else{
+                        volume /= BYTES_PER_MB;
+                        check( equals( v, volume ), label + ": volume " + v + " expected " + volume );
+                        for( int a = 0; a < m; a++ ){
+                            for( int b = 0; b < m; b++ ){
+                                double bandwidth = ( bandwidths[ a ][ b ] > 0 ) ? bandwidths[ a ][ b ] : defaultBandwidth;
+                                double expected = ( a == b ) ? 0 : volume / bandwidth;
+                                check( equals( estimates.getTransferTime( e, "site" + a, "site" + b ), expected ),
+                                       label + ": time from site" + a + " to site" + b );
+                            }
+                        }
+                        check( equals( estimates.getTransferTime( e, "site0", "elsewhere" ), volume / defaultBandwidth ),
+                               label + ": time to a site not in the matrix" );
+                        double mean = ( m < 2 ) ? defaultBandwidth : sum / ( m * ( m - 1 ) );
+                        check( equals( estimates.getAverageTransferTime( e ), volume / mean ), label + ": average time" );
+                    }
+                    e++;
+                }
+                edges += node.getParents().size();
+            }
+            check( estimates.size() == edges, "Run " + run + ": " + estimates.size() + " edges expected " + edges );
+            check( estimates.getFirstEdge( "missing" ) == -1 && estimates.getEdgeCount( "missing" ) == 0, "Run " + run + ": missing node" );
+        }
+
+        //bandwidth files
+        File file = File.createTempFile( "bandwidth", ".txt" );
+        List<String> sites = Arrays.asList( "a", "b", "c" );
+        float[][] b = read( file, "# from to MB/s\na b 40\n\nc a 5\na c 7\nx a 100\n", sites );
+        check( b != null, "Bandwidth file rejected" );
+        check( b[ 0 ][ 1 ] == 40 && b[ 1 ][ 0 ] == 40, "Symmetric bandwidth" );
+        check( b[ 2 ][ 0 ] == 5 && b[ 0 ][ 2 ] == 7, "Explicit reverse bandwidth" );
+        check( b[ 1 ][ 2 ] == 0 && b[ 2 ][ 1 ] == 0, "Bandwidth of a pair not in the file" );
+        check( read( file, "a b\n", sites ) == null, "Line without bandwidth read" );
+        check( read( file, "a b fast\n", sites ) == null, "Bandwidth that is not a number read" );
+        check( read( file, "a b -3\n", sites ) == null, "Negative bandwidth read" );
+        check( read( file, "a b 3 4\n", sites ) == null, "Line with four fields read" );
+        file.delete();
+        try{
+            new TransferEstimates( new MapGraph(), sites, null, 0 );
+            check( false, "Empty default bandwidth accepted" );
+        }
+        catch( IllegalArgumentException e ){
+            //expected
+        }
+        System.out.println( "TestTransferEstimates passed" );
+    }
+}
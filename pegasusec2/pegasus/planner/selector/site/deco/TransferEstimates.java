@@ -0,0 +1,355 @@
+/**
+ *  Copyright 2007-2008 University Of Southern California
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *  http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+
+package edu.isi.pegasus.planner.selector.site.deco;
+
+import edu.isi.pegasus.planner.classes.Job;
+import edu.isi.pegasus.planner.classes.PegasusFile;
+
+import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The estimated time to move the data along each edge of a workflow between
+ * two sites. It is computed once per planning run, from the sizes of the
+ * files a job produces that its child consumes, and a matrix of the bandwidth
+ * between each pair of candidate sites.
+ *
+ * The edges are held in primitive arrays aligned with the graph. The edges
+ * into a node are numbered consecutively from the first edge of the node, in
+ * the order of the parents of the node at the time the estimates are built.
+ * An edge whose data volume is not known, because none of the files shared by
+ * the parent and the child has a size, has an unknown transfer time, and the
+ * caller falls back to its default.
+ *
+ * The bandwidths are read from a text file with a pair of sites and the
+ * bandwidth in megabytes per second between them on each line.
+ * <pre>
+ *   # from   to     MB/s
+ *   siteA    siteB  40
+ *   siteA    siteC  5
+ * </pre>
+ * A bandwidth applies in both directions, unless the reverse direction is
+ * given as well. The pairs not in the file have the default bandwidth.
+ *
+ * @author agent
+ * @version $Revision$
+ */
+public class TransferEstimates {
+
+    /**
+     * The value of an unknown data volume or transfer time.
+     */
+    public static final float UNKNOWN = -1;
+
+    /**
+     * The number of bytes in a megabyte.
+     */
+    private static final double BYTES_PER_MB = 1024 * 1024;
+
+    /**
+     * The index of a node indexed by its ID.
+     */
+    private final Map<String,Integer> mNodes;
+
+    /**
+     * The first edge into each node, with the number of edges as the last
+     * element.
+     */
+    private final int[] mOffsets;
+
+    /**
+     * The data volume in megabytes of each edge, or UNKNOWN.
+     */
+    private final float[] mVolumes;
+
+    /**
+     * The index of a candidate site indexed by its name.
+     */
+    private final Map<String,Integer> mSites;
+
+    /**
+     * The reciprocal of the bandwidth in seconds per megabyte, indexed by
+     * [from][to] site index.
+     */
+    private final float[][] mInverseBandwidths;
+
+    /**
+     * The reciprocal of the default bandwidth in seconds per megabyte.
+     */
+    private final float mInverseDefault;
+
+    /**
+     * The reciprocal of the mean bandwidth between distinct candidate sites.
+     */
+    private final float mInverseMean;
+
+    /**
+     * The overloaded constructor.
+     *
+     * @param workflow          the workflow, whose nodes hold <code>Job</code>s.
+     * @param sites             the names of the candidate sites.
+     * @param bandwidths        the bandwidth in megabytes per second between
+     *                          the candidate sites indexed by [from][to], or
+     *                          null to use the default bandwidth.
+     * @param defaultBandwidth  the bandwidth in megabytes per second for the
+     *                          sites not in the matrix.
+     */
+    public TransferEstimates( Graph workflow, List<String> sites, float[][] bandwidths, float defaultBandwidth ){
+        if( defaultBandwidth <= 0 ){
+            throw new IllegalArgumentException( "Invalid default bandwidth " + defaultBandwidth );
+        }
+        int n = workflow.size();
+        mNodes   = new HashMap<String,Integer>( n );
+        mOffsets = new int[ n + 1 ];
+        int index = 0;
+        int edges = 0;
+        for( Iterator it = workflow.nodeIterator(); it.hasNext(); ){
+            GraphNode node = (GraphNode)it.next();
+            mNodes.put( node.getID(), index );
+            mOffsets[ index++ ] = edges;
+            edges += node.getParents().size();
+        }
+        mOffsets[ n ] = edges;
+
+        //the volume of an edge is the size of the files
+        //produced by the parent and consumed by the child
+        mVolumes = new float[ edges ];
+        Map<String,Map<String,PegasusFile>> outputs = new HashMap<String,Map<String,PegasusFile>>( n );
+        for( Iterator it = workflow.nodeIterator(); it.hasNext(); ){
+            GraphNode node = (GraphNode)it.next();
+            int e = mOffsets[ mNodes.get( node.getID() ) ];
+            for( GraphNode parent : node.getParents() ){
+                Map<String,PegasusFile> produced = outputs.get( parent.getID() );
+                if( produced == null ){
+                    produced = getFiles( ( (Job)parent.getContent() ).getOutputFiles() );
+                    outputs.put( parent.getID(), produced );
+                }
+                mVolumes[ e++ ] = getVolume( produced, ( (Job)node.getContent() ).getInputFiles() );
+            }
+        }
+
+        mSites = new HashMap<String,Integer>();
+        for( String site : sites ){
+            if( !mSites.containsKey( site ) ){
+                mSites.put( site, mSites.size() );
+            }
+        }
+        int m = mSites.size();
+        mInverseDefault   = 1 / defaultBandwidth;
+        mInverseBandwidths = new float[ m ][ m ];
+        double sum = 0;
+        for( int i = 0; i < m; i++ ){
+            for( int j = 0; j < m; j++ ){
+                float bandwidth = ( bandwidths == null || bandwidths[ i ][ j ] <= 0 ) ? defaultBandwidth : bandwidths[ i ][ j ];
+                mInverseBandwidths[ i ][ j ] = 1 / bandwidth;
+                if( i != j ){
+                    sum += bandwidth;
+                }
+            }
+        }
+        mInverseMean = ( m < 2 ) ? mInverseDefault : (float)( m * ( m - 1 ) / sum );
+    }
+
+    /**
+     * Returns the first edge into a node.
+     *
+     * @param id  the ID of the node.
+     *
+     * @return the index of the first edge, or -1 if the node is not known.
+     */
+    public int getFirstEdge( String id ){
+        Integer index = mNodes.get( id );
+        return ( index == null ) ? -1 : mOffsets[ index ];
+    }
+
+    /**
+     * Returns the number of edges into a node.
+     *
+     * @param id  the ID of the node.
+     *
+     * @return the number of edges, or 0 if the node is not known.
+     */
+    public int getEdgeCount( String id ){
+        Integer index = mNodes.get( id );
+        return ( index == null ) ? 0 : mOffsets[ index + 1 ] - mOffsets[ index ];
+    }
+
+    /**
+     * Returns the number of edges.
+     *
+     * @return the number of edges
+     */
+    public int size(){
+        return mVolumes.length;
+    }
+
+    /**
+     * Returns the data volume of an edge.
+     *
+     * @param edge  the index of the edge.
+     *
+     * @return the volume in megabytes, or UNKNOWN.
+     */
+    public float getVolume( int edge ){
+        return mVolumes[ edge ];
+    }
+
+    /**
+     * Returns the time to move the data of an edge between two sites.
+     *
+     * @param edge  the index of the edge.
+     * @param from  the site the parent ran on.
+     * @param to    the site the child runs on.
+     *
+     * @return the time in seconds, 0 if the sites are the same, or UNKNOWN.
+     */
+    public float getTransferTime( int edge, String from, String to ){
+        if( from.equals( to ) ){
+            return 0;
+        }
+        float volume = mVolumes[ edge ];
+        if( volume == UNKNOWN ){
+            return UNKNOWN;
+        }
+        Integer i = mSites.get( from );
+        Integer j = mSites.get( to );
+        return volume * ( ( i == null || j == null ) ? mInverseDefault : mInverseBandwidths[ i ][ j ] );
+    }
+
+    /**
+     * Returns the time to move the data of an edge between two distinct sites
+     * at the mean bandwidth between the candidate sites.
+     *
+     * @param edge  the index of the edge.
+     *
+     * @return the time in seconds, or UNKNOWN.
+     */
+    public float getAverageTransferTime( int edge ){
+        float volume = mVolumes[ edge ];
+        return ( volume == UNKNOWN ) ? UNKNOWN : volume * mInverseMean;
+    }
+
+    /**
+     * Indexes a set of files by their logical names.
+     *
+     * @param files  set of <code>PegasusFile</code>
+     *
+     * @return map indexed by the logical name
+     */
+    private static Map<String,PegasusFile> getFiles( Set files ){
+        Map<String,PegasusFile> result = new HashMap<String,PegasusFile>();
+        for( Iterator it = files.iterator(); it.hasNext(); ){
+            PegasusFile f = (PegasusFile)it.next();
+            result.put( f.getLFN(), f );
+        }
+        return result;
+    }
+
+    /**
+     * Returns the size of the files produced by a parent and consumed by a
+     * child.
+     *
+     * @param produced  the output files of the parent indexed by logical name.
+     * @param consumed  the input files of the child.
+     *
+     * @return the size in megabytes, or UNKNOWN if none of the shared files
+     *         has a size.
+     */
+    private static float getVolume( Map<String,PegasusFile> produced, Set consumed ){
+        double size = 0;
+        boolean known = false;
+        for( Iterator it = consumed.iterator(); it.hasNext(); ){
+            PegasusFile f = (PegasusFile)it.next();
+            PegasusFile p = produced.get( f.getLFN() );
+            if( p == null ){
+                continue;
+            }
+            double s = ( p.getSize() > 0 ) ? p.getSize() : f.getSize();
+            if( s > 0 ){
+                size += s;
+                known = true;
+            }
+        }
+        return known ? (float)( size / BYTES_PER_MB ) : UNKNOWN;
+    }
+
+    /**
+     * Reads the bandwidths between the candidate sites from a file.
+     *
+     * @param file   the file to read from.
+     * @param sites  the names of the candidate sites.
+     *
+     * @return the bandwidth in megabytes per second indexed by [from][to]
+     *         site index, with 0 for the pairs not in the file.
+     *
+     * @throws IOException in case of error while reading, or if a line is
+     *         malformed.
+     */
+    public static float[][] readBandwidths( File file, List<String> sites ) throws IOException{
+        int m = sites.size();
+        float[][] bandwidths = new float[ m ][ m ];
+        boolean[][] explicit = new boolean[ m ][ m ];
+        BufferedReader reader = new BufferedReader( new FileReader( file ) );
+        try{
+            String line;
+            while( ( line = reader.readLine() ) != null ){
+                line = line.trim();
+                if( line.length() == 0 || line.startsWith( "#" ) ){
+                    continue;
+                }
+                String[] fields = line.split( "\\s+" );
+                float bandwidth;
+                try{
+                    bandwidth = ( fields.length == 3 ) ? Float.parseFloat( fields[ 2 ] ) : -1;
+                }
+                catch( NumberFormatException e ){
+                    bandwidth = -1;
+                }
+                if( bandwidth <= 0 ){
+                    throw new IOException( "Malformed line in " + file + ": " + line );
+                }
+                int i = sites.indexOf( fields[ 0 ] );
+                int j = sites.indexOf( fields[ 1 ] );
+                if( i == -1 || j == -1 ){
+                    //not a candidate site for this workflow
+                    continue;
+                }
+                bandwidths[ i ][ j ] = bandwidth;
+                explicit[ i ][ j ] = true;
+                if( !explicit[ j ][ i ] ){
+                    bandwidths[ j ][ i ] = bandwidth;
+                }
+            }
+        }
+        finally{
+            reader.close();
+        }
+        return bandwidths;
+    }
+}
@@ -26,6 +26,7 @@ import edu.isi.pegasus.planner.common.PegasusProperties;
 import edu.isi.pegasus.common.logging.LogManager;
 
 import edu.isi.pegasus.planner.partitioner.graph.Graph;
+import edu.isi.pegasus.planner.partitioner.graph.GraphAnalytics;
 import edu.isi.pegasus.planner.partitioner.graph.GraphNode;
 import edu.isi.pegasus.planner.partitioner.graph.Adapter;
 import edu.isi.pegasus.planner.partitioner.graph.Bag;
@@ -42,7 +43,11 @@ import edu.isi.pegasus.planner.catalog.site.classes.SiteCatalogEntry;
 import edu.isi.pegasus.planner.catalog.site.classes.SiteStore;
 import edu.isi.pegasus.planner.catalog.site.classes.GridGateway;
 
+import edu.isi.pegasus.planner.selector.site.CandidateSiteEvaluator;
+import edu.isi.pegasus.planner.selector.site.RunnableSiteIndex;
 
+
+import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
 import java.util.HashMap;
@@ -122,6 +127,21 @@ public class Algorithm {
      */
     public static final long MAXIMUM_FINISH_TIME = Long.MAX_VALUE;
 
+    /**
+     * The property that specifies the minimum number of candidate sites of a
+     * job, for the sites to be evaluated in parallel. Defaults to 0 i.e. the
+     * sites are evaluated one after another.
+     *
+     * @see CandidateSiteEvaluator
+     */
+    public static final String SITE_THRESHOLD_PROPERTY = "pegasus.selector.heft.site.threshold";
+
+    /**
+     * The property that specifies the number of threads used to evaluate the
+     * candidate sites of a job. Defaults to the number of processors.
+     */
+    public static final String SITE_THREADS_PROPERTY = "pegasus.selector.heft.site.threads";
+
     /**
      * The average communication cost between nodes.
      */
@@ -182,6 +202,39 @@ public class Algorithm {
      */
     private TransformationCatalog mTCHandle;
 
+    /**
+     * The index of the sites where the jobs of the workflow being scheduled
+     * can run.
+     */
+    private RunnableSiteIndex mSiteIndex;
+
+    /**
+     * The minimum number of candidate sites of a job for the sites to be
+     * evaluated in parallel. 0 to always evaluate them one after another.
+     */
+    private int mSiteThreshold;
+
+    /**
+     * The number of threads used to evaluate the candidate sites of a job.
+     */
+    private int mSiteThreads;
+
+    /**
+     * The weights the ranks of the workflow are computed with, the average
+     * compute times of the jobs and the average communication cost.
+     * The same instance is passed each time, so that the ranks memoized for
+     * it are reused while the workflow is unchanged.
+     */
+    private final GraphAnalytics.Weights mRankWeights = new GraphAnalytics.Weights(){
+        public float getNodeWeight( GraphNode node ){
+            return getFloatValue( node.getBag().get( HeftBag.AVG_COMPUTE_TIME ) );
+        }
+
+        public float getEdgeWeight( GraphNode node, int k ){
+            return mAverageCommunicationCost;
+        }
+    };
+
     /**
      * The default constructor.
      *
@@ -196,6 +249,8 @@ public class Algorithm {
 //        mSiteHandle = ( PoolInfoProvider )bag.get( PegasusBag.SITE_CATALOG );
         mSiteStore = bag.getHandleToSiteStore();
         mAverageCommunicationCost = (this.AVERAGE_BANDWIDTH / this.AVERAGE_DATA_SIZE_BETWEEN_JOBS);
+        mSiteThreshold = getIntProperty( SITE_THRESHOLD_PROPERTY, 0 );
+        mSiteThreads   = getIntProperty( SITE_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors() );
 
     }
 
@@ -233,6 +288,7 @@ public class Algorithm {
         mLabel = label;
         mWorkflow = workflow;
         populateSiteMap( sites );
+        mSiteIndex = createSiteIndex( workflow, sites );
 
         //compute weighted execution times for each job
         for( Iterator it = workflow.nodeIterator(); it.hasNext(); ){
@@ -240,7 +296,7 @@ public class Algorithm {
             Job job    = (Job)node.getContent();
 
             //add the heft bag to a node
-            Float averageComputeTime = new Float( calculateAverageComputeTime( job ) );
+            Float averageComputeTime = new Float( calculateAverageComputeTime( node ) );
             HeftBag b = new HeftBag();
             b.add( HeftBag.AVG_COMPUTE_TIME, averageComputeTime );
             node.setBag( b );
@@ -259,7 +315,11 @@ public class Algorithm {
         bag.add( HeftBag.DOWNWARD_RANK, new Float( 0 ) );
         dummyRoot.setBag( bag );
 
-        //do a breadth first traversal and compute the downward ranks
+        //the downward ranks of all the nodes are computed in one pass
+        //over the workflow in topological order
+        GraphAnalytics.Ranks ranks = GraphAnalytics.getInstance( workflow ).getRanks( mRankWeights );
+
+        //do a breadth first traversal and collect the downward ranks
         Iterator it = workflow.iterator();
         dummyRoot = ( GraphNode )it.next(); //we have the dummy root
         Float drank;
@@ -269,7 +329,7 @@ public class Algorithm {
         List sortedNodes = new LinkedList();
         while ( it.hasNext() ){
             GraphNode node = ( GraphNode ) it.next();
-            drank = new Float( computeDownwardRank( node ) );
+            drank = new Float( ranks.getDownwardRank( node ) );
             bag = node.getBag();
             bag.add( HeftBag.DOWNWARD_RANK , drank );
             sortedNodes.add( node );
@@ -285,6 +345,15 @@ public class Algorithm {
         dummyRoot.getBag().add( HeftBag.ACTUAL_START_TIME, new Long( 0 ) );
         dummyRoot.getBag().add( HeftBag.ACTUAL_FINISH_TIME, new Long( 0 ) );
 
+        //the candidate sites of a job are evaluated in parallel
+        //if there are enough of them
+        CandidateSiteEvaluator evaluator = new CandidateSiteEvaluator( mSiteThreads, mSiteThreshold );
+        CandidateSiteEvaluator.Estimator estimator = new CandidateSiteEvaluator.Estimator(){
+            public long[] estimate( GraphNode node, String site ){
+                return calculateEstimatedStartAndFinishTime( node, site );
+            }
+        };
+
         //schedule out the sorted order of the nodes
         for( it = sortedNodes.iterator(); it.hasNext(); ){
             GraphNode current = (GraphNode) it.next();
@@ -294,29 +363,17 @@ public class Algorithm {
 
             //figure out the sites where a job can run
             Job job = (Job) current.getContent();
-            List runnableSites = mTCMapper.getSiteList( job.getTXNamespace(),
-                                                        job.getTXName(),
-                                                        job.getTXVersion(),
-                                                        mSites);
+            List<String> runnableSites = Arrays.asList( mSiteIndex.getRunnableSites( job ) );
 
             //for each runnable site get the estimated finish time
             //and schedule job on site that minimizes the finish time
             String site;
-            long est_result[ ];
             long result[] = new long[ 2 ];
             result [ 1 ] = this.MAXIMUM_FINISH_TIME;
-            for( Iterator rit = runnableSites.iterator(); rit.hasNext(); ){
-                site = (String) rit.next();
-                est_result = calculateEstimatedStartAndFinishTime( current, site );
-
-                //if existing EFT is greater than the returned EFT
-                //set existing EFT to the returned EFT
-                if( result[ 1 ] > est_result[ 1 ] ){
-                    result[ 0 ] = est_result[ 0 ];
-                    result[ 1 ] = est_result[ 1 ];
-                    //tentatively schedule the job for that site
-                    bag.add( HeftBag.SCHEDULED_SITE , site );
-                }
+            int best = evaluator.evaluate( current, runnableSites, estimator, result );
+            if( best != -1 ){
+                //tentatively schedule the job for that site
+                bag.add( HeftBag.SCHEDULED_SITE , runnableSites.get( best ) );
             }
 
             //update the site selected with the job
@@ -336,6 +393,7 @@ public class Algorithm {
 
             mLogger.log( sb.toString(), LogManager.DEBUG_MESSAGE_LEVEL );
         }//end of going through all the sorted nodes
+        evaluator.shutdown();
 
         //remove the dummy root
         mWorkflow.remove( dummyRoot.getID() );
@@ -416,90 +474,43 @@ public class Algorithm {
 
 
         //the estimated finish time is est + compute time on site
-        List entries = mTCMapper.getTCList( job.getTXNamespace(),
-                                            job.getTXName(),
-                                            job.getTXVersion(),
-                                            site );
-        //pick the first one for time being
-        TransformationCatalogEntry entry = ( TransformationCatalogEntry ) entries.get( 0 );
-        result[ 1 ] = result[ 0 ] + getExpectedRuntime( job, entry );
+        result[ 1 ] = result[ 0 ] + mSiteIndex.getRuntime( job, node.getID(), site );
 
         //est now stores the estimated finish time
         return result;
     }
 
-    /**
-     * Computes the downward rank of a node.
-     *
-     * The downward rank of node i is
-     *                                   _    ___
-     *           max {       rank( n ) + w  + c    }
-     *         j E pred( i )     d  j     j    ji
-     *
-     *
-     *
-     * @param node   the <code>GraphNode</code> whose rank needs to be computed.
-     *
-     * @return computed rank.
-     */
-    protected float computeDownwardRank( GraphNode node ){
-        float result = 0;
-	//value needs to be computed for each parent separately
-        //float value = 0;
-
-        for( Iterator it = node.getParents().iterator(); it.hasNext(); ){
-            GraphNode p = (GraphNode)it.next();
-            Bag pbag    = p.getBag();
-	    float value = 0;
-            value += ( getFloatValue ( pbag.get( HeftBag.DOWNWARD_RANK ) )+
-                       getFloatValue ( pbag.get( HeftBag.AVG_COMPUTE_TIME ) ) +
-                       mAverageCommunicationCost
-                     );
-
-            if( value > result ){
-                 result = value;
-            }
-        }
-
-        return result;
-    }
-
     /**
      * Returns the average compute time in seconds for a job.
      *
-     * @param job the job whose average compute time is to be computed.
+     * @param node the node whose average compute time is to be computed.
      *
      * @return the weighted compute time in seconds.
      */
-    protected float calculateAverageComputeTime( Job job ){
-        //get all the TC entries for the sites where a job can run
-        List runnableSites = mTCMapper.getSiteList( job.getTXNamespace(),
-                                                    job.getTXName(),
-                                                    job.getTXVersion(),
-                                                    mSites );
+    protected float calculateAverageComputeTime( GraphNode node ){
+        Job job = (Job)node.getContent();
+        //get the sites where a job can run, with the runtimes on them
+        String[] runnableSites = mSiteIndex.getRunnableSites( job );
+        int[] runtimes         = mSiteIndex.getRuntimes( node.getID() );
 
         //sanity check
-        if( runnableSites == null || runnableSites.isEmpty() ){
+        if( runnableSites.length == 0 ){
             throw new RuntimeException( "No runnable site for job " + job.getName() );
         }
 
-        mLogger.log( "Runnables sites for job " + job.getName() + " " + runnableSites , LogManager.DEBUG_MESSAGE_LEVEL );
+        mLogger.log( "Runnables sites for job " + job.getName() + " " + Arrays.toString( runnableSites ),
+                     LogManager.DEBUG_MESSAGE_LEVEL );
 
         //for each runnable site get the expected runtime
         String site;
         int total_nodes = 0;
         int total = 0;
-        for( Iterator it = runnableSites.iterator(); it.hasNext(); ){
-            site = ( String ) it.next();
+        for( int i = 0; i < runnableSites.length; i++ ){
+            site = runnableSites[ i ];
             int nodes = getFreeNodesForSite( site );
-            List entries = mTCMapper.getTCList( job.getTXNamespace(),
-                                                job.getTXName(),
-                                                job.getTXVersion(),
-                                                site );
-
-            //pick the first one for time being
-            TransformationCatalogEntry entry = ( TransformationCatalogEntry ) entries.get( 0 );
-            int jobRuntime = getExpectedRuntime( job, entry );
+            int jobRuntime = ( runtimes[ i ] < 0 ) ?
+                             mSiteIndex.getRuntime( job, node.getID(), site ) : //throws the error
+                             runtimes[ i ];
             total_nodes += nodes;
             total += jobRuntime * nodes;
 
@@ -509,6 +520,24 @@ public class Algorithm {
     }
 
 
+    /**
+     * Creates the index of the sites where the jobs of a workflow can run,
+     * with the runtimes of the jobs resolved by getExpectedRuntime().
+     *
+     * @param workflow  the workflow.
+     * @param sites     the list of candidate sites.
+     *
+     * @return the index
+     */
+    protected RunnableSiteIndex createSiteIndex( Graph workflow, List sites ){
+        return new RunnableSiteIndex( workflow, sites, mTCMapper, mSiteStore,
+                                      new RunnableSiteIndex.RuntimeEstimator(){
+                                          public int getExpectedRuntime( Job job, TransformationCatalogEntry entry ){
+                                              return Algorithm.this.getExpectedRuntime( job, entry );
+                                          }
+                                      });
+    }
+
     /**
      * Return expected runtime.
      *
@@ -731,6 +760,29 @@ public class Algorithm {
         return "";
     }
 
+    /**
+     * Returns the value of an integer property.
+     *
+     * @param key           the property key.
+     * @param defaultValue  the value if the property is not set or is invalid.
+     *
+     * @return the value
+     */
+    private int getIntProperty( String key, int defaultValue ){
+        String value = mProps.getProperty( key );
+        if( value == null ){
+            return defaultValue;
+        }
+        try{
+            return Integer.parseInt( value.trim() );
+        }
+        catch( NumberFormatException e ){
+            mLogger.log( "Invalid value " + value + " for property " + key,
+                         LogManager.WARNING_MESSAGE_LEVEL );
+            return defaultValue;
+        }
+    }
+
     /**
      * A convenience method to get the intValue for the object passed.
      *